@@ -0,0 +1,295 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.collection;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
+import com.wm.util.coder.IDataCodable;
+import permafrost.tundra.util.concurrent.StripedCounter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A thread-safe cache which holds at most a fixed number of entries, evicting the least recently referenced entries
+ * using a second chance (clock) policy when full. Reads are lock-free.
+ *
+ * @param <K> The class of cache keys.
+ * @param <V> The class of cache values.
+ */
+public class BoundedConcurrentCache<K, V> implements IDataCodable {
+    /**
+     * The default maximum number of entries held by a cache.
+     */
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * The maximum number of entries held by this cache.
+     */
+    protected final int capacity;
+
+    /**
+     * The cached entries.
+     */
+    protected final ConcurrentMap<K, Entry<V>> entries;
+
+    /**
+     * The order in which entries were added, used to select eviction candidates.
+     */
+    protected final Queue<K> order = new ConcurrentLinkedQueue<K>();
+
+    /**
+     * The current number of entries, maintained separately as ConcurrentLinkedQueue.size() is not a constant time
+     * operation.
+     */
+    protected final AtomicInteger size = new AtomicInteger(0);
+
+    /**
+     * Lookup statistics, which are striped so that concurrent lookups do not contend on a shared counter.
+     */
+    protected final StripedCounter hits = new StripedCounter(), misses = new StripedCounter();
+
+    /**
+     * Eviction statistics.
+     */
+    protected final AtomicLong evictions = new AtomicLong(0);
+
+    /**
+     * Constructs a new cache with the default capacity.
+     */
+    public BoundedConcurrentCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new cache with the given capacity.
+     *
+     * @param capacity The maximum number of entries to be held by this cache.
+     */
+    public BoundedConcurrentCache(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be greater than zero");
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<K, Entry<V>>(Math.min(capacity, DEFAULT_CAPACITY) * 2);
+    }
+
+    /**
+     * Returns the value associated with the given key, or null if the key is not cached.
+     *
+     * @param key   The key whose associated value is to be returned.
+     * @return      The value associated with the given key, or null if the key is not cached.
+     */
+    public V get(K key) {
+        Entry<V> entry = key == null ? null : entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+
+        // only write when required, to avoid invalidating the cache line on every hit
+        if (!entry.referenced) entry.referenced = true;
+        hits.increment();
+
+        return entry.value;
+    }
+
+    /**
+     * Caches the given value against the given key, unless the key is already cached in which case the existing value
+     * is returned.
+     *
+     * @param key   The key to be cached.
+     * @param value The value to be cached.
+     * @return      The value now associated with the given key in this cache.
+     */
+    public V putIfAbsent(K key, V value) {
+        if (key == null || value == null) return value;
+
+        Entry<V> existing = entries.putIfAbsent(key, new Entry<V>(value));
+        if (existing != null) return existing.value;
+
+        order.offer(key);
+        if (size.incrementAndGet() > capacity) evict();
+
+        return value;
+    }
+
+    /**
+     * Removes the given key from this cache.
+     *
+     * @param key   The key to be removed.
+     * @return      The value that was associated with the given key, if any.
+     */
+    public V remove(K key) {
+        Entry<V> entry = key == null ? null : entries.remove(key);
+        if (entry == null) return null;
+
+        size.decrementAndGet();
+        order.remove(key);
+
+        return entry.value;
+    }
+
+    /**
+     * Removes all entries from this cache.
+     */
+    public void clear() {
+        K key;
+        while ((key = order.poll()) != null) {
+            if (entries.remove(key) != null) size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Evicts entries until this cache is within its capacity. Entries referenced since they were last considered are
+     * given a second chance and requeued, up to a limit so that eviction always terminates.
+     */
+    protected void evict() {
+        int chances = capacity;
+
+        while (size.get() > capacity) {
+            K key = order.poll();
+            if (key == null) break;
+
+            Entry<V> entry = entries.get(key);
+            if (entry == null) continue;
+
+            if (entry.referenced && chances-- > 0) {
+                entry.referenced = false;
+                order.offer(key);
+            } else if (entries.remove(key, entry)) {
+                size.decrementAndGet();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of entries currently held by this cache.
+     *
+     * @return The number of entries currently held by this cache.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the maximum number of entries held by this cache.
+     *
+     * @return The maximum number of entries held by this cache.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of lookups which found a cached value.
+     *
+     * @return The number of lookups which found a cached value.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups which did not find a cached value.
+     *
+     * @return The number of lookups which did not find a cached value.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of entries evicted to keep this cache within its capacity.
+     *
+     * @return The number of entries evicted to keep this cache within its capacity.
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * Returns the statistics of this cache as an IData document.
+     *
+     * @return The statistics of this cache as an IData document.
+     */
+    @Override
+    public IData getIData() {
+        IData output = IDataFactory.create();
+        IDataCursor cursor = output.getCursor();
+
+        try {
+            IDataUtil.put(cursor, "capacity", (long)capacity);
+            IDataUtil.put(cursor, "size", (long)size.get());
+            IDataUtil.put(cursor, "hits", hits.sum());
+            IDataUtil.put(cursor, "misses", misses.sum());
+            IDataUtil.put(cursor, "evictions", evictions.get());
+        } finally {
+            cursor.destroy();
+        }
+
+        return output;
+    }
+
+    /**
+     * This method has not been implemented.
+     *
+     * @param document                          An IData document.
+     * @throws UnsupportedOperationException    This method has not been implemented.
+     */
+    @Override
+    public void setIData(IData document) {
+        throw new UnsupportedOperationException("setIData not implemented");
+    }
+
+    /**
+     * A cached value, and whether it has been referenced since it was last considered for eviction.
+     *
+     * @param <V> The class of the cached value.
+     */
+    protected static class Entry<V> {
+        /**
+         * The cached value.
+         */
+        protected final V value;
+        /**
+         * Whether the entry has been referenced since it was last considered for eviction.
+         */
+        protected volatile boolean referenced;
+
+        /**
+         * Constructs a new cache entry.
+         *
+         * @param value The cached value.
+         */
+        protected Entry(V value) {
+            this.value = value;
+        }
+    }
+}
@@ -27,8 +27,10 @@ package permafrost.tundra.collection;
 import com.wm.data.IData;
 import com.wm.data.IDataCursor;
 import permafrost.tundra.data.ConcurrentMapIData;
+import permafrost.tundra.data.ConcurrentNavigableMapIData;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
 
 /**
@@ -126,6 +128,7 @@ public class ConcurrentMapHelper {
             }
         }
         // wrap the map in an IData compatible wrapper for developer convenience
+        if (map instanceof ConcurrentNavigableMap) return new ConcurrentNavigableMapIData<V>((ConcurrentNavigableMap<String, V>)map);
         return new ConcurrentMapIData<String, V>(map);
     }
 
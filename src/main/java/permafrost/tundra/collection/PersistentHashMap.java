@@ -0,0 +1,448 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.collection;
+
+/**
+ * An immutable hash map implemented as a hash array mapped trie. Updates return a new map which shares all unchanged
+ * structure with the original, so that puts and removes are O(log32 n) and require no copying of the whole map, and
+ * any version of the map can be safely shared between threads without locking. Null keys are supported, but null
+ * values cannot be distinguished from absent keys.
+ *
+ * @param <K> The class of map keys.
+ * @param <V> The class of map values.
+ */
+public final class PersistentHashMap<K, V> {
+    /**
+     * The number of hash bits consumed at each level of the trie.
+     */
+    private static final int BITS = 5;
+
+    /**
+     * The mask used to extract the hash bits for a level of the trie.
+     */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /**
+     * Marker stored in a node's key position to indicate the corresponding value is a child node.
+     */
+    private static final Object CHILD = new Object();
+
+    /**
+     * The empty map.
+     */
+    private static final PersistentHashMap EMPTY = new PersistentHashMap(null, 0);
+
+    /**
+     * The root node of the trie, or null if this map is empty.
+     */
+    private final Node root;
+
+    /**
+     * The number of entries in this map.
+     */
+    private final int size;
+
+    /**
+     * Constructs a new map.
+     *
+     * @param root  The root node of the trie.
+     * @param size  The number of entries in the map.
+     */
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <K>   The class of map keys.
+     * @param <V>   The class of map values.
+     * @return      The empty map.
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>)EMPTY;
+    }
+
+    /**
+     * Returns the value associated with the given key.
+     *
+     * @param key   The key whose value is to be returned.
+     * @return      The value associated with the given key, or null if the key does not exist.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key) {
+        return root == null ? null : (V)root.get(0, hash(key), key);
+    }
+
+    /**
+     * Returns a new map with the given key associated with the given value.
+     *
+     * @param key   The key to be associated.
+     * @param value The value to be associated with the key.
+     * @return      A new map with the given key associated with the given value, or this map if the key is already
+     *              associated with the given value.
+     */
+    public PersistentHashMap<K, V> put(K key, V value) {
+        boolean[] added = new boolean[1];
+        Node node = (root == null ? BitmapNode.EMPTY : root).put(0, hash(key), key, value, added);
+        return node == root ? this : new PersistentHashMap<K, V>(node, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Returns a new map without the given key.
+     *
+     * @param key   The key to be removed.
+     * @return      A new map without the given key, or this map if the key does not exist.
+     */
+    @SuppressWarnings("unchecked")
+    public PersistentHashMap<K, V> remove(K key) {
+        if (root == null) return this;
+        Node node = root.remove(0, hash(key), key);
+        if (node == root) return this;
+        return node == null ? (PersistentHashMap<K, V>)EMPTY : new PersistentHashMap<K, V>(node, size - 1);
+    }
+
+    /**
+     * Returns the number of entries in this map.
+     *
+     * @return The number of entries in this map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns true if this map has no entries.
+     *
+     * @return True if this map has no entries.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns a well distributed hash code for the given key.
+     *
+     * @param key   The key to be hashed.
+     * @return      The hash code for the given key.
+     */
+    private static int hash(Object key) {
+        if (key == null) return 0;
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns true if the given keys are equal.
+     *
+     * @param key       The first key to compare.
+     * @param otherKey  The second key to compare.
+     * @return          True if the given keys are equal.
+     */
+    private static boolean equals(Object key, Object otherKey) {
+        return key == null ? otherKey == null : key == otherKey || key.equals(otherKey);
+    }
+
+    /**
+     * Returns a new trie node containing the two given entries.
+     *
+     * @param shift     The number of hash bits already consumed.
+     * @param key1      The first key.
+     * @param hash1     The hash of the first key.
+     * @param value1    The first value.
+     * @param key2      The second key.
+     * @param hash2     The hash of the second key.
+     * @param value2    The second value.
+     * @return          A new trie node containing the two given entries.
+     */
+    private static Node create(int shift, Object key1, int hash1, Object value1, Object key2, int hash2, Object value2) {
+        if (hash1 == hash2) return new CollisionNode(hash1, new Object[] { key1, value1, key2, value2 });
+        boolean[] added = new boolean[1];
+        return BitmapNode.EMPTY.put(shift, hash1, key1, value1, added).put(shift, hash2, key2, value2, added);
+    }
+
+    /**
+     * Returns a copy of the given array with the given element replaced.
+     *
+     * @param array The array to be copied.
+     * @param i     The index of the element to be replaced.
+     * @param value The replacement element.
+     * @return      A copy of the given array with the given element replaced.
+     */
+    private static Object[] replace(Object[] array, int i, Object value) {
+        Object[] copy = array.clone();
+        copy[i] = value;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the given array with the given key and value pair replaced.
+     *
+     * @param array The array to be copied.
+     * @param i     The index of the key to be replaced.
+     * @param key   The replacement key.
+     * @param value The replacement value.
+     * @return      A copy of the given array with the given key and value pair replaced.
+     */
+    private static Object[] replace(Object[] array, int i, Object key, Object value) {
+        Object[] copy = array.clone();
+        copy[i] = key;
+        copy[i + 1] = value;
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the given array with the given key and value pair inserted.
+     *
+     * @param array The array to be copied.
+     * @param i     The index at which the pair is inserted.
+     * @param key   The key to be inserted.
+     * @param value The value to be inserted.
+     * @return      A copy of the given array with the given key and value pair inserted.
+     */
+    private static Object[] insert(Object[] array, int i, Object key, Object value) {
+        Object[] copy = new Object[array.length + 2];
+        System.arraycopy(array, 0, copy, 0, i);
+        copy[i] = key;
+        copy[i + 1] = value;
+        System.arraycopy(array, i, copy, i + 2, array.length - i);
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the given array with the key and value pair at the given index removed.
+     *
+     * @param array The array to be copied.
+     * @param i     The index of the pair to be removed.
+     * @return      A copy of the given array with the key and value pair at the given index removed.
+     */
+    private static Object[] remove(Object[] array, int i) {
+        Object[] copy = new Object[array.length - 2];
+        System.arraycopy(array, 0, copy, 0, i);
+        System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+        return copy;
+    }
+
+    /**
+     * A node in the trie.
+     */
+    private interface Node {
+        /**
+         * Returns the value associated with the given key.
+         *
+         * @param shift The number of hash bits already consumed.
+         * @param hash  The hash of the key.
+         * @param key   The key.
+         * @return      The associated value, or null if the key does not exist.
+         */
+        Object get(int shift, int hash, Object key);
+
+        /**
+         * Returns a new node with the given key associated with the given value.
+         *
+         * @param shift The number of hash bits already consumed.
+         * @param hash  The hash of the key.
+         * @param key   The key.
+         * @param value The value.
+         * @param added Set to true if the key did not previously exist.
+         * @return      The new node, or this node if unchanged.
+         */
+        Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * Returns a new node without the given key.
+         *
+         * @param shift The number of hash bits already consumed.
+         * @param hash  The hash of the key.
+         * @param key   The key.
+         * @return      The new node, this node if unchanged, or null if the new node would be empty.
+         */
+        Node remove(int shift, int hash, Object key);
+    }
+
+    /**
+     * A trie node holding up to 32 entries or child nodes, where a bitmap identifies which of the hash positions are
+     * occupied and the array holds key value pairs for only the occupied positions.
+     */
+    private static final class BitmapNode implements Node {
+        /**
+         * The empty node.
+         */
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        /**
+         * The occupied hash positions.
+         */
+        final int bitmap;
+
+        /**
+         * Key value pairs for the occupied positions, where a key of CHILD indicates the value is a child node.
+         */
+        final Object[] array;
+
+        /**
+         * Constructs a new node.
+         *
+         * @param bitmap    The occupied hash positions.
+         * @param array     Key value pairs for the occupied positions.
+         */
+        BitmapNode(int bitmap, Object[] array) {
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        /**
+         * Returns the array index for the given bit.
+         *
+         * @param bit   The bit identifying a hash position.
+         * @return      The index into the array of the key for that position.
+         */
+        private int index(int bit) {
+            return Integer.bitCount(bitmap & (bit - 1)) * 2;
+        }
+
+        @Override
+        public Object get(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return null;
+
+            int i = index(bit);
+            Object existingKey = array[i];
+            if (existingKey == CHILD) return ((Node)array[i + 1]).get(shift + BITS, hash, key);
+            return PersistentHashMap.equals(existingKey, key) ? array[i + 1] : null;
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int i = index(bit);
+
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                return new BitmapNode(bitmap | bit, insert(array, i, key, value));
+            }
+
+            Object existingKey = array[i], existingValue = array[i + 1];
+            if (existingKey == CHILD) {
+                Node child = ((Node)existingValue).put(shift + BITS, hash, key, value, added);
+                return child == existingValue ? this : new BitmapNode(bitmap, replace(array, i + 1, child));
+            } else if (PersistentHashMap.equals(existingKey, key)) {
+                return existingValue == value ? this : new BitmapNode(bitmap, replace(array, i + 1, value));
+            } else {
+                added[0] = true;
+                Node child = create(shift + BITS, existingKey, hash(existingKey), existingValue, key, hash, value);
+                return new BitmapNode(bitmap, replace(array, i, CHILD, child));
+            }
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0) return this;
+
+            int i = index(bit);
+            Object existingKey = array[i];
+            if (existingKey == CHILD) {
+                Node child = ((Node)array[i + 1]).remove(shift + BITS, hash, key);
+                if (child == array[i + 1]) return this;
+                if (child != null) return new BitmapNode(bitmap, replace(array, i + 1, child));
+            } else if (!PersistentHashMap.equals(existingKey, key)) {
+                return this;
+            }
+
+            return bitmap == bit ? null : new BitmapNode(bitmap ^ bit, PersistentHashMap.remove(array, i));
+        }
+    }
+
+    /**
+     * A trie node holding entries whose keys have the same full hash code.
+     */
+    private static final class CollisionNode implements Node {
+        /**
+         * The hash code shared by all keys in this node.
+         */
+        final int hash;
+
+        /**
+         * Key value pairs.
+         */
+        final Object[] array;
+
+        /**
+         * Constructs a new node.
+         *
+         * @param hash  The hash code shared by all keys in this node.
+         * @param array Key value pairs.
+         */
+        CollisionNode(int hash, Object[] array) {
+            this.hash = hash;
+            this.array = array;
+        }
+
+        /**
+         * Returns the array index of the given key.
+         *
+         * @param key   The key to find.
+         * @return      The array index of the given key, or -1 if it does not exist.
+         */
+        private int index(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (PersistentHashMap.equals(array[i], key)) return i;
+            }
+            return -1;
+        }
+
+        @Override
+        public Object get(int shift, int hash, Object key) {
+            int i = hash == this.hash ? index(key) : -1;
+            return i < 0 ? null : array[i + 1];
+        }
+
+        @Override
+        public Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                int bit = 1 << ((this.hash >>> shift) & MASK);
+                return new BitmapNode(bit, new Object[] { CHILD, this }).put(shift, hash, key, value, added);
+            }
+
+            int i = index(key);
+            if (i < 0) {
+                added[0] = true;
+                return new CollisionNode(hash, insert(array, array.length, key, value));
+            }
+
+            return array[i + 1] == value ? this : new CollisionNode(hash, replace(array, i + 1, value));
+        }
+
+        @Override
+        public Node remove(int shift, int hash, Object key) {
+            int i = hash == this.hash ? index(key) : -1;
+            if (i < 0) return this;
+            return array.length == 2 ? null : new CollisionNode(hash, PersistentHashMap.remove(array, i));
+        }
+    }
+}
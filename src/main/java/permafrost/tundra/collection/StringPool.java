@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.collection;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataUtil;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of canonical String instances, used by decoders to share a single instance of each repeated key,
+ * and optionally each short repeated value, across all the documents they decode rather than allocating a new String
+ * for every occurrence. When full, the least recently referenced strings are evicted from the pool; evicted strings
+ * remain valid, they are just no longer shared with subsequently decoded documents.
+ */
+public class StringPool extends BoundedConcurrentCache<String, String> {
+    /**
+     * The default maximum number of strings held by a pool.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The default maximum length of values pooled by internValue.
+     */
+    public static final int DEFAULT_MAXIMUM_VALUE_LENGTH = 32;
+
+    /**
+     * The maximum length of values pooled by internValue.
+     */
+    protected final int maximumValueLength;
+
+    /**
+     * The estimated number of heap bytes saved by returning pooled strings instead of duplicates.
+     */
+    protected final AtomicLong bytesSaved = new AtomicLong(0);
+
+    /**
+     * Constructs a new pool with the default capacity and maximum value length.
+     */
+    public StringPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new pool with the given capacity and the default maximum value length.
+     *
+     * @param capacity  The maximum number of strings held by this pool.
+     */
+    public StringPool(int capacity) {
+        this(capacity, DEFAULT_MAXIMUM_VALUE_LENGTH);
+    }
+
+    /**
+     * Constructs a new pool.
+     *
+     * @param capacity              The maximum number of strings held by this pool.
+     * @param maximumValueLength    The maximum length of values pooled by internValue, or zero to not pool values.
+     */
+    public StringPool(int capacity, int maximumValueLength) {
+        super(capacity);
+        if (maximumValueLength < 0) throw new IllegalArgumentException("maximumValueLength must not be negative");
+        this.maximumValueLength = maximumValueLength;
+    }
+
+    /**
+     * Returns the pooled instance equal to the given string, adding the given string to the pool if no equal instance
+     * is pooled.
+     *
+     * @param string    The string to be interned.
+     * @return          The pooled instance equal to the given string, or the given string itself.
+     */
+    public String intern(String string) {
+        if (string == null) return null;
+
+        String pooled = get(string);
+        if (pooled == null) {
+            pooled = putIfAbsent(string, string);
+        }
+        if (pooled != string) bytesSaved.addAndGet(sizeOf(string));
+
+        return pooled;
+    }
+
+    /**
+     * Interns the given value if it is a string no longer than this pool's maximum value length, as long values are
+     * rarely repeated and would only displace useful keys from the pool.
+     *
+     * @param value The value to be interned.
+     * @return      The pooled instance equal to the given value if it was interned, otherwise the given value.
+     */
+    public Object internValue(Object value) {
+        if (value instanceof String && ((String)value).length() <= maximumValueLength) {
+            value = intern((String)value);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the maximum length of values pooled by internValue.
+     *
+     * @return The maximum length of values pooled by internValue.
+     */
+    public int getMaximumValueLength() {
+        return maximumValueLength;
+    }
+
+    /**
+     * Returns the estimated number of heap bytes saved by returning pooled strings instead of duplicates, assuming a
+     * 64-bit JVM with compressed object pointers.
+     *
+     * @return The estimated number of heap bytes saved.
+     */
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    /**
+     * Returns the estimated heap size of the given string, including its character array.
+     *
+     * @param string    The string whose size is to be estimated.
+     * @return          The estimated heap size in bytes.
+     */
+    private static long sizeOf(String string) {
+        // 24 byte String object plus a 16 byte array header and two bytes per character, padded to 8 bytes
+        return 24 + ((16 + 2L * string.length() + 7) & ~7L);
+    }
+
+    /**
+     * Returns the statistics of this pool as an IData document.
+     *
+     * @return The statistics of this pool as an IData document.
+     */
+    @Override
+    public IData getIData() {
+        IData output = super.getIData();
+        IDataCursor cursor = output.getCursor();
+
+        try {
+            IDataUtil.put(cursor, "bytes.saved", bytesSaved.get());
+        } finally {
+            cursor.destroy();
+        }
+
+        return output;
+    }
+}
@@ -50,6 +50,11 @@ public class CaseInsensitiveElement<V> extends KeyAliasElement<String, V> implem
      * The locale to use for case insensitivity.
      */
     protected Locale locale;
+    /**
+     * The case-insensitive hash code of the key, cached on first use, or zero if not yet computed. A single field is
+     * used so that threads racing to cache it can only observe zero or the correct hash code.
+     */
+    private transient int keyHash;
 
     /**
      * Constructs a new element using the given existing element.
@@ -135,6 +140,7 @@ public class CaseInsensitiveElement<V> extends KeyAliasElement<String, V> implem
         String oldKey = key;
         key = newKey;
         caseInsensitiveKey = new CaseInsensitiveString(key, locale);
+        keyHash = 0;
         return oldKey;
     }
 
@@ -163,17 +169,44 @@ public class CaseInsensitiveElement<V> extends KeyAliasElement<String, V> implem
      * @return      True if the other entry's key is equal to this entry's key.
      */
     public boolean keyEquals(String other) {
-        boolean result = caseInsensitiveKey.equals(other);
-        if (result) return true;
+        return keyEquals(other, CaseInsensitiveString.hashCode(other, locale));
+    }
+
+    /**
+     * Returns true if another entry's key is equal to this entry's key, using the other key's precomputed
+     * case-insensitive hash code to reject most non-matching keys without comparing them.
+     *
+     * @param other     The other entry's key to compare key equality to.
+     * @param otherHash The case-insensitive hash code of the other key, as returned by CaseInsensitiveString.hashCode
+     *                  for this element's locale.
+     * @return          True if the other entry's key is equal to this entry's key.
+     */
+    public boolean keyEquals(String other, int otherHash) {
+        if (other == null) return false;
+        if (getKeyHash() == otherHash && CaseInsensitiveString.equals(key, other, locale)) return true;
 
         for (String alias : keyAliases) {
-            result = new CaseInsensitiveString(alias, locale).equals(other);
-            if (result) return true;
+            if (CaseInsensitiveString.equals(alias, other, locale)) return true;
         }
 
         return false;
     }
 
+    /**
+     * Returns the case-insensitive hash code of this element's key, computing it on first use.
+     *
+     * @return The case-insensitive hash code of this element's key.
+     */
+    protected int getKeyHash() {
+        int hash = keyHash;
+        if (hash == 0) {
+            // a key whose hash code is zero is simply rehashed on every use
+            hash = CaseInsensitiveString.hashCode(key, locale);
+            keyHash = hash;
+        }
+        return hash;
+    }
+
     /**
      * Compares this element's key with the given other element's key, if they implement the Comparable interface.
      *
@@ -27,6 +27,7 @@ package permafrost.tundra.data;
 import com.wm.data.DataException;
 import com.wm.data.IData;
 import com.wm.data.IDataCursor;
+import permafrost.tundra.lang.CaseInsensitiveString;
 import permafrost.tundra.lang.LocaleHelper;
 import java.io.Serializable;
 import java.util.Collection;
@@ -423,8 +424,9 @@ public class CaseInsensitiveElementList<V> extends ElementList<String, V> implem
          * @return    True if the key existed and the cursor was repositioned.
          */
         public boolean next(String key) {
+            KeyMatcher matcher = new KeyMatcher(key);
             while(next()) {
-                if (element.keyEquals(new CaseInsensitiveElement<V>(key, null))) return true;
+                if (matcher.matches(element)) return true;
             }
             return false;
         }
@@ -451,8 +453,9 @@ public class CaseInsensitiveElementList<V> extends ElementList<String, V> implem
          * @return    True if the key existed and the cursor was repositioned.
          */
         public boolean previous(String key) {
+            KeyMatcher matcher = new KeyMatcher(key);
             while(previous()) {
-                if (element.equals(new CaseInsensitiveElement<V>(key, null))) return true;
+                if (matcher.matches(element)) return true;
             }
             return false;
         }
@@ -530,4 +533,45 @@ public class CaseInsensitiveElementList<V> extends ElementList<String, V> implem
             return new CaseInsensitiveElementListIDataCursor(this.position);
         }
     }
+
+    /**
+     * Matches element keys case-insensitively against a given key, whose case-insensitive hash code is computed once
+     * so that scanning the list compares hash codes rather than allocating lower case copies of each key.
+     */
+    protected class KeyMatcher {
+        /**
+         * The key being matched.
+         */
+        protected final String key;
+        /**
+         * The case-insensitive hash code of the key being matched, using this list's locale.
+         */
+        protected final int hash;
+
+        /**
+         * Constructs a new KeyMatcher.
+         *
+         * @param key The key to be matched.
+         */
+        public KeyMatcher(String key) {
+            this.key = key;
+            this.hash = CaseInsensitiveString.hashCode(key, locale);
+        }
+
+        /**
+         * Returns true if the given element's key matches the key being matched.
+         *
+         * @param element   The element to be checked.
+         * @return          True if the given element's key matches the key being matched.
+         */
+        public boolean matches(Element<String, V> element) {
+            boolean result;
+            if (element instanceof CaseInsensitiveElement && locale.equals(((CaseInsensitiveElement<V>)element).getLocale())) {
+                result = ((CaseInsensitiveElement<V>)element).keyEquals(key, hash);
+            } else {
+                result = element.keyEquals(key);
+            }
+            return result;
+        }
+    }
 }
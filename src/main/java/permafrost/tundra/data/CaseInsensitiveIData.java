@@ -30,8 +30,6 @@ import com.wm.util.Table;
 import permafrost.tundra.lang.LocaleHelper;
 import java.io.Serializable;
 import java.util.Locale;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Wraps an IData in a case-insensitive envelope.
@@ -42,9 +40,9 @@ public class CaseInsensitiveIData extends IDataEnvelope implements Serializable
      */
     private static final long serialVersionUID = 1;
     /**
-     * Map of case-insensitive keys to preserved-case keys in the wrapped IData document.
+     * Index of the preserved-case keys in the wrapped IData document, built lazily on first lookup.
      */
-    protected Map<String, String> keys = new ConcurrentHashMap<String, String>();
+    protected transient volatile CaseInsensitiveKeyIndex keys;
     /**
      * The locale used for case comparison.
      */
@@ -84,7 +82,6 @@ public class CaseInsensitiveIData extends IDataEnvelope implements Serializable
     public CaseInsensitiveIData(IData document, Locale locale) {
         super(document);
         this.locale = LocaleHelper.normalize(locale);
-        initialize();
     }
 
     /**
@@ -99,14 +96,28 @@ public class CaseInsensitiveIData extends IDataEnvelope implements Serializable
     }
 
     /**
-     * Constructs the map of case-insensitive keys to preserved-case keys held in the wrapped IData document.
+     * Returns the index of the case-preserved keys held in the wrapped IData document, building it on first use so
+     * that documents which are wrapped but never looked up by key do not pay for it.
+     *
+     * @return The index of the case-preserved keys held in the wrapped IData document.
      */
-    protected void initialize() {
-        IDataCursor cursor = document.getCursor();
-        while(cursor.next()) {
-            String key = cursor.getKey();
-            keys.put(key.toLowerCase(locale), key);
+    protected CaseInsensitiveKeyIndex initialize() {
+        CaseInsensitiveKeyIndex index = keys;
+        if (index == null) {
+            synchronized (this) {
+                index = keys;
+                if (index == null) {
+                    index = new CaseInsensitiveKeyIndex(locale);
+                    IDataCursor cursor = document.getCursor();
+                    while(cursor.next()) {
+                        index.put(cursor.getKey());
+                    }
+                    cursor.destroy();
+                    keys = index;
+                }
+            }
         }
+        return index;
     }
 
     /**
@@ -117,16 +128,18 @@ public class CaseInsensitiveIData extends IDataEnvelope implements Serializable
      */
     protected String normalizeKey(String key) {
         if (key == null) return null;
-        return keys.get(key.toLowerCase(locale));
+        return initialize().get(key);
     }
 
     /**
-     * Adds a key to the key set used for the case-insensitive feature.
+     * Adds a key to the key set used for the case-insensitive feature. If the index has not been built yet, there is
+     * nothing to do as the key will be included when it is built.
      *
      * @param key   The key to be added.
      */
     protected void addKey(String key) {
-        if (key != null) keys.put(key.toLowerCase(locale), key);
+        CaseInsensitiveKeyIndex index = keys;
+        if (index != null) index.put(key);
     }
 
     /**
@@ -135,7 +148,8 @@ public class CaseInsensitiveIData extends IDataEnvelope implements Serializable
      * @param key   The key to be removed.
      */
     protected void removeKey(String key) {
-        if (key != null) keys.remove(key.toLowerCase(locale));
+        CaseInsensitiveKeyIndex index = keys;
+        if (index != null) index.remove(key);
     }
 
     /**
@@ -0,0 +1,239 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import permafrost.tundra.lang.CaseInsensitiveString;
+import permafrost.tundra.lang.LocaleHelper;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A hash index of case-preserved keys which is looked up case-insensitively. Keys are hashed and compared in place
+ * using CaseInsensitiveString.hashCode and CaseInsensitiveString.equals, so that lookups do not allocate lower case
+ * copies of the keys. Only one key is held for each case-insensitively distinct key, with later keys replacing
+ * earlier ones.
+ *
+ * Lookups do not lock: each slot of the hash table holds an immutable entry, and is read and written atomically,
+ * removed keys are replaced with a tombstone rather than shifting other keys into their slot, and the table is
+ * replaced rather than modified when it is resized, so a lookup never misses a key which is not being concurrently
+ * removed. Modifications are serialized with a lock.
+ */
+class CaseInsensitiveKeyIndex {
+    /**
+     * The initial capacity of the hash table, which must be a power of two.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * The entry which replaces a removed key, so that probing continues past its slot.
+     */
+    private static final Entry TOMBSTONE = new Entry(null, 0);
+    /**
+     * The locale used for case comparison.
+     */
+    private final Locale locale;
+    /**
+     * The open addressing hash table of keys.
+     */
+    private volatile AtomicReferenceArray<Entry> table;
+    /**
+     * The number of keys in the hash table.
+     */
+    private int size;
+    /**
+     * The number of slots in the hash table holding either a key or a tombstone.
+     */
+    private int used;
+
+    /**
+     * Constructs a new empty index.
+     *
+     * @param locale The locale used for case comparison.
+     */
+    CaseInsensitiveKeyIndex(Locale locale) {
+        this.locale = LocaleHelper.normalize(locale);
+        this.table = new AtomicReferenceArray<Entry>(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Returns the case-preserved key held in this index which is equal to the given key ignoring case.
+     *
+     * @param key   The key to look up.
+     * @return      The case-preserved key, or null if there is no such key.
+     */
+    String get(String key) {
+        if (key == null) return null;
+
+        AtomicReferenceArray<Entry> table = this.table;
+        int hash = CaseInsensitiveString.hashCode(key, locale);
+        int mask = table.length() - 1;
+        int slot = spread(hash) & mask;
+
+        while (true) {
+            Entry entry = table.get(slot);
+            if (entry == null) return null;
+            if (entry.matches(key, hash, locale)) return entry.key;
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Adds the given key to this index, replacing any existing key which is equal to it ignoring case.
+     *
+     * @param key   The key to be added.
+     */
+    synchronized void put(String key) {
+        if (key == null) return;
+
+        int hash = CaseInsensitiveString.hashCode(key, locale);
+        int slot = find(key, hash);
+        if (slot >= 0) {
+            table.set(slot, new Entry(key, hash));
+        } else {
+            slot = -slot - 1;
+            if (table.get(slot) == null) {
+                if ((used + 1) * 2 > table.length()) {
+                    // grow the table if it is more than a quarter full of keys, otherwise just purge the tombstones
+                    resize((size + 1) * 4 > table.length() ? table.length() * 2 : table.length());
+                    slot = -find(key, hash) - 1;
+                }
+                used++;
+            }
+            table.set(slot, new Entry(key, hash));
+            size++;
+        }
+    }
+
+    /**
+     * Removes the key which is equal to the given key ignoring case from this index.
+     *
+     * @param key   The key to be removed.
+     */
+    synchronized void remove(String key) {
+        if (key == null) return;
+
+        int slot = find(key, CaseInsensitiveString.hashCode(key, locale));
+        if (slot < 0) return;
+
+        table.set(slot, TOMBSTONE);
+        size--;
+    }
+
+    /**
+     * Returns the slot holding the given key, or if not found a negative value equal to -(insertion slot) - 1, where
+     * the insertion slot is the first tombstone or empty slot probed.
+     *
+     * @param key   The key to be found.
+     * @param hash  The case-insensitive hash code of the key.
+     * @return      The slot holding the given key, or -(insertion slot) - 1 if not found.
+     */
+    private int find(String key, int hash) {
+        int mask = table.length() - 1;
+        int slot = spread(hash) & mask;
+        int tombstone = -1;
+
+        while (true) {
+            Entry entry = table.get(slot);
+            if (entry == null) return -(tombstone < 0 ? slot : tombstone) - 1;
+            if (entry == TOMBSTONE) {
+                if (tombstone < 0) tombstone = slot;
+            } else if (entry.matches(key, hash, locale)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Rehashes the keys into a new hash table with the given capacity, discarding any tombstones.
+     *
+     * @param capacity  The new capacity, which must be a power of two.
+     */
+    private void resize(int capacity) {
+        AtomicReferenceArray<Entry> oldTable = table;
+        AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<Entry>(capacity);
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldTable.length(); i++) {
+            Entry entry = oldTable.get(i);
+            if (entry != null && entry != TOMBSTONE) {
+                int slot = spread(entry.hash) & mask;
+                while (newTable.get(slot) != null) {
+                    slot = (slot + 1) & mask;
+                }
+                newTable.set(slot, entry);
+            }
+        }
+
+        used = size;
+        table = newTable;
+    }
+
+    /**
+     * Spreads the higher bits of the given hash code into the lower bits used to select a slot.
+     *
+     * @param hash  The hash code to be spread.
+     * @return      The spread hash code.
+     */
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * An immutable hash table entry.
+     */
+    private static final class Entry {
+        /**
+         * The case-preserved key.
+         */
+        final String key;
+        /**
+         * The case-insensitive hash code of the key.
+         */
+        final int hash;
+
+        /**
+         * Constructs a new entry.
+         *
+         * @param key   The case-preserved key.
+         * @param hash  The case-insensitive hash code of the key.
+         */
+        Entry(String key, int hash) {
+            this.key = key;
+            this.hash = hash;
+        }
+
+        /**
+         * Returns true if this entry holds a key equal to the given key ignoring case.
+         *
+         * @param key       The key to be compared.
+         * @param hash      The case-insensitive hash code of the key to be compared.
+         * @param locale    The locale used for case comparison.
+         * @return          True if this entry holds a key equal to the given key ignoring case.
+         */
+        boolean matches(String key, int hash, Locale locale) {
+            return this.key != null && this.hash == hash && CaseInsensitiveString.equals(this.key, key, locale);
+        }
+    }
+}
@@ -24,13 +24,15 @@
 
 package permafrost.tundra.data;
 
+import permafrost.tundra.util.concurrent.StripedCounter;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 
 /**
- * Wraps a given ConcurrentMap object in a ConcurrentMap and IData compatible interface.
+ * Wraps a given ConcurrentMap object in a ConcurrentMap and IData compatible interface, with atomic compute, merge
+ * and counter operations implemented as compare and set loops over the wrapped map.
  *
  * @param <K>   The class of keys held by this Map.
  * @param <V>   The class of values held by this Map.
@@ -176,6 +178,129 @@ public abstract class ConcurrentMapEnvelope<K, V> extends AbstractIData implemen
         return map.putIfAbsent(key, value);
     }
 
+    /**
+     * If the given key is not already associated with a value, atomically associates it with the value created by
+     * the given factory. Under contention the factory may be called more than once, but only one created value is
+     * ever associated with the key.
+     *
+     * @param key       The key whose associated value is to be returned.
+     * @param factory   Creates the value to be associated with the key if it is absent.
+     * @return          The value associated with the key, or null if the factory returned null.
+     */
+    public V computeIfAbsent(K key, Factory<? super K, ? extends V> factory) {
+        V value = map.get(key);
+        if (value == null) {
+            V newValue = factory.create(key);
+            if (newValue != null) {
+                value = map.putIfAbsent(key, newValue);
+                if (value == null) value = newValue;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Atomically replaces the value associated with the given key with the value returned by the given remapper,
+     * which is called with the current value (or null if absent). If the remapper returns null, the key is removed.
+     * Under contention the remapper may be called more than once, so it should be free of side effects.
+     *
+     * @param key       The key whose associated value is to be computed.
+     * @param remapper  Computes the new value from the key and its current value.
+     * @return          The new value associated with the key, or null if the key was removed.
+     */
+    public V compute(K key, Remapper<? super K, V> remapper) {
+        while (true) {
+            V oldValue = map.get(key);
+            V newValue = remapper.remap(key, oldValue);
+
+            if (oldValue == null) {
+                if (newValue == null || map.putIfAbsent(key, newValue) == null) return newValue;
+            } else if (newValue == null) {
+                if (map.remove(key, oldValue)) return null;
+            } else if (map.replace(key, oldValue, newValue)) {
+                return newValue;
+            }
+        }
+    }
+
+    /**
+     * Atomically associates the given value with the given key if absent, otherwise replaces the current value with
+     * the value returned by the given merger. If the merger returns null, the key is removed. Under contention the
+     * merger may be called more than once, so it should be free of side effects.
+     *
+     * @param key       The key whose associated value is to be merged.
+     * @param value     The value to be associated with the key if absent, or merged with the current value.
+     * @param merger    Merges the current value with the given value.
+     * @return          The new value associated with the key, or null if the key was removed.
+     */
+    public V merge(K key, V value, Merger<V> merger) {
+        if (value == null) throw new NullPointerException("value must not be null");
+
+        while (true) {
+            V oldValue = map.get(key);
+
+            if (oldValue == null) {
+                if (map.putIfAbsent(key, value) == null) return value;
+            } else {
+                V newValue = merger.merge(oldValue, value);
+                if (newValue == null) {
+                    if (map.remove(key, oldValue)) return null;
+                } else if (map.replace(key, oldValue, newValue)) {
+                    return newValue;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the counter associated with the given key, associating a new counter with the key if absent.
+     *
+     * @param key   The key whose associated counter is to be returned.
+     * @return      The counter associated with the given key.
+     * @throws IllegalStateException If the key is associated with a value that is not a counter.
+     */
+    @SuppressWarnings("unchecked")
+    public StripedCounter getCounter(K key) {
+        Object value = map.get(key);
+        if (value == null) {
+            StripedCounter counter = new StripedCounter();
+            value = map.putIfAbsent(key, (V)counter);
+            if (value == null) value = counter;
+        }
+        if (!(value instanceof StripedCounter)) throw new IllegalStateException("value associated with key is not a counter: " + key);
+        return (StripedCounter)value;
+    }
+
+    /**
+     * Adds the given value to the counter associated with the given key, without locking.
+     *
+     * @param key   The key whose associated counter is to be updated.
+     * @param delta The value to be added to the counter.
+     */
+    public void add(K key, long delta) {
+        getCounter(key).add(delta);
+    }
+
+    /**
+     * Adds one to the counter associated with the given key, without locking.
+     *
+     * @param key   The key whose associated counter is to be incremented.
+     */
+    public void increment(K key) {
+        add(key, 1);
+    }
+
+    /**
+     * Returns the current count of the counter associated with the given key.
+     *
+     * @param key   The key whose associated counter is to be returned.
+     * @return      The current count, or zero if no counter is associated with the key.
+     */
+    public long getCount(K key) {
+        Object value = map.get(key);
+        return value instanceof Number ? ((Number)value).longValue() : 0;
+    }
+
     /**
      * Removes the element with the given key from this map.
      *
@@ -248,4 +373,53 @@ public abstract class ConcurrentMapEnvelope<K, V> extends AbstractIData implemen
     public Collection<V> values() {
         return map.values();
     }
+
+    /**
+     * Creates the value to be associated with an absent key.
+     *
+     * @param <K>   The class of keys.
+     * @param <V>   The class of values.
+     */
+    public interface Factory<K, V> {
+        /**
+         * Returns the value to be associated with the given key.
+         *
+         * @param key   The absent key.
+         * @return      The value to be associated with the key, or null to leave the key absent.
+         */
+        V create(K key);
+    }
+
+    /**
+     * Computes a new value for a key from its current value.
+     *
+     * @param <K>   The class of keys.
+     * @param <V>   The class of values.
+     */
+    public interface Remapper<K, V> {
+        /**
+         * Returns the new value to be associated with the given key.
+         *
+         * @param key   The key whose value is being computed.
+         * @param value The current value associated with the key, or null if absent.
+         * @return      The new value to be associated with the key, or null to remove the key.
+         */
+        V remap(K key, V value);
+    }
+
+    /**
+     * Merges a given value with the current value associated with a key.
+     *
+     * @param <V>   The class of values.
+     */
+    public interface Merger<V> {
+        /**
+         * Returns the result of merging the given values.
+         *
+         * @param oldValue  The current value associated with the key.
+         * @param value     The value being merged.
+         * @return          The new value to be associated with the key, or null to remove the key.
+         */
+        V merge(V oldValue, V value);
+    }
 }
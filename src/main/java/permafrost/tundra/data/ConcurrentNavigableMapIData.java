@@ -0,0 +1,166 @@
+/*
+ *  The MIT License (MIT)
+ *
+ *  Copyright (c) 2016 Lachlan Dowding
+ *
+ *  Permission is hereby granted, free of charge, to any person obtaining a copy
+ *  of this software and associated documentation files (the "Software"), to deal
+ *  in the Software without restriction, including without limitation the rights
+ *  to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ *  copies of the Software, and to permit persons to whom the Software is
+ *  furnished to do so, subject to the following conditions:
+ *
+ *  The above copyright notice and this permission notice shall be included in all
+ *  copies or substantial portions of the Software.
+ *
+ *  THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ *  IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ *  FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ *  AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ *  LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ *  OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ *  SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Wraps a ConcurrentNavigableMap object with an IData implementation whose keys are kept sorted, and which supports
+ * range and prefix scans returning live views of the underlying map. Cursors traverse a snapshot of the keys taken
+ * when created, so they are weakly consistent and never throw a ConcurrentModificationException.
+ *
+ * @param <V>   The class of values held by this object.
+ */
+public class ConcurrentNavigableMapIData<V> extends ConcurrentMapIData<String, V> {
+    /**
+     * The serialization identity of this class version.
+     */
+    private static final long serialVersionUID = 1;
+
+    /**
+     * Constructs a new ConcurrentNavigableMapIData with keys sorted in natural ascending order.
+     */
+    public ConcurrentNavigableMapIData() {
+        this(new ConcurrentSkipListMap<String, V>());
+    }
+
+    /**
+     * Constructs a new ConcurrentNavigableMapIData given a ConcurrentNavigableMap to be adapted.
+     *
+     * @param map The map to be adapted.
+     */
+    public ConcurrentNavigableMapIData(ConcurrentNavigableMap<String, V> map) {
+        super(map);
+    }
+
+    /**
+     * Returns the wrapped map.
+     *
+     * @return The wrapped map.
+     */
+    private ConcurrentNavigableMap<String, V> getNavigableMap() {
+        return (ConcurrentNavigableMap<String, V>)map;
+    }
+
+    /**
+     * Returns a live view of the elements whose keys are within the given range. Changes to the view are reflected
+     * in this object and vice versa.
+     *
+     * @param fromKey   The inclusive lower bound of the range, or null for no lower bound.
+     * @param toKey     The exclusive upper bound of the range, or null for no upper bound.
+     * @return          A view of the elements whose keys are within the given range.
+     */
+    public ConcurrentNavigableMapIData<V> range(String fromKey, String toKey) {
+        return range(fromKey, true, toKey, false);
+    }
+
+    /**
+     * Returns a live view of the elements whose keys are within the given range. Changes to the view are reflected
+     * in this object and vice versa.
+     *
+     * @param fromKey       The lower bound of the range, or null for no lower bound.
+     * @param fromInclusive Whether the lower bound is included in the range.
+     * @param toKey         The upper bound of the range, or null for no upper bound.
+     * @param toInclusive   Whether the upper bound is included in the range.
+     * @return              A view of the elements whose keys are within the given range.
+     */
+    public ConcurrentNavigableMapIData<V> range(String fromKey, boolean fromInclusive, String toKey, boolean toInclusive) {
+        ConcurrentNavigableMap<String, V> view = getNavigableMap();
+
+        if (fromKey != null && toKey != null) {
+            view = view.subMap(fromKey, fromInclusive, toKey, toInclusive);
+        } else if (fromKey != null) {
+            view = view.tailMap(fromKey, fromInclusive);
+        } else if (toKey != null) {
+            view = view.headMap(toKey, toInclusive);
+        }
+
+        return new ConcurrentNavigableMapIData<V>(view);
+    }
+
+    /**
+     * Returns a live view of the elements whose keys start with the given prefix. Changes to the view are reflected
+     * in this object and vice versa.
+     *
+     * @param prefix    The prefix keys must start with.
+     * @return          A view of the elements whose keys start with the given prefix.
+     */
+    public ConcurrentNavigableMapIData<V> prefix(String prefix) {
+        if (prefix == null || prefix.length() == 0) return range(null, null);
+        return range(prefix, true, successor(prefix), false);
+    }
+
+    /**
+     * Returns the smallest string greater than every string starting with the given prefix.
+     *
+     * @param prefix    The prefix.
+     * @return          The smallest string greater than every string starting with the given prefix, or null if
+     *                  there is no such string.
+     */
+    private static String successor(String prefix) {
+        StringBuilder builder = new StringBuilder(prefix);
+        for (int i = builder.length() - 1; i >= 0; i--) {
+            char character = builder.charAt(i);
+            if (character < Character.MAX_VALUE) {
+                builder.setCharAt(i, (char)(character + 1));
+                builder.setLength(i + 1);
+                return builder.toString();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the first key in this object.
+     *
+     * @return The first key, or null if this object is empty.
+     */
+    public String firstKey() {
+        Map.Entry<String, V> entry = getNavigableMap().firstEntry();
+        return entry == null ? null : entry.getKey();
+    }
+
+    /**
+     * Returns the last key in this object.
+     *
+     * @return The last key, or null if this object is empty.
+     */
+    public String lastKey() {
+        Map.Entry<String, V> entry = getNavigableMap().lastEntry();
+        return entry == null ? null : entry.getKey();
+    }
+
+    /**
+     * Returns a newly created ConcurrentNavigableMapIData.
+     *
+     * @return A newly created ConcurrentNavigableMapIData.
+     */
+    public static IData create() {
+        return new ConcurrentNavigableMapIData<Object>();
+    }
+}
@@ -38,6 +38,7 @@ import com.wm.util.coder.IDataCodable;
 import com.wm.util.coder.ValuesCodable;
 import java.io.Serializable;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Queue;
 
@@ -53,6 +54,11 @@ public class CopyOnWriteIDataMap extends IDataMap implements Cloneable, Serializ
      */
     protected volatile boolean copied = false;
 
+    /**
+     * Whether copies are made as IndexedIData documents.
+     */
+    protected boolean indexed = false;
+
     /**
      * Construct a new CopyOnWriteIDataMap object.
      *
@@ -163,6 +169,19 @@ public class CopyOnWriteIDataMap extends IDataMap implements Cloneable, Serializ
         return new CopyOnWriteIDataMap(document);
     }
 
+    /**
+     * Returns a new CopyOnWriteIDataMap wrapping the given IData document.
+     *
+     * @param document  The document to be wrapped.
+     * @param indexed   When true, copies are made as IndexedIData documents, which support constant time key lookups.
+     * @return          A new CopyOnWriteIDataMap wrapping the given IData document.
+     */
+    public static CopyOnWriteIDataMap of(IData document, boolean indexed) {
+        CopyOnWriteIDataMap output = new CopyOnWriteIDataMap(document);
+        output.indexed = indexed;
+        return output;
+    }
+
     /**
      * Returns a new CopyOnWriteIDataMap[] representation of the given IData[] document list.
      *
@@ -170,12 +189,23 @@ public class CopyOnWriteIDataMap extends IDataMap implements Cloneable, Serializ
      * @return          A new CopyOnWriteIDataMap[] representation of the given IData[] document list.
      */
     public static CopyOnWriteIDataMap[] of(IData[] array) {
+        return of(array, false);
+    }
+
+    /**
+     * Returns a new CopyOnWriteIDataMap[] representation of the given IData[] document list.
+     *
+     * @param array     An IData[] document list.
+     * @param indexed   When true, copies are made as IndexedIData documents, which support constant time key lookups.
+     * @return          A new CopyOnWriteIDataMap[] representation of the given IData[] document list.
+     */
+    public static CopyOnWriteIDataMap[] of(IData[] array, boolean indexed) {
         if (array == null) return null;
 
         CopyOnWriteIDataMap[] output = new CopyOnWriteIDataMap[array.length];
         for (int i = 0; i < array.length; i++) {
             if (array[i] != null) {
-                output[i] = CopyOnWriteIDataMap.of(array[i]);
+                output[i] = CopyOnWriteIDataMap.of(array[i], indexed);
             }
         }
 
@@ -186,16 +216,19 @@ public class CopyOnWriteIDataMap extends IDataMap implements Cloneable, Serializ
      * Converts the given value if it is an IData or IData[] compatible object to a CopyOnWriteIDataMap or
      * CopyOnWriteIDataMap[] respectively.
      *
-     * @param value The value to be normalized.
-     * @return      If the value is an IData or IData[] compatible object, a new CopyOnWriteIDataMap or
-     *              CopyOnWriteIDataMap[] respectively is returned which wraps the given value, otherwise
-     *              the value itself is returned unmodified.
+     * @param value   The value to be normalized.
+     * @param indexed Whether copies of the returned wrappers are made as IndexedIData documents.
+     * @return        If the value is an IData or IData[] compatible object, a new CopyOnWriteIDataMap or
+     *                CopyOnWriteIDataMap[] respectively is returned which wraps the given value, otherwise
+     *                the value itself is returned unmodified.
      */
-    private static Object normalize(Object value) {
+    private static Object normalize(Object value, boolean indexed) {
         if (value instanceof IData[] || value instanceof Table || value instanceof IDataCodable[] || value instanceof IDataPortable[] || value instanceof ValuesCodable[]) {
-            value = CopyOnWriteIDataMap.of(IDataHelper.toIDataArray(value));
+            IData[] array = IDataHelper.toIDataArray(value);
+            // copied to an IData[] so that any IData implementation can be stored in the array
+            value = Arrays.copyOf(CopyOnWriteIDataMap.of(array, indexed), array.length, IData[].class);
         } else if (value instanceof IData || value instanceof IDataCodable || value instanceof IDataPortable || value instanceof ValuesCodable) {
-            value = CopyOnWriteIDataMap.of(IDataHelper.toIData(value));
+            value = CopyOnWriteIDataMap.of(IDataHelper.toIData(value), indexed);
         }
         return value;
     }
@@ -208,12 +241,12 @@ public class CopyOnWriteIDataMap extends IDataMap implements Cloneable, Serializ
     private synchronized boolean copyOnWrite() {
         if (this.copied) return false;
 
-        IData clone = IDataFactory.create();
+        IData clone = indexed ? IndexedIData.create() : IDataFactory.create();
         IDataCursor documentCursor = this.document.getCursor();
         IDataCursor cloneCursor = clone.getCursor();
 
         while(documentCursor.next()) {
-            cloneCursor.insertAfter(documentCursor.getKey(), normalize(documentCursor.getValue()));
+            cloneCursor.insertAfter(documentCursor.getKey(), normalize(documentCursor.getValue(), indexed));
         }
 
         documentCursor.destroy();
@@ -299,7 +332,7 @@ public class CopyOnWriteIDataMap extends IDataMap implements Cloneable, Serializ
      */
     @Override
     public IDataMap clone() {
-        return new CopyOnWriteIDataMap(document);
+        return CopyOnWriteIDataMap.of(document, indexed);
     }
 
     /**
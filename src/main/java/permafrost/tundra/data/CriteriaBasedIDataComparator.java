@@ -25,10 +25,6 @@
 package permafrost.tundra.data;
 
 import com.wm.data.IData;
-import permafrost.tundra.math.BigDecimalHelper;
-import permafrost.tundra.math.BigIntegerHelper;
-import permafrost.tundra.time.DateTimeHelper;
-import permafrost.tundra.time.DurationHelper;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -101,66 +97,16 @@ public class CriteriaBasedIDataComparator implements IDataComparator {
      *                          after the second document according to the comparison criteria the IDataComparator was
      *                          constructed with.
      */
-    @SuppressWarnings("unchecked")
     public int compare(IData firstDocument, IData secondDocument) {
         int result = 0;
 
         for (IDataComparisonCriterion criterion : criteria) {
-            Object firstValue = IDataHelper.get(firstDocument, criterion.getKey());
-            Object secondValue = IDataHelper.get(secondDocument, criterion.getKey());
+            Object firstValue = criterion.normalize(IDataHelper.get(firstDocument, criterion.getKey()));
+            Object secondValue = criterion.normalize(IDataHelper.get(secondDocument, criterion.getKey()));
 
-            if (firstValue == null) {
-                if (secondValue != null) {
-                    result = normalize(-1, criterion.isDescending());
-                }
-            } else if (secondValue == null) {
-                result = normalize(1, criterion.isDescending());
-            } else {
-                switch (criterion.getType()) {
-                    case INTEGER:
-                        firstValue = BigIntegerHelper.parse(firstValue.toString());
-                        secondValue = BigIntegerHelper.parse(secondValue.toString());
-                        break;
-                    case DECIMAL:
-                        firstValue = BigDecimalHelper.parse(firstValue.toString());
-                        secondValue = BigDecimalHelper.parse(secondValue.toString());
-                        break;
-                    case DATETIME:
-                        firstValue = DateTimeHelper.parse(firstValue.toString(), criterion.getPattern());
-                        secondValue = DateTimeHelper.parse(secondValue.toString(), criterion.getPattern());
-                        break;
-                    case DURATION:
-                        firstValue = BigIntegerHelper.parse(DurationHelper.format(firstValue.toString(), criterion.getPattern(), "milliseconds"));
-                        secondValue = BigIntegerHelper.parse(DurationHelper.format(secondValue.toString(), criterion.getPattern(), "milliseconds"));
-                        break;
-                    case STRING:
-                        firstValue = firstValue.toString();
-                        secondValue = secondValue.toString();
-                        break;
-                }
-                if (firstValue instanceof Comparable && secondValue instanceof Comparable) {
-                    try {
-                        result = normalize(((Comparable)firstValue).compareTo(secondValue), criterion.isDescending());
-                    } catch (Exception ex) {
-                        result = normalize(compareObjectIdentity(firstValue, secondValue), criterion.isDescending());
-                    }
-                } else {
-                    result = normalize(compareObjectIdentity(firstValue, secondValue), criterion.isDescending());
-                }
-            }
+            result = criterion.compare(firstValue, secondValue);
             if (result != 0) break;
         }
         return result;
     }
-
-    /**
-     * Fallback comparison for incomparable objects using the Java object identity.
-     *
-     * @param firstValue    The first object to be compared.
-     * @param secondValue   The second object to be compared.
-     * @return              The result of the comparison.
-     */
-    private int compareObjectIdentity(Object firstValue, Object secondValue) {
-        return firstValue == secondValue ? 0 : Integer.valueOf(System.identityHashCode(firstValue)).compareTo(System.identityHashCode(secondValue));
-    }
 }
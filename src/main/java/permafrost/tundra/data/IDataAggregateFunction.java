@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+/**
+ * The different aggregate functions supported by the IDataAggregator class.
+ */
+public enum IDataAggregateFunction {
+    COUNT, SUM, AVERAGE, MINIMUM, MAXIMUM, FIRST, LAST, DISTINCT_COUNT;
+    /**
+     * The default aggregate function, if none is specified.
+     */
+    public static final IDataAggregateFunction DEFAULT_AGGREGATE_FUNCTION = COUNT;
+
+    /**
+     * Returns an IDataAggregateFunction for the given string value, which may use hyphens or spaces in place of
+     * underscores, or the common abbreviations avg, min and max.
+     *
+     * @param value The value to be converted to an IDataAggregateFunction.
+     * @return      The IDataAggregateFunction representing the given value.
+     */
+    public static IDataAggregateFunction normalize(String value) {
+        if (value == null) return DEFAULT_AGGREGATE_FUNCTION;
+
+        String name = value.trim().toUpperCase().replace('-', '_').replace(' ', '_');
+        if (name.equals("AVG")) {
+            name = AVERAGE.name();
+        } else if (name.equals("MIN")) {
+            name = MINIMUM.name();
+        } else if (name.equals("MAX")) {
+            name = MAXIMUM.name();
+        }
+
+        return valueOf(name);
+    }
+
+    /**
+     * Normalizes an IDataAggregateFunction.
+     *
+     * @param function  The IDataAggregateFunction to be normalized.
+     * @return          If the given function is null the default function, otherwise the given function.
+     */
+    public static IDataAggregateFunction normalize(IDataAggregateFunction function) {
+        return function == null ? DEFAULT_AGGREGATE_FUNCTION : function;
+    }
+
+    /**
+     * Returns the lower case, hyphenated name of this function, such as distinct-count.
+     *
+     * @return The lower case, hyphenated name of this function.
+     */
+    public String getName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
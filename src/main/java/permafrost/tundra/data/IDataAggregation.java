@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
+import com.wm.util.coder.IDataCodable;
+
+/**
+ * Defines a single aggregate, such as the sum of the values associated with a key, calculated by the IDataAggregator
+ * class.
+ */
+public class IDataAggregation implements IDataCodable {
+    protected IDataAggregateFunction function;
+    protected String key, name, pattern;
+    protected IDataComparisonType type;
+
+    /**
+     * Constructs a new IDataAggregation object.
+     *
+     * @param function  The aggregate function to be calculated.
+     * @param key       The IData key whose associated values are aggregated, or null to count all records.
+     */
+    public IDataAggregation(IDataAggregateFunction function, String key) {
+        this(function, key, null, null, null);
+    }
+
+    /**
+     * Constructs a new IDataAggregation object.
+     *
+     * @param function  The aggregate function to be calculated.
+     * @param key       The IData key whose associated values are aggregated, or null to count all records.
+     * @param name      The key the aggregate is returned against, or null to use the function name followed by the
+     *                  aggregated key, such as sum/amount.
+     * @param type      The type used to compare values when calculating the minimum, maximum, or distinct count.
+     * @param pattern   If the type is DATETIME or DURATION, this is the pattern used to parse the values.
+     */
+    public IDataAggregation(IDataAggregateFunction function, String key, String name, IDataComparisonType type, String pattern) {
+        initialize(function, key, name, type, pattern);
+    }
+
+    /**
+     * Constructs a new IDataAggregation object.
+     *
+     * @param document An IData document containing the following keys: function, key, name, type, pattern.
+     */
+    public IDataAggregation(IData document) {
+        setIData(document);
+    }
+
+    /**
+     * Returns the aggregate function to be calculated.
+     *
+     * @return The aggregate function to be calculated.
+     */
+    public IDataAggregateFunction getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the key whose associated values are aggregated.
+     *
+     * @return The key whose associated values are aggregated, or null if all records are counted.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the key the aggregate is returned against.
+     *
+     * @return The key the aggregate is returned against.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the type used to compare values.
+     *
+     * @return The type used to compare values.
+     */
+    public IDataComparisonType getType() {
+        return type;
+    }
+
+    /**
+     * If the type of value is DATETIME or DURATION, returns the pattern used to parse the value.
+     *
+     * @return If the type of value is DATETIME or DURATION, this is the pattern used to parse the value.
+     */
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns an IData representation of this aggregation.
+     *
+     * @return An IData representation of this aggregation.
+     */
+    public IData getIData() {
+        IData output = IDataFactory.create();
+        IDataCursor cursor = output.getCursor();
+
+        IDataUtil.put(cursor, "function", function.getName());
+        if (key != null) IDataUtil.put(cursor, "key", key);
+        IDataUtil.put(cursor, "name", name);
+        IDataUtil.put(cursor, "type", type.toString().toLowerCase());
+        if (pattern != null) IDataUtil.put(cursor, "pattern", pattern);
+
+        cursor.destroy();
+
+        return output;
+    }
+
+    /**
+     * Sets all the values of this aggregation using the given IData.
+     *
+     * @param document An IData document containing the following keys: function, key, name, type, pattern.
+     */
+    public void setIData(IData document) {
+        if (document == null) throw new NullPointerException("document must not be null");
+
+        IDataCursor cursor = document.getCursor();
+        String function = IDataUtil.getString(cursor, "function");
+        String key = IDataUtil.getString(cursor, "key");
+        String name = IDataUtil.getString(cursor, "name");
+        String type = IDataUtil.getString(cursor, "type");
+        String pattern = IDataUtil.getString(cursor, "pattern");
+        cursor.destroy();
+
+        initialize(IDataAggregateFunction.normalize(function), key, name, type == null ? null : IDataComparisonType.normalize(type), pattern);
+    }
+
+    /**
+     * Initializes all the values of this aggregation.
+     *
+     * @param function  The aggregate function to be calculated.
+     * @param key       The IData key whose associated values are aggregated, or null to count all records.
+     * @param name      The key the aggregate is returned against, or null to use the default name.
+     * @param type      The type used to compare values.
+     * @param pattern   The pattern used to parse DATETIME or DURATION values.
+     */
+    protected void initialize(IDataAggregateFunction function, String key, String name, IDataComparisonType type, String pattern) {
+        this.function = IDataAggregateFunction.normalize(function);
+        if (key == null && this.function != IDataAggregateFunction.COUNT) {
+            throw new NullPointerException("key must not be null");
+        }
+
+        this.key = key;
+        this.name = name == null ? (key == null ? this.function.getName() : this.function.getName() + "/" + key) : name;
+        this.type = IDataComparisonType.normalize(type);
+        this.pattern = pattern;
+    }
+
+    /**
+     * Returns an IDataAggregation given an IData.
+     *
+     * @param aggregation The aggregation specified as an IData.
+     * @return            An IDataAggregation representing the given aggregation.
+     */
+    public static IDataAggregation of(IData aggregation) {
+        if (aggregation == null) return null;
+        return new IDataAggregation(aggregation);
+    }
+
+    /**
+     * Returns an IDataAggregation[] given an IData[].
+     *
+     * @param aggregations The aggregations specified as an IData[].
+     * @return             An IDataAggregation[] representing the given aggregations.
+     */
+    public static IDataAggregation[] of(IData[] aggregations) {
+        if (aggregations == null) return null;
+
+        IDataAggregation[] output = new IDataAggregation[aggregations.length];
+
+        for (int i = 0; i < aggregations.length; i++) {
+            output[i] = of(aggregations[i]);
+        }
+
+        return output;
+    }
+
+    /**
+     * Returns a string representation of this aggregation object.
+     *
+     * @return a string representation of this aggregation object.
+     */
+    @Override
+    public String toString() {
+        return String.format(">>>%s:function=%s,key=%s,name=%s,type=%s,pattern=%s<<<", this.getClass().getSimpleName(), function, key, name, type, pattern);
+    }
+}
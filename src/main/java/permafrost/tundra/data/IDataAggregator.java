@@ -0,0 +1,631 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
+import permafrost.tundra.util.concurrent.ParallelHelper;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Groups IData records by a list of comparison criteria and calculates aggregates, such as counts and sums, for each
+ * group. Records are consumed incrementally and only an accumulator per aggregate is kept for each group, so the
+ * items in each group are never materialized.
+ */
+public class IDataAggregator {
+    /**
+     * The criteria used to group records.
+     */
+    protected IDataComparisonCriterion[] criteria;
+    /**
+     * The aggregates calculated for each group.
+     */
+    protected IDataAggregation[] aggregations;
+    /**
+     * The criteria used to convert and compare the values of each aggregate, or null where no conversion is required.
+     */
+    protected IDataComparisonCriterion[] valueCriteria;
+    /**
+     * Whether groups are returned sorted by their key values, or in the order they were first seen.
+     */
+    protected boolean sorted;
+
+    /**
+     * Constructs a new IDataAggregator which returns groups sorted by their key values.
+     *
+     * @param criteria      The criteria used to group records, or null to aggregate all records as a single group.
+     * @param aggregations  The aggregates to be calculated for each group.
+     */
+    public IDataAggregator(IDataComparisonCriterion[] criteria, IDataAggregation... aggregations) {
+        this(criteria, true, aggregations);
+    }
+
+    /**
+     * Constructs a new IDataAggregator.
+     *
+     * @param criteria      The criteria used to group records, or null to aggregate all records as a single group.
+     * @param sorted        If true, groups are sorted by their key values, otherwise groups are in the order in which
+     *                      their first record was seen.
+     * @param aggregations  The aggregates to be calculated for each group.
+     */
+    public IDataAggregator(IDataComparisonCriterion[] criteria, boolean sorted, IDataAggregation... aggregations) {
+        if (aggregations == null || aggregations.length == 0) {
+            throw new IllegalArgumentException("At least one aggregation is required to construct an IDataAggregator object");
+        }
+
+        this.criteria = criteria == null ? new IDataComparisonCriterion[0] : criteria;
+        this.aggregations = aggregations;
+        this.sorted = sorted;
+        this.valueCriteria = new IDataComparisonCriterion[aggregations.length];
+
+        for (int i = 0; i < aggregations.length; i++) {
+            IDataAggregation aggregation = aggregations[i];
+            switch (aggregation.getFunction()) {
+                case SUM:
+                case AVERAGE:
+                    valueCriteria[i] = new IDataComparisonCriterion(aggregation.getKey(), IDataComparisonType.DECIMAL);
+                    break;
+                case MINIMUM:
+                case MAXIMUM:
+                case DISTINCT_COUNT:
+                    valueCriteria[i] = new IDataComparisonCriterion(aggregation.getKey(), aggregation.getType(), aggregation.getPattern());
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Aggregates the given IData[]. Large arrays are partitioned across multiple threads, and the partial aggregates
+     * of each partition are then merged.
+     *
+     * @param array The records to be aggregated.
+     * @return      One IData document per group, containing the group key values and the calculated aggregates.
+     */
+    public IData[] aggregate(final IData[] array) {
+        if (array == null) return null;
+
+        int[] boundaries = ParallelHelper.partition(array.length);
+        Map<IDataCompoundKey, Group> groups;
+
+        if (boundaries.length <= 2) {
+            groups = accumulate(array, 0, array.length);
+        } else {
+            List<Callable<Map<IDataCompoundKey, Group>>> tasks = new ArrayList<Callable<Map<IDataCompoundKey, Group>>>(boundaries.length - 1);
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                final int start = boundaries[i], end = boundaries[i + 1];
+                tasks.add(new Callable<Map<IDataCompoundKey, Group>>() {
+                    public Map<IDataCompoundKey, Group> call() {
+                        return accumulate(array, start, end);
+                    }
+                });
+            }
+
+            // merge partitions in order, so that first and last values and first-seen group order are preserved
+            groups = null;
+            for (Map<IDataCompoundKey, Group> partition : ParallelHelper.invokeAll(tasks)) {
+                if (groups == null) {
+                    groups = partition;
+                } else {
+                    merge(groups, partition);
+                }
+            }
+        }
+
+        return finish(groups);
+    }
+
+    /**
+     * Aggregates the records returned by the given iterator, consuming them one at a time.
+     *
+     * @param iterator  The records to be aggregated.
+     * @return          One IData document per group, containing the group key values and the calculated aggregates.
+     */
+    public IData[] aggregate(Iterator<? extends IData> iterator) {
+        if (iterator == null) return null;
+
+        Map<IDataCompoundKey, Group> groups = new LinkedHashMap<IDataCompoundKey, Group>();
+        while (iterator.hasNext()) {
+            accept(groups, iterator.next());
+        }
+
+        return finish(groups);
+    }
+
+    /**
+     * Accumulates the given range of records.
+     *
+     * @param array The records to be aggregated.
+     * @param start The start of the range, inclusive.
+     * @param end   The end of the range, exclusive.
+     * @return      The partial aggregates for each group seen in the given range.
+     */
+    protected Map<IDataCompoundKey, Group> accumulate(IData[] array, int start, int end) {
+        Map<IDataCompoundKey, Group> groups = new LinkedHashMap<IDataCompoundKey, Group>();
+        for (int i = start; i < end; i++) {
+            accept(groups, array[i]);
+        }
+        return groups;
+    }
+
+    /**
+     * Adds the given record to the aggregates of the group it belongs to. Null records are ignored.
+     *
+     * @param groups    The groups and their partial aggregates.
+     * @param record    The record to be aggregated.
+     */
+    protected void accept(Map<IDataCompoundKey, Group> groups, IData record) {
+        if (record == null) return;
+
+        IDataCompoundKey key = new IDataCompoundKey(criteria, record);
+        Group group = groups.get(key);
+
+        if (group == null) {
+            group = new Group(key.getIData(), newAccumulators());
+            // the stored key only references the group values, rather than the whole first record
+            groups.put(new IDataCompoundKey(criteria, key.values, group.document), group);
+        }
+
+        for (int i = 0; i < aggregations.length; i++) {
+            String valueKey = aggregations[i].getKey();
+            Object value = valueKey == null ? record : IDataHelper.get(record, valueKey);
+
+            if (value != null) {
+                Object normalizedValue = valueCriteria[i] == null ? value : valueCriteria[i].normalize(value);
+                if (normalizedValue != null) group.accumulators[i].accept(value, normalizedValue);
+            }
+        }
+    }
+
+    /**
+     * Merges the given partial aggregates into the given target aggregates, where the source aggregates were
+     * accumulated from records following those of the target.
+     *
+     * @param target    The aggregates to merge into.
+     * @param source    The aggregates to be merged.
+     */
+    protected void merge(Map<IDataCompoundKey, Group> target, Map<IDataCompoundKey, Group> source) {
+        for (Map.Entry<IDataCompoundKey, Group> entry : source.entrySet()) {
+            Group group = target.get(entry.getKey());
+            if (group == null) {
+                target.put(entry.getKey(), entry.getValue());
+            } else {
+                for (int i = 0; i < group.accumulators.length; i++) {
+                    group.accumulators[i].merge(entry.getValue().accumulators[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the given groups and their aggregates as an IData[], in the requested order.
+     *
+     * @param groups    The groups and their aggregates.
+     * @return          One IData document per group, containing the group key values and the calculated aggregates.
+     */
+    protected IData[] finish(Map<IDataCompoundKey, Group> groups) {
+        if (groups.size() == 0 && criteria.length == 0) {
+            // aggregating without grouping always returns a single result, even when there are no records
+            groups.put(new IDataCompoundKey(criteria, new Object[0], null), new Group(IDataFactory.create(), newAccumulators()));
+        }
+
+        IDataCompoundKey[] keys = groups.keySet().toArray(new IDataCompoundKey[groups.size()]);
+        if (sorted) ParallelHelper.sort(keys, null);
+
+        IData[] output = new IData[keys.length];
+
+        for (int i = 0; i < keys.length; i++) {
+            Group group = groups.get(keys[i]);
+
+            IData aggregates = IDataFactory.create();
+            for (int j = 0; j < aggregations.length; j++) {
+                IDataHelper.put(aggregates, aggregations[j].getName(), group.accumulators[j].getValue());
+            }
+
+            output[i] = IDataFactory.create();
+            IDataCursor cursor = output[i].getCursor();
+            IDataUtil.put(cursor, "group", group.document);
+            IDataUtil.put(cursor, "aggregates", aggregates);
+            cursor.destroy();
+        }
+
+        return output;
+    }
+
+    /**
+     * Returns a new set of empty accumulators, one for each aggregate.
+     *
+     * @return A new set of empty accumulators.
+     */
+    protected Accumulator[] newAccumulators() {
+        Accumulator[] accumulators = new Accumulator[aggregations.length];
+
+        for (int i = 0; i < aggregations.length; i++) {
+            switch (aggregations[i].getFunction()) {
+                case SUM:
+                    accumulators[i] = new SumAccumulator(false);
+                    break;
+                case AVERAGE:
+                    accumulators[i] = new SumAccumulator(true);
+                    break;
+                case MINIMUM:
+                    accumulators[i] = new ExtremeAccumulator(valueCriteria[i], true);
+                    break;
+                case MAXIMUM:
+                    accumulators[i] = new ExtremeAccumulator(valueCriteria[i], false);
+                    break;
+                case FIRST:
+                    accumulators[i] = new PositionAccumulator(true);
+                    break;
+                case LAST:
+                    accumulators[i] = new PositionAccumulator(false);
+                    break;
+                case DISTINCT_COUNT:
+                    accumulators[i] = new DistinctCountAccumulator(valueCriteria[i]);
+                    break;
+                default:
+                    accumulators[i] = new CountAccumulator();
+                    break;
+            }
+        }
+
+        return accumulators;
+    }
+
+    /**
+     * A group of records, represented by its key values and the accumulators for each aggregate.
+     */
+    protected static class Group {
+        /**
+         * The group key values.
+         */
+        protected final IData document;
+        /**
+         * The accumulators for each aggregate.
+         */
+        protected final Accumulator[] accumulators;
+
+        /**
+         * Constructs a new group.
+         *
+         * @param document      The group key values.
+         * @param accumulators  The accumulators for each aggregate.
+         */
+        protected Group(IData document, Accumulator[] accumulators) {
+            this.document = document;
+            this.accumulators = accumulators;
+        }
+    }
+
+    /**
+     * Accumulates a single aggregate for a group of records.
+     */
+    protected static abstract class Accumulator {
+        /**
+         * Adds the given value to this aggregate.
+         *
+         * @param value             The value associated with the aggregated key in the record.
+         * @param normalizedValue   The value converted to the type required by the aggregate.
+         */
+        protected abstract void accept(Object value, Object normalizedValue);
+
+        /**
+         * Merges the given partial aggregate, accumulated from records following those of this aggregate, into this
+         * aggregate.
+         *
+         * @param other The partial aggregate to be merged.
+         */
+        protected abstract void merge(Accumulator other);
+
+        /**
+         * Returns the value of this aggregate.
+         *
+         * @return The value of this aggregate.
+         */
+        protected abstract Object getValue();
+    }
+
+    /**
+     * Counts the records which have a value associated with the aggregated key.
+     */
+    protected static class CountAccumulator extends Accumulator {
+        /**
+         * The number of values accumulated.
+         */
+        protected long count;
+
+        /**
+         * Counts the given value.
+         *
+         * @param value             The value associated with the aggregated key in the record.
+         * @param normalizedValue   The value converted to the type required by the aggregate.
+         */
+        protected void accept(Object value, Object normalizedValue) {
+            count++;
+        }
+
+        /**
+         * Adds the count of the given partial aggregate to this count.
+         *
+         * @param other The partial aggregate to be merged.
+         */
+        protected void merge(Accumulator other) {
+            count += ((CountAccumulator)other).count;
+        }
+
+        /**
+         * Returns the number of values accumulated.
+         *
+         * @return The number of values accumulated.
+         */
+        protected Object getValue() {
+            return count;
+        }
+    }
+
+    /**
+     * Sums, or averages, the decimal values associated with the aggregated key.
+     */
+    protected static class SumAccumulator extends Accumulator {
+        /**
+         * If true, the average of the values is returned rather than their sum.
+         */
+        protected final boolean average;
+        /**
+         * The sum of the values accumulated, or null if there are none.
+         */
+        protected BigDecimal sum;
+        /**
+         * The number of values accumulated.
+         */
+        protected long count;
+
+        /**
+         * Constructs a new accumulator.
+         *
+         * @param average   If true, the average of the values is returned rather than their sum.
+         */
+        protected SumAccumulator(boolean average) {
+            this.average = average;
+        }
+
+        /**
+         * Adds the given decimal value to the sum.
+         *
+         * @param value             The value associated with the aggregated key in the record.
+         * @param normalizedValue   The value converted to a BigDecimal.
+         */
+        protected void accept(Object value, Object normalizedValue) {
+            BigDecimal decimal = (BigDecimal)normalizedValue;
+            sum = sum == null ? decimal : sum.add(decimal);
+            count++;
+        }
+
+        /**
+         * Adds the sum and count of the given partial aggregate to this aggregate.
+         *
+         * @param other The partial aggregate to be merged.
+         */
+        protected void merge(Accumulator other) {
+            SumAccumulator accumulator = (SumAccumulator)other;
+            if (accumulator.sum != null) {
+                sum = sum == null ? accumulator.sum : sum.add(accumulator.sum);
+                count += accumulator.count;
+            }
+        }
+
+        /**
+         * Returns the sum or average of the values accumulated.
+         *
+         * @return The sum or average of the values accumulated, or null if there are none.
+         */
+        protected Object getValue() {
+            if (sum == null || !average) return sum;
+            return sum.divide(BigDecimal.valueOf(count), MathContext.DECIMAL128);
+        }
+    }
+
+    /**
+     * Returns the minimum or maximum value associated with the aggregated key. Where several values are equal, the
+     * first is returned.
+     */
+    protected static class ExtremeAccumulator extends Accumulator {
+        /**
+         * The criterion used to compare values.
+         */
+        protected final IDataComparisonCriterion criterion;
+        /**
+         * If true, the minimum value is returned, otherwise the maximum value is returned.
+         */
+        protected final boolean minimum;
+        /**
+         * The current minimum or maximum value, and that value converted to the type required for comparison.
+         */
+        protected Object value, normalizedValue;
+
+        /**
+         * Constructs a new accumulator.
+         *
+         * @param criterion The criterion used to compare values.
+         * @param minimum   If true, the minimum value is returned, otherwise the maximum value is returned.
+         */
+        protected ExtremeAccumulator(IDataComparisonCriterion criterion, boolean minimum) {
+            this.criterion = criterion;
+            this.minimum = minimum;
+        }
+
+        /**
+         * Keeps the given value if it is less than the current minimum, or greater than the current maximum.
+         *
+         * @param value             The value associated with the aggregated key in the record.
+         * @param normalizedValue   The value converted to the type required for comparison.
+         */
+        protected void accept(Object value, Object normalizedValue) {
+            if (this.normalizedValue == null) {
+                this.value = value;
+                this.normalizedValue = normalizedValue;
+            } else {
+                int result = criterion.compare(normalizedValue, this.normalizedValue);
+                if (minimum ? result < 0 : result > 0) {
+                    this.value = value;
+                    this.normalizedValue = normalizedValue;
+                }
+            }
+        }
+
+        /**
+         * Keeps the extreme value of the given partial aggregate if it is more extreme than the current value. As
+         * the partial aggregate follows this one, the current value is kept where the values are equal.
+         *
+         * @param other The partial aggregate to be merged.
+         */
+        protected void merge(Accumulator other) {
+            ExtremeAccumulator accumulator = (ExtremeAccumulator)other;
+            if (accumulator.normalizedValue != null) accept(accumulator.value, accumulator.normalizedValue);
+        }
+
+        /**
+         * Returns the minimum or maximum value accumulated.
+         *
+         * @return The minimum or maximum value accumulated, or null if there are none.
+         */
+        protected Object getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Returns the first or last value associated with the aggregated key.
+     */
+    protected static class PositionAccumulator extends Accumulator {
+        /**
+         * If true, the first value is returned, otherwise the last value is returned.
+         */
+        protected final boolean first;
+        /**
+         * The first or last value accumulated.
+         */
+        protected Object value;
+
+        /**
+         * Constructs a new accumulator.
+         *
+         * @param first If true, the first value is returned, otherwise the last value is returned.
+         */
+        protected PositionAccumulator(boolean first) {
+            this.first = first;
+        }
+
+        /**
+         * Keeps the given value if this aggregate returns the last value, or if it is the first value.
+         *
+         * @param value             The value associated with the aggregated key in the record.
+         * @param normalizedValue   The value converted to the type required by the aggregate, which is not used.
+         */
+        protected void accept(Object value, Object normalizedValue) {
+            if (!first || this.value == null) this.value = value;
+        }
+
+        /**
+         * Accepts the value of the given partial aggregate, which follows this one.
+         *
+         * @param other The partial aggregate to be merged.
+         */
+        protected void merge(Accumulator other) {
+            Object otherValue = ((PositionAccumulator)other).value;
+            if (otherValue != null) accept(otherValue, otherValue);
+        }
+
+        /**
+         * Returns the first or last value accumulated.
+         *
+         * @return The first or last value accumulated, or null if there are none.
+         */
+        protected Object getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * Counts the distinct values associated with the aggregated key.
+     */
+    protected static class DistinctCountAccumulator extends Accumulator {
+        /**
+         * The criteria used to compare values, containing a single criterion.
+         */
+        protected final IDataComparisonCriterion[] criteria;
+        /**
+         * The distinct values accumulated.
+         */
+        protected final Set<IDataCompoundKey> values = new HashSet<IDataCompoundKey>();
+
+        /**
+         * Constructs a new accumulator.
+         *
+         * @param criterion The criterion used to compare values.
+         */
+        protected DistinctCountAccumulator(IDataComparisonCriterion criterion) {
+            this.criteria = new IDataComparisonCriterion[] { criterion };
+        }
+
+        /**
+         * Adds the given value to the set of distinct values.
+         *
+         * @param value             The value associated with the aggregated key in the record.
+         * @param normalizedValue   The value converted to the type required for comparison.
+         */
+        protected void accept(Object value, Object normalizedValue) {
+            values.add(new IDataCompoundKey(criteria, new Object[] { normalizedValue }, null));
+        }
+
+        /**
+         * Adds the distinct values of the given partial aggregate to this aggregate.
+         *
+         * @param other The partial aggregate to be merged.
+         */
+        protected void merge(Accumulator other) {
+            values.addAll(((DistinctCountAccumulator)other).values);
+        }
+
+        /**
+         * Returns the number of distinct values accumulated.
+         *
+         * @return The number of distinct values accumulated.
+         */
+        protected Object getValue() {
+            return (long)values.size();
+        }
+    }
+}
@@ -0,0 +1,597 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of put, remove, rename and copy operations to be applied to an IData document in a single pass, where
+ * the parent documents of the keys involved are resolved once and shared by all operations which reference them,
+ * rather than being re-resolved by each operation in turn as IDataHelper.put, drop, rename and copy do.
+ *
+ * Operations are applied in the order they were added, so later operations observe the effects of earlier ones
+ * exactly as if the equivalent IDataHelper methods had been called one after the other. Keys that cannot be resolved
+ * directly against nested IData documents, such as those with array or key indexes, absolute keys, or keys which
+ * traverse IData[] or XML node values, are applied individually using IDataPath.
+ */
+public class IDataBatch {
+    /**
+     * The operations in this batch, in the order they were added.
+     */
+    private final List<Operation> operations = new ArrayList<Operation>();
+
+    /**
+     * Whether keys added to this batch are treated literally.
+     */
+    private final boolean literal;
+
+    /**
+     * Creates a new empty batch whose keys may be fully-qualified.
+     */
+    public IDataBatch() {
+        this(false);
+    }
+
+    /**
+     * Creates a new empty batch.
+     *
+     * @param literal If true, keys will be treated as literal keys, rather than potentially as fully-qualified keys.
+     */
+    public IDataBatch(boolean literal) {
+        this.literal = literal;
+    }
+
+    /**
+     * Adds an operation which sets the value associated with the given key.
+     *
+     * @param key   A simple or fully-qualified key.
+     * @param value The value to be set.
+     * @return      This batch, to allow for method chaining.
+     */
+    public IDataBatch put(String key, Object value) {
+        return put(key, value, true);
+    }
+
+    /**
+     * Adds an operation which sets the value associated with the given key.
+     *
+     * @param key           A simple or fully-qualified key.
+     * @param value         The value to be set.
+     * @param includeNull   When true the value is set even when null, otherwise the value is only set when it is not
+     *                      null.
+     * @return              This batch, to allow for method chaining.
+     */
+    public IDataBatch put(String key, Object value, boolean includeNull) {
+        return add(new Operation(OperationType.PUT, compile(key), null, value, includeNull));
+    }
+
+    /**
+     * Adds an operation which removes the value associated with the given key.
+     *
+     * @param key   A simple or fully-qualified key.
+     * @return      This batch, to allow for method chaining.
+     */
+    public IDataBatch remove(String key) {
+        return add(new Operation(OperationType.REMOVE, compile(key), null, null, true));
+    }
+
+    /**
+     * Adds an operation which renames the given source key to the given target key. As with IDataHelper.rename, if
+     * the source key does not exist the target key is set to null.
+     *
+     * @param source    A simple or fully-qualified key identifying the value to be renamed.
+     * @param target    The new simple or fully-qualified key for the renamed value.
+     * @return          This batch, to allow for method chaining.
+     */
+    public IDataBatch rename(String source, String target) {
+        return add(new Operation(OperationType.RENAME, compile(source), compile(target), null, true));
+    }
+
+    /**
+     * Adds an operation which copies the value associated with the given source key to the given target key. As with
+     * IDataHelper.copy, if the source key does not exist the target key is set to null.
+     *
+     * @param source    A simple or fully-qualified key identifying the value to be copied.
+     * @param target    A simple or fully-qualified key the source value will be copied to.
+     * @return          This batch, to allow for method chaining.
+     */
+    public IDataBatch copy(String source, String target) {
+        return add(new Operation(OperationType.COPY, compile(source), compile(target), null, true));
+    }
+
+    /**
+     * Returns the number of operations in this batch.
+     *
+     * @return The number of operations in this batch.
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Applies the operations in this batch to the given IData document. Note that this method mutates the given IData
+     * document in place.
+     *
+     * @param document  The IData document to be mutated.
+     * @return          The result of applying this batch, which includes the mutated document (or a new document if
+     *                  the given document was null) and which operations took effect.
+     */
+    public Result apply(IData document) {
+        if (document == null) document = IDataFactory.create();
+
+        boolean[] applied = new boolean[operations.size()];
+        Resolver resolver = new Resolver(document);
+
+        try {
+            for (int i = 0; i < applied.length; i++) {
+                applied[i] = operations.get(i).apply(resolver);
+            }
+        } finally {
+            resolver.close();
+        }
+
+        return new Result(document, applied);
+    }
+
+    /**
+     * Adds the given operation to this batch.
+     *
+     * @param operation The operation to be added.
+     * @return          This batch, to allow for method chaining.
+     */
+    private IDataBatch add(Operation operation) {
+        operations.add(operation);
+        return this;
+    }
+
+    /**
+     * Compiles the given key.
+     *
+     * @param key   The key to be compiled.
+     * @return      The compiled key.
+     */
+    private Target compile(String key) {
+        if (key == null) throw new NullPointerException("key must not be null");
+        return new Target(IDataPath.of(key, literal));
+    }
+
+    /**
+     * The result of applying a batch to an IData document.
+     */
+    public static final class Result {
+        /**
+         * The mutated document.
+         */
+        private final IData document;
+
+        /**
+         * Whether each operation in the batch took effect.
+         */
+        private final boolean[] applied;
+
+        /**
+         * Creates a new result.
+         *
+         * @param document  The mutated document.
+         * @param applied   Whether each operation in the batch took effect.
+         */
+        private Result(IData document, boolean[] applied) {
+            this.document = document;
+            this.applied = applied;
+        }
+
+        /**
+         * Returns the mutated document.
+         *
+         * @return The mutated document.
+         */
+        public IData getDocument() {
+            return document;
+        }
+
+        /**
+         * Returns the number of operations in the batch this result was produced by.
+         *
+         * @return The number of operations in the batch.
+         */
+        public int size() {
+            return applied.length;
+        }
+
+        /**
+         * Returns true if the operation at the given index took effect: a put took effect unless it was a null value
+         * excluded by includeNull, and a remove, rename or copy took effect if its source key existed. Note that a
+         * rename or copy whose source key did not exist still sets its target key to null, as IDataHelper.rename and
+         * copy do.
+         *
+         * @param index The zero-based index of the operation, in the order it was added to the batch.
+         * @return      True if the operation took effect.
+         */
+        public boolean isApplied(int index) {
+            return applied[index];
+        }
+
+        /**
+         * Returns the number of operations which took effect.
+         *
+         * @return The number of operations which took effect.
+         */
+        public int getAppliedCount() {
+            int count = 0;
+            for (boolean item : applied) {
+                if (item) count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * The types of operations supported by a batch.
+     */
+    private enum OperationType {
+        PUT, REMOVE, RENAME, COPY
+    }
+
+    /**
+     * An individual operation in a batch.
+     */
+    private static class Operation {
+        /**
+         * The type of operation.
+         */
+        private final OperationType type;
+        /**
+         * The key the operation reads from or writes to, and the key a rename or copy operation writes to.
+         */
+        private final Target source, target;
+        /**
+         * The value set by a put operation.
+         */
+        private final Object value;
+        /**
+         * Whether a put operation sets null values.
+         */
+        private final boolean includeNull;
+
+        /**
+         * Creates a new operation.
+         *
+         * @param type          The type of operation.
+         * @param source        The key the operation reads from or writes to.
+         * @param target        The key a rename or copy operation writes to.
+         * @param value         The value set by a put operation.
+         * @param includeNull   Whether a put operation sets null values.
+         */
+        Operation(OperationType type, Target source, Target target, Object value, boolean includeNull) {
+            this.type = type;
+            this.source = source;
+            this.target = target;
+            this.value = value;
+            this.includeNull = includeNull;
+        }
+
+        /**
+         * Applies this operation using the given resolver.
+         *
+         * @param resolver  The resolver used to resolve parent documents.
+         * @return          True if this operation took effect.
+         */
+        boolean apply(Resolver resolver) {
+            boolean applied;
+
+            switch (type) {
+                case PUT:
+                    applied = includeNull || value != null;
+                    if (applied) resolver.put(source, value);
+                    break;
+                case REMOVE:
+                    applied = resolver.remove(source);
+                    break;
+                default:
+                    applied = false;
+                    if (!source.path.equals(target.path)) {
+                        // as with IDataHelper.copy and rename, the target is set to null if the source does not exist
+                        Object[] holder = new Object[1];
+                        applied = resolver.get(source, holder);
+                        resolver.put(target, holder[0]);
+                        if (type == OperationType.RENAME && applied) resolver.remove(source);
+                    }
+            }
+
+            return applied;
+        }
+    }
+
+    /**
+     * A compiled key, together with whether it can be resolved directly against nested IData documents.
+     */
+    private static class Target {
+        /**
+         * The compiled path.
+         */
+        private final IDataPath path;
+        /**
+         * Whether the path is relative and has no indexes, so can be resolved directly against nested IData documents.
+         */
+        private final boolean direct;
+
+        /**
+         * Creates a new target from the given path.
+         *
+         * @param path  The compiled path.
+         */
+        Target(IDataPath path) {
+            this.path = path;
+
+            boolean direct = !path.isAbsolute();
+            for (int i = 0; direct && i < path.length(); i++) {
+                IDataPath.Part part = path.getPart(i);
+                direct = !part.hasArrayIndex() && !part.hasKeyIndex();
+            }
+            this.direct = direct;
+        }
+    }
+
+    /**
+     * Resolves and caches the parent documents referenced by the operations in a batch, holding one cursor open on
+     * each resolved document for the duration of the batch.
+     */
+    private static class Resolver {
+        /**
+         * The document operations are applied to.
+         */
+        private final IData document;
+        /**
+         * The scope of the document operations are applied to, created when first required.
+         */
+        private Scope root;
+
+        /**
+         * Creates a new resolver for the given document.
+         *
+         * @param document  The document operations are applied to.
+         */
+        Resolver(IData document) {
+            this.document = document;
+        }
+
+        /**
+         * Sets the value associated with the given target.
+         *
+         * @param target    The target to be set.
+         * @param value     The value to be set.
+         */
+        void put(Target target, Object value) {
+            Scope parent = target.direct ? parent(target.path, true) : null;
+            if (parent == null) {
+                target.path.put(document, value);
+                reset();
+            } else {
+                String key = target.path.getPart(target.path.length() - 1).getKey();
+                IDataUtil.put(parent.cursor, key, value);
+                parent.invalidate(key);
+            }
+        }
+
+        /**
+         * Returns the value associated with the given target.
+         *
+         * @param target    The target whose value is to be returned.
+         * @param holder    A single item array the value is returned in.
+         * @return          True if the target exists.
+         */
+        boolean get(Target target, Object[] holder) {
+            IDataPath path = target.path;
+            Scope parent = null;
+            boolean exists = false;
+
+            if (target.direct) {
+                if (path.isFullyQualified() && root().cursor.first(path.getKey())) {
+                    holder[0] = root.cursor.getValue();
+                    return true;
+                }
+                parent = parent(path, false);
+                if (parent == null) return false;
+            }
+
+            if (parent == Scope.UNRESOLVABLE || parent == null) {
+                holder[0] = path.get(document);
+                exists = holder[0] != null || path.exists(document);
+            } else if (parent.cursor.first(path.getPart(path.length() - 1).getKey())) {
+                holder[0] = parent.cursor.getValue();
+                exists = true;
+            }
+
+            return exists;
+        }
+
+        /**
+         * Removes the value associated with the given target.
+         *
+         * @param target    The target to be removed.
+         * @return          True if the target existed.
+         */
+        boolean remove(Target target) {
+            IDataPath path = target.path;
+            Scope parent = null;
+            boolean exists = false;
+
+            if (target.direct) {
+                if (path.isFullyQualified() && root().cursor.first(path.getKey())) {
+                    root.cursor.delete();
+                    root.invalidate(path.getKey());
+                    return true;
+                }
+                parent = parent(path, false);
+                if (parent == null) return false;
+            }
+
+            if (parent == Scope.UNRESOLVABLE || parent == null) {
+                // IDataPath.exists does not traverse IData[] values, whereas IDataPath.get and drop do
+                exists = path.exists(document) || path.get(document) != null;
+                if (exists) {
+                    path.drop(document);
+                    reset();
+                }
+            } else {
+                String key = path.getPart(path.length() - 1).getKey();
+                if (parent.cursor.first(key)) {
+                    parent.cursor.delete();
+                    parent.invalidate(key);
+                    exists = true;
+                }
+            }
+
+            return exists;
+        }
+
+        /**
+         * Returns the scope for the parent document of the given path, resolving and caching any intermediate
+         * documents not already resolved.
+         *
+         * @param path      The path whose parent is to be resolved.
+         * @param create    Whether to create missing parent documents.
+         * @return          The parent scope, null if a parent does not exist and create is false, or
+         *                  Scope.UNRESOLVABLE if the parent cannot be resolved directly.
+         */
+        private Scope parent(IDataPath path, boolean create) {
+            Scope scope = root();
+
+            for (int i = 0; i < path.length() - 1; i++) {
+                String key = path.getPart(i).getKey();
+                Scope child = scope.children.get(key);
+
+                if (child == null) {
+                    IData childDocument = null;
+                    if (scope.cursor.first(key)) {
+                        Object value = scope.cursor.getValue();
+                        if (value instanceof IData) {
+                            childDocument = (IData)value;
+                        } else if (value != null) {
+                            // IData[], IDataCodable and XML node values have their own resolution semantics
+                            return create ? null : Scope.UNRESOLVABLE;
+                        }
+                    }
+
+                    if (childDocument == null) {
+                        if (!create) return null;
+                        childDocument = IDataFactory.create();
+                        IDataUtil.put(scope.cursor, key, childDocument);
+                    }
+
+                    child = new Scope(childDocument);
+                    scope.children.put(key, child);
+                }
+
+                scope = child;
+            }
+
+            return scope;
+        }
+
+        /**
+         * Returns the scope for the root document.
+         *
+         * @return The scope for the root document.
+         */
+        private Scope root() {
+            if (root == null) root = new Scope(document);
+            return root;
+        }
+
+        /**
+         * Discards all cached scopes, required after the document was mutated by other means.
+         */
+        private void reset() {
+            if (root != null) {
+                root.close();
+                root = null;
+            }
+        }
+
+        /**
+         * Closes all cursors held by this resolver.
+         */
+        void close() {
+            reset();
+        }
+    }
+
+    /**
+     * A resolved document, its cursor, and its resolved child documents.
+     */
+    private static class Scope {
+        /**
+         * Sentinel returned when a parent cannot be resolved directly against nested IData documents.
+         */
+        static final Scope UNRESOLVABLE = new Scope(null);
+
+        /**
+         * The cursor held open on the resolved document, or null for the unresolvable sentinel.
+         */
+        private final IDataCursor cursor;
+        /**
+         * The resolved child documents, by key.
+         */
+        private final Map<String, Scope> children = new HashMap<String, Scope>();
+
+        /**
+         * Creates a new scope for the given document.
+         *
+         * @param document  The resolved document.
+         */
+        Scope(IData document) {
+            this.cursor = document == null ? null : document.getCursor();
+        }
+
+        /**
+         * Discards the cached child scope for the given key, required when the value associated with the key changes.
+         *
+         * @param key   The key whose value changed.
+         */
+        void invalidate(String key) {
+            Scope child = children.remove(key);
+            if (child != null) child.close();
+        }
+
+        /**
+         * Closes this scope's cursor and the cursors of all its child scopes.
+         */
+        void close() {
+            for (Scope child : children.values()) {
+                child.close();
+            }
+            children.clear();
+            if (cursor != null) cursor.destroy();
+        }
+    }
+}
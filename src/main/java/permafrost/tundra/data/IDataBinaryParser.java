@@ -0,0 +1,840 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataPortable;
+import com.wm.util.Table;
+import com.wm.util.coder.IDataCodable;
+import com.wm.util.coder.ValuesCodable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Deserializes and serializes IData objects from and to a compact binary format.
+ *
+ * The format starts with a magic number and a version number, followed by the encoded document. Values are written
+ * as a single byte tag identifying their type followed by a type specific encoding, where integers are written as
+ * variable length quantities. Keys, and short string values, are written in full the first time they occur and
+ * thereafter as a reference to their first occurrence, so repeated keys in document lists cost only a byte or two.
+ * Documents are encoded and decoded in a single streaming pass without building any intermediate representation.
+ *
+ * Strings are always encoded as UTF-8, so the character set arguments accepted by the IDataParser methods are
+ * ignored.
+ */
+public class IDataBinaryParser extends IDataTextParser {
+    /**
+     * The magic number which starts every encoded document.
+     */
+    private static final byte[] MAGIC = { 'T', 'I', 'D', 'B' };
+    /**
+     * The current version of the format, which is written after the magic number.
+     */
+    public static final int VERSION = 1;
+    /**
+     * Strings no longer than this are added to the dictionary, so that later occurrences can be written as references.
+     */
+    private static final int MAXIMUM_DICTIONARY_STRING_LENGTH = 64;
+    /**
+     * The maximum number of strings added to the dictionary, to bound the memory used when encoding and decoding.
+     */
+    private static final int MAXIMUM_DICTIONARY_SIZE = 65536;
+    /**
+     * The character set used to encode strings.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * The maximum nesting depth of values accepted when decoding, to bound the stack used by malicious input.
+     */
+    private static final int MAXIMUM_DEPTH = 512;
+    /**
+     * The maximum number of elements allocated for an array before its elements are read, so that the memory used
+     * when decoding is bounded by the input actually read rather than by the declared length.
+     */
+    private static final int MAXIMUM_INITIAL_CAPACITY = 8192;
+
+    /**
+     * Value type tags.
+     */
+    private static final int TAG_NULL = 0, TAG_STRING = 1, TAG_STRING_DEFINITION = 2, TAG_STRING_REFERENCE = 3,
+        TAG_BYTES = 4, TAG_TRUE = 5, TAG_FALSE = 6, TAG_BYTE = 7, TAG_SHORT = 8, TAG_INTEGER = 9, TAG_LONG = 10,
+        TAG_FLOAT = 11, TAG_DOUBLE = 12, TAG_CHARACTER = 13, TAG_BIG_INTEGER = 14, TAG_BIG_DECIMAL = 15,
+        TAG_DATE = 16, TAG_CALENDAR = 17, TAG_IDATA = 18, TAG_IDATA_ARRAY = 19, TAG_STRING_ARRAY = 20,
+        TAG_STRING_TABLE = 21, TAG_OBJECT_ARRAY = 22;
+
+    /**
+     * Key codes: keys are written as a variable length quantity which is either one of these codes, or a reference
+     * to a previously defined string offset by KEY_REFERENCE_OFFSET.
+     */
+    private static final int KEY_END = 0, KEY_NULL = 1, KEY_DEFINITION = 2, KEY_REFERENCE_OFFSET = 3;
+
+    /**
+     * Initialization on demand holder idiom.
+     */
+    private static class Holder {
+        /**
+         * The singleton instance of the class.
+         */
+        private static final IDataBinaryParser INSTANCE = new IDataBinaryParser();
+    }
+
+    /**
+     * Disallow instantiation of this class.
+     */
+    private IDataBinaryParser() {}
+
+    /**
+     * Returns the singleton instance of this class.
+     *
+     * @return The singleton instance of this class.
+     */
+    public static IDataBinaryParser getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns the MIME type this parser handles.
+     *
+     * @return The MIME type this parser handles.
+     */
+    public String getContentType() {
+        return "application/x-tundra-idata";
+    }
+
+    /**
+     * Returns an IData representation of the binary data read from the given input stream.
+     *
+     * @param inputStream   The input stream to be decoded.
+     * @param charset       Not used, as strings are always encoded as UTF-8.
+     * @return              An IData representation of the given input stream data.
+     * @throws IOException  If there is a problem reading from the stream, or the data is not in the expected format.
+     */
+    public IData decode(InputStream inputStream, Charset charset) throws IOException {
+        if (!(inputStream instanceof BufferedInputStream || inputStream instanceof ByteArrayInputStream)) {
+            inputStream = new BufferedInputStream(inputStream);
+        }
+        return new Decoder(inputStream).decode();
+    }
+
+    /**
+     * Serializes the given IData document in binary format to the given output stream.
+     *
+     * @param outputStream The stream to write the encoded IData to.
+     * @param document     The IData document to be encoded.
+     * @param charset      Not used, as strings are always encoded as UTF-8.
+     * @throws IOException If there is a problem writing to the stream.
+     */
+    public void encode(OutputStream outputStream, IData document, Charset charset) throws IOException {
+        BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(outputStream);
+        new Encoder(bufferedOutputStream).encode(document);
+        bufferedOutputStream.flush();
+    }
+
+    /**
+     * Writes values in binary format to an output stream.
+     */
+    private static class Encoder {
+        /**
+         * The stream written to.
+         */
+        private final OutputStream outputStream;
+        /**
+         * The strings written so far which may be referred to by later occurrences, and their indexes.
+         */
+        private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+        /**
+         * Constructs a new encoder.
+         *
+         * @param outputStream The stream to be written to.
+         */
+        Encoder(OutputStream outputStream) {
+            this.outputStream = outputStream;
+        }
+
+        /**
+         * Writes the format header followed by the given document.
+         *
+         * @param document      The document to be encoded.
+         * @throws IOException  If an I/O error occurs.
+         */
+        void encode(IData document) throws IOException {
+            outputStream.write(MAGIC);
+            writeVarint(VERSION);
+            writeValue(document);
+        }
+
+        /**
+         * Writes the given value preceded by its type tag.
+         *
+         * @param value         The value to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                outputStream.write(TAG_NULL);
+            } else if (value instanceof String) {
+                writeString((String)value);
+            } else if (value instanceof IData || value instanceof IDataCodable || value instanceof IDataPortable || value instanceof ValuesCodable) {
+                outputStream.write(TAG_IDATA);
+                writeDocument(IDataHelper.toIData(value));
+            } else if (value instanceof IData[] || value instanceof Table || value instanceof IDataCodable[] || value instanceof IDataPortable[] || value instanceof ValuesCodable[]) {
+                IData[] array = IDataHelper.toIDataArray(value);
+                outputStream.write(TAG_IDATA_ARRAY);
+                writeVarint(array.length);
+                for (IData item : array) {
+                    if (item == null) {
+                        outputStream.write(TAG_NULL);
+                    } else {
+                        outputStream.write(TAG_IDATA);
+                        writeDocument(item);
+                    }
+                }
+            } else if (value instanceof String[]) {
+                outputStream.write(TAG_STRING_ARRAY);
+                writeStrings((String[])value);
+            } else if (value instanceof String[][]) {
+                String[][] table = (String[][])value;
+                outputStream.write(TAG_STRING_TABLE);
+                writeVarint(table.length);
+                for (String[] row : table) {
+                    writeStrings(row);
+                }
+            } else if (value instanceof byte[]) {
+                byte[] bytes = (byte[])value;
+                outputStream.write(TAG_BYTES);
+                writeBytes(bytes);
+            } else if (value instanceof Boolean) {
+                outputStream.write((Boolean)value ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Integer) {
+                outputStream.write(TAG_INTEGER);
+                writeSignedVarint((Integer)value);
+            } else if (value instanceof Long) {
+                outputStream.write(TAG_LONG);
+                writeSignedVarint((Long)value);
+            } else if (value instanceof Short) {
+                outputStream.write(TAG_SHORT);
+                writeSignedVarint((Short)value);
+            } else if (value instanceof Byte) {
+                outputStream.write(TAG_BYTE);
+                outputStream.write((Byte)value);
+            } else if (value instanceof Character) {
+                outputStream.write(TAG_CHARACTER);
+                writeVarint((Character)value);
+            } else if (value instanceof Double) {
+                outputStream.write(TAG_DOUBLE);
+                writeFixed(Double.doubleToLongBits((Double)value), 8);
+            } else if (value instanceof Float) {
+                outputStream.write(TAG_FLOAT);
+                writeFixed(Float.floatToIntBits((Float)value), 4);
+            } else if (value instanceof BigInteger) {
+                outputStream.write(TAG_BIG_INTEGER);
+                writeBytes(((BigInteger)value).toByteArray());
+            } else if (value instanceof BigDecimal) {
+                BigDecimal decimal = (BigDecimal)value;
+                outputStream.write(TAG_BIG_DECIMAL);
+                writeSignedVarint(decimal.scale());
+                writeBytes(decimal.unscaledValue().toByteArray());
+            } else if (value instanceof Calendar) {
+                Calendar calendar = (Calendar)value;
+                outputStream.write(TAG_CALENDAR);
+                writeSignedVarint(calendar.getTimeInMillis());
+                writeKey(calendar.getTimeZone().getID());
+            } else if (value instanceof Date) {
+                outputStream.write(TAG_DATE);
+                writeSignedVarint(((Date)value).getTime());
+            } else if (value instanceof Object[]) {
+                Object[] array = (Object[])value;
+                outputStream.write(TAG_OBJECT_ARRAY);
+                writeVarint(array.length);
+                for (Object item : array) {
+                    writeValue(item);
+                }
+            } else {
+                // values which cannot otherwise be represented are encoded as their string representation, rather
+                // than with Java serialization, as deserializing arbitrary classes from untrusted input is unsafe
+                writeString(value.toString());
+            }
+        }
+
+        /**
+         * Writes the elements of the given document, followed by an end marker.
+         *
+         * @param document      The document to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeDocument(IData document) throws IOException {
+            IDataCursor cursor = document.getCursor();
+            try {
+                while (cursor.next()) {
+                    writeKey(cursor.getKey());
+                    writeValue(cursor.getValue());
+                }
+            } finally {
+                cursor.destroy();
+            }
+            writeVarint(KEY_END);
+        }
+
+        /**
+         * Writes the given key, or a reference to it if it was previously written.
+         *
+         * @param key           The key to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeKey(String key) throws IOException {
+            if (key == null) {
+                writeVarint(KEY_NULL);
+            } else {
+                Integer index = dictionary.get(key);
+                if (index != null) {
+                    writeVarint(index + KEY_REFERENCE_OFFSET);
+                } else {
+                    writeVarint(KEY_DEFINITION);
+                    writeBytes(key.getBytes(UTF_8));
+                    define(key);
+                }
+            }
+        }
+
+        /**
+         * Writes the given string value, or a reference to it if it was previously written.
+         *
+         * @param string        The string to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeString(String string) throws IOException {
+            Integer index = dictionary.get(string);
+            if (index != null) {
+                outputStream.write(TAG_STRING_REFERENCE);
+                writeVarint(index);
+            } else if (string.length() <= MAXIMUM_DICTIONARY_STRING_LENGTH && dictionary.size() < MAXIMUM_DICTIONARY_SIZE) {
+                outputStream.write(TAG_STRING_DEFINITION);
+                writeBytes(string.getBytes(UTF_8));
+                define(string);
+            } else {
+                outputStream.write(TAG_STRING);
+                writeBytes(string.getBytes(UTF_8));
+            }
+        }
+
+        /**
+         * Writes the given strings, each of which may be null, preceded by their count.
+         *
+         * @param strings       The strings to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeStrings(String[] strings) throws IOException {
+            if (strings == null) {
+                writeVarint(0);
+            } else {
+                // the count is offset by one so that a null array can be distinguished from an empty array
+                writeVarint(strings.length + 1L);
+                for (String string : strings) {
+                    if (string == null) {
+                        outputStream.write(TAG_NULL);
+                    } else {
+                        writeString(string);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the given string to the dictionary, unless the dictionary is full.
+         *
+         * @param string The string to be added.
+         */
+        private void define(String string) {
+            if (dictionary.size() < MAXIMUM_DICTIONARY_SIZE) dictionary.put(string, dictionary.size());
+        }
+
+        /**
+         * Writes the given bytes preceded by their length.
+         *
+         * @param bytes         The bytes to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeBytes(byte[] bytes) throws IOException {
+            writeVarint(bytes.length);
+            outputStream.write(bytes);
+        }
+
+        /**
+         * Writes the given signed value as a zig-zag encoded variable length quantity, so that values of small
+         * magnitude use few bytes.
+         *
+         * @param value         The value to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeSignedVarint(long value) throws IOException {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * Writes the given unsigned value as a variable length quantity of seven bits per byte.
+         *
+         * @param value         The value to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeVarint(long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                outputStream.write((int)((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            outputStream.write((int)value);
+        }
+
+        /**
+         * Writes the given number of low order bytes of the given value, most significant byte first.
+         *
+         * @param value         The value to be written.
+         * @param length        The number of bytes to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeFixed(long value, int length) throws IOException {
+            for (int i = length - 1; i >= 0; i--) {
+                outputStream.write((int)(value >>> (i * 8)));
+            }
+        }
+    }
+
+    /**
+     * Reads values in binary format from an input stream.
+     */
+    private static class Decoder {
+        /**
+         * The stream read from.
+         */
+        private final InputStream inputStream;
+        /**
+         * The strings defined so far, in definition order.
+         */
+        private final List<String> dictionary = new ArrayList<String>();
+        /**
+         * The number of bytes remaining in the stream when it was first read, or -1 if unknown.
+         */
+        private final long size;
+        /**
+         * The number of bytes read from the stream so far.
+         */
+        private long position;
+        /**
+         * The nesting depth of the value currently being read.
+         */
+        private int depth;
+
+        /**
+         * Constructs a new decoder.
+         *
+         * @param inputStream The stream to be read from.
+         */
+        Decoder(InputStream inputStream) {
+            this.inputStream = inputStream;
+            // only a byte array stream reliably reports the number of bytes remaining
+            this.size = inputStream instanceof ByteArrayInputStream ? ((ByteArrayInputStream)inputStream).available() : -1;
+        }
+
+        /**
+         * Reads and checks the format header, then reads the encoded document.
+         *
+         * @return              The decoded document.
+         * @throws IOException  If an I/O error occurs, or the data is not in the expected format.
+         */
+        IData decode() throws IOException {
+            for (byte expected : MAGIC) {
+                if (readByte() != expected) throw new IOException("Data is not in the binary IData format");
+            }
+
+            long version = readVarint();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported binary IData format version: " + version);
+            }
+
+            Object value = readValue();
+            if (value != null && !(value instanceof IData)) {
+                throw new IOException("Malformed binary IData: expected a document");
+            }
+
+            return (IData)value;
+        }
+
+        /**
+         * Reads a value preceded by its type tag.
+         *
+         * @return              The decoded value.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private Object readValue() throws IOException {
+            if (++depth > MAXIMUM_DEPTH) {
+                throw new IOException("Malformed binary IData: maximum nesting depth of " + MAXIMUM_DEPTH + " exceeded");
+            }
+
+            try {
+                int tag = readByte();
+                return readValue(tag);
+            } finally {
+                depth--;
+            }
+        }
+
+        /**
+         * Reads a value with the given type tag.
+         *
+         * @param tag           The type tag of the value.
+         * @return              The decoded value.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private Object readValue(int tag) throws IOException {
+            int length;
+
+            switch (tag) {
+                case TAG_NULL:
+                    return null;
+                case TAG_STRING:
+                case TAG_STRING_DEFINITION:
+                case TAG_STRING_REFERENCE:
+                    return readString(tag);
+                case TAG_BYTES:
+                    return readBytes();
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_BYTE:
+                    return (byte)readByte();
+                case TAG_SHORT:
+                    return (short)readSignedVarint();
+                case TAG_INTEGER:
+                    return (int)readSignedVarint();
+                case TAG_LONG:
+                    return readSignedVarint();
+                case TAG_FLOAT:
+                    return Float.intBitsToFloat((int)readFixed(4));
+                case TAG_DOUBLE:
+                    return Double.longBitsToDouble(readFixed(8));
+                case TAG_CHARACTER:
+                    return (char)readVarint();
+                case TAG_BIG_INTEGER:
+                    return new BigInteger(readBytes());
+                case TAG_BIG_DECIMAL:
+                    int scale = (int)readSignedVarint();
+                    return new BigDecimal(new BigInteger(readBytes()), scale);
+                case TAG_DATE:
+                    return new Date(readSignedVarint());
+                case TAG_CALENDAR:
+                    long time = readSignedVarint();
+                    String zone = readKey();
+                    Calendar calendar = Calendar.getInstance(zone == null ? TimeZone.getDefault() : TimeZone.getTimeZone(zone));
+                    calendar.setTimeInMillis(time);
+                    return calendar;
+                case TAG_IDATA:
+                    return readDocument();
+                case TAG_IDATA_ARRAY:
+                    length = readLength();
+                    IData[] documents = new IData[Math.min(length, MAXIMUM_INITIAL_CAPACITY)];
+                    for (int i = 0; i < length; i++) {
+                        if (i == documents.length) documents = Arrays.copyOf(documents, grow(i, length));
+                        Object item = readValue();
+                        if (item != null && !(item instanceof IData)) {
+                            throw new IOException("Malformed binary IData: expected a document list item");
+                        }
+                        documents[i] = (IData)item;
+                    }
+                    return documents;
+                case TAG_STRING_ARRAY:
+                    return readStrings();
+                case TAG_STRING_TABLE:
+                    length = readLength();
+                    String[][] table = new String[Math.min(length, MAXIMUM_INITIAL_CAPACITY)][];
+                    for (int i = 0; i < length; i++) {
+                        if (i == table.length) table = Arrays.copyOf(table, grow(i, length));
+                        table[i] = readStrings();
+                    }
+                    return table;
+                case TAG_OBJECT_ARRAY:
+                    length = readLength();
+                    Object[] array = new Object[Math.min(length, MAXIMUM_INITIAL_CAPACITY)];
+                    for (int i = 0; i < length; i++) {
+                        if (i == array.length) array = Arrays.copyOf(array, grow(i, length));
+                        array[i] = readValue();
+                    }
+                    return array;
+                default:
+                    throw new IOException("Malformed binary IData: unknown value tag " + tag);
+            }
+        }
+
+        /**
+         * Reads the elements of a document up to its end marker.
+         *
+         * @return              The decoded document.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private IData readDocument() throws IOException {
+            IData document = IDataFactory.create();
+            IDataCursor cursor = document.getCursor();
+
+            try {
+                long code;
+                while ((code = readVarint()) != KEY_END) {
+                    String key = readKey(code);
+                    cursor.insertAfter(key, readValue());
+                }
+            } finally {
+                cursor.destroy();
+            }
+
+            return document;
+        }
+
+        /**
+         * Reads a key.
+         *
+         * @return              The decoded key.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private String readKey() throws IOException {
+            return readKey(readVarint());
+        }
+
+        /**
+         * Reads a key identified by the given key code.
+         *
+         * @param code          The key code.
+         * @return              The decoded key.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private String readKey(long code) throws IOException {
+            String key;
+
+            if (code == KEY_NULL) {
+                key = null;
+            } else if (code == KEY_DEFINITION) {
+                key = new String(readBytes(), UTF_8);
+                define(key);
+            } else if (code >= KEY_REFERENCE_OFFSET) {
+                key = lookup(code - KEY_REFERENCE_OFFSET);
+            } else {
+                throw new IOException("Malformed binary IData: unexpected key code " + code);
+            }
+
+            return key;
+        }
+
+        /**
+         * Reads a string value with the given type tag.
+         *
+         * @param tag           The type tag of the string.
+         * @return              The decoded string.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private String readString(int tag) throws IOException {
+            String string;
+
+            if (tag == TAG_STRING_REFERENCE) {
+                string = lookup(readVarint());
+            } else {
+                string = new String(readBytes(), UTF_8);
+                if (tag == TAG_STRING_DEFINITION) define(string);
+            }
+
+            return string;
+        }
+
+        /**
+         * Reads an array of strings preceded by their count.
+         *
+         * @return              The decoded strings.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private String[] readStrings() throws IOException {
+            int length = readLength();
+            if (length == 0) return null;
+
+            length = length - 1;
+            String[] strings = new String[Math.min(length, MAXIMUM_INITIAL_CAPACITY)];
+            for (int i = 0; i < length; i++) {
+                if (i == strings.length) strings = Arrays.copyOf(strings, grow(i, length));
+                int tag = readByte();
+                if (tag != TAG_NULL) {
+                    if (tag != TAG_STRING && tag != TAG_STRING_DEFINITION && tag != TAG_STRING_REFERENCE) {
+                        throw new IOException("Malformed binary IData: expected a string");
+                    }
+                    strings[i] = readString(tag);
+                }
+            }
+
+            return strings;
+        }
+
+        /**
+         * Adds the given string to the dictionary, unless the dictionary is full.
+         *
+         * @param string The string to be added.
+         */
+        private void define(String string) {
+            if (dictionary.size() < MAXIMUM_DICTIONARY_SIZE) dictionary.add(string);
+        }
+
+        /**
+         * Returns the string in the dictionary with the given index.
+         *
+         * @param index         The index of the string.
+         * @return              The string with the given index.
+         * @throws IOException  If the index is not in the dictionary.
+         */
+        private String lookup(long index) throws IOException {
+            if (index < 0 || index >= dictionary.size()) {
+                throw new IOException("Malformed binary IData: unknown string reference " + index);
+            }
+            return dictionary.get((int)index);
+        }
+
+        /**
+         * Reads a byte array preceded by its length.
+         *
+         * @return              The decoded bytes.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private byte[] readBytes() throws IOException {
+            int length = readLength();
+            byte[] bytes = new byte[Math.min(length, MAXIMUM_INITIAL_CAPACITY)];
+
+            int offset = 0;
+            while (offset < length) {
+                if (offset == bytes.length) bytes = Arrays.copyOf(bytes, grow(offset, length));
+                int count = inputStream.read(bytes, offset, bytes.length - offset);
+                if (count < 0) throw new EOFException("Unexpected end of binary IData");
+                offset += count;
+                position += count;
+            }
+
+            return bytes;
+        }
+
+        /**
+         * Reads a length, which must be a non-negative int no larger than the number of bytes remaining in the stream,
+         * as every element or byte counted by a length occupies at least one byte of input.
+         *
+         * @return              The decoded length.
+         * @throws IOException  If an I/O error occurs, or the length is out of range.
+         */
+        private int readLength() throws IOException {
+            long length = readVarint();
+            if (length < 0 || length > Integer.MAX_VALUE || (size >= 0 && length > size - position)) {
+                throw new IOException("Malformed binary IData: invalid length " + length);
+            }
+            return (int)length;
+        }
+
+        /**
+         * Returns the new capacity for an array being filled which has reached the given capacity, doubling it up to
+         * the given required length.
+         *
+         * @param capacity  The current capacity of the array.
+         * @param length    The required length of the array.
+         * @return          The new capacity of the array.
+         */
+        private static int grow(int capacity, int length) {
+            return (int)Math.min((long)capacity * 2, length);
+        }
+
+        /**
+         * Reads a zig-zag encoded signed variable length quantity.
+         *
+         * @return              The decoded value.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private long readSignedVarint() throws IOException {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads an unsigned variable length quantity of seven bits per byte.
+         *
+         * @return              The decoded value.
+         * @throws IOException  If an I/O error occurs, or the data is malformed.
+         */
+        private long readVarint() throws IOException {
+            long value = 0;
+
+            for (int shift = 0; shift < 64; shift += 7) {
+                int current = readByte();
+                value |= (long)(current & 0x7F) << shift;
+                if ((current & 0x80) == 0) return value;
+            }
+
+            throw new IOException("Malformed binary IData: variable length quantity too long");
+        }
+
+        /**
+         * Reads the given number of bytes as a value, most significant byte first.
+         *
+         * @param length        The number of bytes to be read.
+         * @return              The decoded value.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private long readFixed(int length) throws IOException {
+            long value = 0;
+            for (int i = 0; i < length; i++) {
+                value = (value << 8) | readByte();
+            }
+            return value;
+        }
+
+        /**
+         * Reads a single byte.
+         *
+         * @return              The byte read, as an unsigned value.
+         * @throws IOException  If an I/O error occurs, or the end of the stream is reached.
+         */
+        private int readByte() throws IOException {
+            int value = inputStream.read();
+            if (value < 0) throw new EOFException("Unexpected end of binary IData");
+            position++;
+            return value;
+        }
+    }
+}
@@ -0,0 +1,633 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import permafrost.tundra.io.CloseableHelper;
+import permafrost.tundra.lang.CharsetHelper;
+import permafrost.tundra.lang.ObjectHelper;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Deserializes and serializes IData records from and to delimited text, such as comma-separated values (CSV).
+ */
+public class IDataCSVParser extends IDataTextParser {
+    /**
+     * The key used to hold the list of records in a decoded document.
+     */
+    public static final String RECORDS_KEY = "recordWithNoID";
+
+    /**
+     * The prefix used for column names when there is no header row, or a record has more columns than the header.
+     */
+    public static final String DEFAULT_COLUMN_NAME_PREFIX = "column";
+
+    /**
+     * The default delimiter character.
+     */
+    public static final char DEFAULT_DELIMITER = ',';
+
+    /**
+     * The default quote character.
+     */
+    public static final char DEFAULT_QUOTE = '"';
+
+    /**
+     * The size of the character buffer used when reading.
+     */
+    private static final int BUFFER_SIZE = 8192;
+
+    /**
+     * The line separator used when writing records.
+     */
+    private static final String LINE_SEPARATOR = "\r\n";
+
+    /**
+     * The character used to separate fields.
+     */
+    protected final char delimiter;
+
+    /**
+     * The character used to quote fields containing special characters.
+     */
+    protected final char quote;
+
+    /**
+     * The character used to escape quote characters inside a field: when equal to the quote character, quotes are
+     * escaped by doubling them.
+     */
+    protected final char escape;
+
+    /**
+     * Whether the first row contains the column names.
+     */
+    protected final boolean header;
+
+    /**
+     * Initialization on demand holder idiom.
+     */
+    private static class Holder {
+        /**
+         * The singleton instance of the class.
+         */
+        private static final IDataCSVParser INSTANCE = new IDataCSVParser();
+    }
+
+    /**
+     * Creates a new IDataCSVParser which parses comma-separated values with a header row.
+     */
+    public IDataCSVParser() {
+        this(DEFAULT_DELIMITER, DEFAULT_QUOTE, DEFAULT_QUOTE, true);
+    }
+
+    /**
+     * Creates a new IDataCSVParser.
+     *
+     * @param delimiter The character used to separate fields.
+     * @param quote     The character used to quote fields containing special characters.
+     * @param escape    The character used to escape quote characters inside a field: if equal to the quote
+     *                  character, quotes are escaped by doubling them.
+     * @param header    Whether the first row contains the column names.
+     */
+    public IDataCSVParser(char delimiter, char quote, char escape, boolean header) {
+        if (delimiter == quote || delimiter == escape) throw new IllegalArgumentException("delimiter must differ from quote and escape characters");
+        if (isLineSeparator(delimiter) || isLineSeparator(quote) || isLineSeparator(escape)) throw new IllegalArgumentException("delimiter, quote and escape characters must not be line separators");
+
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.escape = escape;
+        this.header = header;
+    }
+
+    /**
+     * Returns the singleton instance of this class, which parses comma-separated values with a header row.
+     *
+     * @return The singleton instance of this class.
+     */
+    public static IDataCSVParser getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns the MIME type this parser handles.
+     *
+     * @return The MIME type this parser handles.
+     */
+    public String getContentType() {
+        String contentType;
+
+        if (delimiter == ',') {
+            contentType = "text/csv";
+        } else if (delimiter == '\t') {
+            contentType = "text/tab-separated-values";
+        } else {
+            contentType = "text/plain";
+        }
+
+        return contentType;
+    }
+
+    /**
+     * Returns an IData representation of the delimited data read from the given input stream, with the records
+     * stored as an IData[] under the key "recordWithNoID".
+     *
+     * @param inputStream   The input stream to be decoded.
+     * @param charset       The character set to use.
+     * @return              An IData representation of the given input stream data.
+     * @throws IOException  If there is a problem reading from the stream.
+     */
+    public IData decode(InputStream inputStream, Charset charset) throws IOException {
+        if (inputStream == null) return null;
+
+        List<IData> records = new ArrayList<IData>();
+        RecordReader reader = new RecordReader(new InputStreamReader(inputStream, CharsetHelper.normalize(charset)));
+
+        try {
+            IData record;
+            while ((record = reader.readRecord()) != null) {
+                records.add(record);
+            }
+        } finally {
+            CloseableHelper.close(reader);
+        }
+
+        IData output = IDataFactory.create();
+        IDataCursor cursor = output.getCursor();
+        cursor.insertAfter(RECORDS_KEY, records.toArray(new IData[records.size()]));
+        cursor.destroy();
+
+        return output;
+    }
+
+    /**
+     * Returns an iterator which decodes one record at a time from the given input stream, so that arbitrarily large
+     * inputs can be processed in constant memory. The stream is closed when the iterator is exhausted or closed.
+     *
+     * @param inputStream   The input stream to be decoded.
+     * @param charset       The character set to use.
+     * @return              An iterator over the records in the given input stream.
+     */
+    public RecordIterator iterate(InputStream inputStream, Charset charset) {
+        return new RecordIterator(new RecordReader(new InputStreamReader(inputStream, CharsetHelper.normalize(charset))));
+    }
+
+    /**
+     * Returns an iterator which decodes one record at a time from the given input stream, using the default
+     * character set.
+     *
+     * @param inputStream   The input stream to be decoded.
+     * @return              An iterator over the records in the given input stream.
+     */
+    public RecordIterator iterate(InputStream inputStream) {
+        return iterate(inputStream, (Charset)null);
+    }
+
+    /**
+     * Serializes the records stored under the key "recordWithNoID" in the given IData document, or the document
+     * itself as a single record if there is no such key, as delimited text to the given output stream.
+     *
+     * @param outputStream The stream to write the encoded IData to.
+     * @param document     The IData document to be encoded.
+     * @param charset      The character set to use.
+     * @throws IOException If there is a problem writing to the stream.
+     */
+    public void encode(OutputStream outputStream, IData document, Charset charset) throws IOException {
+        IData[] records = null;
+
+        if (document != null) {
+            IDataCursor cursor = document.getCursor();
+            try {
+                if (cursor.first(RECORDS_KEY)) records = IDataHelper.toIDataArray(cursor.getValue());
+            } finally {
+                cursor.destroy();
+            }
+            if (records == null) records = new IData[] { document };
+        }
+
+        encode(outputStream, records, charset);
+    }
+
+    /**
+     * Serializes the given records as delimited text to the given output stream. The columns are the union of the
+     * keys of all records, in the order they were first encountered.
+     *
+     * @param outputStream The stream to write the encoded records to.
+     * @param records      The records to be encoded.
+     * @param charset      The character set to use.
+     * @throws IOException If there is a problem writing to the stream.
+     */
+    public void encode(OutputStream outputStream, IData[] records, Charset charset) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, CharsetHelper.normalize(charset)));
+
+        if (records != null) {
+            Map<String, Integer> columns = new HashMap<String, Integer>();
+            List<String> names = new ArrayList<String>();
+
+            for (IData record : records) {
+                if (record == null) continue;
+                IDataCursor cursor = record.getCursor();
+                try {
+                    while (cursor.next()) {
+                        String key = cursor.getKey();
+                        if (!columns.containsKey(key)) {
+                            columns.put(key, names.size());
+                            names.add(key);
+                        }
+                    }
+                } finally {
+                    cursor.destroy();
+                }
+            }
+
+            if (header && names.size() > 0) writeRecord(writer, names.toArray());
+
+            Object[] values = new Object[names.size()];
+            boolean[] assigned = new boolean[values.length];
+
+            for (IData record : records) {
+                if (record == null) continue;
+
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = null;
+                    assigned[i] = false;
+                }
+
+                IDataCursor cursor = record.getCursor();
+                try {
+                    while (cursor.next()) {
+                        int index = columns.get(cursor.getKey());
+                        if (!assigned[index]) {
+                            values[index] = cursor.getValue();
+                            assigned[index] = true;
+                        }
+                    }
+                } finally {
+                    cursor.destroy();
+                }
+
+                writeRecord(writer, values);
+            }
+        }
+
+        writer.flush();
+    }
+
+    /**
+     * Writes the given values as a single delimited record.
+     *
+     * @param writer       The writer to write to.
+     * @param values       The values to be written.
+     * @throws IOException If there is a problem writing to the stream.
+     */
+    private void writeRecord(Writer writer, Object[] values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) writer.write(delimiter);
+            String value = ObjectHelper.stringify(values[i]);
+            if (value != null) writeField(writer, value);
+        }
+        writer.write(LINE_SEPARATOR);
+    }
+
+    /**
+     * Writes the given value as a field, quoting and escaping it only if it contains special characters.
+     *
+     * @param writer       The writer to write to.
+     * @param value        The value to be written.
+     * @throws IOException If there is a problem writing to the stream.
+     */
+    private void writeField(Writer writer, String value) throws IOException {
+        int length = value.length();
+        boolean quoted = false;
+
+        for (int i = 0; i < length && !quoted; i++) {
+            char character = value.charAt(i);
+            quoted = character == delimiter || character == quote || character == escape || isLineSeparator(character);
+        }
+
+        if (quoted) {
+            writer.write(quote);
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                char character = value.charAt(i);
+                if (character == quote || character == escape) {
+                    writer.write(value, start, i - start);
+                    writer.write(escape);
+                    start = i;
+                }
+            }
+            writer.write(value, start, length - start);
+            writer.write(quote);
+        } else {
+            writer.write(value);
+        }
+    }
+
+    /**
+     * Returns true if the given character is a carriage return or line feed.
+     *
+     * @param character The character to check.
+     * @return          True if the given character is a carriage return or line feed.
+     */
+    private static boolean isLineSeparator(char character) {
+        return character == '\r' || character == '\n';
+    }
+
+    /**
+     * An iterator over the records decoded from delimited text, one record at a time.
+     */
+    public static class RecordIterator implements Iterator<IData>, Closeable {
+        /**
+         * The reader used to decode records.
+         */
+        private final RecordReader reader;
+
+        /**
+         * The next record to be returned, if already read.
+         */
+        private IData next;
+
+        /**
+         * Whether the end of the input has been reached.
+         */
+        private boolean exhausted;
+
+        /**
+         * Creates a new RecordIterator.
+         *
+         * @param reader The reader used to decode records.
+         */
+        private RecordIterator(RecordReader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Returns true if there are more records.
+         *
+         * @return True if there are more records.
+         * @throws RuntimeException If an I/O error occurs reading the next record.
+         */
+        public boolean hasNext() {
+            if (next == null && !exhausted) {
+                try {
+                    next = reader.readRecord();
+                } catch(IOException ex) {
+                    close();
+                    throw new RuntimeException(ex);
+                }
+                if (next == null) close();
+            }
+            return next != null;
+        }
+
+        /**
+         * Returns the next record.
+         *
+         * @return The next record.
+         * @throws NoSuchElementException If there are no more records.
+         */
+        public IData next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            IData record = next;
+            next = null;
+            return record;
+        }
+
+        /**
+         * Removal is not supported.
+         *
+         * @throws UnsupportedOperationException Always.
+         */
+        public void remove() {
+            throw new UnsupportedOperationException("remove not supported");
+        }
+
+        /**
+         * Closes the underlying stream.
+         */
+        public void close() {
+            exhausted = true;
+            CloseableHelper.close(reader);
+        }
+    }
+
+    /**
+     * Reads delimited records from a character stream through a reused buffer, without regular expressions or
+     * reading more than one record into memory.
+     */
+    private class RecordReader implements Closeable {
+        /**
+         * The character stream being read.
+         */
+        private final Reader reader;
+
+        /**
+         * The reused character buffer.
+         */
+        private final char[] buffer = new char[BUFFER_SIZE];
+
+        /**
+         * The position of the next character in the buffer, and the number of valid characters in the buffer.
+         */
+        private int position, limit;
+
+        /**
+         * The reused builder for the current field.
+         */
+        private final StringBuilder field = new StringBuilder();
+
+        /**
+         * The reused list of fields of the current row.
+         */
+        private final List<String> fields = new ArrayList<String>();
+
+        /**
+         * The column names, or null if not yet read.
+         */
+        private String[] columns;
+
+        /**
+         * Creates a new RecordReader.
+         *
+         * @param reader The character stream to be read.
+         */
+        public RecordReader(Reader reader) {
+            this.reader = reader;
+        }
+
+        /**
+         * Returns the next record, or null if there are no more records.
+         *
+         * @return             The next record, or null if there are no more records.
+         * @throws IOException If an I/O error occurs or the input is malformed.
+         */
+        public IData readRecord() throws IOException {
+            if (columns == null) {
+                if (header) {
+                    if (!readRow()) return null;
+                    columns = fields.toArray(new String[fields.size()]);
+                } else {
+                    columns = new String[0];
+                }
+            }
+
+            if (!readRow()) return null;
+
+            IData record = IDataFactory.create();
+            IDataCursor cursor = record.getCursor();
+            int size = fields.size();
+            for (int i = 0; i < size; i++) {
+                cursor.insertAfter(i < columns.length ? columns[i] : DEFAULT_COLUMN_NAME_PREFIX + (i + 1), fields.get(i));
+            }
+            cursor.destroy();
+
+            return record;
+        }
+
+        /**
+         * Reads the next non-blank row into the reused list of fields.
+         *
+         * @return             True if a row was read, false if the end of the input was reached.
+         * @throws IOException If an I/O error occurs or the input is malformed.
+         */
+        private boolean readRow() throws IOException {
+            fields.clear();
+            field.setLength(0);
+
+            int character = readCharacter();
+            while (character == '\r' || character == '\n') {
+                character = readCharacter();
+            }
+            if (character < 0) return false;
+
+            boolean quoted = false;
+
+            while (true) {
+                if (character < 0) {
+                    if (quoted) throw new IOException("Unterminated quoted field in delimited data");
+                    break;
+                } else if (quoted) {
+                    if (character == escape && escape != quote) {
+                        character = readCharacter();
+                        if (character < 0) continue;
+                        field.append((char)character);
+                    } else if (character == quote) {
+                        if (escape == quote && peek() == quote) {
+                            field.append((char)readCharacter());
+                        } else {
+                            quoted = false;
+                        }
+                    } else {
+                        field.append((char)character);
+                    }
+                } else if (character == delimiter) {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else if (character == '\r' || character == '\n') {
+                    if (character == '\r' && peek() == '\n') readCharacter();
+                    break;
+                } else if (character == quote) {
+                    quoted = true;
+                } else if (character == escape) {
+                    character = readCharacter();
+                    if (character < 0) break;
+                    field.append((char)character);
+                } else {
+                    field.append((char)character);
+                }
+
+                character = readCharacter();
+            }
+
+            fields.add(field.toString());
+            return true;
+        }
+
+        /**
+         * Returns the next character, or -1 if the end of the input was reached.
+         *
+         * @return             The next character, or -1 if the end of the input was reached.
+         * @throws IOException If an I/O error occurs.
+         */
+        private int readCharacter() throws IOException {
+            if (position >= limit && !fill()) return -1;
+            return buffer[position++];
+        }
+
+        /**
+         * Returns the next character without consuming it, or -1 if the end of the input was reached.
+         *
+         * @return             The next character, or -1 if the end of the input was reached.
+         * @throws IOException If an I/O error occurs.
+         */
+        private int peek() throws IOException {
+            if (position >= limit && !fill()) return -1;
+            return buffer[position];
+        }
+
+        /**
+         * Refills the buffer from the underlying character stream.
+         *
+         * @return             True if more characters were read, false if the end of the input was reached.
+         * @throws IOException If an I/O error occurs.
+         */
+        private boolean fill() throws IOException {
+            int count;
+            do {
+                count = reader.read(buffer, 0, buffer.length);
+            } while (count == 0);
+
+            position = 0;
+            limit = Math.max(count, 0);
+
+            return count > 0;
+        }
+
+        /**
+         * Closes the underlying character stream.
+         *
+         * @throws IOException If an I/O error occurs.
+         */
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+}
@@ -30,6 +30,10 @@ import com.wm.data.IDataFactory;
 import com.wm.data.IDataUtil;
 import com.wm.util.coder.IDataCodable;
 import permafrost.tundra.lang.BooleanHelper;
+import permafrost.tundra.math.BigDecimalHelper;
+import permafrost.tundra.math.BigIntegerHelper;
+import permafrost.tundra.time.DateTimeHelper;
+import permafrost.tundra.time.DurationHelper;
 
 /**
  * Defines a single criterion used by the IDataComparator class.
@@ -286,6 +290,75 @@ public class IDataComparisonCriterion implements IDataCodable {
         this.descending = descending;
     }
 
+    /**
+     * Converts the given value to the type of value being compared, so that it can be compared repeatedly without
+     * being parsed again.
+     *
+     * @param value The value to be converted.
+     * @return      The value converted to the type of value being compared.
+     */
+    public Object normalize(Object value) {
+        if (value == null) return null;
+
+        switch (type) {
+            case INTEGER:
+                return BigIntegerHelper.parse(value.toString());
+            case DECIMAL:
+                return BigDecimalHelper.parse(value.toString());
+            case DATETIME:
+                return DateTimeHelper.parse(value.toString(), pattern);
+            case DURATION:
+                return BigIntegerHelper.parse(DurationHelper.format(value.toString(), pattern, "milliseconds"));
+            case STRING:
+                return value.toString();
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Compares two values already converted to the type of value being compared by the normalize method.
+     *
+     * @param firstValue    The first value to be compared.
+     * @param secondValue   The second value to be compared.
+     * @return              A value less than zero if the first value comes before the second value, a value of zero
+     *                      if they are equal, or a value of greater than zero if the first value comes after the second
+     *                      value according to this criterion.
+     */
+    @SuppressWarnings("unchecked")
+    public int compare(Object firstValue, Object secondValue) {
+        int result;
+
+        if (firstValue == null) {
+            result = secondValue == null ? 0 : -1;
+        } else if (secondValue == null) {
+            result = 1;
+        } else if (firstValue instanceof Comparable && secondValue instanceof Comparable) {
+            try {
+                result = ((Comparable)firstValue).compareTo(secondValue);
+            } catch (Exception ex) {
+                result = compareObjectIdentity(firstValue, secondValue);
+            }
+        } else {
+            result = compareObjectIdentity(firstValue, secondValue);
+        }
+
+        if (descending) result = -Integer.signum(result);
+
+        return result;
+    }
+
+    /**
+     * Fallback comparison for incomparable objects using the Java object identity.
+     *
+     * @param firstValue    The first object to be compared.
+     * @param secondValue   The second object to be compared.
+     * @return              The result of the comparison.
+     */
+    private static int compareObjectIdentity(Object firstValue, Object secondValue) {
+        return firstValue == secondValue ? 0 : Integer.valueOf(System.identityHashCode(firstValue)).compareTo(System.identityHashCode(secondValue));
+    }
+
     /**
      * Returns an IDataComparisonCriterion given an key.
      *
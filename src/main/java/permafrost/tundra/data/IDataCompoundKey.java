@@ -0,0 +1,279 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataFactory;
+import com.wm.util.coder.IDataCodable;
+import permafrost.tundra.util.concurrent.ParallelHelper;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A compound key made up of the values associated with a list of comparison criteria in an IData document, where
+ * each value is extracted and converted to the type required by its criterion exactly once, so that the key can be
+ * compared repeatedly without the cost of looking up and parsing the values again.
+ */
+public class IDataCompoundKey implements Comparable<IDataCompoundKey>, IDataCodable {
+    /**
+     * The criteria which together form this compound key.
+     */
+    protected IDataComparisonCriterion[] criteria;
+    /**
+     * The values associated with each criterion, converted to the type required by the criterion.
+     */
+    protected Object[] values;
+    /**
+     * The IData document from which the values were extracted.
+     */
+    protected IData document;
+    /**
+     * The cached hash code of this compound key, calculated on first use.
+     */
+    private int hashCode;
+
+    /**
+     * Constructs a new compound key for the given comparison criteria and their associated values from the given
+     * IData document.
+     *
+     * @param criteria The comparison criteria which together form this compound key.
+     * @param document The IData document containing the values associated with the given criteria, or null in which
+     *                 case all values are null.
+     */
+    public IDataCompoundKey(IDataComparisonCriterion[] criteria, IData document) {
+        if (criteria == null) throw new NullPointerException("criteria must not be null");
+
+        this.criteria = criteria;
+        this.document = document;
+        this.values = new Object[criteria.length];
+
+        for (int i = 0; i < criteria.length; i++) {
+            values[i] = criteria[i].normalize(IDataHelper.get(document, criteria[i].getKey()));
+        }
+    }
+
+    /**
+     * Constructs a new compound key from values already converted to the types required by the given criteria.
+     *
+     * @param criteria The comparison criteria which together form this compound key.
+     * @param values   The converted values associated with each criterion.
+     * @param document The IData document from which the values were extracted, if any.
+     */
+    IDataCompoundKey(IDataComparisonCriterion[] criteria, Object[] values, IData document) {
+        if (criteria == null) throw new NullPointerException("criteria must not be null");
+        if (values == null) throw new NullPointerException("values must not be null");
+
+        this.criteria = criteria;
+        this.values = values;
+        this.document = document;
+    }
+
+    /**
+     * Returns the compound keys for the given comparison criteria from each item in the given IData[] array. The keys
+     * are extracted in parallel when the array is large enough to benefit.
+     *
+     * @param criteria The comparison criteria which together form each compound key.
+     * @param array    The IData documents from which keys are extracted.
+     * @return         The compound keys for each item in the given array, in the same order as the array.
+     */
+    public static IDataCompoundKey[] of(final IDataComparisonCriterion[] criteria, final IData[] array) {
+        if (criteria == null || array == null) return null;
+
+        final IDataCompoundKey[] keys = new IDataCompoundKey[array.length];
+        int[] boundaries = ParallelHelper.partition(array.length);
+
+        if (boundaries.length <= 2) {
+            extract(criteria, array, keys, 0, array.length);
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(boundaries.length - 1);
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                final int start = boundaries[i], end = boundaries[i + 1];
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        extract(criteria, array, keys, start, end);
+                        return null;
+                    }
+                });
+            }
+            ParallelHelper.invokeAll(tasks);
+        }
+
+        return keys;
+    }
+
+    /**
+     * Extracts the compound keys for the given range of the given IData[] array.
+     *
+     * @param criteria The comparison criteria which together form each compound key.
+     * @param array    The IData documents from which keys are extracted.
+     * @param keys     The array into which the extracted keys are written.
+     * @param start    The start of the range, inclusive.
+     * @param end      The end of the range, exclusive.
+     */
+    private static void extract(IDataComparisonCriterion[] criteria, IData[] array, IDataCompoundKey[] keys, int start, int end) {
+        for (int i = start; i < end; i++) {
+            keys[i] = new IDataCompoundKey(criteria, array[i]);
+        }
+    }
+
+    /**
+     * Returns the IData document from which the values of this compound key were extracted.
+     *
+     * @return The IData document from which the values of this compound key were extracted.
+     */
+    public IData getDocument() {
+        return document;
+    }
+
+    /**
+     * Returns the criteria which together form this compound key.
+     *
+     * @return The criteria which together form this compound key.
+     */
+    public IDataComparisonCriterion[] getCriteria() {
+        return criteria;
+    }
+
+    /**
+     * Returns the value of this compound key associated with the criterion at the given index, converted to the type
+     * required by the criterion.
+     *
+     * @param index The index of the criterion whose value is to be returned.
+     * @return      The converted value associated with the criterion at the given index.
+     */
+    public Object getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * Compares this compound key with another compound key.
+     *
+     * @param other The other key to be compared with.
+     * @return      0 if the two keys are equal, less than 0 if this key is less than the other key, greater than 0 if
+     *              this key is greater than the other key.
+     */
+    public int compareTo(IDataCompoundKey other) {
+        if (other == null) return 1;
+
+        int result = 0;
+        for (int i = 0; i < criteria.length && i < other.values.length && result == 0; i++) {
+            result = criteria[i].compare(values[i], other.values[i]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns true if this object is a compound key whose values compare as equal to the values of this compound key.
+     *
+     * @param other The object to compare for equality with.
+     * @return      True if this object is equal to the other object.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof IDataCompoundKey)) return false;
+
+        IDataCompoundKey key = (IDataCompoundKey)other;
+        return values.length == key.values.length && this.compareTo(key) == 0;
+    }
+
+    /**
+     * Returns a hash code for this compound key which is consistent with equals, so that values which compare as
+     * equal but are not equal according to their own equals method, such as decimals with different scales, hash to
+     * the same code.
+     *
+     * @return A hash code for this compound key.
+     */
+    @Override
+    public int hashCode() {
+        int result = hashCode;
+
+        if (result == 0) {
+            result = 1;
+            for (Object value : values) {
+                result = 31 * result + hashCode(value);
+            }
+            if (result == 0) result = 1;
+            hashCode = result;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns a hash code for the given value consistent with how it is compared by IDataComparisonCriterion.
+     *
+     * @param value The value to be hashed.
+     * @return      A hash code for the given value.
+     */
+    private static int hashCode(Object value) {
+        int result;
+
+        if (value == null) {
+            result = 0;
+        } else if (value instanceof BigDecimal) {
+            BigDecimal decimal = (BigDecimal)value;
+            result = decimal.signum() == 0 ? 0 : decimal.stripTrailingZeros().hashCode();
+        } else if (value instanceof Calendar) {
+            long millis = ((Calendar)value).getTimeInMillis();
+            result = (int)(millis ^ (millis >>> 32));
+        } else if (value instanceof Comparable) {
+            result = value.hashCode();
+        } else {
+            // incomparable values are compared by identity
+            result = System.identityHashCode(value);
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns an IData representation of this compound key, containing the original values associated with each
+     * criterion's key.
+     *
+     * @return An IData representation of this compound key.
+     */
+    public IData getIData() {
+        IData output = IDataFactory.create();
+        for (IDataComparisonCriterion criterion : criteria) {
+            IDataHelper.put(output, criterion.getKey(), IDataHelper.get(document, criterion.getKey()));
+        }
+        return output;
+    }
+
+    /**
+     * This method is not implemented.
+     *
+     * @param document                          Not used.
+     * @throws UnsupportedOperationException    as this method is not implemented.
+     */
+    public void setIData(IData document) {
+        throw new UnsupportedOperationException("setIData not implemented");
+    }
+}
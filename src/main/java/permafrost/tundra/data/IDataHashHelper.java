@@ -0,0 +1,400 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataPortable;
+import com.wm.util.Table;
+import com.wm.util.coder.IDataCodable;
+import com.wm.util.coder.ValuesCodable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A collection of convenience methods for calculating structural hashes of IData documents, which are 64-bit hashes
+ * of the ordered keys and values of a document and all its nested documents, consistent with BasicIDataComparator:
+ * documents which compare as equal have equal hashes, so documents with different hashes are known to be different
+ * without comparing them.
+ *
+ * The hash of a document is a polynomial over the hashes of its elements, which allows the hash of a sequence of
+ * elements to be composed from the hashes of its parts. PersistentIData uses this to cache the hashes of unchanged
+ * subtrees of elements between versions, so that rehashing a modified document only hashes what was modified.
+ */
+public final class IDataHashHelper {
+    /**
+     * The multiplier used to combine the hashes of consecutive elements.
+     */
+    static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Seed mixed into the hash of nested documents, to distinguish them from other values.
+     */
+    private static final long DOCUMENT_SEED = 0x2545F4914F6CDD1DL;
+
+    /**
+     * Seed mixed into the hash of document lists and arrays, to distinguish them from other values.
+     */
+    private static final long ARRAY_SEED = 0xD6E8FEB86659FD93L;
+
+    /**
+     * Disallow instantiation of this class.
+     */
+    private IDataHashHelper() {}
+
+    /**
+     * Returns the structural hash of the given IData document.
+     *
+     * @param document  An IData document.
+     * @return          The structural hash of the given IData document, or zero if the document is null.
+     */
+    public static long hash(IData document) {
+        return hash(document, null);
+    }
+
+    /**
+     * Returns the structural hash of the given IData[] document list.
+     *
+     * @param array     An IData[] document list.
+     * @return          The structural hash of the given IData[] document list, or zero if the list is null.
+     */
+    public static long hash(IData[] array) {
+        return hash((Object)array, null);
+    }
+
+    /**
+     * Returns the structural hash of the given value, where IData and IData[] compatible values are hashed by their
+     * content, arrays by their items, and other values by their hash code.
+     *
+     * @param value The value to be hashed.
+     * @return      The structural hash of the given value, or zero if the value is null.
+     */
+    public static long hash(Object value) {
+        return hash(value, null);
+    }
+
+    /**
+     * Returns true if the given IData documents are equal according to BasicIDataComparator. When both documents are
+     * PersistentIData objects their cached structural hashes are compared first, so that unequal documents are
+     * usually rejected in constant time.
+     *
+     * @param firstDocument     The first IData document to be compared.
+     * @param secondDocument    The second IData document to be compared.
+     * @return                  True if the given documents are equal.
+     */
+    public static boolean equal(IData firstDocument, IData secondDocument) {
+        if (firstDocument == secondDocument) return true;
+        if (firstDocument instanceof PersistentIData && secondDocument instanceof PersistentIData) {
+            if (hash(firstDocument) != hash(secondDocument)) return false;
+        }
+        return BasicIDataComparator.getInstance().compare(firstDocument, secondDocument) == 0;
+    }
+
+    /**
+     * Returns a new IData[] document list containing only the first occurrence of each distinct document in the given
+     * list, in the order in which they first appear, where documents are distinct according to BasicIDataComparator.
+     * Documents are bucketed by structural hash, so that only documents with equal hashes are compared.
+     *
+     * @param array An IData[] document list.
+     * @return      A new IData[] document list containing the distinct documents from the given list.
+     */
+    public static IData[] unique(IData[] array) {
+        if (array == null) return null;
+
+        Map<Object, Long> memo = new IdentityHashMap<Object, Long>();
+        Map<Long, List<IData>> buckets = new HashMap<Long, List<IData>>(array.length * 2);
+        List<IData> output = new ArrayList<IData>(array.length);
+
+        for (IData document : array) {
+            Long hash = hash(document, memo);
+            List<IData> bucket = buckets.get(hash);
+            boolean duplicate = false;
+
+            if (bucket == null) {
+                bucket = new ArrayList<IData>(1);
+                buckets.put(hash, bucket);
+            } else {
+                for (IData item : bucket) {
+                    if (BasicIDataComparator.getInstance().compare(item, document) == 0) {
+                        duplicate = true;
+                        break;
+                    }
+                }
+            }
+
+            if (!duplicate) {
+                bucket.add(document);
+                output.add(document);
+            }
+        }
+
+        return output.toArray(new IData[output.size()]);
+    }
+
+    /**
+     * Returns the fully-qualified keys of the values which differ between the given versions of a document. Nested
+     * documents are only descended into when their structural hashes differ, and the hash of each subtree is only
+     * calculated once. The nth occurrence of a repeated key is identified with a key index, for example "a(1)".
+     *
+     * @param previous  The previous version of the document.
+     * @param current   The current version of the document.
+     * @return          The keys whose values were added, removed or changed, in document order.
+     */
+    public static String[] changes(IData previous, IData current) {
+        List<String> changes = new ArrayList<String>();
+        Map<Object, Long> memo = new IdentityHashMap<Object, Long>();
+        if (hash(previous, memo) != hash(current, memo)) changes(previous, current, null, memo, changes);
+        return changes.toArray(new String[changes.size()]);
+    }
+
+    /**
+     * Adds the keys of the values which differ between the given versions of a document to the given list.
+     *
+     * @param previous  The previous version of the document.
+     * @param current   The current version of the document.
+     * @param prefix    The fully-qualified key of the given documents, or null for the root document.
+     * @param memo      The hashes of already hashed values.
+     * @param changes   The list the changed keys are added to.
+     */
+    private static void changes(IData previous, IData current, String prefix, Map<Object, Long> memo, List<String> changes) {
+        Map<String, Object> previousElements = elements(previous);
+        Map<String, Object> currentElements = elements(current);
+
+        for (Map.Entry<String, Object> entry : currentElements.entrySet()) {
+            String key = entry.getKey();
+            Object currentValue = entry.getValue();
+
+            if (!previousElements.containsKey(key)) {
+                changes.add(qualify(prefix, key));
+            } else {
+                Object previousValue = previousElements.get(key);
+                if (hash(previousValue, memo) != hash(currentValue, memo)) {
+                    if (isDocument(previousValue) && isDocument(currentValue)) {
+                        changes(IDataHelper.toIData(previousValue), IDataHelper.toIData(currentValue), qualify(prefix, key), memo, changes);
+                    } else {
+                        changes.add(qualify(prefix, key));
+                    }
+                }
+            }
+        }
+
+        for (String key : previousElements.keySet()) {
+            if (!currentElements.containsKey(key)) changes.add(qualify(prefix, key));
+        }
+    }
+
+    /**
+     * Returns the elements of the given document keyed by their key, with repeated keys given a key index.
+     *
+     * @param document  An IData document.
+     * @return          The elements of the given document.
+     */
+    private static Map<String, Object> elements(IData document) {
+        Map<String, Object> elements = new LinkedHashMap<String, Object>();
+
+        if (document != null) {
+            Map<String, Integer> occurrences = new HashMap<String, Integer>();
+            IDataCursor cursor = document.getCursor();
+            try {
+                while (cursor.next()) {
+                    String key = cursor.getKey();
+                    Integer occurrence = occurrences.get(key);
+                    occurrences.put(key, occurrence == null ? 1 : occurrence + 1);
+                    elements.put(occurrence == null ? key : key + "(" + occurrence + ")", cursor.getValue());
+                }
+            } finally {
+                cursor.destroy();
+            }
+        }
+
+        return elements;
+    }
+
+    /**
+     * Returns the given key qualified with the given prefix.
+     *
+     * @param prefix    The fully-qualified key of the parent document, or null for the root document.
+     * @param key       The key to be qualified.
+     * @return          The fully-qualified key.
+     */
+    private static String qualify(String prefix, String key) {
+        return prefix == null ? key : prefix + IDataPath.SEPARATOR + key;
+    }
+
+    /**
+     * Returns true if the given value is an IData compatible document.
+     *
+     * @param value The value to be checked.
+     * @return      True if the given value is an IData compatible document.
+     */
+    private static boolean isDocument(Object value) {
+        return value instanceof IData || value instanceof IDataCodable || value instanceof IDataPortable || value instanceof ValuesCodable;
+    }
+
+    /**
+     * Returns the structural hash of the given value.
+     *
+     * @param value The value to be hashed.
+     * @param memo  The hashes of already hashed documents and document lists, or null.
+     * @return      The structural hash of the given value.
+     */
+    private static long hash(Object value, Map<Object, Long> memo) {
+        if (value == null) return 0;
+
+        Long cached = memo == null ? null : memo.get(value);
+        if (cached != null) return cached;
+
+        long hash;
+        if (value instanceof IData[] || value instanceof Table || value instanceof IDataCodable[] || value instanceof IDataPortable[] || value instanceof ValuesCodable[]) {
+            IData[] array = IDataHelper.toIDataArray(value);
+            long sequence = 0;
+            for (IData item : array) {
+                sequence = combine(sequence, hash(item, memo));
+            }
+            hash = array(sequence, array.length);
+        } else if (value instanceof PersistentIData) {
+            hash = ((PersistentIData)value).getStructuralHash();
+        } else if (isDocument(value)) {
+            long sequence = 0;
+            IDataCursor cursor = IDataHelper.toIData(value).getCursor();
+            try {
+                while (cursor.next()) {
+                    sequence = combine(sequence, element(cursor.getKey(), hash(cursor.getValue(), memo)));
+                }
+            } finally {
+                cursor.destroy();
+            }
+            hash = document(sequence);
+        } else if (value instanceof Object[]) {
+            // items of arrays are compared by BasicArrayComparator as objects, so nested arrays are not descended into
+            Object[] array = (Object[])value;
+            long sequence = 0;
+            for (Object item : array) {
+                sequence = combine(sequence, leaf(item));
+            }
+            hash = array(sequence, array.length);
+        } else {
+            return leaf(value);
+        }
+
+        if (memo != null) memo.put(value, hash);
+        return hash;
+    }
+
+    /**
+     * Returns the hash of the given simple value, consistent with BasicObjectComparator.
+     *
+     * @param value The value to be hashed.
+     * @return      The hash of the given value.
+     */
+    static long leaf(Object value) {
+        int hash;
+        if (value == null) {
+            hash = 0;
+        } else if (value instanceof BigDecimal) {
+            // decimals with different scales compare as equal, so must hash equally
+            BigDecimal decimal = (BigDecimal)value;
+            hash = decimal.signum() == 0 ? 0 : decimal.stripTrailingZeros().hashCode();
+        } else if (value instanceof Calendar || value instanceof Date) {
+            // calendars and dates compare by instant regardless of time zone, so must hash by instant
+            long millis = value instanceof Calendar ? ((Calendar)value).getTimeInMillis() : ((Date)value).getTime();
+            hash = (int)(millis ^ (millis >>> 32));
+        } else {
+            hash = value.hashCode();
+        }
+        return mix(hash);
+    }
+
+    /**
+     * Returns the hash of a document element with the given key and value hash.
+     *
+     * @param key       The element's key.
+     * @param valueHash The hash of the element's value.
+     * @return          The hash of the element.
+     */
+    static long element(String key, long valueHash) {
+        long hash = 1125899906842597L;
+        if (key != null) {
+            for (int i = 0; i < key.length(); i++) {
+                hash = 31 * hash + key.charAt(i);
+            }
+        }
+        return mix(hash * MULTIPLIER + valueHash);
+    }
+
+    /**
+     * Returns the polynomial hash of a sequence extended with the given hash.
+     *
+     * @param sequence  The hash of the sequence.
+     * @param hash      The hash to be appended to the sequence.
+     * @return          The hash of the extended sequence.
+     */
+    static long combine(long sequence, long hash) {
+        return sequence * MULTIPLIER + hash;
+    }
+
+    /**
+     * Returns the hash of a document given the polynomial hash of its sequence of elements.
+     *
+     * @param sequence  The polynomial hash of the document's elements.
+     * @return          The hash of the document.
+     */
+    static long document(long sequence) {
+        return mix(sequence ^ DOCUMENT_SEED);
+    }
+
+    /**
+     * Returns the hash of an array given the polynomial hash of its items.
+     *
+     * @param sequence  The polynomial hash of the array's items.
+     * @param length    The length of the array.
+     * @return          The hash of the array.
+     */
+    static long array(long sequence, int length) {
+        return mix(sequence ^ ARRAY_SEED ^ length);
+    }
+
+    /**
+     * Returns the given value with its bits thoroughly mixed, using the MurmurHash3 finalizer.
+     *
+     * @param value The value to be mixed.
+     * @return      The mixed value.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
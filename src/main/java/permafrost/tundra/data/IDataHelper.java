@@ -33,29 +33,29 @@ import com.wm.data.IDataUtil;
 import com.wm.util.Table;
 import com.wm.util.coder.IDataCodable;
 import com.wm.util.coder.ValuesCodable;
-import org.w3c.dom.Node;
 import permafrost.tundra.flow.ConditionEvaluator;
 import permafrost.tundra.flow.variable.SubstitutionHelper;
 import permafrost.tundra.lang.ArrayHelper;
 import permafrost.tundra.lang.ObjectHelper;
 import permafrost.tundra.lang.StringHelper;
 import permafrost.tundra.time.DateTimeHelper;
-import permafrost.tundra.xml.dom.NodeHelper;
-import permafrost.tundra.xml.dom.Nodes;
-import permafrost.tundra.xml.xpath.XPathHelper;
+import permafrost.tundra.util.concurrent.ParallelHelper;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.namespace.NamespaceContext;
-import javax.xml.xpath.XPathExpression;
-import javax.xml.xpath.XPathExpressionException;
 
 /**
  * A collection of convenience methods for working with IData objects.
@@ -195,13 +195,39 @@ public final class IDataHelper {
         }
     }
 
+    /**
+     * Returns a lazy iterator over the leaf values that are instances of the given classes from the given document.
+     * The document is walked depth-first on demand, so iteration can be abandoned early without visiting the
+     * remainder of the document; abandoned iterators should be closed to release any cursors still held.
+     *
+     * @param document  The document to iterate the leaf values of.
+     * @param classes   Optional list of classes the returned values must be instances of.
+     * @return          An iterator over the leaf values of the given document and its children.
+     */
+    public static IDataLeafIterator iterateLeafValues(IData document, Class... classes) {
+        return IDataLeafIterator.of(document, classes);
+    }
+
+    /**
+     * Returns a lazy iterator over the leaf values that are instances of the given classes from the given document
+     * list. The document list is walked depth-first on demand, so iteration can be abandoned early without visiting
+     * the remainder of the document list; abandoned iterators should be closed to release any cursors still held.
+     *
+     * @param array     The document list to iterate the leaf values of.
+     * @param classes   Optional list of classes the returned values must be instances of.
+     * @return          An iterator over the leaf values of the given document list and its children.
+     */
+    public static IDataLeafIterator iterateLeafValues(IData[] array, Class... classes) {
+        return IDataLeafIterator.of(array, classes);
+    }
+
     /**
      * Determine if IData leaves/children should be recursed.
      *
      * @param classes The list of classes the leaves are required to be instances of.
      * @return        True if IData leaves should be recursed.
      */
-    private static boolean recurseIDataLeaves(Class ... classes) {
+    static boolean recurseIDataLeaves(Class ... classes) {
         boolean recurse = true;
 
         // if one of the requested classes is an IData compatible class, then we shouldn't recurse IData documents
@@ -444,80 +470,8 @@ public final class IDataHelper {
      * @return          The number of occurrences of the given key in the given IData document.
      */
     public static int size(IData document, String key, boolean literal) {
-        int size = 0;
-        if (document != null && key != null) {
-            IDataCursor cursor = document.getCursor();
-
-            if (cursor.first(key)) {
-                size++;
-                while (cursor.next(key)) size++;
-            } else if (IDataKey.isFullyQualified(key, literal)) {
-                size = size(document, IDataKey.of(key, literal));
-            }
-
-            cursor.destroy();
-        }
-        return size;
-    }
-
-    /**
-     * Returns the number of occurrences of the given fully-qualified key in the given IData document.
-     *
-     * @param document  An IData document.
-     * @param key       The parsed fully-qualified key whose occurrences are to be counted.
-     * @return          The number of occurrences of the given parsed fully-qualified key in the given IData document.
-     */
-    private static int size(IData document, IDataKey key) {
-        int size = 0;
-        if (document != null && key != null && key.size() > 0) {
-            IDataCursor cursor = document.getCursor();
-            IDataKey.Part keyPart = key.remove();
-
-            if (key.size() > 0) {
-                if (keyPart.hasArrayIndex()) {
-                    size = size(ArrayHelper.get(toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), key);
-                } else if (keyPart.hasKeyIndex()) {
-                    size = size(toIData(get(document, keyPart.getKey(), keyPart.getIndex())), key);
-                } else {
-                    size = size(toIData(IDataUtil.get(cursor, keyPart.getKey())), key);
-                }
-            } else {
-                if (keyPart.hasArrayIndex()) {
-                    Object[] array = IDataUtil.getObjectArray(cursor, keyPart.getKey());
-                    if (array != null && array.length > keyPart.getIndex()) {
-                        size = 1;
-                    }
-                } else if (keyPart.hasKeyIndex()) {
-                    size = size(document, keyPart.getKey(), keyPart.getIndex());
-                } else {
-                    while (cursor.next(keyPart.getKey())) size++;
-                }
-            }
-            cursor.destroy();
-        }
-        return size;
-    }
-
-    /**
-     * Returns the number of occurrences of the given nth key in the given IData document.
-     *
-     * @param document  An IData document.
-     * @param key       The key whose occurrence is to be counted.
-     * @param n         The nth occurrence to be counted.
-     * @return          The number of occurrences of the given nth key in the given IData document.
-     */
-    private static int size(IData document, String key, int n) {
-        int size = 0;
-
-        if (document != null && key != null && n >= 0) {
-            int i = 0;
-            IDataCursor cursor = document.getCursor();
-            while (cursor.next(key) && i++ < n) ;
-            if (i > n) size = 1;
-            cursor.destroy();
-        }
-
-        return size;
+        IDataPath path = IDataPath.of(key, literal);
+        return path == null ? 0 : path.size(document);
     }
 
     /**
@@ -541,7 +495,8 @@ public final class IDataHelper {
      * @return          True if the given key exists in the given IData document.
      */
     public static boolean exists(IData document, String key, boolean literal) {
-        return size(document, key, literal) > 0;
+        IDataPath path = IDataPath.of(key, literal);
+        return path != null && path.exists(document);
     }
 
     /**
@@ -565,9 +520,8 @@ public final class IDataHelper {
      * @return          The value that was associated with the given key.
      */
     public static Object remove(IData document, String key, boolean literal) {
-        Object value = get(document, key, literal);
-        drop(document, key, literal);
-        return value;
+        IDataPath path = IDataPath.of(key, literal);
+        return path == null ? null : path.remove(document);
     }
 
     /**
@@ -593,9 +547,8 @@ public final class IDataHelper {
      * @return          The values that were associated with the given key.
      */
     public static Object[] removeAll(IData document, String key, boolean literal) {
-        Object[] value = getAsArray(document, key, literal);
-        dropAll(document, key, literal);
-        return value;
+        IDataPath path = IDataPath.of(key, literal);
+        return path == null ? null : path.removeAll(document);
     }
 
     /**
@@ -616,9 +569,22 @@ public final class IDataHelper {
      * @return          A new IData document which is a copy of the given IData document.
      */
     public static IData duplicate(IData document, boolean recurse) {
+        return duplicate(document, recurse, false);
+    }
+
+    /**
+     * Returns a new IData document which is a copy of the given IData document.
+     *
+     * @param document  An IData document to be duplicated.
+     * @param recurse   When true, nested IData documents and IData[] document lists will also be duplicated.
+     * @param indexed   When true, the returned IData documents are implemented as IndexedIData objects, which
+     *                  support constant time key lookups, which is beneficial for large documents.
+     * @return          A new IData document which is a copy of the given IData document.
+     */
+    public static IData duplicate(IData document, boolean recurse, boolean indexed) {
         if (document == null) return null;
 
-        IData output = IDataFactory.create();
+        IData output = indexed ? IndexedIData.create() : IDataFactory.create();
         IDataCursor inputCursor = document.getCursor();
         IDataCursor outputCursor = output.getCursor();
 
@@ -628,9 +594,9 @@ public final class IDataHelper {
 
             if (recurse) {
                 if (value instanceof IData[] || value instanceof Table || value instanceof IDataCodable[] || value instanceof IDataPortable[] || value instanceof ValuesCodable[]) {
-                    value = duplicate(toIDataArray(value), recurse);
+                    value = duplicate(toIDataArray(value), recurse, indexed);
                 } else if (value instanceof IData || value instanceof IDataCodable || value instanceof IDataPortable || value instanceof ValuesCodable) {
-                    value = duplicate(toIData(value), recurse);
+                    value = duplicate(toIData(value), recurse, indexed);
                 }
             }
 
@@ -651,17 +617,69 @@ public final class IDataHelper {
      * @return          A new IData[] document list which is a copy of the given IData[] document list.
      */
     public static IData[] duplicate(IData[] array, boolean recurse) {
+        return duplicate(array, recurse, false);
+    }
+
+    /**
+     * Returns a new IData[] document list which is a copy of the given IData[] document list.
+     *
+     * @param array     An IData[] document list to be duplicated.
+     * @param recurse   When true, nested IData documents and IData[] document lists will also be duplicated.
+     * @param indexed   When true, the returned IData documents are implemented as IndexedIData objects, which
+     *                  support constant time key lookups, which is beneficial for large documents.
+     * @return          A new IData[] document list which is a copy of the given IData[] document list.
+     */
+    public static IData[] duplicate(IData[] array, boolean recurse, boolean indexed) {
         if (array == null) return null;
 
         IData[] output = new IData[array.length];
 
         for (int i = 0; i < array.length; i++) {
-            output[i] = duplicate(array[i], recurse);
+            output[i] = duplicate(array[i], recurse, indexed);
         }
 
         return output;
     }
 
+    /**
+     * Returns a new IData document which is a copy of the given IData document.
+     *
+     * @param document  An IData document to be duplicated.
+     * @param recurse   When true, nested IData documents and IData[] document lists will also be duplicated.
+     * @param indexed   When true, the returned IData documents are implemented as IndexedIData objects, which
+     *                  support constant time key lookups, which is beneficial for large documents.
+     * @param lazy      When true and recurse is true, a copy-on-write view of the given IData document is returned,
+     *                  where each document in the tree is only copied when it is first changed, or one of its
+     *                  nested documents is first accessed through the view, so the cost is proportional to the
+     *                  parts of the tree used rather than its size. Changes made via the view are never visible in
+     *                  the given document, however as nested documents are shared until accessed, the given
+     *                  document should not be changed while the view is in use.
+     * @return          A new IData document which is a copy of the given IData document.
+     */
+    public static IData duplicate(IData document, boolean recurse, boolean indexed, boolean lazy) {
+        if (document == null) return null;
+        if (recurse && lazy) return CopyOnWriteIDataMap.of(document, indexed);
+        return duplicate(document, recurse, indexed);
+    }
+
+    /**
+     * Returns a new IData[] document list which is a copy of the given IData[] document list.
+     *
+     * @param array     An IData[] document list to be duplicated.
+     * @param recurse   When true, nested IData documents and IData[] document lists will also be duplicated.
+     * @param indexed   When true, the returned IData documents are implemented as IndexedIData objects, which
+     *                  support constant time key lookups, which is beneficial for large documents.
+     * @param lazy      When true and recurse is true, each returned document is a copy-on-write view of the
+     *                  corresponding given document.
+     * @return          A new IData[] document list which is a copy of the given IData[] document list.
+     */
+    public static IData[] duplicate(IData[] array, boolean recurse, boolean indexed, boolean lazy) {
+        if (array == null) return null;
+        // copied to an IData[] so that any IData implementation can be stored in the returned array
+        if (recurse && lazy) return Arrays.copyOf(CopyOnWriteIDataMap.of(array, indexed), array.length, IData[].class);
+        return duplicate(array, recurse, indexed);
+    }
+
     /**
      * Removes the value with the given key from the given IData document.
      *
@@ -685,79 +703,8 @@ public final class IDataHelper {
      * @return         The given IData document.
      */
     public static IData drop(IData document, String key, boolean literal) {
-        if (document != null && key != null) {
-            IDataCursor cursor = document.getCursor();
-
-            if (cursor.first(key)) {
-                cursor.delete();
-            } else if (IDataKey.isFullyQualified(key, literal)) {
-                drop(document, IDataKey.of(key, literal));
-            }
-
-            cursor.destroy();
-        }
-        return document;
-    }
-
-    /**
-     * Removes the value with the given key from the given IData document.
-     *
-     * @param document An IData document.
-     * @param key      A fully-qualified key identifying the value to be removed from the given IData document.
-     * @return         The given IData document.
-     */
-    private static IData drop(IData document, IDataKey key) {
-        if (document != null && key != null && key.size() > 0) {
-            IDataCursor cursor = document.getCursor();
-            IDataKey.Part keyPart = key.remove();
-
-            if (key.size() > 0) {
-                if (keyPart.hasArrayIndex()) {
-                    drop(ArrayHelper.get(toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), key);
-                } else if (keyPart.hasKeyIndex()) {
-                    drop(toIData(get(document, keyPart.getKey(), keyPart.getIndex())), key);
-                } else {
-                    Object value = IDataUtil.get(cursor, keyPart.getKey());
-                    IData[] array = toIDataArray(value);
-                    if (array != null) {
-                        // if we are referencing an IData[], drop the key from all items in the array
-                        for (IData item : array) {
-                            drop(item, key.clone());
-                        }
-                    } else {
-                        drop(toIData(value), key);
-                    }
-                }
-            } else {
-                if (keyPart.hasArrayIndex()) {
-                    IDataUtil.put(cursor, keyPart.getKey(), ArrayHelper.drop(IDataUtil.getObjectArray(cursor, keyPart.getKey()), keyPart.getIndex()));
-                } else if (keyPart.hasKeyIndex()) {
-                    drop(document, keyPart.getKey(), keyPart.getIndex());
-                } else {
-                    IDataUtil.remove(cursor, keyPart.getKey());
-                }
-            }
-            cursor.destroy();
-        }
-        return document;
-    }
-
-    /**
-     * Removes the element with the given nth key from the given IData document.
-     *
-     * @param document The IData document to remove the key value pair from.
-     * @param key      The key to be removed.
-     * @param n        Determines which occurrence of the key to remove.
-     */
-    private static void drop(IData document, String key, int n) {
-        if (document == null || key == null || n < 0) return;
-
-        int i = 0;
-
-        IDataCursor cursor = document.getCursor();
-        while (cursor.next(key) && i++ < n) ;
-        if (i > n) cursor.delete();
-        cursor.destroy();
+        IDataPath path = IDataPath.of(key, literal);
+        return path == null ? document : path.drop(document);
     }
 
     /**
@@ -781,56 +728,8 @@ public final class IDataHelper {
      * @return          The given IData document, to allow for method chaining.
      */
     public static IData dropAll(IData document, String key, boolean literal) {
-        if (document != null && key != null) {
-            IDataCursor cursor = document.getCursor();
-
-            if (cursor.next(key)) {
-                do {
-                    cursor.delete();
-                } while (cursor.next(key));
-            } else if (IDataKey.isFullyQualified(key, literal)) {
-                dropAll(document, IDataKey.of(key, literal));
-            }
-
-            cursor.destroy();
-        }
-        return document;
-    }
-
-    /**
-     * Removes all occurrences of the given key from the given IData document.
-     *
-     * @param document  An IData document.
-     * @param key       A fully-qualified key identifying the values to be removed from the given IData document.
-     * @return          The given IData document.
-     */
-    private static IData dropAll(IData document, IDataKey key) {
-        if (document != null && key != null && key.size() > 0) {
-            IDataCursor cursor = document.getCursor();
-            IDataKey.Part keyPart = key.remove();
-
-            if (key.size() > 0) {
-                if (keyPart.hasArrayIndex()) {
-                    dropAll(ArrayHelper.get(toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), key);
-                } else if (keyPart.hasKeyIndex()) {
-                    dropAll(toIData(get(document, keyPart.getKey(), keyPart.getIndex())), key);
-                } else {
-                    dropAll(toIData(IDataUtil.get(cursor, keyPart.getKey())), key);
-                }
-            } else {
-                if (keyPart.hasArrayIndex()) {
-                    IDataUtil.put(cursor, keyPart.getKey(), ArrayHelper.drop(IDataUtil.getObjectArray(cursor, keyPart.getKey()), keyPart.getIndex()));
-                } else if (keyPart.hasKeyIndex()) {
-                    drop(document, keyPart.getKey(), keyPart.getIndex());
-                } else {
-                    while (cursor.next(keyPart.getKey())) {
-                        cursor.delete();
-                    }
-                }
-            }
-            cursor.destroy();
-        }
-        return document;
+        IDataPath path = IDataPath.of(key, literal);
+        return path == null ? document : path.dropAll(document);
     }
 
     /**
@@ -904,7 +803,7 @@ public final class IDataHelper {
     public static IData amend(IData document, IData[] amendments, IData scope) throws ServiceException {
         if (amendments == null) return document;
 
-        IData output = duplicate(document);
+        IDataBatch batch = new IDataBatch();
 
         for (int i = 0; i < amendments.length; i++) {
             if (amendments[i] != null) {
@@ -917,13 +816,14 @@ public final class IDataHelper {
                 key = SubstitutionHelper.substitute(key, scope);
                 value = SubstitutionHelper.substitute(value, scope);
 
-                if ((condition == null) || ConditionEvaluator.evaluate(condition, scope)) {
-                    output = IDataHelper.put(output, key, value);
+                if (key != null && ((condition == null) || ConditionEvaluator.evaluate(condition, scope))) {
+                    batch.put(key, value);
                 }
             }
         }
 
-        return output;
+        IData output = duplicate(document);
+        return batch.size() == 0 ? output : batch.apply(output).getDocument();
     }
 
     /**
@@ -1410,30 +1310,27 @@ public final class IDataHelper {
      * @return      A new normalized version of the given Object.
      */
     private static Object normalize(Object value) {
-        if (value instanceof Table) {
-            value = normalize((Table)value);
-        } else if (value instanceof IDataCodable[]) {
-            value = normalize((IDataCodable[])value);
-        } else if (value instanceof IDataPortable[]) {
-            value = normalize((IDataPortable[])value);
-        } else if (value instanceof ValuesCodable[]) {
-            value = normalize((ValuesCodable[])value);
+        return normalize(value, false);
+    }
+
+    /**
+     * Normalizes the given Object.
+     *
+     * @param value     An Object to be normalized.
+     * @param indexed   When true, normalized IData documents are implemented as IndexedIData objects.
+     * @return          A new normalized version of the given Object.
+     */
+    private static Object normalize(Object value, boolean indexed) {
+        if (value instanceof Table || value instanceof IDataCodable[] || value instanceof IDataPortable[] || value instanceof ValuesCodable[] || value instanceof Map[]) {
+            value = normalize(toIDataArray(value), indexed);
         } else if (value instanceof Collection) {
-            value = normalize((Collection)value);
-        } else if (value instanceof Map[]) {
-            value = normalize((Map[]) value);
+            value = normalize((Collection)value, indexed);
         } else if (value instanceof IData[]) {
-            value = normalize((IData[])value);
-        } else if (value instanceof IDataCodable) {
-            value = normalize((IDataCodable)value);
-        } else if (value instanceof IDataPortable) {
-            value = normalize((IDataPortable)value);
-        } else if (value instanceof ValuesCodable) {
-            value = normalize((ValuesCodable)value);
-        } else if (value instanceof Map) {
-            value = normalize((Map)value);
+            value = normalize((IData[])value, indexed);
+        } else if (value instanceof IDataCodable || value instanceof IDataPortable || value instanceof ValuesCodable || value instanceof Map) {
+            value = normalize(toIData(value), indexed);
         } else if (value instanceof IData) {
-            value = normalize((IData)value);
+            value = normalize((IData)value, indexed);
         }
 
         return value;
@@ -1442,11 +1339,12 @@ public final class IDataHelper {
     /**
      * Normalizes the given Object[].
      *
-     * @param array The Object[] to be normalized.
-     * @return      Normalized version of the Object[].
+     * @param array     The Object[] to be normalized.
+     * @param indexed   When true, normalized IData documents are implemented as IndexedIData objects.
+     * @return          Normalized version of the Object[].
      */
-    private static Object[] normalize(Object[] array) {
-        return (Object[])normalize((Object)ArrayHelper.normalize(array));
+    private static Object[] normalize(Object[] array, boolean indexed) {
+        return (Object[])normalize((Object)ArrayHelper.normalize(array), indexed);
     }
 
     /**
@@ -1457,6 +1355,19 @@ public final class IDataHelper {
      * @return          A new normalized version of the given IData document.
      */
     public static IData normalize(IData document) {
+        return normalize(document, false);
+    }
+
+    /**
+     * Returns a new IData document, where all nested IData and IData[] objects are implemented with the same class, and
+     * all fully-qualified keys are replaced with their representative nested structure.
+     *
+     * @param document  An IData document to be normalized.
+     * @param indexed   When true, the returned IData documents are implemented as IndexedIData objects, which
+     *                  support constant time key lookups, which is beneficial for large documents.
+     * @return          A new normalized version of the given IData document.
+     */
+    public static IData normalize(IData document, boolean indexed) {
         if (document == null) return null;
 
         // support normalizing TN FixedData objects such as document types, which are both IData and IDataCodable
@@ -1468,16 +1379,16 @@ public final class IDataHelper {
             document = normalize((IDataPortable)document);
         }
 
-        IData output = IDataFactory.create();
+        IData output = indexed ? IndexedIData.create() : IDataFactory.create();
         IDataCursor inputCursor = document.getCursor();
         IDataCursor outputCursor = output.getCursor();
         boolean outputCursorDirty = false;
 
         while(inputCursor.next()) {
             String key = inputCursor.getKey();
-            Object value = normalize(inputCursor.getValue());
+            Object value = normalize(inputCursor.getValue(), indexed);
 
-            if (IDataKey.isFullyQualified(key)) {
+            if (IDataPath.isFullyQualified(key, false)) {
                 // normalize fully-qualified keys by using IDataHelper.put() rather than IDataUtil.put()
                 put(output, key, value);
                 outputCursorDirty = true;
@@ -1501,24 +1412,15 @@ public final class IDataHelper {
         return output;
     }
 
-    /**
-     * Converts a java.util.Map to an IData object.
-     *
-     * @param map   A java.util.Map to be converted to an IData object.
-     * @return      An IData representation of the given java.util.Map object.
-     */
-    private static IData normalize(Map map) {
-        return normalize(toIData(map));
-    }
-
     /**
      * Normalizes a java.util.Collection to an Object[].
      *
      * @param collection    A java.util.Collection to be converted to an Object[].
+     * @param indexed       When true, normalized IData documents are implemented as IndexedIData objects.
      * @return              An Object[] representation of the given java.util.Collection object.
      */
-    private static Object[] normalize(Collection collection) {
-        return normalize(ArrayHelper.toArray(collection));
+    private static Object[] normalize(Collection collection, boolean indexed) {
+        return normalize(ArrayHelper.toArray(collection), indexed);
     }
 
     /**
@@ -1592,11 +1494,24 @@ public final class IDataHelper {
      * @return      A new normalized version of the given IData[] document list.
      */
     public static IData[] normalize(IData[] array) {
+        return normalize(array, false);
+    }
+
+    /**
+     * Normalizes an IData[] where all IData objects are implemented with the same class, and all fully-qualified keys
+     * are replaced with their representative nested structure.
+     *
+     * @param array     An IData[] document list to be normalized.
+     * @param indexed   When true, the returned IData documents are implemented as IndexedIData objects, which
+     *                  support constant time key lookups, which is beneficial for large documents.
+     * @return          A new normalized version of the given IData[] document list.
+     */
+    public static IData[] normalize(IData[] array, boolean indexed) {
         if (array == null) return null;
 
         IData[] output = new IData[array.length];
         for (int i = 0; i < array.length; i++) {
-            output[i] = normalize(array[i]);
+            output[i] = normalize(array[i], indexed);
         }
 
         return output;
@@ -1693,6 +1608,19 @@ public final class IDataHelper {
         return list.size() == 0 ? null : ArrayHelper.normalize(list);
     }
 
+    /**
+     * Returns a lazy iterator over the values associated with the given keys, where any multi-dimensional array
+     * values are flattened on demand rather than copied into a new array.
+     *
+     * @param document      The IData document which contains the values to be flattened.
+     * @param includeNulls  If true null values will be returned by the iterator.
+     * @param keys          One or more fully-qualified keys identifying the values to be flattened.
+     * @return              An iterator over the flattened values associated with the given keys.
+     */
+    public static IDataLeafIterator iterateFlattened(IData document, boolean includeNulls, String... keys) {
+        return IDataLeafIterator.flatten(document, includeNulls, keys);
+    }
+
     /**
      * Returns the value associated with the given key from the given IData document.
      *
@@ -1979,168 +1907,10 @@ public final class IDataHelper {
      * @param <T>               The type of value to be returned.
      * @return                  The value associated with the given key in the given IData document.
      */
-    @SuppressWarnings("unchecked")
     public static <T> T get(IData pipeline, IData scope, String key, boolean literal, NamespaceContext namespaceContext, Class<T> klass) {
         if (klass == null) throw new NullPointerException("class must not be null");
-        if (key == null) return null;
-
-        Object value = null;
-        IDataCursor cursor = null;
-
-        try {
-            if (scope != null) cursor = scope.getCursor();
-
-            // try finding a value that matches the literal key, and if not found try finding a value
-            // associated with the leaf key if the key is considered fully-qualified
-            if (scope != null && cursor != null && cursor.first(key)) {
-                value = cursor.getValue();
-            } else if (pipeline != null && IDataKey.isAbsolute(key, literal)) {
-                value = get(null, pipeline, key.substring(1), literal, namespaceContext, klass);
-            } else if (scope != null && IDataKey.isFullyQualified(key, literal)) {
-                // support resolving XPath expressions against nodes
-                Matcher matcher = KEY_NODE_XPATH_REGULAR_EXPRESSION_PATTERN.matcher(key);
-                if (matcher.matches()) {
-                    String variable = matcher.group(1);
-                    String expression = matcher.group(2);
-
-                    Object node = get(pipeline, scope, variable, true);
-
-                    if (node instanceof Node) {
-                        try {
-                            XPathExpression compiledExpression = XPathHelper.compile(expression, namespaceContext);
-                            Nodes nodes = XPathHelper.get((Node)node, compiledExpression);
-
-                            if (nodes.size() > 0) {
-                                value = NodeHelper.getValue(nodes.get(0));
-                            }
-                        } catch (XPathExpressionException ex) {
-                            // do nothing, assume a normal IData fully-qualified key was specified rather than an XPath expression
-                        }
-                    } else {
-                        value = get(scope, IDataKey.of(key, literal), klass);
-                    }
-                } else {
-                    value = get(scope, IDataKey.of(key, literal), klass);
-                }
-            }
-        } finally {
-            if (cursor != null) cursor.destroy();
-        }
-
-        return klass.isInstance(value) ? (T)value : null;
-    }
-
-    /**
-     * Returns the value associated with the given fully-qualified key from the given IData document.
-     *
-     * @param document An IData document.
-     * @param key      A fully-qualified key identifying the value in the given IData document to be returned.
-     * @return         The value associated with the given key in the given IData document.
-     */
-    private static Object get(IData document, IDataKey key) {
-        return get(document, key, Object.class);
-    }
-
-    /**
-     * Returns the value associated with the given fully-qualified key from the given IData document.
-     *
-     * @param document An IData document.
-     * @param key      A fully-qualified key identifying the value in the given IData document to be returned.
-     * @param klass     The class of the value to be returned.
-     * @param <T>       The type of value to be returned.
-     * @return         The value associated with the given key in the given IData document.
-     */
-    @SuppressWarnings("unchecked")
-    private static <T> T get(IData document, IDataKey key, Class<T> klass) {
-        if (klass == null) throw new NullPointerException("class must not be null");
-
-        Object value = null;
-
-        if (document != null && key != null && key.size() > 0) {
-            IDataCursor cursor = document.getCursor();
-            IDataKey.Part keyPart = key.remove();
-
-            if (key.size() > 0) {
-                if (keyPart.hasArrayIndex()) {
-                    value = get(ArrayHelper.get(toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), key, klass);
-                } else if (keyPart.hasKeyIndex()) {
-                    value = get(toIData(get(document, keyPart.getKey(), keyPart.getIndex())), key, klass);
-                } else {
-                    Object object = IDataUtil.get(cursor, keyPart.getKey());
-                    IData parent = toIData(object);
-                    if (parent != null) {
-                        value = get(parent, key, klass);
-                    } else {
-                        IData[] array = toIDataArray(object);
-                        if (array != null) {
-                            List<Object> values = new ArrayList<Object>(array.length);
-                            // if we are referencing an IData[], create a new array of values from the individual values in each IData
-                            for (IData item : array) {
-                                values.add(get(item, key.clone(), klass));
-                            }
-                            value = ArrayHelper.normalize(values);
-                        }
-                    }
-                }
-            } else {
-                if (keyPart.hasArrayIndex()) {
-                    value = IDataUtil.get(cursor, keyPart.getKey());
-                    if (value != null) {
-                        if (value instanceof Object[] || value instanceof Table) {
-                            Object[] array = value instanceof Object[] ? (Object[])value : ((Table)value).getValues();
-                            value = ArrayHelper.get(array, keyPart.getIndex());
-                        } else {
-                            value = null;
-                        }
-                    }
-                } else if (keyPart.hasKeyIndex()) {
-                    value = get(document, keyPart.getKey(), keyPart.getIndex(), klass);
-                } else {
-                    value = IDataUtil.get(cursor, keyPart.getKey());
-                }
-            }
-
-            cursor.destroy();
-        }
-
-        return klass.isInstance(value) ? (T)value : null;
-    }
-
-    /**
-     * Returns the nth value associated with the given key.
-     *
-     * @param document  The IData document to return the value from.
-     * @param key       The key whose associated value is to be returned.
-     * @param n         Determines which occurrence of the key to return the value for.
-     * @return          The value associated with the nth occurrence of the given key in the given IData document.
-     */
-    private static Object get(IData document, String key, int n) {
-        return get(document, key, n, Object.class);
-    }
-
-    /**
-     *
-     * @param document  The IData document to return the value from.
-     * @param key       The key whose associated value is to be returned.
-     * @param n         Determines which occurrence of the key to return the value for.
-     * @param klass     The class of the value to be returned.
-     * @param <T>       The type of value to be returned.
-     * @return          The value associated with the nth occurrence of the given key in the given IData document.
-     */
-    @SuppressWarnings("unchecked")
-    private static <T> T get(IData document, String key, int n, Class<T> klass) {
-        if (klass == null) throw new NullPointerException("class must not be null");
-        if (document == null || key == null || n < 0) return null;
-
-        Object value = null;
-        int i = 0;
-
-        IDataCursor cursor = document.getCursor();
-        while (cursor.next(key) && i++ < n) ;
-        if (i > n) value = cursor.getValue();
-        cursor.destroy();
-
-        return klass.isInstance(value) ? (T)value : null;
+        IDataPath path = IDataPath.of(key, literal);
+        return path == null ? null : path.get(pipeline, scope, namespaceContext, klass);
     }
 
 
@@ -2167,77 +1937,8 @@ public final class IDataHelper {
      * @return          The value associated with the given key in the given IData document as an array.
      */
     public static Object[] getAsArray(IData document, String key, boolean literal) {
-        if (document == null || key == null) return null;
-
-        Object[] output = null;
-        IDataCursor cursor = document.getCursor();
-
-        // try finding a value that matches the literal key, and if not found try finding a value
-        // associated with the leaf key if the key is considered fully-qualified
-        if (cursor.next(key)) {
-            List<Object> list = new ArrayList<Object>();
-            do {
-                list.addAll(ObjectHelper.listify(cursor.getValue()));
-            } while (cursor.next(key));
-            output = ArrayHelper.toArray(list);
-        } else if (IDataKey.isFullyQualified(key, literal)) {
-            output = getAsArray(document, IDataKey.of(key, literal));
-        }
-
-        cursor.destroy();
-
-        return output;
-    }
-
-    /**
-     * Returns the value associated with the given fully-qualified key from the given IData document as an array.
-     *
-     * @param document  An IData document.
-     * @param key       A fully-qualified key identifying the value in the given IData document to be returned.
-     * @return          The value associated with the given key in the given IData document as an array.
-     */
-    private static Object[] getAsArray(IData document, IDataKey key) {
-        Object[] output = null;
-
-        if (document != null && key != null && key.size() > 0) {
-            IDataCursor cursor = document.getCursor();
-            IDataKey.Part keyPart = key.remove();
-
-            if (key.size() > 0) {
-                if (keyPart.hasArrayIndex()) {
-                    output = getAsArray(ArrayHelper.get(toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), key);
-                } else if (keyPart.hasKeyIndex()) {
-                    output = getAsArray(toIData(get(document, keyPart.getKey(), keyPart.getIndex())), key);
-                } else {
-                    output = getAsArray(IDataUtil.getIData(cursor, keyPart.getKey()), key);
-                }
-            } else {
-                List<Object> list = new ArrayList<Object>();
-                if (keyPart.hasArrayIndex()) {
-                    Object value = IDataUtil.get(cursor, keyPart.getKey());
-                    if (value != null) {
-                        if (value instanceof Object[] || value instanceof Table) {
-                            Object[] array = value instanceof Object[] ? (Object[])value : ((Table)value).getValues();
-                            value = ArrayHelper.get(array, keyPart.getIndex());
-                        } else {
-                            value = null;
-                        }
-                    }
-                    list.addAll(ObjectHelper.listify(value));
-                } else if (keyPart.hasKeyIndex()) {
-                    list.addAll(ObjectHelper.listify(get(document, keyPart.getKey(), keyPart.getIndex())));
-                } else {
-                    while (cursor.next(keyPart.getKey())) {
-                        list.addAll(ObjectHelper.listify(cursor.getValue()));
-                    }
-                }
-                output = ArrayHelper.toArray(list);
-            }
-
-            cursor.destroy();
-        }
-
-        return output;
+        IDataPath path = IDataPath.of(key, literal);
+        return path == null ? null : path.getAsArray(document);
     }
 
     /**
@@ -2282,88 +1983,8 @@ public final class IDataHelper {
      * @return              The input IData document with the value set.
      */
     public static IData put(IData document, String key, Object value, boolean literal, boolean includeNull) {
-        return put(document, IDataKey.of(key, literal), value, includeNull);
-    }
-
-    /**
-     * Sets the value associated with the given key in the given IData document. Note that this method mutates the given
-     * IData document in place.
-     *
-     * @param document      An IData document.
-     * @param key           A fully-qualified key identifying the value to be set.
-     * @param value         The value to be set.
-     * @param includeNull   When true the value is set even when null, otherwise the value is only set when it is
-     *                      not null.
-     * @return              The input IData document with the value set.
-     */
-    private static IData put(IData document, IDataKey key, Object value, boolean includeNull) {
-        if (!includeNull && value == null) return document;
-
-        if (key != null && key.size() > 0) {
-            if (document == null) document = IDataFactory.create();
-
-            IDataCursor cursor = document.getCursor();
-            IDataKey.Part keyPart = key.remove();
-
-            if (key.size() > 0) {
-                if (keyPart.hasArrayIndex()) {
-                    IData[] array = IDataUtil.getIDataArray(cursor, keyPart.getKey());
-                    IData child = null;
-                    try {
-                        child = ArrayHelper.get(array, keyPart.getIndex());
-                    } catch(ArrayIndexOutOfBoundsException ex) {
-                        // ignore exception
-                    }
-                    value = ArrayHelper.put(array, put(child, key, value, includeNull), keyPart.getIndex(), IData.class);
-                } else if (keyPart.hasKeyIndex()) {
-                    value = put(toIData(get(document, keyPart.getKey(), keyPart.getIndex())), key, value, includeNull);
-                } else {
-                    value = put(IDataUtil.getIData(cursor, keyPart.getKey()), key, value, includeNull);
-                }
-            } else if (keyPart.hasArrayIndex()) {
-                Class klass = Object.class;
-                if (value != null) {
-                    if (value instanceof String) {
-                        klass = String.class;
-                    } else if (value instanceof IData) {
-                        klass = IData.class;
-                    }
-                }
-                value = ArrayHelper.put(IDataUtil.getObjectArray(cursor, keyPart.getKey()), value, keyPart.getIndex(), klass);
-            }
-
-            if (keyPart.hasKeyIndex()) {
-                put(document, keyPart.getKey(), keyPart.getIndex(), value);
-            } else {
-                IDataUtil.put(cursor, keyPart.getKey(), value);
-            }
-            cursor.destroy();
-        }
-
-        return document;
-    }
-
-    /**
-     * Sets the value associated with the given nth key in the given IData document. Note that this method mutates the
-     * given IData document in place.
-     *
-     * @param document  The IData document to set the key's associated value in.
-     * @param key       The key whose value is to be set.
-     * @param n         Determines which occurrence of the key to set the value for.
-     * @param value     The value to be set.
-     * @return          The IData document with the given nth key set to the given value.
-     */
-    private static IData put(IData document, String key, int n, Object value) {
-        if (document == null || key == null || n < 0) return null;
-
-        IDataCursor cursor = document.getCursor();
-        for (int i = 0; i < n; i++) {
-            if (!cursor.next(key)) cursor.insertAfter(key, null);
-        }
-        cursor.insertAfter(key, value);
-        cursor.destroy();
-
-        return document;
+        IDataPath path = IDataPath.of(key, literal);
+        return path == null ? document : path.put(document, value, includeNull);
     }
 
     /**
@@ -2770,6 +2391,18 @@ public final class IDataHelper {
         return keys.toArray(new String[keys.size()]);
     }
 
+    /**
+     * Returns a lazy iterator over the union set of keys present in the items in the given IData[] document list that
+     * match the given regular expression pattern. Each key is returned once, the first time it is encountered.
+     *
+     * @param array     An IData[] to iterate the union set of keys from.
+     * @param pattern   Optional regular expression pattern the returned keys must match.
+     * @return          An iterator over the union set of keys from the given IData[].
+     */
+    public static Iterator<String> iterateKeys(IData[] array, Pattern pattern) {
+        return new KeyIterator(array, pattern);
+    }
+
     /**
      * Converts an IData document to an IData[] document list with each item representing each key value tuple from the
      * given document.
@@ -3113,7 +2746,9 @@ public final class IDataHelper {
     }
 
     /**
-     * Returns a new IData[] array with all elements sorted according to the specified criteria.
+     * Returns a new IData[] array with all elements sorted according to the specified criteria. The values associated
+     * with the criteria are extracted and converted once per element, rather than once per comparison, and the sort
+     * is stable and performed in parallel for large arrays.
      *
      * @param array     An IData[] array to be sorted.
      * @param criteria  One or more sort criteria.
@@ -3123,7 +2758,13 @@ public final class IDataHelper {
         if (array == null) return null;
 
         if (criteria != null && criteria.length > 0) {
-            array = ArrayHelper.sort(array, new CriteriaBasedIDataComparator(criteria));
+            IDataCompoundKey[] keys = IDataCompoundKey.of(criteria, array);
+            ParallelHelper.sort(keys, null);
+
+            array = Arrays.copyOf(array, array.length);
+            for (int i = 0; i < keys.length; i++) {
+                array[i] = keys[i].getDocument();
+            }
         } else {
             array = Arrays.copyOf(array, array.length);
         }
@@ -3174,6 +2815,19 @@ public final class IDataHelper {
         return ArrayHelper.normalize(list);
     }
 
+    /**
+     * Returns a lazy iterator over the values associated with the given key from each item in the given IData[]
+     * document list, where each value is only resolved when it is requested.
+     *
+     * @param array         An IData[] array to iterate values from.
+     * @param key           A fully-qualified key identifying the values to return.
+     * @param defaultValue  The default value returned if the key does not exist.
+     * @return              An iterator over the values associated with the given key from each item in the array.
+     */
+    public static Iterator<Object> iterateValues(IData[] array, String key, Object defaultValue) {
+        return new ValueIterator(array, key, defaultValue);
+    }
+
     /**
      * Converts all the keys in the given IData document to lower case.
      *
@@ -3248,14 +2902,27 @@ public final class IDataHelper {
     }
 
     /**
-     * Groups the given IData[] by the given keys.
+     * Groups the given IData[] by the given keys, with groups sorted by their key values.
      *
      * @param array The IData[] to be grouped.
      * @param keys  The keys to group items by.
      * @return      The grouped IData[].
      */
     public static IData[] group(IData[] array, String... keys) {
-        Map<CompoundKey, List<IData>> groups = group(array, IDataComparisonCriterion.of(keys));
+        return group(array, true, keys);
+    }
+
+    /**
+     * Groups the given IData[] by the given keys.
+     *
+     * @param array     The IData[] to be grouped.
+     * @param sorted    If true, groups are sorted by their key values, otherwise groups are in the order in which their
+     *                  first item appears in the given IData[].
+     * @param keys      The keys to group items by.
+     * @return          The grouped IData[].
+     */
+    public static IData[] group(IData[] array, boolean sorted, String... keys) {
+        Map<IDataCompoundKey, List<IData>> groups = group(array, IDataComparisonCriterion.of(keys), sorted);
         List<IData> result;
 
         if (groups.size() == 0) {
@@ -3271,8 +2938,8 @@ public final class IDataHelper {
         } else {
             result = new ArrayList<IData>(groups.size());
 
-            for (Map.Entry<CompoundKey, List<IData>> entry : groups.entrySet()) {
-                CompoundKey key = entry.getKey();
+            for (Map.Entry<IDataCompoundKey, List<IData>> entry : groups.entrySet()) {
+                IDataCompoundKey key = entry.getKey();
                 List<IData> items = entry.getValue();
 
                 IData group = IDataFactory.create();
@@ -3289,83 +2956,275 @@ public final class IDataHelper {
     }
 
     /**
-     * Performs a multi-level grouping of the given IData[] by the given criteria.
+     * Performs a multi-level grouping of the given IData[] by the given criteria, with groups sorted by their key
+     * values.
      *
      * @param array     The IData[] to be grouped.
      * @param criteria  The multi-level grouping criteria.
      * @return          The grouped IData[].
      */
     public static IData[] group(IData[] array, IData criteria) {
+        return group(array, criteria, true);
+    }
+
+    /**
+     * Performs a multi-level grouping of the given IData[] by the given criteria. The keys for every level of the
+     * grouping are extracted from each item once up front, and then reused when grouping each nested level.
+     *
+     * @param array     The IData[] to be grouped.
+     * @param criteria  The multi-level grouping criteria.
+     * @param sorted    If true, groups are sorted by their key values, otherwise groups are in the order in which their
+     *                  first item appears in the given IData[].
+     * @return          The grouped IData[].
+     */
+    public static IData[] group(IData[] array, IData criteria, boolean sorted) {
         if (array == null) return null;
 
-        List<IData> result;
+        IData[] result;
 
         if (criteria == null) {
-            result = new ArrayList<IData>(1);
-
             IData document = IDataFactory.create();
             IDataCursor cursor = document.getCursor();
             IDataUtil.put(cursor, "by", IDataFactory.create());
             IDataUtil.put(cursor, "items", array);
             cursor.destroy();
 
-            result.add(document);
+            result = new IData[] { document };
         } else {
-            IDataCursor criteriaCursor = criteria.getCursor();
-            IData[] by = IDataUtil.getIDataArray(criteriaCursor, "by");
-            IData then = IDataUtil.getIData(criteriaCursor, "then");
-            criteriaCursor.destroy();
+            List<IDataCompoundKey[]> levels = new ArrayList<IDataCompoundKey[]>();
 
-            Map<CompoundKey, List<IData>> groups = group(array, IDataComparisonCriterion.of(by));
-            result = new ArrayList<IData>(groups.size());
+            while (criteria != null) {
+                IDataCursor cursor = criteria.getCursor();
+                IData[] by = IDataUtil.getIDataArray(cursor, "by");
+                criteria = IDataUtil.getIData(cursor, "then");
+                cursor.destroy();
 
-            for (Map.Entry<CompoundKey, List<IData>> entry : groups.entrySet()) {
-                CompoundKey key = entry.getKey();
-                List<IData> value = entry.getValue();
-                IData[] items = value.toArray(new IData[value.size()]);
+                levels.add(IDataCompoundKey.of(IDataComparisonCriterion.of(by), array));
+            }
 
-                IData group = IDataFactory.create();
-                IDataCursor cursor = group.getCursor();
-                IDataUtil.put(cursor, "by", key.getIData());
-                IDataUtil.put(cursor, "items", items);
-                if (then != null) IDataUtil.put(cursor, "then", group(items, then));
+            result = group(array, levels, 0, null, sorted);
+        }
 
-                cursor.destroy();
+        return result;
+    }
 
-                result.add(group);
+    /**
+     * Groups the given items at the given level of a multi-level grouping, then recursively groups the items in
+     * each resulting group at the next level.
+     *
+     * @param array     The IData[] being grouped.
+     * @param levels    The compound keys extracted from every item in the array for each level of the grouping.
+     * @param level     The current level of the grouping.
+     * @param indexes   The indexes of the array items to be grouped, or null to group all items.
+     * @param sorted    If true, groups are sorted by their key values, otherwise groups are in the order in which their
+     *                  first item appears in the given IData[].
+     * @return          The grouped IData[].
+     */
+    private static IData[] group(IData[] array, List<IDataCompoundKey[]> levels, int level, int[] indexes, boolean sorted) {
+        Map<IDataCompoundKey, List<Integer>> groups = group(levels.get(level), indexes, sorted);
+        List<IData> result = new ArrayList<IData>(groups.size());
+
+        for (Map.Entry<IDataCompoundKey, List<Integer>> entry : groups.entrySet()) {
+            List<Integer> members = entry.getValue();
+            int[] memberIndexes = new int[members.size()];
+            IData[] items = new IData[members.size()];
+
+            for (int i = 0; i < memberIndexes.length; i++) {
+                memberIndexes[i] = members.get(i);
+                items[i] = array[memberIndexes[i]];
+            }
+
+            IData group = IDataFactory.create();
+            IDataCursor cursor = group.getCursor();
+            IDataUtil.put(cursor, "by", entry.getKey().getIData());
+            IDataUtil.put(cursor, "items", items);
+            if (level + 1 < levels.size()) {
+                IDataUtil.put(cursor, "then", group(array, levels, level + 1, memberIndexes, sorted));
             }
+            cursor.destroy();
+
+            result.add(group);
         }
 
         return result.toArray(new IData[result.size()]);
     }
 
     /**
-     * Groups the given IData[] by the given keys.
+     * Groups the given IData[] by the given keys, with groups sorted by their key values.
      *
      * @param array    The IData[] to be grouped.
      * @param criteria The criteria to group items by.
      * @return         A Map containing the groups and their items.
      */
-    public static Map<CompoundKey, List<IData>> group(IData[] array, IDataComparisonCriterion[] criteria) {
-        Map<CompoundKey, List<IData>> groups = new TreeMap<CompoundKey, List<IData>>();
-
-        if (array != null && criteria != null || criteria.length == 0) {
-            for (IData item : array) {
-                if (item != null) {
-                    CompoundKey key = new CompoundKey(criteria, item);
-                    List<IData> list = groups.get(key);
-                    if (list == null) {
-                        list = new ArrayList<IData>();
-                        groups.put(key, list);
+    public static Map<IDataCompoundKey, List<IData>> group(IData[] array, IDataComparisonCriterion[] criteria) {
+        return group(array, criteria, true);
+    }
+
+    /**
+     * Groups the given IData[] by the given keys. Null items are not included in any group.
+     *
+     * @param array    The IData[] to be grouped.
+     * @param criteria The criteria to group items by.
+     * @param sorted   If true, groups are sorted by their key values, otherwise groups are in the order in which their
+     *                 first item appears in the given IData[].
+     * @return         A Map containing the groups and their items, in the requested order.
+     */
+    public static Map<IDataCompoundKey, List<IData>> group(IData[] array, IDataComparisonCriterion[] criteria, boolean sorted) {
+        Map<IDataCompoundKey, List<IData>> groups = new LinkedHashMap<IDataCompoundKey, List<IData>>();
+
+        if (array != null && criteria != null && criteria.length > 0) {
+            for (Map.Entry<IDataCompoundKey, List<Integer>> entry : group(IDataCompoundKey.of(criteria, array), null, sorted).entrySet()) {
+                List<Integer> members = entry.getValue();
+                List<IData> items = new ArrayList<IData>(members.size());
+                for (int index : members) {
+                    items.add(array[index]);
+                }
+                groups.put(entry.getKey(), items);
+            }
+        }
+
+        return groups;
+    }
+
+    /**
+     * Groups the given compound keys using hashing, partitioning the work across multiple threads for large inputs.
+     * Keys for null items are not included in any group.
+     *
+     * @param keys      The compound keys to be grouped, or null to return no groups.
+     * @param indexes   The indexes of the keys to be grouped, or null to group all keys.
+     * @param sorted    If true, groups are sorted by their key values, otherwise groups are in the order in which their
+     *                  first key appears.
+     * @return          A Map containing the groups and the indexes of their keys, in the requested order.
+     */
+    private static Map<IDataCompoundKey, List<Integer>> group(final IDataCompoundKey[] keys, final int[] indexes, boolean sorted) {
+        Map<IDataCompoundKey, List<Integer>> groups;
+
+        if (keys == null) {
+            groups = new LinkedHashMap<IDataCompoundKey, List<Integer>>();
+        } else {
+            int[] boundaries = ParallelHelper.partition(indexes == null ? keys.length : indexes.length);
+
+            if (boundaries.length <= 2) {
+                groups = group(keys, indexes, 0, boundaries[boundaries.length - 1]);
+            } else {
+                List<Callable<Map<IDataCompoundKey, List<Integer>>>> tasks = new ArrayList<Callable<Map<IDataCompoundKey, List<Integer>>>>(boundaries.length - 1);
+                for (int i = 0; i < boundaries.length - 1; i++) {
+                    final int start = boundaries[i], end = boundaries[i + 1];
+                    tasks.add(new Callable<Map<IDataCompoundKey, List<Integer>>>() {
+                        public Map<IDataCompoundKey, List<Integer>> call() {
+                            return group(keys, indexes, start, end);
+                        }
+                    });
+                }
+
+                // merge partitions in order, so that both group order and item order are preserved
+                groups = null;
+                for (Map<IDataCompoundKey, List<Integer>> partition : ParallelHelper.invokeAll(tasks)) {
+                    if (groups == null) {
+                        groups = partition;
+                    } else {
+                        for (Map.Entry<IDataCompoundKey, List<Integer>> entry : partition.entrySet()) {
+                            List<Integer> members = groups.get(entry.getKey());
+                            if (members == null) {
+                                groups.put(entry.getKey(), entry.getValue());
+                            } else {
+                                members.addAll(entry.getValue());
+                            }
+                        }
                     }
-                    list.add(item);
                 }
             }
+
+            if (sorted && groups.size() > 1) {
+                IDataCompoundKey[] groupKeys = groups.keySet().toArray(new IDataCompoundKey[groups.size()]);
+                ParallelHelper.sort(groupKeys, null);
+
+                Map<IDataCompoundKey, List<Integer>> sortedGroups = new LinkedHashMap<IDataCompoundKey, List<Integer>>(groups.size() * 2);
+                for (IDataCompoundKey key : groupKeys) {
+                    sortedGroups.put(key, groups.get(key));
+                }
+                groups = sortedGroups;
+            }
+        }
+
+        return groups;
+    }
+
+    /**
+     * Groups the given range of compound keys using hashing.
+     *
+     * @param keys      The compound keys to be grouped.
+     * @param indexes   The indexes of the keys to be grouped, or null to group all keys.
+     * @param start     The start of the range to be grouped, inclusive.
+     * @param end       The end of the range to be grouped, exclusive.
+     * @return          A Map containing the groups and the indexes of their keys, in order of first appearance.
+     */
+    private static Map<IDataCompoundKey, List<Integer>> group(IDataCompoundKey[] keys, int[] indexes, int start, int end) {
+        Map<IDataCompoundKey, List<Integer>> groups = new LinkedHashMap<IDataCompoundKey, List<Integer>>();
+
+        for (int i = start; i < end; i++) {
+            int index = indexes == null ? i : indexes[i];
+            IDataCompoundKey key = keys[index];
+
+            if (key != null && key.getDocument() != null) {
+                List<Integer> members = groups.get(key);
+                if (members == null) {
+                    members = new ArrayList<Integer>();
+                    groups.put(key, members);
+                }
+                members.add(index);
+            }
         }
 
         return groups;
     }
 
+    /**
+     * Groups the given IData[] by the given criteria and calculates the given aggregates for each group, with groups
+     * sorted by their key values.
+     *
+     * @param array         The IData[] to be aggregated.
+     * @param criteria      The criteria to group items by, specified as an IData[], or null to aggregate all items as a
+     *                      single group.
+     * @param aggregations  The aggregates to be calculated, specified as an IData[].
+     * @return              One IData document per group, containing the group key values and calculated aggregates.
+     */
+    public static IData[] aggregate(IData[] array, IData[] criteria, IData[] aggregations) {
+        return aggregate(array, IDataComparisonCriterion.of(criteria), true, IDataAggregation.of(aggregations));
+    }
+
+    /**
+     * Groups the given IData[] by the given criteria and calculates the given aggregates for each group, without
+     * materializing the items in each group.
+     *
+     * @param array         The IData[] to be aggregated.
+     * @param criteria      The criteria to group items by, or null to aggregate all items as a single group.
+     * @param sorted        If true, groups are sorted by their key values, otherwise groups are in the order in which
+     *                      their first item appears in the given IData[].
+     * @param aggregations  The aggregates to be calculated.
+     * @return              One IData document per group, containing the group key values and calculated aggregates.
+     */
+    public static IData[] aggregate(IData[] array, IDataComparisonCriterion[] criteria, boolean sorted, IDataAggregation... aggregations) {
+        if (array == null) return null;
+        return new IDataAggregator(criteria, sorted, aggregations).aggregate(array);
+    }
+
+    /**
+     * Groups the items returned by the given iterator by the given criteria and calculates the given aggregates for
+     * each group, consuming the items one at a time.
+     *
+     * @param iterator      The items to be aggregated.
+     * @param criteria      The criteria to group items by, or null to aggregate all items as a single group.
+     * @param sorted        If true, groups are sorted by their key values, otherwise groups are in the order in which
+     *                      their first item was returned by the given iterator.
+     * @param aggregations  The aggregates to be calculated.
+     * @return              One IData document per group, containing the group key values and calculated aggregates.
+     */
+    public static IData[] aggregate(Iterator<? extends IData> iterator, IDataComparisonCriterion[] criteria, boolean sorted, IDataAggregation... aggregations) {
+        if (iterator == null) return null;
+        return new IDataAggregator(criteria, sorted, aggregations).aggregate(iterator);
+    }
+
     /**
      * Returns a new IData[] document list that only contains unique IData objects from the input IData[] document
      * list.
@@ -3375,12 +3234,15 @@ public final class IDataHelper {
      *              distinct set of values.
      */
     public static IData[] unique(IData[] array) {
+        // identical documents are first removed by bucketing on their structural hash, so that only the remaining
+        // distinct documents need their values extracted and compared
+        if (array != null && array.length > 1) array = IDataHashHelper.unique(array);
         return unique(array, (String[])null);
     }
 
     /**
      * Returns a new IData[] document list that only contains unique IData objects from the input IData[] document list,
-     * where uniqueness is determined by the values associated with the given list of keys.
+     * where uniqueness is determined by the values associated with the given list of keys, sorted by those values.
      *
      * @param array The IData[] document list to find the unique set of.
      * @param keys  The keys whose associated values will be used to determine uniqueness. If not specified, all keys
@@ -3389,6 +3251,22 @@ public final class IDataHelper {
      *              set of values associated with the given list of keys.
      */
     public static IData[] unique(IData[] array, String... keys) {
+        return unique(array, true, keys);
+    }
+
+    /**
+     * Returns a new IData[] document list that only contains unique IData objects from the input IData[] document list,
+     * where uniqueness is determined by the values associated with the given list of keys.
+     *
+     * @param array     The IData[] document list to find the unique set of.
+     * @param sorted    If true, the returned items are sorted by the values associated with the given keys, otherwise
+     *                  they are in the order in which they first appear in the given IData[].
+     * @param keys      The keys whose associated values will be used to determine uniqueness. If not specified, all
+     *                  keys will be used to determine uniqueness.
+     * @return          A new IData[] document list only containing the first occurrence of each IData containing a
+     *                  distinct set of values associated with the given list of keys.
+     */
+    public static IData[] unique(IData[] array, boolean sorted, String... keys) {
         IData[] output = null;
 
         if (array != null) {
@@ -3397,15 +3275,13 @@ public final class IDataHelper {
             } else {
                 if (keys == null || keys.length == 0) keys = getKeys(array);
 
-                Map<CompoundKey, IData> set = new TreeMap<CompoundKey, IData>();
-                for (IData item : array) {
-                    if (item != null) {
-                        CompoundKey key = new CompoundKey(keys, item);
-                        if (!set.containsKey(key)) set.put(key, item);
-                    }
-                }
+                Map<IDataCompoundKey, List<Integer>> groups = group(IDataCompoundKey.of(IDataComparisonCriterion.of(keys), array), null, sorted);
 
-                output = set.values().toArray(new IData[set.size()]);
+                output = new IData[groups.size()];
+                int i = 0;
+                for (List<Integer> members : groups.values()) {
+                    output[i++] = array[members.get(0)];
+                }
             }
         }
 
@@ -3413,151 +3289,155 @@ public final class IDataHelper {
     }
 
     /**
-     * Represents a compound key which can be used for grouping IData documents together.
+     * Lazily iterates over the union set of keys in an IData[] document list.
      */
-    private static class CompoundKey implements Comparable<CompoundKey>, IDataCodable {
+    private static class KeyIterator implements Iterator<String> {
         /**
-         * The comparator used for comparison with other compound keys.
+         * The document list whose keys are iterated.
          */
-        private CriteriaBasedIDataComparator comparator;
+        private final IData[] array;
         /**
-         * The IData document containing the values referenced by the compound key.
+         * Optional pattern the returned keys must match.
          */
-        private IData document;
-
+        private final Pattern pattern;
         /**
-         * Constructs a new compound key for the given list of keys and their associated values from the given IData
-         * document.
-         *
-         * @param keys     The keys which together form this compound key.
-         * @param document The IData document containing the values associated with the given keys.
+         * The keys already returned.
          */
-        public CompoundKey(String[] keys, IData document) {
-            this(new CriteriaBasedIDataComparator(IDataComparisonCriterion.of(keys)), document);
-        }
-
+        private final Set<String> seen = new HashSet<String>();
         /**
-         * Constructs a new compound key for the given comparison criteria and their associated values from the given
-         * IData document.
-         *
-         * @param criteria The comparison criteria which together form this compound key.
-         * @param document The IData document containing the values associated with the given keys.
+         * The index of the next document to be iterated.
          */
-        public CompoundKey(IDataComparisonCriterion[] criteria, IData document) {
-            this(new CriteriaBasedIDataComparator(criteria), document);
-        }
-
+        private int index;
         /**
-         * Constructs a new compound key for the given comparison criteria and their associated values from the given
-         * IData document.
-         *
-         * @param criteria The comparison criteria which together form this compound key.
-         * @param document The IData document containing the values associated with the given keys.
+         * The cursor over the current document.
          */
-        public CompoundKey(List<IDataComparisonCriterion> criteria, IData document) {
-            this(new CriteriaBasedIDataComparator(criteria), document);
-        }
+        private IDataCursor cursor;
+        /**
+         * The next key to be returned, or null if not yet fetched.
+         */
+        private String next;
 
         /**
-         * Constructs a new compound key for the given comparison criteria and their associated values from the given
-         * IData document.
+         * Creates a new KeyIterator.
          *
-         * @param comparator The comparator used for comparison with other compound keys.
-         * @param document   The IData document containing the values associated with the given keys.
+         * @param array     The document list whose keys are iterated.
+         * @param pattern   Optional pattern the returned keys must match.
          */
-        private CompoundKey(CriteriaBasedIDataComparator comparator, IData document) {
-            if (comparator == null) throw new NullPointerException("comparator must not be null");
-            if (document == null) throw new NullPointerException("document must not be null");
-            this.comparator = comparator;
-            this.document = document;
+        private KeyIterator(IData[] array, Pattern pattern) {
+            this.array = array;
+            this.pattern = pattern;
         }
 
         /**
-         * Returns the IData document containing the values used by this compound key.
+         * Returns true if there are more keys to be iterated.
          *
-         * @return The IData document containing the values used by this compound key.
+         * @return True if there are more keys to be iterated.
          */
-        public IData getDocument() {
-            return this.document;
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (cursor == null) {
+                    if (array == null || index >= array.length) return false;
+                    IData document = array[index++];
+                    if (document != null) cursor = document.getCursor();
+                } else if (cursor.next()) {
+                    String key = cursor.getKey();
+                    if ((pattern == null || pattern.matcher(key).matches()) && seen.add(key)) next = key;
+                } else {
+                    cursor.destroy();
+                    cursor = null;
+                }
+            }
+            return true;
         }
 
         /**
-         * Sets the IData document containing the values used for comparison by this compound key.
+         * Returns the next key.
          *
-         * @param document The IData document containing the values to be used for comparison by this compound key.
+         * @return The next key.
          */
-        public void setDocument(IData document) {
-            if (document == null) throw new NullPointerException("document must not be null");
-            this.document = document;
+        @Override
+        public String next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            String key = next;
+            next = null;
+            return key;
         }
 
         /**
-         * Returns the comparator used for comparisons by this compound key.
+         * This operation is not supported.
          *
-         * @return The comparator used for comparisons by this compound key.
+         * @throws UnsupportedOperationException Always thrown as this operation is not supported.
          */
-        public CriteriaBasedIDataComparator getComparator() {
-            return this.comparator;
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove not supported");
         }
+    }
 
+    /**
+     * Lazily iterates over the values associated with a key from each item in an IData[] document list.
+     */
+    private static class ValueIterator implements Iterator<Object> {
         /**
-         * Sets the comparator to be used by this compound key in comparisons.
-         *
-         * @param comparator The comparator to be used by this compound key in comparisons.
+         * The document list whose values are iterated.
          */
-        public void setComparator(CriteriaBasedIDataComparator comparator) {
-            this.comparator = comparator;
-        }
+        private final IData[] array;
+        /**
+         * The fully-qualified key identifying the values to return.
+         */
+        private final String key;
+        /**
+         * The default value returned if the key does not exist.
+         */
+        private final Object defaultValue;
+        /**
+         * The index of the next item to be resolved.
+         */
+        private int index;
 
         /**
-         * Returns an IData representation of this compound key.
+         * Creates a new ValueIterator.
          *
-         * @return An IData representation of this compound key.
+         * @param array         The document list whose values are iterated.
+         * @param key           The fully-qualified key identifying the values to return.
+         * @param defaultValue  The default value returned if the key does not exist.
          */
-        public IData getIData() {
-            IData output = IDataFactory.create();
-            for (IDataComparisonCriterion criterion : comparator.getCriteria()) {
-                IDataHelper.put(output, criterion.getKey(), IDataHelper.get(document, criterion.getKey()));
-            }
-            return output;
+        private ValueIterator(IData[] array, String key, Object defaultValue) {
+            this.array = array;
+            this.key = key;
+            this.defaultValue = defaultValue;
         }
 
         /**
-         * This method is not implemented.
+         * Returns true if there are more values to be iterated.
          *
-         * @param  document                         Not used.
-         * @throws UnsupportedOperationException    as this method is not implemented.
+         * @return True if there are more values to be iterated.
          */
-        public void setIData(IData document) {
-            throw new UnsupportedOperationException("method not implemented");
+        @Override
+        public boolean hasNext() {
+            return array != null && key != null && index < array.length;
         }
 
         /**
-         * Compares this compound key with another compound key.
+         * Returns the value associated with the key in the next item.
          *
-         * @param  other    The other key to be compared with.
-         * @return          0 if the two keys are equal, less than 0 if this key is less than the other key,
-         *                  greater than 0 if this key is greater than the other key.
+         * @return The value associated with the key in the next item.
          */
-        public int compareTo(CompoundKey other) {
-            if (other == null) return 1;
-            return comparator.compare(this.document, other.getIData());
+        @Override
+        public Object next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            return get(array[index++], key, defaultValue);
         }
 
         /**
-         * Returns true if this object is equal to the other object.
+         * This operation is not supported.
          *
-         * @param  other    The object to compare for equality with.
-         * @return          True if this object is equal to the other object.
+         * @throws UnsupportedOperationException Always thrown as this operation is not supported.
          */
-        public boolean equals(Object other) {
-            boolean result = false;
-
-            if (other instanceof CompoundKey) {
-                result = this.compareTo((CompoundKey)other) == 0;
-            }
-
-            return result;
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("remove not supported");
         }
     }
 }
@@ -0,0 +1,911 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataPortable;
+import com.wm.util.Table;
+import com.wm.util.coder.IDataCodable;
+import com.wm.util.coder.ValuesCodable;
+import permafrost.tundra.lang.BytesHelper;
+import permafrost.tundra.lang.CharsetHelper;
+import permafrost.tundra.time.DateTimeHelper;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Deserializes and serializes IData objects from and to JSON in a single streaming pass, without building any
+ * intermediate string or tree representation.
+ *
+ * JSON objects are decoded as IData documents, arrays of objects as IData[] document lists, arrays of strings as
+ * String[], and other arrays as Object[]. Integers are decoded as Long, or BigInteger if too large, and other numbers
+ * as BigDecimal. As an IData document must be the result of decoding, a top-level JSON array is returned in a
+ * document under the key $rootArray, and such a document is encoded back to a top-level JSON array.
+ */
+public class IDataJSONParser extends IDataTextParser {
+    /**
+     * The key used to hold a top-level JSON array.
+     */
+    public static final String ROOT_ARRAY_KEY = "$rootArray";
+
+    /**
+     * The maximum nesting depth of objects and arrays accepted when decoding, to bound the stack used by deeply nested
+     * input.
+     */
+    private static final int MAXIMUM_DEPTH = 512;
+
+    /**
+     * Initialization on demand holder idiom.
+     */
+    private static class Holder {
+        /**
+         * The singleton instance of the class.
+         */
+        private static final IDataJSONParser INSTANCE = new IDataJSONParser();
+    }
+
+    /**
+     * Disallow instantiation of this class.
+     */
+    private IDataJSONParser() {}
+
+    /**
+     * Returns the singleton instance of this class.
+     *
+     * @return The singleton instance of this class.
+     */
+    public static IDataJSONParser getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Returns the MIME type this parser handles.
+     *
+     * @return The MIME type this parser handles.
+     */
+    public String getContentType() {
+        return "application/json";
+    }
+
+    /**
+     * Returns an IData representation of the JSON data read from the given input stream.
+     *
+     * @param inputStream   The input stream to be decoded.
+     * @param charset       The character set to use.
+     * @return              An IData representation of the given input stream data.
+     * @throws IOException  If there is a problem reading from the stream, or the data is not valid JSON.
+     */
+    public IData decode(InputStream inputStream, Charset charset) throws IOException {
+        return decode(inputStream, charset, null, null);
+    }
+
+    /**
+     * Decodes the JSON data read from the given input stream, passing each item of the array at the given path to the
+     * given handler as soon as it has been decoded rather than collecting the items, so that very large arrays can be
+     * processed one record at a time.
+     *
+     * @param inputStream   The input stream to be decoded.
+     * @param charset       The character set to use.
+     * @param path          The path to the array whose items are to be handled, made up of object keys separated by
+     *                      forward slashes, such as "response/records", or null for a top-level array.
+     * @param handler       The handler to be called with each array item.
+     * @return              An IData representation of the rest of the given input stream data, which excludes the
+     *                      handled array.
+     * @throws IOException  If there is a problem reading from the stream, the data is not valid JSON, or the handler
+     *                      throws an exception.
+     */
+    public IData decode(InputStream inputStream, Charset charset, String path, Handler handler) throws IOException {
+        Tokenizer tokenizer = new Tokenizer(new InputStreamReader(inputStream, CharsetHelper.normalize(charset)));
+        Object value = new Builder(tokenizer, handler == null ? null : (path == null ? "" : path), handler).build();
+
+        if (tokenizer.next() != Token.END_DOCUMENT) {
+            throw tokenizer.error("Unexpected data after JSON value");
+        }
+
+        IData output;
+        if (value instanceof IData) {
+            output = (IData)value;
+        } else {
+            output = IDataFactory.create();
+            if (value != null || handler == null) IDataHelper.put(output, ROOT_ARRAY_KEY, value, true, true);
+        }
+
+        return output;
+    }
+
+    /**
+     * Serializes the given IData document as JSON to the given output stream.
+     *
+     * @param outputStream The stream to write the encoded IData to.
+     * @param document     The IData document to be encoded.
+     * @param charset      The character set to use.
+     * @throws IOException If there is a problem writing to the stream.
+     */
+    public void encode(OutputStream outputStream, IData document, Charset charset) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, CharsetHelper.normalize(charset)));
+
+        Object value = document;
+        if (document != null && IDataHelper.size(document) == 1) {
+            IDataCursor cursor = document.getCursor();
+            try {
+                if (cursor.first(ROOT_ARRAY_KEY)) {
+                    Object rootArray = cursor.getValue();
+                    if (rootArray instanceof Object[] || rootArray instanceof Table) value = rootArray;
+                }
+            } finally {
+                cursor.destroy();
+            }
+        }
+
+        new Emitter(writer).emit(value);
+        writer.flush();
+    }
+
+    /**
+     * Handles the items of a JSON array one at a time as they are decoded.
+     */
+    public interface Handler {
+        /**
+         * Handles the given decoded array item.
+         *
+         * @param index         The zero-based index of the item in the array.
+         * @param item          The decoded item, which is an IData document if the item was a JSON object.
+         * @throws IOException  If the item cannot be handled, which stops decoding.
+         */
+        void handle(int index, Object item) throws IOException;
+    }
+
+    /**
+     * The types of token returned by a Tokenizer.
+     */
+    public enum Token {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, KEY, STRING, NUMBER, TRUE, FALSE, NULL, END_DOCUMENT
+    }
+
+    /**
+     * A pull-based JSON tokenizer, which reads characters in blocks from a reader into a reused buffer.
+     */
+    public static class Tokenizer {
+        /**
+         * The reader from which characters are read.
+         */
+        private final Reader reader;
+        /**
+         * The buffer of characters read but not yet consumed.
+         */
+        private final char[] buffer = new char[8192];
+        /**
+         * The position of the next character to be consumed in the buffer, and the number of characters in the buffer.
+         */
+        private int position, limit;
+        /**
+         * The number of characters consumed prior to the current buffer, used in error messages.
+         */
+        private long offset;
+        /**
+         * The text of the last KEY, STRING or NUMBER token.
+         */
+        private final StringBuilder text = new StringBuilder();
+        /**
+         * The enclosing containers, where true is an object and false is an array.
+         */
+        private final List<Boolean> containers = new ArrayList<Boolean>();
+        /**
+         * Whether the current container has had a value, and so requires a comma before its next value.
+         */
+        private boolean separated;
+        /**
+         * Whether a KEY token has been returned, and so the next token must be its value.
+         */
+        private boolean awaitingValue;
+        /**
+         * Whether the top-level value has been read.
+         */
+        private boolean complete;
+
+        /**
+         * Constructs a new tokenizer.
+         *
+         * @param reader The reader from which JSON is read.
+         */
+        public Tokenizer(Reader reader) {
+            if (reader == null) throw new NullPointerException("reader must not be null");
+            this.reader = reader;
+        }
+
+        /**
+         * Returns the text of the last KEY, STRING, or NUMBER token.
+         *
+         * @return The text of the last KEY, STRING, or NUMBER token.
+         */
+        public String getText() {
+            return text.toString();
+        }
+
+        /**
+         * Returns the value of the last NUMBER token, as a Long if it is an integer that fits, a BigInteger if it is a
+         * larger integer, or otherwise a BigDecimal.
+         *
+         * @return The value of the last NUMBER token.
+         */
+        public Number getNumber() {
+            String number = getText();
+            boolean integer = number.indexOf('.') < 0 && number.indexOf('e') < 0 && number.indexOf('E') < 0;
+
+            if (integer) {
+                if (number.length() < 19) return Long.valueOf(number);
+                BigInteger value = new BigInteger(number);
+                return value.bitLength() < 64 ? (Number)value.longValue() : value;
+            }
+
+            return new BigDecimal(number);
+        }
+
+        /**
+         * Reads and returns the next token.
+         *
+         * @return              The next token.
+         * @throws IOException  If an I/O error occurs, or the data is not valid JSON.
+         */
+        public Token next() throws IOException {
+            int c = skipWhitespace();
+
+            if (containers.isEmpty()) {
+                if (complete) {
+                    if (c >= 0) throw error("Unexpected data after JSON value");
+                    return Token.END_DOCUMENT;
+                }
+                if (c < 0) throw error("Unexpected end of JSON data");
+                return value(c);
+            }
+
+            if (awaitingValue) {
+                awaitingValue = false;
+                return value(c);
+            }
+
+            boolean object = containers.get(containers.size() - 1);
+
+            if (c == (object ? '}' : ']')) {
+                position++;
+                containers.remove(containers.size() - 1);
+                closeValue();
+                return object ? Token.END_OBJECT : Token.END_ARRAY;
+            }
+
+            if (separated) {
+                if (c != ',') throw error("Expected ',' or '" + (object ? '}' : ']') + "'");
+                position++;
+                c = skipWhitespace();
+            }
+
+            if (object) {
+                if (c != '"') throw error("Expected object key");
+                position++;
+                readString();
+                if (skipWhitespace() != ':') throw error("Expected ':'");
+                position++;
+                awaitingValue = true;
+                return Token.KEY;
+            }
+
+            return value(c);
+        }
+
+        /**
+         * Reads the value starting with the given character.
+         *
+         * @param c             The first character of the value.
+         * @return              The token representing the value.
+         * @throws IOException  If an I/O error occurs, or the data is not valid JSON.
+         */
+        private Token value(int c) throws IOException {
+            Token token;
+
+            switch (c) {
+                case '{':
+                    position++;
+                    containers.add(true);
+                    separated = false;
+                    return Token.START_OBJECT;
+                case '[':
+                    position++;
+                    containers.add(false);
+                    separated = false;
+                    return Token.START_ARRAY;
+                case '"':
+                    position++;
+                    readString();
+                    token = Token.STRING;
+                    break;
+                case 't':
+                    readLiteral("true");
+                    token = Token.TRUE;
+                    break;
+                case 'f':
+                    readLiteral("false");
+                    token = Token.FALSE;
+                    break;
+                case 'n':
+                    readLiteral("null");
+                    token = Token.NULL;
+                    break;
+                default:
+                    if (c == '-' || (c >= '0' && c <= '9')) {
+                        readNumber();
+                        token = Token.NUMBER;
+                    } else if (c < 0) {
+                        throw error("Unexpected end of JSON data");
+                    } else {
+                        throw error("Unexpected character '" + (char)c + "'");
+                    }
+            }
+
+            closeValue();
+            return token;
+        }
+
+        /**
+         * Records that a value has been completed in the current container.
+         */
+        private void closeValue() {
+            if (containers.isEmpty()) {
+                complete = true;
+            } else {
+                separated = true;
+            }
+        }
+
+        /**
+         * Reads a string, whose opening quote has been consumed, into the text buffer.
+         *
+         * @throws IOException  If an I/O error occurs, or the data is not valid JSON.
+         */
+        private void readString() throws IOException {
+            text.setLength(0);
+
+            while (true) {
+                if (position >= limit && !fill()) throw error("Unterminated string");
+
+                // copy runs of unescaped characters directly from the buffer
+                int start = position;
+                while (position < limit) {
+                    char c = buffer[position];
+                    if (c == '"' || c == '\\') break;
+                    if (c < 0x20) throw error("Unescaped control character in string");
+                    position++;
+                }
+                text.append(buffer, start, position - start);
+
+                if (position < limit) {
+                    char c = buffer[position++];
+                    if (c == '"') return;
+                    readEscape();
+                }
+            }
+        }
+
+        /**
+         * Reads an escape sequence, whose backslash has been consumed, into the text buffer.
+         *
+         * @throws IOException  If an I/O error occurs, or the data is not valid JSON.
+         */
+        private void readEscape() throws IOException {
+            int c = read();
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    text.append((char)c);
+                    break;
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'u':
+                    int value = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(read(), 16);
+                        if (digit < 0) throw error("Invalid unicode escape sequence");
+                        value = (value << 4) | digit;
+                    }
+                    text.append((char)value);
+                    break;
+                default:
+                    throw error("Invalid escape sequence");
+            }
+        }
+
+        /**
+         * Reads a number into the text buffer, validating its syntax.
+         *
+         * @throws IOException  If an I/O error occurs, or the data is not valid JSON.
+         */
+        private void readNumber() throws IOException {
+            text.setLength(0);
+
+            if (peek() == '-') text.append((char)read());
+
+            int c = peek();
+            if (c == '0') {
+                text.append((char)read());
+            } else if (c >= '1' && c <= '9') {
+                readDigits();
+            } else {
+                throw error("Invalid number");
+            }
+
+            if (peek() == '.') {
+                text.append((char)read());
+                if (readDigits() == 0) throw error("Invalid number");
+            }
+
+            c = peek();
+            if (c == 'e' || c == 'E') {
+                text.append((char)read());
+                c = peek();
+                if (c == '+' || c == '-') text.append((char)read());
+                if (readDigits() == 0) throw error("Invalid number");
+            }
+        }
+
+        /**
+         * Reads a run of decimal digits into the text buffer.
+         *
+         * @return              The number of digits read.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private int readDigits() throws IOException {
+            int count = 0;
+            int c;
+            while ((c = peek()) >= '0' && c <= '9') {
+                text.append((char)read());
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Reads the given literal.
+         *
+         * @param literal       The literal expected.
+         * @throws IOException  If an I/O error occurs, or the data does not match the literal.
+         */
+        private void readLiteral(String literal) throws IOException {
+            for (int i = 0; i < literal.length(); i++) {
+                if (read() != literal.charAt(i)) throw error("Invalid literal, expected '" + literal + "'");
+            }
+        }
+
+        /**
+         * Skips whitespace, and returns the next character without consuming it.
+         *
+         * @return              The next non-whitespace character, or -1 at the end of the stream.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private int skipWhitespace() throws IOException {
+            while (true) {
+                if (position >= limit && !fill()) return -1;
+                char c = buffer[position];
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') return c;
+                position++;
+            }
+        }
+
+        /**
+         * Returns the next character without consuming it.
+         *
+         * @return              The next character, or -1 at the end of the stream.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private int peek() throws IOException {
+            if (position >= limit && !fill()) return -1;
+            return buffer[position];
+        }
+
+        /**
+         * Consumes and returns the next character.
+         *
+         * @return              The next character, or -1 at the end of the stream.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private int read() throws IOException {
+            if (position >= limit && !fill()) return -1;
+            return buffer[position++];
+        }
+
+        /**
+         * Refills the buffer from the reader.
+         *
+         * @return              False if the end of the stream was reached.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private boolean fill() throws IOException {
+            offset += limit;
+            position = 0;
+            limit = 0;
+
+            int count;
+            do {
+                count = reader.read(buffer, 0, buffer.length);
+            } while (count == 0);
+
+            if (count < 0) return false;
+
+            limit = count;
+            return true;
+        }
+
+        /**
+         * Returns an exception describing a syntax error at the current position.
+         *
+         * @param message   The error message.
+         * @return          An exception describing the error.
+         */
+        private IOException error(String message) {
+            return new IOException("Invalid JSON at character " + (offset + position) + ": " + message);
+        }
+    }
+
+    /**
+     * Builds IData documents and arrays from the tokens returned by a tokenizer.
+     */
+    private static class Builder {
+        /**
+         * The tokenizer from which tokens are read.
+         */
+        private final Tokenizer tokenizer;
+        /**
+         * The path of the array whose items are passed to the handler, or null if there is no handler.
+         */
+        private final String handledPath;
+        /**
+         * The handler called with each item of the array at the handled path.
+         */
+        private final Handler handler;
+        /**
+         * The nesting depth of the object or array currently being built.
+         */
+        private int depth;
+
+        /**
+         * Constructs a new builder.
+         *
+         * @param tokenizer     The tokenizer from which tokens are read.
+         * @param handledPath   The path of the array whose items are passed to the handler, or null.
+         * @param handler       The handler called with each item of the array at the handled path.
+         */
+        Builder(Tokenizer tokenizer, String handledPath, Handler handler) {
+            this.tokenizer = tokenizer;
+            this.handledPath = handledPath;
+            this.handler = handler;
+        }
+
+        /**
+         * Builds the top-level value.
+         *
+         * @return              The decoded value.
+         * @throws IOException  If an I/O error occurs, or the data is not valid JSON.
+         */
+        Object build() throws IOException {
+            return value(tokenizer.next(), "");
+        }
+
+        /**
+         * Builds the value starting with the given token.
+         *
+         * @param token         The first token of the value.
+         * @param path          The path of the value.
+         * @return              The decoded value.
+         * @throws IOException  If an I/O error occurs, the data is not valid JSON, or is nested too deeply.
+         */
+        private Object value(Token token, String path) throws IOException {
+            switch (token) {
+                case START_OBJECT:
+                case START_ARRAY:
+                    if (++depth > MAXIMUM_DEPTH) {
+                        throw tokenizer.error("Maximum nesting depth of " + MAXIMUM_DEPTH + " exceeded");
+                    }
+                    try {
+                        if (token == Token.START_OBJECT) return object(path);
+                        return path.equals(handledPath) ? handle() : array(path);
+                    } finally {
+                        depth--;
+                    }
+                case STRING:
+                    return tokenizer.getText();
+                case NUMBER:
+                    return tokenizer.getNumber();
+                case TRUE:
+                    return Boolean.TRUE;
+                case FALSE:
+                    return Boolean.FALSE;
+                case NULL:
+                    return null;
+                default:
+                    throw tokenizer.error("Unexpected token " + token);
+            }
+        }
+
+        /**
+         * Builds an object, whose start token has been consumed.
+         *
+         * @param path          The path of the object.
+         * @return              The decoded object.
+         * @throws IOException  If an I/O error occurs, or the data is not valid JSON.
+         */
+        private IData object(String path) throws IOException {
+            IData document = IDataFactory.create();
+            IDataCursor cursor = document.getCursor();
+
+            try {
+                Token token;
+                while ((token = tokenizer.next()) == Token.KEY) {
+                    String key = tokenizer.getText();
+                    String childPath = path.length() == 0 ? key : path + "/" + key;
+                    Token valueToken = tokenizer.next();
+
+                    if (valueToken == Token.START_ARRAY && childPath.equals(handledPath)) {
+                        handle();
+                    } else {
+                        cursor.insertAfter(key, value(valueToken, childPath));
+                    }
+                }
+                if (token != Token.END_OBJECT) throw tokenizer.error("Unexpected token " + token);
+            } finally {
+                cursor.destroy();
+            }
+
+            return document;
+        }
+
+        /**
+         * Builds an array, whose start token has been consumed.
+         *
+         * @param path          The path of the array.
+         * @return              The decoded array, as an IData[] if every item is an object or null, a String[] if
+         *                      every item is a string or null, or otherwise an Object[].
+         * @throws IOException  If an I/O error occurs, or the data is not valid JSON.
+         */
+        private Object[] array(String path) throws IOException {
+            List<Object> items = new ArrayList<Object>();
+            boolean documents = true, strings = true;
+
+            Token token;
+            while ((token = tokenizer.next()) != Token.END_ARRAY) {
+                // array items are not addressable by path, so nested arrays are never handled
+                Object item = value(token, "\u0000");
+                if (item != null) {
+                    documents = documents && item instanceof IData;
+                    strings = strings && item instanceof String;
+                }
+                items.add(item);
+            }
+
+            Object[] array;
+            if (documents && !items.isEmpty()) {
+                array = new IData[items.size()];
+            } else if (strings && !items.isEmpty()) {
+                array = new String[items.size()];
+            } else {
+                array = new Object[items.size()];
+            }
+
+            return items.toArray(array);
+        }
+
+        /**
+         * Passes each item of an array, whose start token has been consumed, to the handler.
+         *
+         * @return              Always null, as the items are not retained.
+         * @throws IOException  If an I/O error occurs, the data is not valid JSON, or the handler fails.
+         */
+        private Object handle() throws IOException {
+            Token token;
+            int index = 0;
+            while ((token = tokenizer.next()) != Token.END_ARRAY) {
+                handler.handle(index++, value(token, "\u0000"));
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Writes values as JSON to a writer.
+     */
+    private static class Emitter {
+        /**
+         * The writer to which JSON is written.
+         */
+        private final Writer writer;
+
+        /**
+         * Constructs a new emitter.
+         *
+         * @param writer The writer to which JSON is written.
+         */
+        Emitter(Writer writer) {
+            this.writer = writer;
+        }
+
+        /**
+         * Writes the given value as JSON.
+         *
+         * @param value         The value to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        void emit(Object value) throws IOException {
+            if (value == null) {
+                writer.write("null");
+            } else if (value instanceof String) {
+                emitString((String)value);
+            } else if (value instanceof IData || value instanceof IDataCodable || value instanceof IDataPortable || value instanceof ValuesCodable) {
+                emitDocument(IDataHelper.toIData(value));
+            } else if (value instanceof Table || value instanceof IDataCodable[] || value instanceof IDataPortable[] || value instanceof ValuesCodable[]) {
+                emitArray(IDataHelper.toIDataArray(value));
+            } else if (value instanceof Object[]) {
+                emitArray((Object[])value);
+            } else if (value instanceof Boolean) {
+                writer.write(value.toString());
+            } else if (value instanceof Double || value instanceof Float) {
+                double number = ((Number)value).doubleValue();
+                if (Double.isNaN(number) || Double.isInfinite(number)) {
+                    emitString(value.toString());
+                } else {
+                    writer.write(value.toString());
+                }
+            } else if (value instanceof Number) {
+                writer.write(value instanceof BigDecimal ? ((BigDecimal)value).toString() : value.toString());
+            } else if (value instanceof Calendar) {
+                emitString(DateTimeHelper.emit((Calendar)value));
+            } else if (value instanceof Date) {
+                emitString(DateTimeHelper.emit((Date)value));
+            } else if (value instanceof byte[]) {
+                emitString(BytesHelper.base64Encode((byte[])value));
+            } else {
+                emitString(value.toString());
+            }
+        }
+
+        /**
+         * Writes the given document as a JSON object.
+         *
+         * @param document      The document to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void emitDocument(IData document) throws IOException {
+            writer.write('{');
+            IDataCursor cursor = document.getCursor();
+            try {
+                boolean first = true;
+                while (cursor.next()) {
+                    if (!first) writer.write(',');
+                    first = false;
+
+                    String key = cursor.getKey();
+                    emitString(key == null ? "" : key);
+                    writer.write(':');
+                    emit(cursor.getValue());
+                }
+            } finally {
+                cursor.destroy();
+            }
+            writer.write('}');
+        }
+
+        /**
+         * Writes the given array as a JSON array.
+         *
+         * @param array         The array to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void emitArray(Object[] array) throws IOException {
+            writer.write('[');
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) writer.write(',');
+                emit(array[i]);
+            }
+            writer.write(']');
+        }
+
+        /**
+         * Writes the given string as a quoted and escaped JSON string.
+         *
+         * @param string        The string to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void emitString(String string) throws IOException {
+            writer.write('"');
+
+            int start = 0, length = string.length();
+            for (int i = 0; i < length; i++) {
+                char c = string.charAt(i);
+                String replacement = null;
+
+                switch (c) {
+                    case '"':
+                        replacement = "\\\"";
+                        break;
+                    case '\\':
+                        replacement = "\\\\";
+                        break;
+                    case '\n':
+                        replacement = "\\n";
+                        break;
+                    case '\r':
+                        replacement = "\\r";
+                        break;
+                    case '\t':
+                        replacement = "\\t";
+                        break;
+                    case '\b':
+                        replacement = "\\b";
+                        break;
+                    case '\f':
+                        replacement = "\\f";
+                        break;
+                    default:
+                        if (c < 0x20 || c == '\u2028' || c == '\u2029') replacement = String.format("\\u%04x", (int)c);
+                }
+
+                if (replacement != null) {
+                    // write runs of characters which do not need escaping in one call
+                    if (i > start) writer.write(string, start, i - start);
+                    writer.write(replacement);
+                    start = i + 1;
+                }
+            }
+            if (start < length) writer.write(string, start, length - start);
+
+            writer.write('"');
+        }
+    }
+}
@@ -0,0 +1,421 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2015 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataPortable;
+import com.wm.util.Table;
+import com.wm.util.coder.IDataCodable;
+import com.wm.util.coder.ValuesCodable;
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Lazily iterates over the leaf values of an IData document or document list in depth-first order, using an
+ * explicit stack rather than recursion so that arbitrarily deep structures can be walked, and so that iteration
+ * can be abandoned early without having visited the remainder of the structure.
+ */
+public class IDataLeafIterator implements Iterator<Object>, Closeable {
+    /**
+     * The stack of frames currently being iterated, with the innermost frame at the head.
+     */
+    protected final Deque<Frame> stack = new ArrayDeque<Frame>();
+    /**
+     * If true, IData compatible values and document lists are treated as branches rather than leaves.
+     */
+    protected final boolean documents;
+    /**
+     * If true, nested IData documents are descended into, otherwise they are returned as leaves.
+     */
+    protected final boolean recurse;
+    /**
+     * If true, null leaves are returned.
+     */
+    protected final boolean includeNulls;
+    /**
+     * The classes returned leaves must be instances of, if any.
+     */
+    protected final Class[] classes;
+    /**
+     * The next value to be returned by this iterator.
+     */
+    protected Object next;
+    /**
+     * Whether the next value has been fetched and not yet returned.
+     */
+    protected boolean fetched;
+
+    /**
+     * Creates a new IDataLeafIterator.
+     *
+     * @param documents     If true, IData compatible values and document lists are treated as branches.
+     * @param recurse       If true, nested IData documents are descended into.
+     * @param includeNulls  If true, null leaves are returned.
+     * @param classes       The classes returned leaves must be instances of, if any.
+     */
+    protected IDataLeafIterator(boolean documents, boolean recurse, boolean includeNulls, Class... classes) {
+        this.documents = documents;
+        this.recurse = recurse;
+        this.includeNulls = includeNulls;
+        this.classes = classes;
+    }
+
+    /**
+     * Returns a new iterator over the leaf values of the given document that are instances of the given classes.
+     *
+     * @param document  The document whose leaf values are to be iterated.
+     * @param classes   Optional list of classes the returned values must be instances of.
+     * @return          A new iterator over the leaf values of the given document.
+     */
+    public static IDataLeafIterator of(IData document, Class... classes) {
+        IDataLeafIterator iterator = new IDataLeafIterator(true, IDataHelper.recurseIDataLeaves(classes), true, classes);
+        if (document != null) iterator.stack.push(new CursorFrame(document));
+        return iterator;
+    }
+
+    /**
+     * Returns a new iterator over the leaf values of the given document list that are instances of the given classes.
+     *
+     * @param array     The document list whose leaf values are to be iterated.
+     * @param classes   Optional list of classes the returned values must be instances of.
+     * @return          A new iterator over the leaf values of the given document list.
+     */
+    public static IDataLeafIterator of(IData[] array, Class... classes) {
+        IDataLeafIterator iterator = new IDataLeafIterator(true, IDataHelper.recurseIDataLeaves(classes), true, classes);
+        if (array != null) iterator.stack.push(new ArrayFrame(array, true));
+        return iterator;
+    }
+
+    /**
+     * Returns a new iterator over the values associated with the given keys in the given document, where any
+     * multi-dimensional array values are flattened.
+     *
+     * @param document      The document containing the values to be iterated.
+     * @param includeNulls  If true null values will be returned by the iterator.
+     * @param keys          One or more fully-qualified keys identifying the values to be iterated.
+     * @return              A new iterator over the flattened values associated with the given keys.
+     */
+    public static IDataLeafIterator flatten(IData document, boolean includeNulls, String... keys) {
+        IDataLeafIterator iterator = new IDataLeafIterator(false, false, includeNulls);
+        if (document != null && keys != null) iterator.stack.push(new KeyFrame(document, keys));
+        return iterator;
+    }
+
+    /**
+     * Returns true if there are more leaf values to be iterated.
+     *
+     * @return True if there are more leaf values to be iterated.
+     */
+    @Override
+    public boolean hasNext() {
+        if (!fetched) fetched = fetch();
+        return fetched;
+    }
+
+    /**
+     * Returns the next leaf value.
+     *
+     * @return                          The next leaf value.
+     * @throws NoSuchElementException   If there are no more leaf values.
+     */
+    @Override
+    public Object next() {
+        if (!hasNext()) throw new NoSuchElementException();
+        Object value = next;
+        next = null;
+        fetched = false;
+        return value;
+    }
+
+    /**
+     * This operation is not supported.
+     *
+     * @throws UnsupportedOperationException Always thrown as this operation is not supported.
+     */
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove not supported");
+    }
+
+    /**
+     * Stops iterating and releases any cursors still held by this iterator.
+     */
+    @Override
+    public void close() {
+        while (!stack.isEmpty()) {
+            stack.pop().close();
+        }
+        next = null;
+        fetched = false;
+    }
+
+    /**
+     * Walks the stack until the next leaf value is found.
+     *
+     * @return True if a leaf value was found, false if the iteration is exhausted.
+     */
+    protected boolean fetch() {
+        while (!stack.isEmpty()) {
+            Frame frame = stack.peek();
+            if (!frame.advance()) {
+                stack.pop().close();
+            } else if (frame.isDocumentList()) {
+                if (frame.value != null) stack.push(new CursorFrame((IData)frame.value));
+            } else if (visit(frame.value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visits the given value, either pushing a new frame onto the stack if it is a branch, or setting it as the next
+     * value to be returned if it is a matching leaf.
+     *
+     * @param value The value to be visited.
+     * @return      True if the value is a leaf to be returned next.
+     */
+    protected boolean visit(Object value) {
+        if (documents) {
+            if (value instanceof IData[] || value instanceof Table || value instanceof IDataCodable[] || value instanceof IDataPortable[] || value instanceof ValuesCodable[]) {
+                IData[] array = IDataHelper.toIDataArray(value);
+                if (array != null) stack.push(new ArrayFrame(array, true));
+                return false;
+            } else if (value instanceof IData || value instanceof IDataCodable || value instanceof IDataPortable || value instanceof ValuesCodable) {
+                IData document = IDataHelper.toIData(value);
+                if (!recurse) {
+                    next = document;
+                    return true;
+                }
+                if (document != null) stack.push(new CursorFrame(document));
+                return false;
+            }
+        }
+
+        if (value instanceof Object[]) {
+            stack.push(new ArrayFrame((Object[])value, false));
+            return false;
+        } else if (matches(value)) {
+            next = value;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns true if the given leaf value should be returned by this iterator.
+     *
+     * @param value The leaf value to check.
+     * @return      True if the given leaf value should be returned.
+     */
+    protected boolean matches(Object value) {
+        if (classes == null || classes.length == 0) return includeNulls || value != null;
+
+        for (Class klass : classes) {
+            if (klass != null && klass.isInstance(value)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * A position within a branch of the structure being iterated.
+     */
+    protected static abstract class Frame {
+        /**
+         * The current value of this frame.
+         */
+        protected Object value;
+
+        /**
+         * Moves to the next value in this frame.
+         *
+         * @return True if there was a next value, false if this frame is exhausted.
+         */
+        protected abstract boolean advance();
+
+        /**
+         * Returns true if the values of this frame are the items of a document list.
+         *
+         * @return True if the values of this frame are the items of a document list.
+         */
+        protected boolean isDocumentList() {
+            return false;
+        }
+
+        /**
+         * Releases any resources held by this frame.
+         */
+        protected void close() {}
+    }
+
+    /**
+     * A frame which iterates over the values in an IData document.
+     */
+    protected static class CursorFrame extends Frame {
+        /**
+         * The cursor used to iterate over the document.
+         */
+        protected IDataCursor cursor;
+
+        /**
+         * Creates a new CursorFrame.
+         *
+         * @param document The document to be iterated.
+         */
+        protected CursorFrame(IData document) {
+            this.cursor = document.getCursor();
+        }
+
+        /**
+         * Moves to the next value in the document.
+         *
+         * @return True if there was a next value, false if the document is exhausted.
+         */
+        @Override
+        protected boolean advance() {
+            if (cursor != null && cursor.next()) {
+                value = cursor.getValue();
+                return true;
+            }
+            value = null;
+            return false;
+        }
+
+        /**
+         * Destroys the cursor used to iterate over the document.
+         */
+        @Override
+        protected void close() {
+            if (cursor != null) {
+                cursor.destroy();
+                cursor = null;
+            }
+        }
+    }
+
+    /**
+     * A frame which iterates over the items in an array.
+     */
+    protected static class ArrayFrame extends Frame {
+        /**
+         * The array to be iterated.
+         */
+        protected final Object[] array;
+        /**
+         * Whether the array is a document list.
+         */
+        protected final boolean documentList;
+        /**
+         * The index of the next item to be returned.
+         */
+        protected int index;
+
+        /**
+         * Creates a new ArrayFrame.
+         *
+         * @param array         The array to be iterated.
+         * @param documentList  Whether the array is a document list.
+         */
+        protected ArrayFrame(Object[] array, boolean documentList) {
+            this.array = array;
+            this.documentList = documentList;
+        }
+
+        /**
+         * Moves to the next item in the array.
+         *
+         * @return True if there was a next item, false if the array is exhausted.
+         */
+        @Override
+        protected boolean advance() {
+            if (index < array.length) {
+                value = array[index++];
+                return true;
+            }
+            value = null;
+            return false;
+        }
+
+        /**
+         * Returns true if the array is a document list.
+         *
+         * @return True if the array is a document list.
+         */
+        @Override
+        protected boolean isDocumentList() {
+            return documentList;
+        }
+    }
+
+    /**
+     * A frame which resolves the values associated with a list of fully-qualified keys on demand.
+     */
+    protected static class KeyFrame extends Frame {
+        /**
+         * The document the keys are resolved against.
+         */
+        protected final IData document;
+        /**
+         * The fully-qualified keys to be resolved.
+         */
+        protected final String[] keys;
+        /**
+         * The index of the next key to be resolved.
+         */
+        protected int index;
+
+        /**
+         * Creates a new KeyFrame.
+         *
+         * @param document  The document the keys are resolved against.
+         * @param keys      The fully-qualified keys to be resolved.
+         */
+        protected KeyFrame(IData document, String[] keys) {
+            this.document = document;
+            this.keys = keys;
+        }
+
+        /**
+         * Resolves the value associated with the next key.
+         *
+         * @return True if there was a next key, false if all keys have been resolved.
+         */
+        @Override
+        protected boolean advance() {
+            if (index < keys.length) {
+                value = IDataHelper.get(document, keys[index++]);
+                return true;
+            }
+            value = null;
+            return false;
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.wm.data.IDataPortable;
 import com.wm.data.IDataUtil;
 import com.wm.util.coder.IDataCodable;
 import com.wm.util.coder.ValuesCodable;
+import permafrost.tundra.collection.StringPool;
 import java.io.Serializable;
 import java.util.AbstractMap;
 import java.util.Arrays;
@@ -51,6 +52,11 @@ public class IDataMap extends IDataAdapter implements Iterable<Map.Entry<String,
     public static final IDataComparator DEFAULT_COMPARATOR = BasicIDataComparator.getInstance();
     protected IDataComparator comparator = DEFAULT_COMPARATOR;
 
+    /**
+     * The optional pool used to intern keys and short values put into this map.
+     */
+    protected transient StringPool pool;
+
     /**
      * Construct a new IDataMap object.
      */
@@ -269,6 +275,11 @@ public class IDataMap extends IDataAdapter implements Iterable<Map.Entry<String,
     public Object put(String key, Object value, boolean includeNull) {
         Object previousValue = get(key);
 
+        if (pool != null) {
+            key = pool.intern(key);
+            value = pool.internValue(value);
+        }
+
         if (includeNull || value != null) {
             IDataCursor cursor = this.getCursor();
             IDataUtil.put(cursor, key, value);
@@ -429,6 +440,36 @@ public class IDataMap extends IDataAdapter implements Iterable<Map.Entry<String,
         return this == other || DEFAULT_COMPARATOR.compare(document, (IData)other) == 0;
     }
 
+    /**
+     * Returns a hash code for this object derived from its structural hash, which is consistent with equals.
+     *
+     * @return A hash code for this object.
+     */
+    @Override
+    public int hashCode() {
+        long hash = IDataHashHelper.hash(document);
+        return (int)(hash ^ (hash >>> 32));
+    }
+
+    /**
+     * Returns the pool used to intern keys and short values put into this map.
+     *
+     * @return The pool used to intern keys and short values, or null if they are not interned.
+     */
+    public StringPool getStringPool() {
+        return pool;
+    }
+
+    /**
+     * Sets the pool used to intern keys and short values put into this map, so that documents built from many
+     * records share a single instance of each repeated key.
+     *
+     * @param pool The pool used to intern keys and short values, or null to not intern them.
+     */
+    public void setStringPool(StringPool pool) {
+        this.pool = pool;
+    }
+
     /**
      * Returns the IDataComparator used to compare IData objects.
      *
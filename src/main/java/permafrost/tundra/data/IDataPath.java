@@ -0,0 +1,1103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
+import com.wm.util.Table;
+import org.w3c.dom.Node;
+import permafrost.tundra.collection.BoundedConcurrentCache;
+import permafrost.tundra.lang.ArrayHelper;
+import permafrost.tundra.lang.ObjectHelper;
+import permafrost.tundra.xml.dom.NodeHelper;
+import permafrost.tundra.xml.dom.Nodes;
+import permafrost.tundra.xml.xpath.XPathHelper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+
+/**
+ * An immutable, compiled representation of a simple or fully-qualified IData key such as 'a/b[0]/c(1)'. Compiled
+ * paths are cached, so that frequently used keys are only ever parsed once, and are safe to share between threads.
+ */
+public final class IDataPath {
+    /**
+     * The string which separates individual key parts in a fully-qualified key string.
+     */
+    public static final String SEPARATOR = "/";
+
+    /**
+     * A regular expression pattern which matches key strings array and item indexes.
+     */
+    public static final Pattern INDEX_PATTERN = Pattern.compile("(\\[(-?\\d+?)\\]|\\((\\d+?)\\))$");
+
+    /**
+     * The maximum number of compiled paths cached for each of literal and non-literal keys.
+     */
+    public static final int CACHE_CAPACITY = 4096;
+
+    /**
+     * Cache of compiled non-literal paths.
+     */
+    private static final BoundedConcurrentCache<String, IDataPath> CACHE = new BoundedConcurrentCache<String, IDataPath>(CACHE_CAPACITY);
+
+    /**
+     * Cache of compiled literal paths.
+     */
+    private static final BoundedConcurrentCache<String, IDataPath> LITERAL_CACHE = new BoundedConcurrentCache<String, IDataPath>(CACHE_CAPACITY);
+
+    /**
+     * The key string this path was compiled from.
+     */
+    private final String key;
+
+    /**
+     * Whether the key is treated literally.
+     */
+    private final boolean literal;
+
+    /**
+     * Whether the key is fully-qualified, and therefore must be resolved part by part.
+     */
+    private final boolean fullyQualified;
+
+    /**
+     * The individual parts of this path.
+     */
+    private final Part[] parts;
+
+    /**
+     * For absolute paths, the path relative to the root scope.
+     */
+    private final IDataPath relativePath;
+
+    /**
+     * For paths which could be an XPath expression against a node, the literal path of the variable holding the node.
+     */
+    private final IDataPath variablePath;
+
+    /**
+     * For paths which could be an XPath expression against a node, the XPath expression.
+     */
+    private final String expression;
+
+    /**
+     * Compiles a new path from the given key string.
+     *
+     * @param key     A simple or fully-qualified key string such as 'a/b[0]/c'.
+     * @param literal If true, the key will be treated as a literal key, rather than potentially as a fully-qualified
+     *                key.
+     * @param cached  If true, any paths this path depends on are taken from and added to the cache.
+     */
+    private IDataPath(String key, boolean literal, boolean cached) {
+        if (key == null) throw new NullPointerException("key must not be null");
+
+        this.key = key;
+        this.literal = literal;
+        this.fullyQualified = isFullyQualifiedKey(key, literal);
+
+        if (fullyQualified) {
+            String[] tokens = key.split(SEPARATOR);
+            this.parts = new Part[tokens.length];
+            for (int i = 0; i < tokens.length; i++) {
+                this.parts[i] = new Part(tokens[i], false);
+            }
+        } else {
+            this.parts = new Part[] { new Part(key, true) };
+        }
+
+        if (!literal && key.startsWith(SEPARATOR)) {
+            this.relativePath = of(key.substring(1), false, cached);
+        } else {
+            this.relativePath = null;
+        }
+
+        Matcher matcher = fullyQualified ? IDataHelper.KEY_NODE_XPATH_REGULAR_EXPRESSION_PATTERN.matcher(key) : null;
+        if (matcher != null && matcher.matches()) {
+            this.variablePath = of(matcher.group(1), true, cached);
+            this.expression = matcher.group(2);
+        } else {
+            this.variablePath = null;
+            this.expression = null;
+        }
+    }
+
+    /**
+     * Returns the compiled path for the given key string.
+     *
+     * @param key A simple or fully-qualified key string such as 'a/b[0]/c'.
+     * @return    The compiled path for the given key string, or null if the given key is null.
+     */
+    public static IDataPath of(String key) {
+        return of(key, false);
+    }
+
+    /**
+     * Returns the compiled path for the given key string.
+     *
+     * @param key     A simple or fully-qualified key string such as 'a/b[0]/c'.
+     * @param literal If true, the key will be treated as a literal key, rather than potentially as a fully-qualified
+     *                key.
+     * @return        The compiled path for the given key string, or null if the given key is null.
+     */
+    public static IDataPath of(String key, boolean literal) {
+        if (key == null) return null;
+
+        BoundedConcurrentCache<String, IDataPath> cache = literal ? LITERAL_CACHE : CACHE;
+
+        IDataPath path = cache.get(key);
+        if (path == null) path = cache.putIfAbsent(key, new IDataPath(key, literal, true));
+
+        return path;
+    }
+
+    /**
+     * Compiles a new path for the given key string without caching it, for one-off keys that would otherwise evict
+     * frequently used paths from the cache.
+     *
+     * @param key     A simple or fully-qualified key string such as 'a/b[0]/c'.
+     * @param literal If true, the key will be treated as a literal key, rather than potentially as a fully-qualified
+     *                key.
+     * @return        The compiled path for the given key string, or null if the given key is null.
+     */
+    public static IDataPath compile(String key, boolean literal) {
+        if (key == null) return null;
+        return new IDataPath(key, literal, false);
+    }
+
+    /**
+     * Returns either the cached or a newly compiled uncached path for the given key string.
+     *
+     * @param key     A simple or fully-qualified key string such as 'a/b[0]/c'.
+     * @param literal If true, the key will be treated as a literal key, rather than potentially as a fully-qualified
+     *                key.
+     * @param cached  If true, the path is taken from and added to the cache.
+     * @return        The compiled path for the given key string, or null if the given key is null.
+     */
+    private static IDataPath of(String key, boolean literal, boolean cached) {
+        return cached ? of(key, literal) : compile(key, literal);
+    }
+
+    /**
+     * Returns the compiled paths for the given key strings.
+     *
+     * @param keys    A list of simple or fully-qualified key strings.
+     * @param literal If true, the keys will be treated as literal keys, rather than potentially as fully-qualified
+     *                keys.
+     * @return        The compiled paths for the given key strings.
+     */
+    public static IDataPath[] of(String[] keys, boolean literal) {
+        if (keys == null) return null;
+
+        IDataPath[] paths = new IDataPath[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            paths[i] = of(keys[i], literal);
+        }
+
+        return paths;
+    }
+
+    /**
+     * Returns the key string this path was compiled from.
+     *
+     * @return The key string this path was compiled from.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns true if this path treats its key literally.
+     *
+     * @return True if this path treats its key literally.
+     */
+    public boolean isLiteral() {
+        return literal;
+    }
+
+    /**
+     * Returns true if this path starts with "/", indicating it is resolved against the root scope.
+     *
+     * @return True if this path is an absolute path.
+     */
+    public boolean isAbsolute() {
+        return relativePath != null;
+    }
+
+    /**
+     * Returns true if this path is considered fully-qualified (because it contains either an array index, key index,
+     * or path separated components).
+     *
+     * @return True if this path is considered fully-qualified.
+     */
+    public boolean isFullyQualified() {
+        return fullyQualified;
+    }
+
+    /**
+     * Returns the number of parts in this path.
+     *
+     * @return The number of parts in this path.
+     */
+    public int length() {
+        return parts.length;
+    }
+
+    /**
+     * Returns the part at the given index in this path.
+     *
+     * @param index The zero-based index of the part to be returned.
+     * @return      The part at the given index.
+     */
+    public Part getPart(int index) {
+        return parts[index];
+    }
+
+    /**
+     * Returns the path relative to the root scope, if this is an absolute path.
+     *
+     * @return The path relative to the root scope, or null if this is not an absolute path.
+     */
+    IDataPath getRelativePath() {
+        return relativePath;
+    }
+
+    /**
+     * Returns the literal path to the variable which may hold a node against which this path's XPath expression is
+     * evaluated.
+     *
+     * @return The path to the node variable, or null if this path could not be an XPath expression.
+     */
+    IDataPath getVariablePath() {
+        return variablePath;
+    }
+
+    /**
+     * Returns the XPath expression to be evaluated against a node held by this path's variable.
+     *
+     * @return The XPath expression, or null if this path could not be an XPath expression.
+     */
+    String getExpression() {
+        return expression;
+    }
+
+    /**
+     * Returns the value associated with this path from the given IData document.
+     *
+     * @param document  An IData document.
+     * @return          The value associated with this path in the given IData document.
+     */
+    public Object get(IData document) {
+        return get(null, document, null, Object.class);
+    }
+
+    /**
+     * Returns the value associated with this path from the given IData document.
+     *
+     * @param document  An IData document.
+     * @param klass     The class of the value to be returned.
+     * @param <T>       The type of value to be returned.
+     * @return          The value associated with this path in the given IData document.
+     */
+    public <T> T get(IData document, Class<T> klass) {
+        return get(null, document, null, klass);
+    }
+
+    /**
+     * Returns the value associated with this path from the given scope (if relative) or pipeline (if absolute).
+     *
+     * @param pipeline  The pipeline, required if this is an absolute path.
+     * @param scope     An IData document used to scope this path if it is relative.
+     * @return          The value associated with this path.
+     */
+    public Object get(IData pipeline, IData scope) {
+        return get(pipeline, scope, null, Object.class);
+    }
+
+    /**
+     * Returns the value associated with this path from the given scope (if relative) or pipeline (if absolute).
+     *
+     * @param pipeline          The pipeline, required if this is an absolute path.
+     * @param scope             An IData document used to scope this path if it is relative.
+     * @param namespaceContext  The namespace context used when resolving XPath expressions against nodes.
+     * @param klass             The class of the value to be returned.
+     * @param <T>               The type of value to be returned.
+     * @return                  The value associated with this path.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(IData pipeline, IData scope, NamespaceContext namespaceContext, Class<T> klass) {
+        if (klass == null) throw new NullPointerException("class must not be null");
+
+        Object value = null;
+        IDataCursor cursor = null;
+
+        try {
+            if (scope != null) cursor = scope.getCursor();
+
+            // try finding a value that matches the literal key, and if not found try finding a value
+            // associated with the leaf key if the key is considered fully-qualified
+            if (cursor != null && cursor.first(key)) {
+                value = cursor.getValue();
+            } else if (pipeline != null && relativePath != null) {
+                value = relativePath.get(null, pipeline, namespaceContext, klass);
+            } else if (scope != null && fullyQualified) {
+                if (variablePath != null) {
+                    // support resolving XPath expressions against nodes
+                    Object node = variablePath.get(pipeline, scope, null, Object.class);
+
+                    if (node instanceof Node) {
+                        try {
+                            XPathExpression compiledExpression = XPathHelper.compile(expression, namespaceContext);
+                            Nodes nodes = XPathHelper.get((Node)node, compiledExpression);
+
+                            if (nodes.size() > 0) {
+                                value = NodeHelper.getValue(nodes.get(0));
+                            }
+                        } catch (XPathExpressionException ex) {
+                            // do nothing, assume a normal IData fully-qualified key was specified rather than an XPath expression
+                        }
+                    } else {
+                        value = get(scope, 0, klass);
+                    }
+                } else {
+                    value = get(scope, 0, klass);
+                }
+            }
+        } finally {
+            if (cursor != null) cursor.destroy();
+        }
+
+        return klass.isInstance(value) ? (T)value : null;
+    }
+
+    /**
+     * Returns the value associated with the parts of this path starting at the given index from the given IData
+     * document.
+     *
+     * @param document  An IData document.
+     * @param index     The index of the path part to be resolved against the given document.
+     * @param klass     The class of the value to be returned.
+     * @param <T>       The type of value to be returned.
+     * @return          The value associated with the remaining path in the given IData document.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T get(IData document, int index, Class<T> klass) {
+        Object value = null;
+
+        if (document != null && index < parts.length) {
+            IDataCursor cursor = document.getCursor();
+            Part keyPart = parts[index];
+
+            if (index < parts.length - 1) {
+                if (keyPart.hasArrayIndex()) {
+                    value = get(ArrayHelper.get(IDataHelper.toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), index + 1, klass);
+                } else if (keyPart.hasKeyIndex()) {
+                    value = get(IDataHelper.toIData(get(document, keyPart.getKey(), keyPart.getIndex())), index + 1, klass);
+                } else {
+                    Object object = IDataUtil.get(cursor, keyPart.getKey());
+                    IData parent = IDataHelper.toIData(object);
+                    if (parent != null) {
+                        value = get(parent, index + 1, klass);
+                    } else {
+                        IData[] array = IDataHelper.toIDataArray(object);
+                        if (array != null) {
+                            List<Object> values = new ArrayList<Object>(array.length);
+                            // if we are referencing an IData[], create a new array of values from the individual values in each IData
+                            for (IData item : array) {
+                                values.add(get(item, index + 1, klass));
+                            }
+                            value = ArrayHelper.normalize(values);
+                        }
+                    }
+                }
+            } else {
+                if (keyPart.hasArrayIndex()) {
+                    value = getArrayItem(IDataUtil.get(cursor, keyPart.getKey()), keyPart.getIndex());
+                } else if (keyPart.hasKeyIndex()) {
+                    value = get(document, keyPart.getKey(), keyPart.getIndex());
+                } else {
+                    value = IDataUtil.get(cursor, keyPart.getKey());
+                }
+            }
+
+            cursor.destroy();
+        }
+
+        return klass.isInstance(value) ? (T)value : null;
+    }
+
+    /**
+     * Returns the value associated with this path from the given IData document as an array.
+     *
+     * @param document  An IData document.
+     * @return          The value associated with this path in the given IData document as an array.
+     */
+    public Object[] getAsArray(IData document) {
+        if (document == null) return null;
+
+        Object[] output = null;
+        IDataCursor cursor = document.getCursor();
+
+        // try finding a value that matches the literal key, and if not found try finding a value
+        // associated with the leaf key if the key is considered fully-qualified
+        if (cursor.next(key)) {
+            List<Object> list = new ArrayList<Object>();
+            do {
+                list.addAll(ObjectHelper.listify(cursor.getValue()));
+            } while (cursor.next(key));
+            output = ArrayHelper.toArray(list);
+        } else if (fullyQualified) {
+            output = getAsArray(document, 0);
+        }
+
+        cursor.destroy();
+
+        return output;
+    }
+
+    /**
+     * Returns the value associated with the parts of this path starting at the given index from the given IData
+     * document as an array.
+     *
+     * @param document  An IData document.
+     * @param index     The index of the path part to be resolved against the given document.
+     * @return          The value associated with the remaining path in the given IData document as an array.
+     */
+    private Object[] getAsArray(IData document, int index) {
+        Object[] output = null;
+
+        if (document != null && index < parts.length) {
+            IDataCursor cursor = document.getCursor();
+            Part keyPart = parts[index];
+
+            if (index < parts.length - 1) {
+                if (keyPart.hasArrayIndex()) {
+                    output = getAsArray(ArrayHelper.get(IDataHelper.toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), index + 1);
+                } else if (keyPart.hasKeyIndex()) {
+                    output = getAsArray(IDataHelper.toIData(get(document, keyPart.getKey(), keyPart.getIndex())), index + 1);
+                } else {
+                    output = getAsArray(IDataUtil.getIData(cursor, keyPart.getKey()), index + 1);
+                }
+            } else {
+                List<Object> list = new ArrayList<Object>();
+                if (keyPart.hasArrayIndex()) {
+                    list.addAll(ObjectHelper.listify(getArrayItem(IDataUtil.get(cursor, keyPart.getKey()), keyPart.getIndex())));
+                } else if (keyPart.hasKeyIndex()) {
+                    list.addAll(ObjectHelper.listify(get(document, keyPart.getKey(), keyPart.getIndex())));
+                } else {
+                    while (cursor.next(keyPart.getKey())) {
+                        list.addAll(ObjectHelper.listify(cursor.getValue()));
+                    }
+                }
+                output = ArrayHelper.toArray(list);
+            }
+
+            cursor.destroy();
+        }
+
+        return output;
+    }
+
+    /**
+     * Sets the value associated with this path in the given IData document. Note that this method mutates the given
+     * IData document in place.
+     *
+     * @param document      An IData document.
+     * @param value         The value to be set.
+     * @return              The input IData document with the value set, or a new IData document if the given
+     *                      document was null.
+     */
+    public IData put(IData document, Object value) {
+        return put(document, value, true);
+    }
+
+    /**
+     * Sets the value associated with this path in the given IData document. Note that this method mutates the given
+     * IData document in place.
+     *
+     * @param document      An IData document.
+     * @param value         The value to be set.
+     * @param includeNull   When true the value is set even when null, otherwise the value is only set when it is not
+     *                      null.
+     * @return              The input IData document with the value set, or a new IData document if the given
+     *                      document was null.
+     */
+    public IData put(IData document, Object value, boolean includeNull) {
+        if (!includeNull && value == null) return document;
+        return put(document, 0, value);
+    }
+
+    /**
+     * Sets the value associated with the parts of this path starting at the given index in the given IData document.
+     *
+     * @param document      An IData document.
+     * @param index         The index of the path part to be resolved against the given document.
+     * @param value         The value to be set.
+     * @return              The input IData document with the value set.
+     */
+    private IData put(IData document, int index, Object value) {
+        if (index < parts.length) {
+            if (document == null) document = IDataFactory.create();
+
+            IDataCursor cursor = document.getCursor();
+            Part keyPart = parts[index];
+
+            if (index < parts.length - 1) {
+                if (keyPart.hasArrayIndex()) {
+                    IData[] array = IDataUtil.getIDataArray(cursor, keyPart.getKey());
+                    IData child = null;
+                    try {
+                        child = ArrayHelper.get(array, keyPart.getIndex());
+                    } catch(ArrayIndexOutOfBoundsException ex) {
+                        // ignore exception
+                    }
+                    value = ArrayHelper.put(array, put(child, index + 1, value), keyPart.getIndex(), IData.class);
+                } else if (keyPart.hasKeyIndex()) {
+                    value = put(IDataHelper.toIData(get(document, keyPart.getKey(), keyPart.getIndex())), index + 1, value);
+                } else {
+                    value = put(IDataUtil.getIData(cursor, keyPart.getKey()), index + 1, value);
+                }
+            } else if (keyPart.hasArrayIndex()) {
+                Class klass = Object.class;
+                if (value != null) {
+                    if (value instanceof String) {
+                        klass = String.class;
+                    } else if (value instanceof IData) {
+                        klass = IData.class;
+                    }
+                }
+                value = ArrayHelper.put(IDataUtil.getObjectArray(cursor, keyPart.getKey()), value, keyPart.getIndex(), klass);
+            }
+
+            if (keyPart.hasKeyIndex()) {
+                put(document, keyPart.getKey(), keyPart.getIndex(), value);
+            } else {
+                IDataUtil.put(cursor, keyPart.getKey(), value);
+            }
+            cursor.destroy();
+        }
+
+        return document;
+    }
+
+    /**
+     * Removes the value associated with this path from the given IData document, returning the removed value.
+     *
+     * @param document  The document to remove the value from.
+     * @return          The value that was associated with this path.
+     */
+    public Object remove(IData document) {
+        Object value = get(document);
+        drop(document);
+        return value;
+    }
+
+    /**
+     * Removes all occurrences of this path from the given IData document, returning the removed values.
+     *
+     * @param document  The document to remove the values from.
+     * @return          The values that were associated with this path.
+     */
+    public Object[] removeAll(IData document) {
+        Object[] values = getAsArray(document);
+        dropAll(document);
+        return values;
+    }
+
+    /**
+     * Removes the value associated with this path from the given IData document.
+     *
+     * @param document  An IData document.
+     * @return          The given IData document.
+     */
+    public IData drop(IData document) {
+        if (document != null) {
+            IDataCursor cursor = document.getCursor();
+
+            if (cursor.first(key)) {
+                cursor.delete();
+            } else if (fullyQualified) {
+                drop(document, 0);
+            }
+
+            cursor.destroy();
+        }
+        return document;
+    }
+
+    /**
+     * Removes the value associated with the parts of this path starting at the given index from the given IData
+     * document.
+     *
+     * @param document  An IData document.
+     * @param index     The index of the path part to be resolved against the given document.
+     */
+    private void drop(IData document, int index) {
+        if (document != null && index < parts.length) {
+            IDataCursor cursor = document.getCursor();
+            Part keyPart = parts[index];
+
+            if (index < parts.length - 1) {
+                if (keyPart.hasArrayIndex()) {
+                    drop(ArrayHelper.get(IDataHelper.toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), index + 1);
+                } else if (keyPart.hasKeyIndex()) {
+                    drop(IDataHelper.toIData(get(document, keyPart.getKey(), keyPart.getIndex())), index + 1);
+                } else {
+                    Object value = IDataUtil.get(cursor, keyPart.getKey());
+                    IData[] array = IDataHelper.toIDataArray(value);
+                    if (array != null) {
+                        // if we are referencing an IData[], drop the key from all items in the array
+                        for (IData item : array) {
+                            drop(item, index + 1);
+                        }
+                    } else {
+                        drop(IDataHelper.toIData(value), index + 1);
+                    }
+                }
+            } else {
+                if (keyPart.hasArrayIndex()) {
+                    IDataUtil.put(cursor, keyPart.getKey(), ArrayHelper.drop(IDataUtil.getObjectArray(cursor, keyPart.getKey()), keyPart.getIndex()));
+                } else if (keyPart.hasKeyIndex()) {
+                    drop(document, keyPart.getKey(), keyPart.getIndex());
+                } else {
+                    IDataUtil.remove(cursor, keyPart.getKey());
+                }
+            }
+            cursor.destroy();
+        }
+    }
+
+    /**
+     * Removes all occurrences of this path from the given IData document.
+     *
+     * @param document  An IData document.
+     * @return          The given IData document.
+     */
+    public IData dropAll(IData document) {
+        if (document != null) {
+            IDataCursor cursor = document.getCursor();
+
+            if (cursor.next(key)) {
+                do {
+                    cursor.delete();
+                } while (cursor.next(key));
+            } else if (fullyQualified) {
+                dropAll(document, 0);
+            }
+
+            cursor.destroy();
+        }
+        return document;
+    }
+
+    /**
+     * Removes all occurrences of the parts of this path starting at the given index from the given IData document.
+     *
+     * @param document  An IData document.
+     * @param index     The index of the path part to be resolved against the given document.
+     */
+    private void dropAll(IData document, int index) {
+        if (document != null && index < parts.length) {
+            IDataCursor cursor = document.getCursor();
+            Part keyPart = parts[index];
+
+            if (index < parts.length - 1) {
+                if (keyPart.hasArrayIndex()) {
+                    dropAll(ArrayHelper.get(IDataHelper.toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), index + 1);
+                } else if (keyPart.hasKeyIndex()) {
+                    dropAll(IDataHelper.toIData(get(document, keyPart.getKey(), keyPart.getIndex())), index + 1);
+                } else {
+                    dropAll(IDataHelper.toIData(IDataUtil.get(cursor, keyPart.getKey())), index + 1);
+                }
+            } else {
+                if (keyPart.hasArrayIndex()) {
+                    IDataUtil.put(cursor, keyPart.getKey(), ArrayHelper.drop(IDataUtil.getObjectArray(cursor, keyPart.getKey()), keyPart.getIndex()));
+                } else if (keyPart.hasKeyIndex()) {
+                    drop(document, keyPart.getKey(), keyPart.getIndex());
+                } else {
+                    while (cursor.next(keyPart.getKey())) {
+                        cursor.delete();
+                    }
+                }
+            }
+            cursor.destroy();
+        }
+    }
+
+    /**
+     * Returns true if this path exists in the given IData document.
+     *
+     * @param document  An IData document.
+     * @return          True if this path exists in the given IData document.
+     */
+    public boolean exists(IData document) {
+        return size(document) > 0;
+    }
+
+    /**
+     * Returns the number of occurrences of this path in the given IData document.
+     *
+     * @param document  An IData document.
+     * @return          The number of occurrences of this path in the given IData document.
+     */
+    public int size(IData document) {
+        int size = 0;
+        if (document != null) {
+            IDataCursor cursor = document.getCursor();
+
+            if (cursor.first(key)) {
+                size++;
+                while (cursor.next(key)) size++;
+            } else if (fullyQualified) {
+                size = size(document, 0);
+            }
+
+            cursor.destroy();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of occurrences of the parts of this path starting at the given index in the given IData
+     * document.
+     *
+     * @param document  An IData document.
+     * @param index     The index of the path part to be resolved against the given document.
+     * @return          The number of occurrences of the remaining path in the given IData document.
+     */
+    private int size(IData document, int index) {
+        int size = 0;
+        if (document != null && index < parts.length) {
+            IDataCursor cursor = document.getCursor();
+            Part keyPart = parts[index];
+
+            if (index < parts.length - 1) {
+                if (keyPart.hasArrayIndex()) {
+                    size = size(ArrayHelper.get(IDataHelper.toIDataArray(IDataUtil.get(cursor, keyPart.getKey())), keyPart.getIndex()), index + 1);
+                } else if (keyPart.hasKeyIndex()) {
+                    size = size(IDataHelper.toIData(get(document, keyPart.getKey(), keyPart.getIndex())), index + 1);
+                } else {
+                    size = size(IDataHelper.toIData(IDataUtil.get(cursor, keyPart.getKey())), index + 1);
+                }
+            } else {
+                if (keyPart.hasArrayIndex()) {
+                    Object[] array = IDataUtil.getObjectArray(cursor, keyPart.getKey());
+                    if (array != null && array.length > keyPart.getIndex()) {
+                        size = 1;
+                    }
+                } else if (keyPart.hasKeyIndex()) {
+                    size = size(document, keyPart.getKey(), keyPart.getIndex());
+                } else {
+                    while (cursor.next(keyPart.getKey())) size++;
+                }
+            }
+            cursor.destroy();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the item at the given index if the given value is an array or table, otherwise null.
+     *
+     * @param value The array or table value.
+     * @param index The index of the item to be returned.
+     * @return      The item at the given index, or null.
+     */
+    private static Object getArrayItem(Object value, int index) {
+        if (value instanceof Object[] || value instanceof Table) {
+            Object[] array = value instanceof Object[] ? (Object[])value : ((Table)value).getValues();
+            return ArrayHelper.get(array, index);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value associated with the nth occurrence of the given key.
+     *
+     * @param document  The IData document to return the value from.
+     * @param key       The key whose associated value is to be returned.
+     * @param n         Determines which occurrence of the key to return the value for.
+     * @return          The value associated with the nth occurrence of the given key in the given IData document.
+     */
+    private static Object get(IData document, String key, int n) {
+        if (document == null || key == null || n < 0) return null;
+
+        Object value = null;
+        int i = 0;
+
+        IDataCursor cursor = document.getCursor();
+        while (cursor.next(key) && i++ < n) ;
+        if (i > n) value = cursor.getValue();
+        cursor.destroy();
+
+        return value;
+    }
+
+    /**
+     * Sets the value associated with the nth occurrence of the given key in the given IData document.
+     *
+     * @param document  The IData document to set the key's associated value in.
+     * @param key       The key whose value is to be set.
+     * @param n         Determines which occurrence of the key to set the value for.
+     * @param value     The value to be set.
+     */
+    private static void put(IData document, String key, int n, Object value) {
+        if (document == null || key == null || n < 0) return;
+
+        IDataCursor cursor = document.getCursor();
+        for (int i = 0; i < n; i++) {
+            if (!cursor.next(key)) cursor.insertAfter(key, null);
+        }
+        cursor.insertAfter(key, value);
+        cursor.destroy();
+    }
+
+    /**
+     * Removes the element with the nth occurrence of the given key from the given IData document.
+     *
+     * @param document The IData document to remove the key value pair from.
+     * @param key      The key to be removed.
+     * @param n        Determines which occurrence of the key to remove.
+     */
+    private static void drop(IData document, String key, int n) {
+        if (document == null || key == null || n < 0) return;
+
+        int i = 0;
+
+        IDataCursor cursor = document.getCursor();
+        while (cursor.next(key) && i++ < n) ;
+        if (i > n) cursor.delete();
+        cursor.destroy();
+    }
+
+    /**
+     * Returns the number of occurrences of the nth occurrence of the given key in the given IData document.
+     *
+     * @param document  An IData document.
+     * @param key       The key whose occurrence is to be counted.
+     * @param n         The nth occurrence to be counted.
+     * @return          1 if the nth occurrence of the given key exists, otherwise 0.
+     */
+    private static int size(IData document, String key, int n) {
+        int size = 0;
+
+        if (document != null && key != null && n >= 0) {
+            int i = 0;
+            IDataCursor cursor = document.getCursor();
+            while (cursor.next(key) && i++ < n) ;
+            if (i > n) size = 1;
+            cursor.destroy();
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns true if the given key string starts with "/", indicating it is an absolute path.
+     *
+     * @param key     A key string.
+     * @param literal If true, the key will be treated as a literal key, rather than potentially as a
+     *                fully-qualified key.
+     * @return        True if the given key is an absolute path.
+     */
+    public static boolean isAbsolute(String key, boolean literal) {
+        return !literal && key != null && key.startsWith(SEPARATOR);
+    }
+
+    /**
+     * Returns true if the given IData key is considered fully-qualified (because it contains either an array index,
+     * key index, or path separated components).
+     *
+     * @param key     An IData key string.
+     * @param literal If true, the key will be treated as a literal key, rather than potentially as a
+     *                fully-qualified key.
+     * @return True if the given key is considered fully-qualified.
+     */
+    public static boolean isFullyQualified(String key, boolean literal) {
+        // scanned rather than compiled, so that arbitrary data keys do not evict compiled paths from the cache
+        return key != null && isFullyQualifiedKey(key, literal);
+    }
+
+    /**
+     * Returns true if the given non-null key string contains path separated components, or ends with an array or key
+     * index.
+     *
+     * @param key     An IData key string.
+     * @param literal If true, the key will be treated as a literal key, which is never fully-qualified.
+     * @return        True if the given key is considered fully-qualified.
+     */
+    private static boolean isFullyQualifiedKey(String key, boolean literal) {
+        if (literal) return false;
+        if (key.contains(SEPARATOR)) return true;
+
+        int length = key.length();
+        char last = length == 0 ? 0 : key.charAt(length - 1);
+        return (last == ']' || last == ')') && INDEX_PATTERN.matcher(key).find();
+    }
+
+    /**
+     * Returns true if the given object is a path compiled from the same key string.
+     *
+     * @param other The object to compare for equality.
+     * @return      True if the given object is equal to this path.
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (!(other instanceof IDataPath)) return false;
+        IDataPath path = (IDataPath)other;
+        return literal == path.literal && key.equals(path.key);
+    }
+
+    /**
+     * Returns a hash code for this path.
+     *
+     * @return A hash code for this path.
+     */
+    @Override
+    public int hashCode() {
+        return literal ? ~key.hashCode() : key.hashCode();
+    }
+
+    /**
+     * Returns a string representation of this path.
+     *
+     * @return A string representation of this path.
+     */
+    @Override
+    public String toString() {
+        return ArrayHelper.join(parts, SEPARATOR);
+    }
+
+    /**
+     * Represents an individual key part of a fully-qualified key.
+     */
+    public static final class Part {
+        private final boolean hasArrayIndex, hasKeyIndex;
+        private final int index;
+        private final String key;
+
+        /**
+         * Constructs a new key part given a key string.
+         *
+         * @param key     An IData key as a string.
+         * @param literal If true, the key is treated literally rather than as a fully-qualified key that could contain
+         *                array or key indexing.
+         */
+        Part(String key, boolean literal) {
+            if (key == null) throw new NullPointerException("key must not be null");
+
+            boolean hasArrayIndex = false, hasKeyIndex = false;
+            int index = 0;
+
+            if (!literal) {
+                StringBuffer buffer = new StringBuffer();
+
+                Matcher matcher = INDEX_PATTERN.matcher(key);
+                while (matcher.find()) {
+                    String arrayIndexString = matcher.group(2);
+                    String keyIndexString = matcher.group(3);
+
+                    if (arrayIndexString != null) {
+                        hasArrayIndex = true;
+                        index = Integer.parseInt(arrayIndexString);
+                    } else {
+                        hasKeyIndex = true;
+                        index = Integer.parseInt(keyIndexString);
+                    }
+                    matcher.appendReplacement(buffer, "");
+                }
+                matcher.appendTail(buffer);
+
+                key = buffer.toString();
+            }
+
+            this.key = key;
+            this.hasArrayIndex = hasArrayIndex;
+            this.hasKeyIndex = hasKeyIndex;
+            this.index = index;
+        }
+
+        /**
+         * Returns true if this key includes an array index.
+         *
+         * @return true if this key includes an array index.
+         */
+        public boolean hasArrayIndex() {
+            return hasArrayIndex;
+        }
+
+        /**
+         * Returns true if this key includes an key index.
+         *
+         * @return true if this key includes an key index.
+         */
+        public boolean hasKeyIndex() {
+            return hasKeyIndex;
+        }
+
+        /**
+         * Returns this key's index value.
+         *
+         * @return This key's index value.
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Returns the key-only component of this key part (with no array or key indexing).
+         *
+         * @return The key-only component of this key part (with no array or key indexing).
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns a string representation of this key part.
+         *
+         * @return A string representation of this key part.
+         */
+        @Override
+        public String toString() {
+            String output;
+            if (hasKeyIndex()) {
+                output = key + "(" + index + ")";
+            } else if (hasArrayIndex()) {
+                output = key + "[" + index + "]";
+            } else {
+                output = key;
+            }
+            return output;
+        }
+    }
+}
@@ -25,6 +25,10 @@
 package permafrost.tundra.data;
 
 import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
+import permafrost.tundra.collection.StringPool;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -45,16 +49,25 @@ public class IDataPropertiesParser extends IDataTextParser {
         /**
          * The singleton instance of the class.
          */
-        private static final IDataPropertiesParser INSTANCE = new IDataPropertiesParser();
+        private static final IDataPropertiesParser INSTANCE = new IDataPropertiesParser(null);
     }
 
     /**
-     * Disallow instantiation of this class.
+     * The optional pool used to intern the keys and short values of decoded documents.
      */
-    private IDataPropertiesParser() {}
+    private final StringPool pool;
 
     /**
-     * Returns the singleton instance of this class.
+     * Constructs a new parser which interns the keys and short values of decoded documents using the given pool.
+     *
+     * @param pool  The pool used to intern keys and short values, or null to not intern them.
+     */
+    public IDataPropertiesParser(StringPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the singleton instance of this class, which does not intern keys or values.
      *
      * @return The singleton instance of this class.
      */
@@ -82,7 +95,19 @@ public class IDataPropertiesParser extends IDataTextParser {
     public IData decode(InputStream inputStream, Charset charset) throws IOException {
         Properties properties = new Properties();
         properties.load(new InputStreamReader(inputStream, charset));
-        return IDataHelper.toIData(properties);
+
+        if (pool == null) return IDataHelper.toIData(properties);
+
+        IData output = IDataFactory.create();
+        IDataCursor cursor = output.getCursor();
+        try {
+            for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+                IDataUtil.put(cursor, pool.intern(entry.getKey().toString()), pool.internValue(entry.getValue()));
+            }
+        } finally {
+            cursor.destroy();
+        }
+        return output;
     }
 
     /**
@@ -0,0 +1,1184 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.DataException;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import permafrost.tundra.flow.ConditionEvaluator;
+import permafrost.tundra.lang.ArrayHelper;
+import permafrost.tundra.util.concurrent.ParallelHelper;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A read-only columnar representation of an IData[] record set, where each distinct top-level key is stored once in
+ * a shared key dictionary, and its values are stored in a single column: as a long[] when every value is an Integer
+ * or a Long, as a double[] when every value is a Double, and as an Object[] otherwise.
+ *
+ * Sorting, grouping, de-duplication and projection operate directly on the columns rather than on each record's
+ * cursor, and return new tables which share unchanged columns. Records can be accessed as lightweight read-only IData
+ * row views, and the table can be exported back to an IData[] at any time. When a record contains the same key more
+ * than once, only the first value is retained.
+ */
+public class IDataTable {
+    /**
+     * The shared key dictionary, in order of first appearance.
+     */
+    protected final String[] keys;
+
+    /**
+     * The index of each key in the dictionary.
+     */
+    protected final Map<String, Integer> index;
+
+    /**
+     * The columns of values, one per key.
+     */
+    protected final Column[] columns;
+
+    /**
+     * The number of rows in this table.
+     */
+    protected final int size;
+
+    /**
+     * The rows which represent null records, or null if there are none.
+     */
+    protected final BitSet nullRows;
+
+    /**
+     * Creates a new IDataTable.
+     *
+     * @param keys      The shared key dictionary.
+     * @param index     The index of each key in the dictionary.
+     * @param columns   The columns of values.
+     * @param size      The number of rows.
+     * @param nullRows  The rows which represent null records, or null if there are none.
+     */
+    protected IDataTable(String[] keys, Map<String, Integer> index, Column[] columns, int size, BitSet nullRows) {
+        this.keys = keys;
+        this.index = index;
+        this.columns = columns;
+        this.size = size;
+        this.nullRows = nullRows == null || nullRows.isEmpty() ? null : nullRows;
+    }
+
+    /**
+     * Returns a new IDataTable containing the given records.
+     *
+     * @param records   The records to be stored in columns.
+     * @return          A new IDataTable containing the given records.
+     */
+    public static IDataTable of(IData[] records) {
+        if (records == null) return null;
+
+        int size = records.length;
+        List<String> keys = new ArrayList<String>();
+        Map<String, Integer> index = new HashMap<String, Integer>();
+        List<Object[]> values = new ArrayList<Object[]>();
+        List<BitSet> present = new ArrayList<BitSet>();
+        BitSet nullRows = new BitSet(size);
+
+        for (int row = 0; row < size; row++) {
+            IData record = records[row];
+            if (record == null) {
+                nullRows.set(row);
+                continue;
+            }
+
+            IDataCursor cursor = record.getCursor();
+            try {
+                while (cursor.next()) {
+                    String key = cursor.getKey();
+                    Integer column = index.get(key);
+                    if (column == null) {
+                        column = keys.size();
+                        index.put(key, column);
+                        keys.add(key);
+                        values.add(new Object[size]);
+                        present.add(new BitSet(size));
+                    }
+
+                    BitSet columnPresent = present.get(column);
+                    if (!columnPresent.get(row)) {
+                        columnPresent.set(row);
+                        values.get(column)[row] = cursor.getValue();
+                    }
+                }
+            } finally {
+                cursor.destroy();
+            }
+        }
+
+        Column[] columns = new Column[keys.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = Column.of(values.get(i), present.get(i), size);
+            values.set(i, null);
+        }
+
+        return new IDataTable(keys.toArray(new String[keys.size()]), index, columns, size, nullRows);
+    }
+
+    /**
+     * Returns the number of rows in this table.
+     *
+     * @return The number of rows in this table.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the keys of the columns in this table.
+     *
+     * @return The keys of the columns in this table.
+     */
+    public String[] getKeys() {
+        return keys.clone();
+    }
+
+    /**
+     * Returns a read-only IData view of the given row, or null if the row represents a null record.
+     *
+     * @param row   The row to be returned.
+     * @return      A read-only IData view of the given row.
+     */
+    public IData getRow(int row) {
+        if (row < 0 || row >= size) throw new IndexOutOfBoundsException("row " + row + " out of bounds for table size " + size);
+        return isNullRow(row) ? null : new Row(row);
+    }
+
+    /**
+     * Returns the values associated with the given key from each row in this table.
+     *
+     * @param key           A fully-qualified key identifying the values to return.
+     * @param defaultValue  The default value returned if the key does not exist or its value is null.
+     * @return              The values associated with the given key from each row in this table.
+     */
+    public Object[] getValues(String key, Object defaultValue) {
+        if (key == null) return null;
+
+        Object[] output = new Object[size];
+        Integer column = index.get(key);
+
+        for (int row = 0; row < size; row++) {
+            Object value;
+            if (column != null) {
+                value = isNullRow(row) ? null : columns[column].get(row);
+            } else {
+                value = IDataHelper.get(getRow(row), key);
+            }
+            output[row] = value == null ? defaultValue : value;
+        }
+
+        return ArrayHelper.normalize(output);
+    }
+
+    /**
+     * Returns the values associated with the given key from each row in this table.
+     *
+     * @param key   A fully-qualified key identifying the values to return.
+     * @return      The values associated with the given key from each row in this table.
+     */
+    public Object[] getValues(String key) {
+        return getValues(key, null);
+    }
+
+    /**
+     * Returns a new IData[] containing the records in this table.
+     *
+     * @return A new IData[] containing the records in this table.
+     */
+    public IData[] toIDataArray() {
+        IData[] output = new IData[size];
+
+        for (int row = 0; row < size; row++) {
+            if (isNullRow(row)) continue;
+
+            IData record = IDataFactory.create();
+            IDataCursor cursor = record.getCursor();
+            for (int column = 0; column < columns.length; column++) {
+                if (columns[column].isPresent(row)) cursor.insertAfter(keys[column], columns[column].get(row));
+            }
+            cursor.destroy();
+
+            output[row] = record;
+        }
+
+        return output;
+    }
+
+    /**
+     * Returns a new table containing only the columns with the given keys, in the given order. Keys which do not exist
+     * in this table are ignored. The columns are shared rather than copied.
+     *
+     * @param keys  The keys of the columns to be included.
+     * @return      A new table containing only the given columns.
+     */
+    public IDataTable project(String... keys) {
+        List<String> projectedKeys = new ArrayList<String>();
+        List<Column> projectedColumns = new ArrayList<Column>();
+        Map<String, Integer> projectedIndex = new HashMap<String, Integer>();
+
+        if (keys != null) {
+            for (String key : keys) {
+                Integer column = index.get(key);
+                if (column != null && !projectedIndex.containsKey(key)) {
+                    projectedIndex.put(key, projectedKeys.size());
+                    projectedKeys.add(key);
+                    projectedColumns.add(columns[column]);
+                }
+            }
+        }
+
+        return new IDataTable(projectedKeys.toArray(new String[projectedKeys.size()]), projectedIndex, projectedColumns.toArray(new Column[projectedColumns.size()]), size, nullRows);
+    }
+
+    /**
+     * Returns a new table containing the given rows of this table, in the given order.
+     *
+     * @param rows  The rows to be included.
+     * @return      A new table containing the given rows.
+     */
+    public IDataTable select(int... rows) {
+        if (rows == null) rows = new int[0];
+
+        Column[] selectedColumns = new Column[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            selectedColumns[i] = columns[i].select(rows);
+        }
+
+        BitSet selectedNullRows = null;
+        if (nullRows != null) {
+            selectedNullRows = new BitSet(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                if (nullRows.get(rows[i])) selectedNullRows.set(i);
+            }
+        }
+
+        return new IDataTable(keys, index, selectedColumns, rows.length, selectedNullRows);
+    }
+
+    /**
+     * Returns a new table containing the rows of this table which satisfy the given webMethods Integration Server
+     * flow language condition. Null records are never included.
+     *
+     * @param condition The condition each row is evaluated against.
+     * @return          A new table containing the rows which satisfy the given condition.
+     */
+    public IDataTable filter(String condition) {
+        ConditionEvaluator evaluator = new ConditionEvaluator(condition);
+        int[] rows = new int[size];
+        int count = 0;
+
+        for (int row = 0; row < size; row++) {
+            if (!isNullRow(row) && evaluator.evaluate(getRow(row))) rows[count++] = row;
+        }
+
+        return select(Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * Returns a new table containing the rows of this table whose value for the given key is equal to one of the given
+     * values. The comparison is performed against the column directly, without creating any row views.
+     *
+     * @param key       The top-level key whose values are compared.
+     * @param values    The values to be matched.
+     * @return          A new table containing the matching rows.
+     */
+    public IDataTable filter(String key, Object... values) {
+        Integer column = index.get(key);
+        int[] rows = new int[size];
+        int count = 0;
+
+        if (column != null && values != null) {
+            Set<Object> matches = new HashSet<Object>(Arrays.asList(values));
+            boolean matchNull = matches.contains(null);
+
+            for (int row = 0; row < size; row++) {
+                if (isNullRow(row) || !columns[column].isPresent(row)) continue;
+                Object value = columns[column].get(row);
+                if (value == null ? matchNull : matches.contains(value)) rows[count++] = row;
+            }
+        }
+
+        return select(Arrays.copyOf(rows, count));
+    }
+
+    /**
+     * Returns a new table with the rows of this table sorted by the given criteria. The sort is stable, and numeric
+     * columns are compared as primitives where the criterion type allows.
+     *
+     * @param criteria  The criteria to sort by.
+     * @return          A new table with the rows sorted by the given criteria.
+     */
+    public IDataTable sort(IDataComparisonCriterion... criteria) {
+        if (criteria == null || criteria.length == 0 || size < 2) return this;
+
+        final RowComparator[] comparators = new RowComparator[criteria.length];
+        for (int i = 0; i < criteria.length; i++) {
+            comparators[i] = getComparator(criteria[i]);
+        }
+
+        Integer[] order = new Integer[size];
+        for (int row = 0; row < size; row++) {
+            order[row] = row;
+        }
+
+        ParallelHelper.sort(order, new Comparator<Integer>() {
+            public int compare(Integer first, Integer second) {
+                int result = 0;
+                for (int i = 0; i < comparators.length && result == 0; i++) {
+                    result = comparators[i].compare(first, second);
+                }
+                return result;
+            }
+        });
+
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = order[i];
+        }
+
+        return select(rows);
+    }
+
+    /**
+     * Groups the rows of this table by the given criteria. Null records are not included in any group.
+     *
+     * @param criteria  The criteria to group rows by.
+     * @param sorted    If true, groups are sorted by their key values, otherwise groups are in the order in which
+     *                  their first row appears in this table.
+     * @return          A Map containing the groups and their rows, in the requested order.
+     */
+    public Map<IDataCompoundKey, IDataTable> group(IDataComparisonCriterion[] criteria, boolean sorted) {
+        Map<IDataCompoundKey, List<Integer>> members = groupRows(criteria);
+        Map<IDataCompoundKey, IDataTable> groups = new LinkedHashMap<IDataCompoundKey, IDataTable>(members.size() * 2);
+
+        IDataCompoundKey[] groupKeys = members.keySet().toArray(new IDataCompoundKey[members.size()]);
+        if (sorted && groupKeys.length > 1) ParallelHelper.sort(groupKeys, null);
+
+        for (IDataCompoundKey key : groupKeys) {
+            List<Integer> rows = members.get(key);
+            int[] selection = new int[rows.size()];
+            for (int i = 0; i < selection.length; i++) {
+                selection[i] = rows.get(i);
+            }
+            groups.put(key, select(selection));
+        }
+
+        return groups;
+    }
+
+    /**
+     * Returns a new table containing only the first row for each distinct set of values of the given criteria. Null
+     * records are not included.
+     *
+     * @param criteria  The criteria whose values identify distinct rows.
+     * @param sorted    If true, rows are sorted by their key values, otherwise rows are in the order in which they
+     *                  appear in this table.
+     * @return          A new table containing only the first row for each distinct set of values.
+     */
+    public IDataTable unique(IDataComparisonCriterion[] criteria, boolean sorted) {
+        Map<IDataCompoundKey, List<Integer>> members = groupRows(criteria);
+
+        IDataCompoundKey[] groupKeys = members.keySet().toArray(new IDataCompoundKey[members.size()]);
+        if (sorted && groupKeys.length > 1) ParallelHelper.sort(groupKeys, null);
+
+        int[] rows = new int[groupKeys.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = members.get(groupKeys[i]).get(0);
+        }
+
+        return select(rows);
+    }
+
+    /**
+     * Groups the rows of this table by the given criteria, in order of first appearance.
+     *
+     * @param criteria  The criteria to group rows by.
+     * @return          A Map containing the groups and the indexes of their rows.
+     */
+    private Map<IDataCompoundKey, List<Integer>> groupRows(IDataComparisonCriterion[] criteria) {
+        if (criteria == null || criteria.length == 0) throw new IllegalArgumentException("criteria must not be null or empty");
+
+        Object[][] values = new Object[criteria.length][];
+        for (int i = 0; i < criteria.length; i++) {
+            values[i] = normalize(criteria[i]);
+        }
+
+        Map<IDataCompoundKey, List<Integer>> groups = new LinkedHashMap<IDataCompoundKey, List<Integer>>();
+        for (int row = 0; row < size; row++) {
+            if (isNullRow(row)) continue;
+
+            Object[] keyValues = new Object[criteria.length];
+            for (int i = 0; i < criteria.length; i++) {
+                keyValues[i] = values[i][row];
+            }
+
+            IDataCompoundKey key = new IDataCompoundKey(criteria, keyValues, null);
+            List<Integer> rows = groups.get(key);
+            if (rows == null) {
+                rows = new ArrayList<Integer>();
+                groups.put(new IDataCompoundKey(criteria, keyValues, getRow(row)), rows);
+            }
+            rows.add(row);
+        }
+
+        return groups;
+    }
+
+    /**
+     * Returns the value of the given criterion's key for every row, converted by the criterion.
+     *
+     * @param criterion The criterion whose values are to be returned.
+     * @return          The converted values for every row.
+     */
+    private Object[] normalize(IDataComparisonCriterion criterion) {
+        Object[] output = new Object[size];
+        Integer column = index.get(criterion.getKey());
+
+        for (int row = 0; row < size; row++) {
+            if (isNullRow(row)) continue;
+            Object value = column == null ? IDataHelper.get(getRow(row), criterion.getKey()) : columns[column].get(row);
+            output[row] = criterion.normalize(value);
+        }
+
+        return output;
+    }
+
+    /**
+     * Returns a comparator of rows for the given criterion, which compares primitive column values directly when the
+     * criterion's type orders them the same way as their natural order.
+     *
+     * @param criterion The criterion to compare rows by.
+     * @return          A comparator of rows for the given criterion.
+     */
+    private RowComparator getComparator(final IDataComparisonCriterion criterion) {
+        Integer position = index.get(criterion.getKey());
+        IDataComparisonType type = criterion.getType();
+
+        if (position != null) {
+            final Column column = columns[position];
+            boolean natural = type == IDataComparisonType.OBJECT || type == IDataComparisonType.DECIMAL || (type == IDataComparisonType.INTEGER && column instanceof LongColumn);
+
+            if (natural && column instanceof NumericColumn) {
+                final boolean descending = criterion.isDescending();
+                return new RowComparator() {
+                    public int compare(int first, int second) {
+                        int result = ((NumericColumn)column).compare(first, second);
+                        return descending ? -Integer.signum(result) : result;
+                    }
+                };
+            }
+        }
+
+        final Object[] values = normalize(criterion);
+        return new RowComparator() {
+            public int compare(int first, int second) {
+                return criterion.compare(values[first], values[second]);
+            }
+        };
+    }
+
+    /**
+     * Returns true if the given row represents a null record.
+     *
+     * @param row   The row to check.
+     * @return      True if the given row represents a null record.
+     */
+    private boolean isNullRow(int row) {
+        return nullRows != null && nullRows.get(row);
+    }
+
+    /**
+     * Compares two rows of a table.
+     */
+    private interface RowComparator {
+        /**
+         * Compares the given rows.
+         *
+         * @param first     The first row.
+         * @param second    The second row.
+         * @return          A value less than, equal to, or greater than zero if the first row comes before, is equal
+         *                  to, or comes after the second row.
+         */
+        int compare(int first, int second);
+    }
+
+    /**
+     * A column of values, one per row.
+     */
+    protected static abstract class Column {
+        /**
+         * The rows which contain this column's key, or null if every row does.
+         */
+        protected final BitSet present;
+
+        /**
+         * Creates a new Column.
+         *
+         * @param present   The rows which contain this column's key, or null if every row does.
+         */
+        protected Column(BitSet present) {
+            this.present = present;
+        }
+
+        /**
+         * Returns a new column for the given values, using primitive storage when all values are of the same
+         * supported numeric type.
+         *
+         * @param values    The values of the column.
+         * @param present   The rows which contain the column's key.
+         * @param size      The number of rows.
+         * @return          A new column for the given values.
+         */
+        static Column of(Object[] values, BitSet present, int size) {
+            if (present.cardinality() == size) present = null;
+
+            boolean any = false, allLongs = true, allIntegers = true, allDoubles = true;
+            for (Object value : values) {
+                if (value != null) {
+                    any = true;
+                    allLongs = allLongs && value instanceof Long;
+                    allIntegers = allIntegers && value instanceof Integer;
+                    allDoubles = allDoubles && value instanceof Double;
+                    if (!allLongs && !allIntegers && !allDoubles) break;
+                }
+            }
+
+            Column column;
+            if (any && (allLongs || allIntegers)) {
+                long[] longs = new long[size];
+                BitSet nulls = new BitSet(size);
+                for (int i = 0; i < size; i++) {
+                    if (values[i] == null) {
+                        nulls.set(i);
+                    } else {
+                        longs[i] = ((Number)values[i]).longValue();
+                    }
+                }
+                column = new LongColumn(longs, nulls, allIntegers, present);
+            } else if (any && allDoubles) {
+                double[] doubles = new double[size];
+                BitSet nulls = new BitSet(size);
+                for (int i = 0; i < size; i++) {
+                    if (values[i] == null) {
+                        nulls.set(i);
+                    } else {
+                        doubles[i] = (Double)values[i];
+                    }
+                }
+                column = new DoubleColumn(doubles, nulls, present);
+            } else {
+                column = new ObjectColumn(values, present);
+            }
+
+            return column;
+        }
+
+        /**
+         * Returns true if the given row contains this column's key.
+         *
+         * @param row   The row to check.
+         * @return      True if the given row contains this column's key.
+         */
+        public boolean isPresent(int row) {
+            return present == null || present.get(row);
+        }
+
+        /**
+         * Returns the value of the given row, or null if the row does not contain this column's key.
+         *
+         * @param row   The row whose value is to be returned.
+         * @return      The value of the given row.
+         */
+        public abstract Object get(int row);
+
+        /**
+         * Returns a new column containing the given rows of this column, in the given order.
+         *
+         * @param rows  The rows to be included.
+         * @return      A new column containing the given rows.
+         */
+        public abstract Column select(int[] rows);
+
+        /**
+         * Returns the given rows of the given bit set as a new bit set, or null if the given bit set is null.
+         *
+         * @param bits  The bit set to select from.
+         * @param rows  The rows to be included.
+         * @return      A new bit set containing the given rows.
+         */
+        protected static BitSet select(BitSet bits, int[] rows) {
+            if (bits == null) return null;
+
+            BitSet output = new BitSet(rows.length);
+            for (int i = 0; i < rows.length; i++) {
+                if (bits.get(rows[i])) output.set(i);
+            }
+            return output;
+        }
+    }
+
+    /**
+     * A column of numeric values stored as primitives, with a separate record of null values.
+     */
+    protected static abstract class NumericColumn extends Column {
+        /**
+         * The rows whose value is null.
+         */
+        protected final BitSet nulls;
+
+        /**
+         * Creates a new NumericColumn.
+         *
+         * @param nulls     The rows whose value is null.
+         * @param present   The rows which contain this column's key, or null if every row does.
+         */
+        protected NumericColumn(BitSet nulls, BitSet present) {
+            super(present);
+            this.nulls = nulls;
+        }
+
+        /**
+         * Returns true if the given row has no value in this column.
+         *
+         * @param row   The row to check.
+         * @return      True if the given row has no value in this column.
+         */
+        protected boolean isNull(int row) {
+            return !isPresent(row) || nulls.get(row);
+        }
+
+        /**
+         * Compares the values of the given rows in their natural order, with nulls first.
+         *
+         * @param first     The first row.
+         * @param second    The second row.
+         * @return          A value less than, equal to, or greater than zero if the first value is less than, equal to,
+         *                  or greater than the second value.
+         */
+        public int compare(int first, int second) {
+            boolean firstNull = isNull(first), secondNull = isNull(second);
+            if (firstNull || secondNull) return firstNull == secondNull ? 0 : (firstNull ? -1 : 1);
+            return compareValues(first, second);
+        }
+
+        /**
+         * Compares the non-null values of the given rows in their natural order.
+         *
+         * @param first     The first row.
+         * @param second    The second row.
+         * @return          A value less than, equal to, or greater than zero if the first value is less than, equal to,
+         *                  or greater than the second value.
+         */
+        protected abstract int compareValues(int first, int second);
+    }
+
+    /**
+     * A column of Integer or Long values stored as a long[].
+     */
+    protected static class LongColumn extends NumericColumn {
+        /**
+         * The values of the column.
+         */
+        protected final long[] values;
+
+        /**
+         * Whether the values are returned as Integer rather than Long objects.
+         */
+        protected final boolean integer;
+
+        /**
+         * Creates a new LongColumn.
+         *
+         * @param values    The values of the column.
+         * @param nulls     The rows whose value is null.
+         * @param integer   Whether the values are returned as Integer rather than Long objects.
+         * @param present   The rows which contain this column's key, or null if every row does.
+         */
+        protected LongColumn(long[] values, BitSet nulls, boolean integer, BitSet present) {
+            super(nulls, present);
+            this.values = values;
+            this.integer = integer;
+        }
+
+        /**
+         * Returns the value of the given row, or null if the row does not contain this column's key.
+         *
+         * @param row   The row whose value is to be returned.
+         * @return      The value of the given row.
+         */
+        public Object get(int row) {
+            if (isNull(row)) return null;
+            return integer ? (Object)(int)values[row] : (Object)values[row];
+        }
+
+        /**
+         * Compares the non-null values of the given rows in their natural order.
+         *
+         * @param first     The first row.
+         * @param second    The second row.
+         * @return          A value less than, equal to, or greater than zero if the first value is less than, equal to,
+         *                  or greater than the second value.
+         */
+        protected int compareValues(int first, int second) {
+            long firstValue = values[first], secondValue = values[second];
+            return firstValue < secondValue ? -1 : (firstValue == secondValue ? 0 : 1);
+        }
+
+        /**
+         * Returns a new column containing the given rows of this column, in the given order.
+         *
+         * @param rows  The rows to be included.
+         * @return      A new column containing the given rows.
+         */
+        public Column select(int[] rows) {
+            long[] selected = new long[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = values[rows[i]];
+            }
+            return new LongColumn(selected, select(nulls, rows), integer, select(present, rows));
+        }
+    }
+
+    /**
+     * A column of Double values stored as a double[].
+     */
+    protected static class DoubleColumn extends NumericColumn {
+        /**
+         * The values of the column.
+         */
+        protected final double[] values;
+
+        /**
+         * Creates a new DoubleColumn.
+         *
+         * @param values    The values of the column.
+         * @param nulls     The rows whose value is null.
+         * @param present   The rows which contain this column's key, or null if every row does.
+         */
+        protected DoubleColumn(double[] values, BitSet nulls, BitSet present) {
+            super(nulls, present);
+            this.values = values;
+        }
+
+        /**
+         * Returns the value of the given row, or null if the row does not contain this column's key.
+         *
+         * @param row   The row whose value is to be returned.
+         * @return      The value of the given row.
+         */
+        public Object get(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        /**
+         * Compares the non-null values of the given rows in their natural order.
+         *
+         * @param first     The first row.
+         * @param second    The second row.
+         * @return          A value less than, equal to, or greater than zero if the first value is less than, equal to,
+         *                  or greater than the second value.
+         */
+        protected int compareValues(int first, int second) {
+            return Double.compare(values[first], values[second]);
+        }
+
+        /**
+         * Returns a new column containing the given rows of this column, in the given order.
+         *
+         * @param rows  The rows to be included.
+         * @return      A new column containing the given rows.
+         */
+        public Column select(int[] rows) {
+            double[] selected = new double[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = values[rows[i]];
+            }
+            return new DoubleColumn(selected, select(nulls, rows), select(present, rows));
+        }
+    }
+
+    /**
+     * A column of arbitrary values stored as an Object[].
+     */
+    protected static class ObjectColumn extends Column {
+        /**
+         * The values of the column.
+         */
+        protected final Object[] values;
+
+        /**
+         * Creates a new ObjectColumn.
+         *
+         * @param values    The values of the column.
+         * @param present   The rows which contain this column's key, or null if every row does.
+         */
+        protected ObjectColumn(Object[] values, BitSet present) {
+            super(present);
+            this.values = values;
+        }
+
+        /**
+         * Returns the value of the given row, or null if the row does not contain this column's key.
+         *
+         * @param row   The row whose value is to be returned.
+         * @return      The value of the given row.
+         */
+        public Object get(int row) {
+            return values[row];
+        }
+
+        /**
+         * Returns a new column containing the given rows of this column, in the given order.
+         *
+         * @param rows  The rows to be included.
+         * @return      A new column containing the given rows.
+         */
+        public Column select(int[] rows) {
+            Object[] selected = new Object[rows.length];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = values[rows[i]];
+            }
+            return new ObjectColumn(selected, select(present, rows));
+        }
+    }
+
+    /**
+     * A read-only IData view of a single row of the table.
+     */
+    protected class Row extends AbstractIData {
+        /**
+         * The row being viewed.
+         */
+        protected final int row;
+
+        /**
+         * Creates a new Row view.
+         *
+         * @param row   The row being viewed.
+         */
+        protected Row(int row) {
+            this.row = row;
+        }
+
+        /**
+         * Returns a read-only IDataCursor over the keys present in this row.
+         *
+         * @return A read-only IDataCursor over the keys present in this row.
+         */
+        @Override
+        public IDataCursor getCursor() {
+            return new RowCursor(row, -1);
+        }
+    }
+
+    /**
+     * A read-only cursor over the keys present in a single row of the table; modifications are ignored, as per
+     * ImmutableIData.
+     */
+    protected class RowCursor implements IDataCursor {
+        /**
+         * The row being traversed.
+         */
+        protected final int row;
+
+        /**
+         * The column the cursor is positioned on, or -1 if unpositioned.
+         */
+        protected int column;
+
+        /**
+         * Creates a new RowCursor.
+         *
+         * @param row       The row being traversed.
+         * @param column    The initial column position, or -1 for unpositioned.
+         */
+        protected RowCursor(int row, int column) {
+            this.row = row;
+            this.column = column;
+        }
+
+        /**
+         * Positions the cursor on the nearest column containing a value for this row, searching from the given column
+         * in the given direction.
+         *
+         * @param from  The column to start searching from.
+         * @param step  The direction to search in: 1 for forwards, -1 for backwards.
+         * @return      True if the cursor was repositioned.
+         */
+        private boolean seek(int from, int step) {
+            for (int i = from; i >= 0 && i < columns.length; i += step) {
+                if (columns[i].isPresent(row)) {
+                    column = i;
+                    return true;
+                }
+            }
+            column = -1;
+            return false;
+        }
+
+        /**
+         * Not implemented; does nothing.
+         *
+         * @param mode Not used.
+         */
+        public void setErrorMode(int mode) {
+            // do nothing
+        }
+
+        /**
+         * Not implemented; always returns null.
+         *
+         * @return Null.
+         */
+        public DataException getLastError() {
+            return null;
+        }
+
+        /**
+         * Not implemented; always returns false.
+         *
+         * @return False.
+         */
+        public boolean hasMoreErrors() {
+            return false;
+        }
+
+        /**
+         * Resets the cursor to be unpositioned.
+         */
+        public void home() {
+            column = -1;
+        }
+
+        /**
+         * Returns the key at the cursor's current position.
+         *
+         * @return The key at the cursor's current position, or null if unpositioned.
+         */
+        public String getKey() {
+            return column < 0 ? null : keys[column];
+        }
+
+        /**
+         * Does nothing, as table rows are read-only.
+         *
+         * @param key Not used.
+         */
+        public void setKey(String key) {
+            // do nothing
+        }
+
+        /**
+         * Returns the value at the cursor's current position.
+         *
+         * @return The value at the cursor's current position, or null if unpositioned.
+         */
+        public Object getValue() {
+            return column < 0 ? null : columns[column].get(row);
+        }
+
+        /**
+         * Does nothing, as table rows are read-only.
+         *
+         * @param value Not used.
+         */
+        public void setValue(Object value) {
+            // do nothing
+        }
+
+        /**
+         * Does nothing, as table rows are read-only.
+         *
+         * @return False.
+         */
+        public boolean delete() {
+            return false;
+        }
+
+        /**
+         * Does nothing, as table rows are read-only.
+         *
+         * @param key   Not used.
+         * @param value Not used.
+         */
+        public void insertBefore(String key, Object value) {
+            // do nothing
+        }
+
+        /**
+         * Does nothing, as table rows are read-only.
+         *
+         * @param key   Not used.
+         * @param value Not used.
+         */
+        public void insertAfter(String key, Object value) {
+            // do nothing
+        }
+
+        /**
+         * Does nothing, as table rows are read-only.
+         *
+         * @param key   Not used.
+         * @return      Null.
+         */
+        public IData insertDataBefore(String key) {
+            return null;
+        }
+
+        /**
+         * Does nothing, as table rows are read-only.
+         *
+         * @param key   Not used.
+         * @return      Null.
+         */
+        public IData insertDataAfter(String key) {
+            return null;
+        }
+
+        /**
+         * Positions the cursor on the next element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean next() {
+            return seek(column + 1, 1);
+        }
+
+        /**
+         * Positions the cursor on the element with the given key; keys occur at most once in a row.
+         *
+         * @param key   The key to position the cursor on.
+         * @return      True if the cursor was repositioned.
+         */
+        public boolean next(String key) {
+            return first(key);
+        }
+
+        /**
+         * Positions the cursor on the previous element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean previous() {
+            return seek(column < 0 ? columns.length - 1 : column - 1, -1);
+        }
+
+        /**
+         * Positions the cursor on the element with the given key; keys occur at most once in a row.
+         *
+         * @param key   The key to position the cursor on.
+         * @return      True if the cursor was repositioned.
+         */
+        public boolean previous(String key) {
+            return first(key);
+        }
+
+        /**
+         * Positions the cursor on the first element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean first() {
+            return seek(0, 1);
+        }
+
+        /**
+         * Positions the cursor on the element with the given key.
+         *
+         * @param key   The key to position the cursor on.
+         * @return      True if the cursor was repositioned.
+         */
+        public boolean first(String key) {
+            Integer index = IDataTable.this.index.get(key);
+            if (index != null && columns[index].isPresent(row)) {
+                column = index;
+                return true;
+            }
+            column = -1;
+            return false;
+        }
+
+        /**
+         * Positions the cursor on the last element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean last() {
+            return seek(columns.length - 1, -1);
+        }
+
+        /**
+         * Positions the cursor on the element with the given key; keys occur at most once in a row.
+         *
+         * @param key   The key to position the cursor on.
+         * @return      True if the cursor was repositioned.
+         */
+        public boolean last(String key) {
+            return first(key);
+        }
+
+        /**
+         * Returns true if there are more elements after the cursor's current position.
+         *
+         * @return True if there are more elements after the cursor's current position.
+         */
+        public boolean hasMoreData() {
+            for (int i = column + 1; i < columns.length; i++) {
+                if (columns[i].isPresent(row)) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Destroys the cursor.
+         */
+        public void destroy() {
+            column = -1;
+        }
+
+        /**
+         * Returns a clone of this cursor at the same position.
+         *
+         * @return A clone of this cursor.
+         */
+        public IDataCursor getCursorClone() {
+            return new RowCursor(row, column);
+        }
+    }
+}
@@ -24,22 +24,30 @@
 
 package permafrost.tundra.data;
 
-import com.wm.app.b2b.server.ServiceException;
 import com.wm.data.IData;
+import com.wm.data.IDataCursor;
 import com.wm.util.coder.IDataXMLCoder;
 import com.wm.util.coder.XMLCoder;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
+import permafrost.tundra.collection.StringPool;
 import permafrost.tundra.io.CloseableHelper;
-import permafrost.tundra.io.InputStreamHelper;
-import permafrost.tundra.lang.BytesHelper;
 import permafrost.tundra.lang.CharsetHelper;
-import permafrost.tundra.xml.dom.DocumentHelper;
-import permafrost.tundra.xml.dom.NodeHelper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 /**
  * Deserializes and serializes IData objects from and to XML.
@@ -62,16 +70,26 @@ public class IDataXMLParser extends IDataTextParser {
         /**
          * The singleton instance of the class.
          */
-        private static final IDataXMLParser INSTANCE = new IDataXMLParser();
+        private static final IDataXMLParser INSTANCE = new IDataXMLParser(null);
     }
 
     /**
-     * Disallow instantiation of this class.
+     * The optional pool used to intern the keys and short values of decoded documents.
      */
-    private IDataXMLParser() {}
+    private final StringPool pool;
 
     /**
-     * Returns the singleton instance of this class.
+     * Constructs a new parser which interns the keys and short values of decoded documents using the given pool, so
+     * that large batches of decoded records share a single instance of each repeated key.
+     *
+     * @param pool  The pool used to intern keys and short values, or null to not intern them.
+     */
+    public IDataXMLParser(StringPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Returns the singleton instance of this class, which does not intern keys or values.
      *
      * @return The singleton instance of this class.
      */
@@ -91,47 +109,117 @@ public class IDataXMLParser extends IDataTextParser {
     /**
      * Returns an IData representation of the XML data read from the given input stream.
      *
+     * The root element is peeked at with a streaming parser: IDataXMLCoder and Values documents are then handed
+     * to their respective coders by replaying the bytes consumed so far, and all other XML is converted to an
+     * IData document in the same single pass, without first building a DOM.
+     *
      * @param inputStream   The input stream to be decoded.
      * @param charset       The character set to use.
      * @return              An IData representation of the given input stream data.
      * @throws IOException  If there is a problem reading from the stream.
      */
     public IData decode(InputStream inputStream, Charset charset) throws IOException {
-        // convert inputStream to resettable ByteArrayInputStream
-        inputStream = InputStreamHelper.normalize(BytesHelper.normalize(inputStream));
+        if (inputStream == null) return null;
+
+        charset = CharsetHelper.normalize(charset);
+        RecordingInputStream recordingInputStream = new RecordingInputStream(inputStream);
+        XMLStreamReader reader = null;
         IData output = null;
 
         try {
-            Document document = DocumentHelper.parse(inputStream, charset, false);
-            String rootNodeName = null;
+            reader = getInputFactory().createXMLStreamReader(new InputStreamReader(recordingInputStream, charset));
 
-            if (document != null) {
-                Element rootNode = document.getDocumentElement();
-                if (rootNode != null) {
-                    rootNodeName = rootNode.getNodeName();
-                }
+            while (reader.hasNext() && reader.next() != XMLStreamConstants.START_ELEMENT) {
+                // skip the prolog
             }
 
-            if (rootNodeName != null && rootNodeName.equals(IDATA_XML_ROOT_NODE_NAME)) {
-                IDataXMLCoder parser = new IDataXMLCoder(CharsetHelper.normalize(charset).displayName());
-                inputStream.reset();
-                output = parser.decode(inputStream);
-            } else if (rootNodeName != null && rootNodeName.equals(VALUES_XML_ROOT_NODE_NAME)) {
-                XMLCoder parser = new XMLCoder(true);
-                inputStream.reset();
-                output = parser.decode(inputStream);
-            } else if (document != null) {
-               output = NodeHelper.parse(document);
+            if (reader.isStartElement()) {
+                String rootNodeName = reader.getLocalName();
+
+                if (rootNodeName.equals(IDATA_XML_ROOT_NODE_NAME)) {
+                    IDataXMLCoder parser = new IDataXMLCoder(charset.displayName());
+                    output = parser.decode(recordingInputStream.replay());
+                } else if (rootNodeName.equals(VALUES_XML_ROOT_NODE_NAME)) {
+                    XMLCoder parser = new XMLCoder(true);
+                    output = parser.decode(recordingInputStream.replay());
+                } else {
+                    recordingInputStream.stop();
+                    output = parse(reader, pool);
+                }
             }
-        } catch(ServiceException ex) {
+        } catch(XMLStreamException ex) {
             throw new IOException(ex);
         } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch(XMLStreamException ex) {
+                    // ignore exception
+                }
+            }
             CloseableHelper.close(inputStream);
         }
 
         return output;
     }
 
+    /**
+     * Returns an IData representation of the element the given reader is positioned on, using the same structure
+     * as permafrost.tundra.xml.dom.NodeHelper.parse: attributes are prefixed with "@", an element's text content
+     * is stored as "*body", and child elements are added in document order, as nested IData documents if they
+     * have attributes or child elements of their own, or as their text content otherwise.
+     *
+     * @param reader                The reader, positioned on the root element.
+     * @param pool                  The pool used to intern keys and short values, or null.
+     * @return                      An IData representation of the root element.
+     * @throws XMLStreamException   If the XML is malformed.
+     */
+    private static IData parse(XMLStreamReader reader, StringPool pool) throws XMLStreamException {
+        List<Element> stack = new ArrayList<Element>();
+        stack.add(new Element(reader, pool));
+
+        while (reader.hasNext()) {
+            switch(reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    stack.get(stack.size() - 1).hasChildElements = true;
+                    stack.add(new Element(reader, pool));
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    stack.get(stack.size() - 1).append(reader.getText());
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    Element element = stack.remove(stack.size() - 1);
+                    if (stack.isEmpty()) {
+                        IDataMap output = new IDataMap();
+                        output.put(element.name, element.toIData(), false);
+                        return output;
+                    } else {
+                        stack.get(stack.size() - 1).add(element);
+                    }
+                    break;
+                default:
+                    // ignore comments, processing instructions and other events
+                    break;
+            }
+        }
+
+        throw new XMLStreamException("Unexpected end of XML document");
+    }
+
+    /**
+     * Returns a new streaming XML input factory configured to match how XML was previously parsed via the DOM.
+     *
+     * @return A new streaming XML input factory.
+     */
+    private static XMLInputFactory getInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, Boolean.TRUE);
+        return factory;
+    }
+
     /**
      * Serializes the given IData document as XML to the given output stream.
      *
@@ -144,4 +232,224 @@ public class IDataXMLParser extends IDataTextParser {
         IDataXMLCoder parser = new IDataXMLCoder(CharsetHelper.normalize(charset).displayName());
         parser.encode(outputStream, document);
     }
+
+    /**
+     * An element being built from streaming XML events.
+     */
+    private static class Element {
+        /**
+         * The qualified name of the element.
+         */
+        private final String name;
+        /**
+         * The attributes of the element keyed by their "@" prefixed name, sorted by name as per a DOM NamedNodeMap.
+         */
+        private final Map<String, String> attributes;
+        /**
+         * The names of the child elements, in document order.
+         */
+        private List<String> childNames;
+        /**
+         * The values of the child elements, in document order.
+         */
+        private List<Object> childValues;
+        /**
+         * The concatenated text and CDATA content of the element.
+         */
+        private StringBuilder content;
+        /**
+         * Whether this element contains any child elements.
+         */
+        private boolean hasChildElements;
+        /**
+         * The pool used to intern keys and short values, or null.
+         */
+        private final StringPool pool;
+
+        /**
+         * Creates a new Element from the start element event the given reader is positioned on.
+         *
+         * @param reader    The reader positioned on a start element.
+         * @param pool      The pool used to intern keys and short values, or null.
+         */
+        public Element(XMLStreamReader reader, StringPool pool) {
+            this.pool = pool;
+            this.name = intern(reader.getLocalName());
+
+            int count = reader.getAttributeCount();
+            if (count > 0) {
+                attributes = new TreeMap<String, String>();
+                for (int i = 0; i < count; i++) {
+                    String prefix = reader.getAttributePrefix(i);
+                    String localName = reader.getAttributeLocalName(i);
+                    String attributeName = prefix == null || prefix.equals("") ? localName : prefix + ":" + localName;
+                    attributes.put(intern("@" + attributeName), internValue(reader.getAttributeValue(i)));
+                }
+            } else {
+                attributes = null;
+            }
+        }
+
+        /**
+         * Appends the given text to the content of this element.
+         *
+         * @param text The text to be appended.
+         */
+        public void append(String text) {
+            if (content == null) content = new StringBuilder(text.length());
+            content.append(text);
+        }
+
+        /**
+         * Adds the given completed child element to this element.
+         *
+         * @param child The child element to be added.
+         */
+        public void add(Element child) {
+            if (childNames == null) {
+                childNames = new ArrayList<String>();
+                childValues = new ArrayList<Object>();
+            }
+            childNames.add(child.name);
+            childValues.add(child.attributes != null || child.hasChildElements ? child.toIData() : internValue(child.getContent()));
+        }
+
+        /**
+         * Returns the text content of this element, or null if it has no text content or if the text content is
+         * only whitespace between child elements.
+         *
+         * @return The text content of this element.
+         */
+        public String getContent() {
+            if (content == null) return null;
+            String text = content.toString();
+            if (hasChildElements && text.trim().equals("")) text = null;
+            return text;
+        }
+
+        /**
+         * Returns the pooled instance of the given key.
+         *
+         * @param key   The key to be interned.
+         * @return      The pooled instance of the given key, or the given key if there is no pool.
+         */
+        private String intern(String key) {
+            return pool == null ? key : pool.intern(key);
+        }
+
+        /**
+         * Returns the pooled instance of the given value, if it is short enough to be pooled.
+         *
+         * @param value The value to be interned.
+         * @return      The pooled instance of the given value, or the given value if it was not pooled.
+         */
+        private String internValue(String value) {
+            return pool == null ? value : (String)pool.internValue(value);
+        }
+
+        /**
+         * Returns an IData representation of this element.
+         *
+         * @return An IData representation of this element.
+         */
+        public IData toIData() {
+            IDataMap output = new IDataMap();
+
+            if (attributes != null) {
+                for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+                    output.put(attribute.getKey(), attribute.getValue(), false);
+                }
+            }
+
+            output.put("*body", internValue(getContent()), false);
+
+            if (childNames != null) {
+                IDataCursor cursor = output.getCursor();
+                for (int i = 0; i < childNames.size(); i++) {
+                    cursor.insertAfter(childNames.get(i), childValues.get(i));
+                }
+                cursor.destroy();
+            }
+
+            return output;
+        }
+    }
+
+    /**
+     * An input stream that records the bytes read from the underlying stream, so that they can be replayed after
+     * the root element of an XML document has been peeked at.
+     */
+    private static class RecordingInputStream extends FilterInputStream {
+        /**
+         * The bytes read so far, or null if recording has stopped.
+         */
+        private ByteArrayOutputStream recording = new ByteArrayOutputStream();
+
+        /**
+         * Creates a new RecordingInputStream.
+         *
+         * @param inputStream The underlying input stream.
+         */
+        public RecordingInputStream(InputStream inputStream) {
+            super(inputStream);
+        }
+
+        /**
+         * Reads the next byte from the underlying stream.
+         *
+         * @return             The next byte, or -1 if the end of the stream was reached.
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value >= 0 && recording != null) recording.write(value);
+            return value;
+        }
+
+        /**
+         * Reads up to the given length of bytes from the underlying stream into the given buffer.
+         *
+         * @param buffer       The buffer to read into.
+         * @param offset       The offset in the buffer at which to start writing.
+         * @param length       The maximum number of bytes to read.
+         * @return             The number of bytes read, or -1 if the end of the stream was reached.
+         * @throws IOException If an I/O error occurs.
+         */
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0 && recording != null) recording.write(buffer, offset, count);
+            return count;
+        }
+
+        /**
+         * Marking is not supported, as it would interfere with recording.
+         *
+         * @return False.
+         */
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        /**
+         * Stops recording and discards the bytes recorded so far.
+         */
+        public void stop() {
+            recording = null;
+        }
+
+        /**
+         * Stops recording and returns a stream which replays the recorded bytes followed by the remainder of the
+         * underlying stream.
+         *
+         * @return A stream containing all the bytes of the underlying stream.
+         */
+        public InputStream replay() {
+            byte[] recorded = recording == null ? new byte[0] : recording.toByteArray();
+            recording = null;
+            return new SequenceInputStream(new ByteArrayInputStream(recorded), in);
+        }
+    }
 }
@@ -0,0 +1,891 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.DataException;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataIndexCursor;
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An IData implementation which preserves insertion order and supports multiple occurrences of the same key, like
+ * the standard IData implementations, but maintains an open addressing hash index of key positions so that keyed
+ * cursor repositioning, such as IDataCursor.first(key), does not require a linear scan of the document.
+ *
+ * The index is built by the first keyed lookup, and is then maintained incrementally as elements are inserted, removed
+ * or renamed: appending an element links it into its key's chain of positions, while inserting or removing an element
+ * elsewhere also renumbers the positions after it, which costs about the same as moving the elements themselves. Like
+ * other IData implementations, this class is not thread-safe.
+ */
+public class IndexedIData extends AbstractIData implements Serializable {
+    /**
+     * The serialization identity of this class version.
+     */
+    private static final long serialVersionUID = 1;
+
+    /**
+     * The default initial number of elements this document can hold before resizing.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * Sentinel used to indicate the absence of a position.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The keys of the elements in this document, in insertion order.
+     */
+    private String[] keys;
+
+    /**
+     * The values of the elements in this document, in insertion order.
+     */
+    private Object[] values;
+
+    /**
+     * The number of elements in this document.
+     */
+    private int size;
+
+    /**
+     * Whether the hash index has been built, after which it is kept consistent with the elements in this document.
+     */
+    private transient boolean indexed;
+
+    /**
+     * The hash index's open addressing table of distinct keys.
+     */
+    private transient String[] slots;
+
+    /**
+     * The position of the first and last occurrence of the key in the corresponding hash index slot.
+     */
+    private transient int[] firstPositions, lastPositions;
+
+    /**
+     * The number of distinct keys in the hash index.
+     */
+    private transient int slotCount;
+
+    /**
+     * For each element, the position of the next and previous occurrence of the same key.
+     */
+    private transient int[] nextPositions, previousPositions;
+
+    /**
+     * Constructs a new empty IndexedIData.
+     */
+    public IndexedIData() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a new empty IndexedIData with the given initial capacity.
+     *
+     * @param capacity The initial number of elements the document can hold before resizing.
+     */
+    public IndexedIData(int capacity) {
+        if (capacity < 1) capacity = 1;
+        keys = new String[capacity];
+        values = new Object[capacity];
+    }
+
+    /**
+     * Constructs a new IndexedIData seeded with the top-level elements in the given IData document.
+     *
+     * @param document The IData document to seed this document with.
+     */
+    public IndexedIData(IData document) {
+        this();
+        if (document != null) {
+            IDataCursor cursor = document.getCursor();
+            try {
+                while (cursor.next()) {
+                    insert(size, cursor.getKey(), cursor.getValue());
+                }
+            } finally {
+                cursor.destroy();
+            }
+        }
+    }
+
+    /**
+     * Returns a newly created IData object.
+     *
+     * @return A newly created IData object.
+     */
+    public static IData create() {
+        return new IndexedIData();
+    }
+
+    /**
+     * Returns a new IndexedIData containing the top-level elements of the given IData document.
+     *
+     * @param document  The IData document to be copied.
+     * @return          A new IndexedIData containing the top-level elements of the given IData document.
+     */
+    public static IndexedIData of(IData document) {
+        return new IndexedIData(document);
+    }
+
+    /**
+     * Returns an IDataCursor for this IData object. An IDataCursor contains the basic methods you use to traverse an
+     * IData object and get or set elements within it.
+     *
+     * @return An IDataCursor for this object.
+     */
+    @Override
+    public IDataCursor getCursor() {
+        return new IndexedIDataCursor(NONE);
+    }
+
+    /**
+     * Returns an IDataIndexCursor for traversing this IData.
+     *
+     * @return An IDataIndexCursor for traversing this IData.
+     */
+    @Override
+    public IDataIndexCursor getIndexCursor() {
+        return new IndexedIDataCursor(NONE);
+    }
+
+    /**
+     * Returns the number of elements in this document.
+     *
+     * @return The number of elements in this document.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the position of the first occurrence of the given key, or -1 if the key does not exist.
+     *
+     * @param key   The key to be found.
+     * @return      The position of the first occurrence of the given key, or -1 if the key does not exist.
+     */
+    public int indexOf(String key) {
+        return nextIndexOf(key, NONE);
+    }
+
+    /**
+     * Returns the position of the last occurrence of the given key, or -1 if the key does not exist.
+     *
+     * @param key   The key to be found.
+     * @return      The position of the last occurrence of the given key, or -1 if the key does not exist.
+     */
+    public int lastIndexOf(String key) {
+        return previousIndexOf(key, size);
+    }
+
+    /**
+     * Returns the position of the first occurrence of the given key after the given position.
+     *
+     * @param key       The key to be found.
+     * @param position  The position after which to search.
+     * @return          The position of the next occurrence of the given key, or -1 if there is none.
+     */
+    protected int nextIndexOf(String key, int position) {
+        if (key == null) {
+            for (int i = Math.max(position + 1, 0); i < size; i++) {
+                if (keys[i] == null) return i;
+            }
+            return NONE;
+        }
+
+        int slot = find(key);
+        if (slot < 0) return NONE;
+
+        if (position >= 0 && position < size && key.equals(keys[position])) return nextPositions[position];
+
+        int next = firstPositions[slot];
+        while (next != NONE && next <= position) {
+            next = nextPositions[next];
+        }
+        return next;
+    }
+
+    /**
+     * Returns the position of the last occurrence of the given key before the given position.
+     *
+     * @param key       The key to be found.
+     * @param position  The position before which to search.
+     * @return          The position of the previous occurrence of the given key, or -1 if there is none.
+     */
+    protected int previousIndexOf(String key, int position) {
+        if (key == null) {
+            for (int i = Math.min(position, size) - 1; i >= 0; i--) {
+                if (keys[i] == null) return i;
+            }
+            return NONE;
+        }
+
+        int slot = find(key);
+        if (slot < 0) return NONE;
+
+        if (position >= 0 && position < size && key.equals(keys[position])) return previousPositions[position];
+
+        int previous = lastPositions[slot];
+        while (previous != NONE && previous >= position) {
+            previous = previousPositions[previous];
+        }
+        return previous;
+    }
+
+    /**
+     * Inserts the given key value pair at the given position.
+     *
+     * @param position  The position at which to insert.
+     * @param key       The key to be inserted.
+     * @param value     The value to be inserted.
+     */
+    protected void insert(int position, String key, Object value) {
+        if (position < 0) position = 0;
+        if (position > size) position = size;
+
+        ensureCapacity(size + 1);
+
+        int moved = size - position;
+        if (moved > 0) {
+            System.arraycopy(keys, position, keys, position + 1, moved);
+            System.arraycopy(values, position, values, position + 1, moved);
+            if (indexed) {
+                System.arraycopy(nextPositions, position, nextPositions, position + 1, moved);
+                System.arraycopy(previousPositions, position, previousPositions, position + 1, moved);
+            }
+        }
+
+        keys[position] = key;
+        values[position] = value;
+        size++;
+
+        if (indexed) {
+            nextPositions[position] = NONE;
+            previousPositions[position] = NONE;
+            if (moved > 0) renumber(position, 1);
+            link(position);
+        }
+    }
+
+    /**
+     * Removes the element at the given position.
+     *
+     * @param position  The position of the element to be removed.
+     * @return          True if an element was removed.
+     */
+    protected boolean remove(int position) {
+        if (position < 0 || position >= size) return false;
+
+        if (indexed) unlink(position);
+
+        int moved = size - position - 1;
+        if (moved > 0) {
+            System.arraycopy(keys, position + 1, keys, position, moved);
+            System.arraycopy(values, position + 1, values, position, moved);
+            if (indexed) {
+                System.arraycopy(nextPositions, position + 1, nextPositions, position, moved);
+                System.arraycopy(previousPositions, position + 1, previousPositions, position, moved);
+            }
+        }
+
+        size--;
+        keys[size] = null;
+        values[size] = null;
+
+        if (indexed && moved > 0) renumber(position + 1, -1);
+
+        return true;
+    }
+
+    /**
+     * Sets the key of the element at the given position.
+     *
+     * @param position  The position of the element whose key is to be set.
+     * @param key       The key to be set.
+     */
+    protected void setKey(int position, String key) {
+        if (position >= 0 && position < size) {
+            String existingKey = keys[position];
+            if (existingKey == null ? key != null : !existingKey.equals(key)) {
+                if (indexed) unlink(position);
+                keys[position] = key;
+                if (indexed) link(position);
+            }
+        }
+    }
+
+    /**
+     * Ensures the element arrays can hold at least the given number of elements.
+     *
+     * @param capacity The required capacity.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            int newCapacity = Math.max(capacity, keys.length + (keys.length >> 1) + 1);
+            keys = Arrays.copyOf(keys, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+            if (nextPositions != null) {
+                nextPositions = Arrays.copyOf(nextPositions, newCapacity);
+                previousPositions = Arrays.copyOf(previousPositions, newCapacity);
+            }
+        }
+    }
+
+    /**
+     * Returns the hash index slot for the given key, rebuilding the index first if required.
+     *
+     * @param key   The key to be found.
+     * @return      The slot holding the given key, or -1 if the key does not exist.
+     */
+    private int find(String key) {
+        if (!indexed) reindex();
+        return slotOf(key);
+    }
+
+    /**
+     * Returns the hash index slot for the given key, without rebuilding the index.
+     *
+     * @param key   The key to be found.
+     * @return      The slot holding the given key, or -1 if the key does not exist.
+     */
+    private int slotOf(String key) {
+        int mask = slots.length - 1;
+        for (int slot = hash(key) & mask; slots[slot] != null; slot = (slot + 1) & mask) {
+            if (slots[slot].equals(key)) return slot;
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Rebuilds the hash index from the elements in this document.
+     */
+    private void reindex() {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < size * 2) capacity <<= 1;
+
+        slots = new String[capacity];
+        firstPositions = new int[capacity];
+        lastPositions = new int[capacity];
+        slotCount = 0;
+
+        if (nextPositions == null || nextPositions.length < keys.length) {
+            nextPositions = new int[keys.length];
+            previousPositions = new int[keys.length];
+        }
+
+        indexed = true;
+
+        for (int i = 0; i < size; i++) {
+            nextPositions[i] = NONE;
+            previousPositions[i] = NONE;
+            link(i);
+        }
+    }
+
+    /**
+     * Adds the element at the given position to the hash index, linking it between the previous and next occurrences
+     * of its key. The element's own next and previous positions must be unset.
+     *
+     * @param position The position of the element to be indexed.
+     */
+    private void link(int position) {
+        String key = keys[position];
+        if (key == null) return;
+
+        int mask = slots.length - 1;
+        int slot = hash(key) & mask;
+        while (slots[slot] != null && !slots[slot].equals(key)) {
+            slot = (slot + 1) & mask;
+        }
+
+        if (slots[slot] == null) {
+            slots[slot] = key;
+            firstPositions[slot] = position;
+            lastPositions[slot] = position;
+            if (++slotCount * 2 > slots.length) resize();
+        } else if (position > lastPositions[slot]) {
+            // appending, which is how documents are typically built
+            int last = lastPositions[slot];
+            nextPositions[last] = position;
+            previousPositions[position] = last;
+            lastPositions[slot] = position;
+        } else if (position < firstPositions[slot]) {
+            int first = firstPositions[slot];
+            previousPositions[first] = position;
+            nextPositions[position] = first;
+            firstPositions[slot] = position;
+        } else {
+            int previous = firstPositions[slot];
+            while (nextPositions[previous] < position) {
+                previous = nextPositions[previous];
+            }
+            int next = nextPositions[previous];
+            nextPositions[previous] = position;
+            previousPositions[position] = previous;
+            nextPositions[position] = next;
+            previousPositions[next] = position;
+        }
+    }
+
+    /**
+     * Removes the element at the given position from the hash index, removing its key's slot if it was the only
+     * occurrence of the key.
+     *
+     * @param position The position of the element to be removed from the index.
+     */
+    private void unlink(int position) {
+        String key = keys[position];
+        if (key == null) return;
+
+        int slot = slotOf(key);
+        int previous = previousPositions[position], next = nextPositions[position];
+
+        if (previous == NONE) {
+            firstPositions[slot] = next;
+        } else {
+            nextPositions[previous] = next;
+        }
+
+        if (next == NONE) {
+            lastPositions[slot] = previous;
+        } else {
+            previousPositions[next] = previous;
+        }
+
+        nextPositions[position] = NONE;
+        previousPositions[position] = NONE;
+
+        if (firstPositions[slot] == NONE) clear(slot);
+    }
+
+    /**
+     * Empties the given hash index slot, moving back any following keys in the same probe sequence so that they can
+     * still be found without tombstones.
+     *
+     * @param slot The slot to be emptied.
+     */
+    private void clear(int slot) {
+        int mask = slots.length - 1;
+        int hole = slot;
+
+        for (int i = (hole + 1) & mask; slots[i] != null; i = (i + 1) & mask) {
+            int home = hash(slots[i]) & mask;
+            // the key can fill the hole if the hole lies between its home slot and its current slot
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                slots[hole] = slots[i];
+                firstPositions[hole] = firstPositions[i];
+                lastPositions[hole] = lastPositions[i];
+                hole = i;
+            }
+        }
+
+        slots[hole] = null;
+        slotCount--;
+    }
+
+    /**
+     * Adjusts every indexed position at or after the given position by the given amount, after elements have been
+     * moved by an insertion or removal.
+     *
+     * @param from  The first position to be adjusted.
+     * @param delta The amount to adjust positions by.
+     */
+    private void renumber(int from, int delta) {
+        for (int i = 0; i < size; i++) {
+            if (nextPositions[i] >= from) nextPositions[i] += delta;
+            if (previousPositions[i] >= from) previousPositions[i] += delta;
+        }
+
+        for (int slot = 0; slot < slots.length; slot++) {
+            if (slots[slot] != null) {
+                if (firstPositions[slot] >= from) firstPositions[slot] += delta;
+                if (lastPositions[slot] >= from) lastPositions[slot] += delta;
+            }
+        }
+    }
+
+    /**
+     * Doubles the size of the hash index table.
+     */
+    private void resize() {
+        String[] oldSlots = slots;
+        int[] oldFirstPositions = firstPositions, oldLastPositions = lastPositions;
+
+        slots = new String[oldSlots.length * 2];
+        firstPositions = new int[slots.length];
+        lastPositions = new int[slots.length];
+
+        int mask = slots.length - 1;
+        for (int i = 0; i < oldSlots.length; i++) {
+            if (oldSlots[i] != null) {
+                int slot = hash(oldSlots[i]) & mask;
+                while (slots[slot] != null) slot = (slot + 1) & mask;
+                slots[slot] = oldSlots[i];
+                firstPositions[slot] = oldFirstPositions[i];
+                lastPositions[slot] = oldLastPositions[i];
+            }
+        }
+    }
+
+    /**
+     * Returns a well distributed hash code for the given key.
+     *
+     * @param key   The key to be hashed.
+     * @return      The hash code for the given key.
+     */
+    private static int hash(String key) {
+        int hash = key.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return A string representation of this object.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("{ ");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) buffer.append(", ");
+            buffer.append(keys[i]).append(" = ").append(values[i]);
+        }
+        buffer.append(" }");
+        return buffer.toString();
+    }
+
+    /**
+     * IDataCursor and IDataIndexCursor implementation for an IndexedIData object.
+     */
+    protected class IndexedIDataCursor implements IDataIndexCursor {
+        /**
+         * This cursor's position in the document, or -1 when positioned before the first element.
+         */
+        protected int position;
+
+        /**
+         * Constructs a new cursor initialized to the given position.
+         *
+         * @param position The initial position of the cursor.
+         */
+        protected IndexedIDataCursor(int position) {
+            this.position = position;
+        }
+
+        /**
+         * Returns true if this cursor is positioned on an element.
+         *
+         * @return True if this cursor is positioned on an element.
+         */
+        private boolean isPositioned() {
+            return position >= 0 && position < size;
+        }
+
+        /**
+         * Not implemented, does nothing.
+         *
+         * @param mode Not used.
+         */
+        public void setErrorMode(int mode) {}
+
+        /**
+         * Not implemented, does nothing.
+         *
+         * @return Null.
+         */
+        public DataException getLastError() {
+            return null;
+        }
+
+        /**
+         * Not implemented, does nothing.
+         *
+         * @return False.
+         */
+        public boolean hasMoreErrors() {
+            return false;
+        }
+
+        /**
+         * Resets this cursor to be positioned before the first element.
+         */
+        public void home() {
+            position = NONE;
+        }
+
+        /**
+         * Returns the key at the cursor's current position.
+         *
+         * @return The key at the cursor's current position.
+         */
+        public String getKey() {
+            return isPositioned() ? keys[position] : null;
+        }
+
+        /**
+         * Sets the key at the cursor's current position.
+         *
+         * @param key The key to be set.
+         */
+        public void setKey(String key) {
+            IndexedIData.this.setKey(position, key);
+        }
+
+        /**
+         * Returns the value at the cursor's current position.
+         *
+         * @return The value at the cursor's current position.
+         */
+        public Object getValue() {
+            return isPositioned() ? values[position] : null;
+        }
+
+        /**
+         * Sets the value at the cursor's current position.
+         *
+         * @param value The value to be set.
+         */
+        public void setValue(Object value) {
+            if (isPositioned()) values[position] = value;
+        }
+
+        /**
+         * Deletes the element at the cursor's current position. The cursor is repositioned on the preceding element, so
+         * that a subsequent call to next() returns the element that followed the deleted element.
+         *
+         * @return True if the element was deleted.
+         */
+        public boolean delete() {
+            boolean result = remove(position);
+            if (result) position--;
+            return result;
+        }
+
+        /**
+         * Inserts the key value pair before the cursor's current position, and repositions the cursor on the newly
+         * inserted element.
+         *
+         * @param key   The key to be inserted.
+         * @param value The value to be inserted.
+         */
+        public void insertBefore(String key, Object value) {
+            if (position < 0) position = 0;
+            if (position > size) position = size;
+            insert(position, key, value);
+        }
+
+        /**
+         * Inserts the key value pair after the cursor's current position, and repositions the cursor on the newly
+         * inserted element.
+         *
+         * @param key   The key to be inserted.
+         * @param value The value to be inserted.
+         */
+        public void insertAfter(String key, Object value) {
+            position = position < 0 ? 0 : Math.min(position + 1, size);
+            insert(position, key, value);
+        }
+
+        /**
+         * Inserts the key with a new IData document before the cursor's current position.
+         *
+         * @param key   The key to be inserted.
+         * @return      The new IData document inserted.
+         */
+        public IData insertDataBefore(String key) {
+            IData document = new IndexedIData();
+            insertBefore(key, document);
+            return document;
+        }
+
+        /**
+         * Inserts the key with a new IData document after the cursor's current position.
+         *
+         * @param key   The key to be inserted.
+         * @return      The new IData document inserted.
+         */
+        public IData insertDataAfter(String key) {
+            IData document = new IndexedIData();
+            insertAfter(key, document);
+            return document;
+        }
+
+        /**
+         * Repositions this cursor on the next element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean next() {
+            if (position + 1 < size) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Repositions this cursor on the next occurrence of the given key.
+         *
+         * @param key   The key to reposition the cursor to.
+         * @return      True if the key existed and the cursor was repositioned.
+         */
+        public boolean next(String key) {
+            return reposition(nextIndexOf(key, position));
+        }
+
+        /**
+         * Repositions this cursor on the previous element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean previous() {
+            if (position > size) position = size;
+            if (position > 0) {
+                position--;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Repositions this cursor on the previous occurrence of the given key.
+         *
+         * @param key   The key to reposition the cursor to.
+         * @return      True if the key existed and the cursor was repositioned.
+         */
+        public boolean previous(String key) {
+            return reposition(previousIndexOf(key, position));
+        }
+
+        /**
+         * Repositions this cursor on the first element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean first() {
+            return reposition(size > 0 ? 0 : NONE);
+        }
+
+        /**
+         * Repositions this cursor on the first occurrence of the given key.
+         *
+         * @param key   The key to reposition the cursor to.
+         * @return      True if the key existed and the cursor was repositioned.
+         */
+        public boolean first(String key) {
+            return reposition(indexOf(key));
+        }
+
+        /**
+         * Repositions this cursor on the last element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean last() {
+            return reposition(size - 1);
+        }
+
+        /**
+         * Repositions this cursor on the last occurrence of the given key.
+         *
+         * @param key   The key to reposition the cursor to.
+         * @return      True if the key existed and the cursor was repositioned.
+         */
+        public boolean last(String key) {
+            return reposition(lastIndexOf(key));
+        }
+
+        /**
+         * Repositions this cursor on the element at the given index.
+         *
+         * @param index The zero-based index of the element to reposition the cursor to.
+         * @return      True if the index existed and the cursor was repositioned.
+         */
+        public boolean seek(int index) {
+            return index >= 0 && reposition(index < size ? index : NONE);
+        }
+
+        /**
+         * Returns the number of elements in the document.
+         *
+         * @return The number of elements in the document.
+         */
+        public int count() {
+            return size;
+        }
+
+        /**
+         * Returns the zero-based index of the element at the cursor's current position, or -1 if the cursor is not
+         * positioned on an element.
+         *
+         * @return The index of the element at the cursor's current position.
+         */
+        public int getIndex() {
+            return isPositioned() ? position : NONE;
+        }
+
+        /**
+         * Repositions the cursor on the given position, if it exists.
+         *
+         * @param newPosition   The position to reposition the cursor to, or -1 if there is no such position.
+         * @return              True if the cursor was repositioned.
+         */
+        private boolean reposition(int newPosition) {
+            if (newPosition < 0) return false;
+            position = newPosition;
+            return true;
+        }
+
+        /**
+         * Returns true if this cursor has more data to be iterated over.
+         *
+         * @return True if this cursor has more data to be iterated over.
+         */
+        public boolean hasMoreData() {
+            return position + 1 < size;
+        }
+
+        /**
+         * Destroys this cursor.
+         */
+        public void destroy() {
+            position = NONE;
+        }
+
+        /**
+         * Returns a clone of this cursor.
+         *
+         * @return A clone of this cursor.
+         */
+        public IDataIndexCursor getCursorClone() {
+            return new IndexedIDataCursor(position);
+        }
+    }
+}
@@ -0,0 +1,1071 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.DataException;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataPortable;
+import com.wm.util.Table;
+import com.wm.util.coder.IDataCodable;
+import com.wm.util.coder.ValuesCodable;
+import permafrost.tundra.io.CloseableHelper;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A read-only IData document backed by a memory-mapped file, which decodes its values lazily as they are accessed
+ * by a cursor rather than deserializing the whole file up front. Opening a file therefore only maps it into the
+ * address space, and its content is served from the operating system page cache rather than the Java heap.
+ *
+ * Files are created with MappedIData.write, and use the following layout, where all integers are big-endian and
+ * all offsets are absolute positions in the file:
+ *
+ * <pre>
+ * file     := "TIDM" version:int record* root:int
+ * record   := tag:byte payload
+ * document := TAG_IDATA count:int buckets:int (hash:int key:int value:int){count} table
+ * table    := (head:int){buckets} (next:int){count}, omitted when buckets is 0
+ * </pre>
+ *
+ * Each nested document therefore carries its own fixed-width offset index, and keys are stored once per file. Larger
+ * documents also carry a chained hash table over their index: each bucket holds the position of the first entry whose
+ * key hashes to it, and each entry the position of the next entry in the same bucket, in ascending order, so that
+ * keyed lookups only compare the keys in one bucket. Smaller documents are scanned, comparing hash codes before keys.
+ * Like ImmutableIData, attempts to modify a MappedIData via its cursors are ignored. As mapped buffers are limited to
+ * 2GB, so are the files.
+ */
+public final class MappedIData extends AbstractIData {
+    /**
+     * The magic bytes which begin every mapped IData file.
+     */
+    private static final byte[] MAGIC = new byte[] { 'T', 'I', 'D', 'M' };
+
+    /**
+     * The version of the file layout written by this class.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * The character set used to encode strings.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * The offset used to represent a null value or key.
+     */
+    private static final int NULL_OFFSET = -1;
+
+    /**
+     * The size of the file header, and of the trailer holding the offset of the root document.
+     */
+    private static final int HEADER_SIZE = 8, TRAILER_SIZE = 4;
+
+    /**
+     * The size of the fixed-width header of a document record, and of each of its index entries.
+     */
+    private static final int DOCUMENT_HEADER_SIZE = 9, ENTRY_SIZE = 12;
+
+    /**
+     * The number of elements above which a document is written with a hash table over its index.
+     */
+    private static final int HASH_TABLE_THRESHOLD = 8;
+
+    /**
+     * Record tags identifying the type of each value.
+     */
+    private static final byte TAG_STRING = 1, TAG_BYTES = 2, TAG_TRUE = 3, TAG_FALSE = 4, TAG_BYTE = 5,
+        TAG_SHORT = 6, TAG_INTEGER = 7, TAG_LONG = 8, TAG_FLOAT = 9, TAG_DOUBLE = 10, TAG_CHARACTER = 11,
+        TAG_BIG_INTEGER = 12, TAG_BIG_DECIMAL = 13, TAG_DATE = 14, TAG_CALENDAR = 15, TAG_IDATA = 16,
+        TAG_IDATA_ARRAY = 17, TAG_STRING_ARRAY = 18, TAG_STRING_TABLE = 19, TAG_OBJECT_ARRAY = 20;
+
+    /**
+     * The mapped file this document is stored in.
+     */
+    private final Source source;
+
+    /**
+     * The offset of this document's record in the mapped file.
+     */
+    private final int offset;
+
+    /**
+     * The number of elements in this document.
+     */
+    private final int size;
+
+    /**
+     * The number of buckets in this document's hash table, or 0 if it has none.
+     */
+    private final int buckets;
+
+    /**
+     * Creates a new MappedIData for the document record at the given offset.
+     *
+     * @param source The mapped file the document is stored in.
+     * @param offset The offset of the document's record.
+     */
+    private MappedIData(Source source, int offset) {
+        this.source = source;
+        this.offset = offset;
+        this.size = source.buffer.getInt(offset + 1);
+        this.buckets = source.buffer.getInt(offset + 5);
+        if (size < 0 || buckets < 0 || (buckets & (buckets - 1)) != 0) {
+            throw new IllegalStateException("Malformed mapped IData: invalid document header at offset " + offset);
+        }
+    }
+
+    /**
+     * Returns the root document of the given mapped IData file. The file is mapped read-only, and remains mapped
+     * until the returned document and all documents and cursors obtained from it are garbage collected.
+     *
+     * @param file          The file to be opened.
+     * @return              The root document stored in the given file.
+     * @throws IOException  If the file cannot be read or is not a mapped IData file.
+     */
+    public static MappedIData open(File file) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) throw new IOException("Mapped IData file exceeds maximum size of 2GB: " + file);
+            return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        } finally {
+            CloseableHelper.close(randomAccessFile);
+        }
+    }
+
+    /**
+     * Returns the root document stored in the given buffer, which must contain a whole mapped IData file.
+     *
+     * @param buffer        The buffer containing a mapped IData file.
+     * @return              The root document stored in the given buffer.
+     * @throws IOException  If the buffer does not contain a mapped IData file.
+     */
+    public static MappedIData wrap(ByteBuffer buffer) throws IOException {
+        buffer = buffer.duplicate();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+
+        int limit = buffer.limit();
+        if (limit < HEADER_SIZE + TRAILER_SIZE) throw new IOException("Malformed mapped IData: too short");
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buffer.get(i) != MAGIC[i]) throw new IOException("Malformed mapped IData: missing header");
+        }
+
+        int version = buffer.getInt(MAGIC.length);
+        if (version != VERSION) throw new IOException("Unsupported mapped IData version: " + version);
+
+        int root = buffer.getInt(limit - TRAILER_SIZE);
+        if (root < HEADER_SIZE || root > limit - TRAILER_SIZE - DOCUMENT_HEADER_SIZE || buffer.get(root) != TAG_IDATA) {
+            throw new IOException("Malformed mapped IData: invalid root document offset " + root);
+        }
+
+        try {
+            return new MappedIData(new Source(buffer), root);
+        } catch (IllegalStateException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Writes the given IData document to the given file in the mapped IData layout.
+     *
+     * @param document      The document to be written.
+     * @param file          The file to write to.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public static void write(IData document, File file) throws IOException {
+        OutputStream outputStream = new FileOutputStream(file);
+        try {
+            write(document, outputStream);
+        } finally {
+            CloseableHelper.close(outputStream);
+        }
+    }
+
+    /**
+     * Writes the given IData document to the given stream in the mapped IData layout. Records are written children
+     * first, so that every offset is known when it is written and the output never needs to be revisited.
+     *
+     * @param document      The document to be written.
+     * @param outputStream  The stream to write to, which is flushed but not closed.
+     * @throws IOException  If an I/O error occurs.
+     */
+    public static void write(IData document, OutputStream outputStream) throws IOException {
+        new Writer(outputStream).write(document);
+    }
+
+    /**
+     * Returns the number of elements in this document.
+     *
+     * @return The number of elements in this document.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns a read-only IDataCursor for this document.
+     *
+     * @return A read-only IDataCursor for this document.
+     */
+    @Override
+    public IDataCursor getCursor() {
+        return new MappedIDataCursor();
+    }
+
+    /**
+     * Returns a string representation of this document.
+     *
+     * @return A string representation of this document.
+     */
+    @Override
+    public String toString() {
+        return IDataHelper.duplicate(this, true).toString();
+    }
+
+    /**
+     * Returns the hash table bucket for the given key hash code.
+     *
+     * @param hash      The hash code of the key.
+     * @param buckets   The number of buckets in the hash table, which must be a power of two.
+     * @return          The bucket for the given key hash code.
+     */
+    private static int bucket(int hash, int buckets) {
+        return (hash ^ (hash >>> 16)) & (buckets - 1);
+    }
+
+    /**
+     * A read-only cursor over the index entries of a MappedIData document.
+     */
+    private class MappedIDataCursor implements IDataCursor {
+        /**
+         * The index of the current entry, or -1 if the cursor is unpositioned.
+         */
+        private int position;
+
+        /**
+         * Creates a new unpositioned cursor.
+         */
+        MappedIDataCursor() {
+            this(-1);
+        }
+
+        /**
+         * Creates a new cursor at the given position.
+         *
+         * @param position The initial position of the cursor.
+         */
+        MappedIDataCursor(int position) {
+            this.position = position;
+        }
+
+        /**
+         * Returns the offset of the index entry at the given position.
+         *
+         * @param index The position of the entry.
+         * @return      The offset of the index entry.
+         */
+        private int entry(int index) {
+            return offset + DOCUMENT_HEADER_SIZE + index * ENTRY_SIZE;
+        }
+
+        /**
+         * Returns the position of the next entry with the given key, searching from the given position in the given
+         * direction, or -1 if there is no such entry.
+         *
+         * @param key   The key to search for.
+         * @param from  The position to start searching from.
+         * @param step  The direction to search in: 1 for forwards, -1 for backwards.
+         * @return      The position of the matching entry, or -1 if not found.
+         */
+        private int find(String key, int from, int step) {
+            int hash = key == null ? 0 : key.hashCode();
+
+            if (buckets == 0) {
+                for (int i = from; i >= 0 && i < size; i += step) {
+                    if (matches(i, key, hash)) return i;
+                }
+                return -1;
+            }
+
+            if (from < 0 || from >= size) return -1;
+
+            int heads = entry(size), nexts = heads + buckets * 4;
+            int i;
+            if (step > 0 && from > 0 && matches(from - 1, key, hash)) {
+                // continuing a forward search, so follow the chain from the previous match
+                i = next(nexts, from - 1);
+            } else {
+                i = source.buffer.getInt(heads + bucket(hash, buckets) * 4);
+                if (i >= size) throw new IllegalStateException("Malformed mapped IData: invalid hash table at offset " + offset);
+            }
+
+            int found = -1;
+            while (i != -1) {
+                if (step > 0) {
+                    if (i >= from && matches(i, key, hash)) return i;
+                } else if (i > from) {
+                    break;
+                } else if (matches(i, key, hash)) {
+                    found = i;
+                }
+                i = next(nexts, i);
+            }
+            return found;
+        }
+
+        /**
+         * Returns the position of the next entry in the same hash table bucket as the entry at the given position.
+         *
+         * @param nexts     The offset of the hash table's next entry positions.
+         * @param position  The position of the entry.
+         * @return          The position of the next entry in the same bucket, or -1 if there is none.
+         */
+        private int next(int nexts, int position) {
+            int next = source.buffer.getInt(nexts + position * 4);
+            if (next != -1 && (next <= position || next >= size)) {
+                // chains are strictly ascending, which also guarantees a malformed file cannot cause an endless loop
+                throw new IllegalStateException("Malformed mapped IData: invalid hash table at offset " + offset);
+            }
+            return next;
+        }
+
+        /**
+         * Returns true if the entry at the given position has the given key.
+         *
+         * @param position  The position of the entry.
+         * @param key       The key to compare with.
+         * @param hash      The hash code of the key, compared before the key itself.
+         * @return          True if the entry at the given position has the given key.
+         */
+        private boolean matches(int position, String key, int hash) {
+            int entry = entry(position);
+            if (source.buffer.getInt(entry) != hash) return false;
+            String candidate = source.readKey(source.buffer.getInt(entry + 4));
+            return key == null ? candidate == null : key.equals(candidate);
+        }
+
+        /**
+         * Moves the cursor to the given position if it is valid, otherwise unpositions the cursor.
+         *
+         * @param position  The new position.
+         * @return          True if the cursor was positioned.
+         */
+        private boolean seek(int position) {
+            boolean found = position >= 0 && position < size;
+            this.position = found ? position : -1;
+            return found;
+        }
+
+        /**
+         * Not implemented; does nothing.
+         *
+         * @param mode Not used.
+         */
+        public void setErrorMode(int mode) {
+            // do nothing
+        }
+
+        /**
+         * Not implemented; always returns null.
+         *
+         * @return Null.
+         */
+        public DataException getLastError() {
+            return null;
+        }
+
+        /**
+         * Not implemented; always returns false.
+         *
+         * @return False.
+         */
+        public boolean hasMoreErrors() {
+            return false;
+        }
+
+        /**
+         * Resets the cursor to be unpositioned.
+         */
+        public void home() {
+            position = -1;
+        }
+
+        /**
+         * Returns the key at the cursor's current position.
+         *
+         * @return The key at the cursor's current position, or null if unpositioned.
+         */
+        public String getKey() {
+            return position < 0 ? null : source.readKey(source.buffer.getInt(entry(position) + 4));
+        }
+
+        /**
+         * Does nothing, as mapped documents are read-only.
+         *
+         * @param key Not used.
+         */
+        public void setKey(String key) {
+            // do nothing
+        }
+
+        /**
+         * Returns the value at the cursor's current position, decoding it from the mapped file.
+         *
+         * @return The value at the cursor's current position, or null if unpositioned.
+         */
+        public Object getValue() {
+            return position < 0 ? null : source.readValue(source.buffer.getInt(entry(position) + 8));
+        }
+
+        /**
+         * Does nothing, as mapped documents are read-only.
+         *
+         * @param value Not used.
+         */
+        public void setValue(Object value) {
+            // do nothing
+        }
+
+        /**
+         * Does nothing, as mapped documents are read-only.
+         *
+         * @return False.
+         */
+        public boolean delete() {
+            return false;
+        }
+
+        /**
+         * Does nothing, as mapped documents are read-only.
+         *
+         * @param key   Not used.
+         * @param value Not used.
+         */
+        public void insertBefore(String key, Object value) {
+            // do nothing
+        }
+
+        /**
+         * Does nothing, as mapped documents are read-only.
+         *
+         * @param key   Not used.
+         * @param value Not used.
+         */
+        public void insertAfter(String key, Object value) {
+            // do nothing
+        }
+
+        /**
+         * Does nothing, as mapped documents are read-only.
+         *
+         * @param key   Not used.
+         * @return      Null.
+         */
+        public IData insertDataBefore(String key) {
+            return null;
+        }
+
+        /**
+         * Does nothing, as mapped documents are read-only.
+         *
+         * @param key   Not used.
+         * @return      Null.
+         */
+        public IData insertDataAfter(String key) {
+            return null;
+        }
+
+        /**
+         * Positions the cursor on the next element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean next() {
+            return seek(position + 1);
+        }
+
+        /**
+         * Positions the cursor on the next element with the given key.
+         *
+         * @param key   The key to position the cursor on.
+         * @return      True if the cursor was repositioned.
+         */
+        public boolean next(String key) {
+            return seek(find(key, position + 1, 1));
+        }
+
+        /**
+         * Positions the cursor on the previous element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean previous() {
+            return seek(position < 0 ? size - 1 : position - 1);
+        }
+
+        /**
+         * Positions the cursor on the previous element with the given key.
+         *
+         * @param key   The key to position the cursor on.
+         * @return      True if the cursor was repositioned.
+         */
+        public boolean previous(String key) {
+            return seek(find(key, position < 0 ? size - 1 : position - 1, -1));
+        }
+
+        /**
+         * Positions the cursor on the first element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean first() {
+            return seek(0);
+        }
+
+        /**
+         * Positions the cursor on the first element with the given key.
+         *
+         * @param key   The key to position the cursor on.
+         * @return      True if the cursor was repositioned.
+         */
+        public boolean first(String key) {
+            return seek(find(key, 0, 1));
+        }
+
+        /**
+         * Positions the cursor on the last element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean last() {
+            return seek(size - 1);
+        }
+
+        /**
+         * Positions the cursor on the last element with the given key.
+         *
+         * @param key   The key to position the cursor on.
+         * @return      True if the cursor was repositioned.
+         */
+        public boolean last(String key) {
+            return seek(find(key, size - 1, -1));
+        }
+
+        /**
+         * Returns true if there are more elements after the cursor's current position.
+         *
+         * @return True if there are more elements after the cursor's current position.
+         */
+        public boolean hasMoreData() {
+            return position + 1 < size;
+        }
+
+        /**
+         * Destroys the cursor.
+         */
+        public void destroy() {
+            position = -1;
+        }
+
+        /**
+         * Returns a clone of this cursor at the same position.
+         *
+         * @return A clone of this cursor.
+         */
+        public IDataCursor getCursorClone() {
+            return new MappedIDataCursor(position);
+        }
+    }
+
+    /**
+     * A mapped IData file, shared by all the documents stored in it.
+     */
+    private static class Source {
+        /**
+         * The mapped file content, which is only ever read with absolute methods so it can be shared by threads.
+         */
+        private final ByteBuffer buffer;
+
+        /**
+         * Cache of decoded keys by offset; keys are stored once per file, so this is bounded by the distinct keys.
+         */
+        private final ConcurrentMap<Integer, String> keys = new ConcurrentHashMap<Integer, String>();
+
+        /**
+         * Creates a new Source.
+         *
+         * @param buffer The mapped file content.
+         */
+        Source(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Returns the key stored at the given offset.
+         *
+         * @param offset    The offset of the key.
+         * @return          The key stored at the given offset.
+         */
+        String readKey(int offset) {
+            if (offset == NULL_OFFSET) return null;
+
+            String key = keys.get(offset);
+            if (key == null) {
+                key = new String(readBytes(offset), UTF_8);
+                String existing = keys.putIfAbsent(offset, key);
+                if (existing != null) key = existing;
+            }
+            return key;
+        }
+
+        /**
+         * Returns the length-prefixed bytes stored at the given offset.
+         *
+         * @param offset    The offset of the length-prefixed bytes.
+         * @return          The bytes stored at the given offset.
+         */
+        byte[] readBytes(int offset) {
+            byte[] bytes = new byte[buffer.getInt(offset)];
+            ByteBuffer view = buffer.duplicate();
+            view.position(offset + 4);
+            view.get(bytes);
+            return bytes;
+        }
+
+        /**
+         * Returns the length-prefixed offsets stored at the given offset.
+         *
+         * @param offset    The offset of the length-prefixed offsets.
+         * @return          The offsets stored at the given offset.
+         */
+        int[] readOffsets(int offset) {
+            int[] offsets = new int[buffer.getInt(offset)];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = buffer.getInt(offset + 4 + i * 4);
+            }
+            return offsets;
+        }
+
+        /**
+         * Decodes the value record stored at the given offset. Nested documents are not decoded, but are returned
+         * as further MappedIData views.
+         *
+         * @param offset    The offset of the value record.
+         * @return          The decoded value.
+         */
+        Object readValue(int offset) {
+            if (offset == NULL_OFFSET) return null;
+
+            byte tag = buffer.get(offset);
+            int payload = offset + 1;
+
+            switch(tag) {
+                case TAG_STRING:
+                    return new String(readBytes(payload), UTF_8);
+                case TAG_BYTES:
+                    return readBytes(payload);
+                case TAG_TRUE:
+                    return Boolean.TRUE;
+                case TAG_FALSE:
+                    return Boolean.FALSE;
+                case TAG_BYTE:
+                    return buffer.get(payload);
+                case TAG_SHORT:
+                    return buffer.getShort(payload);
+                case TAG_INTEGER:
+                    return buffer.getInt(payload);
+                case TAG_LONG:
+                    return buffer.getLong(payload);
+                case TAG_FLOAT:
+                    return buffer.getFloat(payload);
+                case TAG_DOUBLE:
+                    return buffer.getDouble(payload);
+                case TAG_CHARACTER:
+                    return buffer.getChar(payload);
+                case TAG_BIG_INTEGER:
+                    return new BigInteger(readBytes(payload));
+                case TAG_BIG_DECIMAL:
+                    return new BigDecimal(new BigInteger(readBytes(payload + 4)), buffer.getInt(payload));
+                case TAG_DATE:
+                    return new Date(buffer.getLong(payload));
+                case TAG_CALENDAR:
+                    String zone = readKey(buffer.getInt(payload + 8));
+                    Calendar calendar = Calendar.getInstance(zone == null ? TimeZone.getDefault() : TimeZone.getTimeZone(zone));
+                    calendar.setTimeInMillis(buffer.getLong(payload));
+                    return calendar;
+                case TAG_IDATA:
+                    return new MappedIData(this, offset);
+                case TAG_IDATA_ARRAY:
+                    int[] documentOffsets = readOffsets(payload);
+                    IData[] documents = new IData[documentOffsets.length];
+                    for (int i = 0; i < documents.length; i++) {
+                        if (documentOffsets[i] != NULL_OFFSET) documents[i] = new MappedIData(this, documentOffsets[i]);
+                    }
+                    return documents;
+                case TAG_STRING_ARRAY:
+                    return readStrings(payload);
+                case TAG_STRING_TABLE:
+                    int[] rowOffsets = readOffsets(payload);
+                    String[][] table = new String[rowOffsets.length][];
+                    for (int i = 0; i < table.length; i++) {
+                        if (rowOffsets[i] != NULL_OFFSET) table[i] = readStrings(rowOffsets[i] + 1);
+                    }
+                    return table;
+                case TAG_OBJECT_ARRAY:
+                    int[] itemOffsets = readOffsets(payload);
+                    Object[] array = new Object[itemOffsets.length];
+                    for (int i = 0; i < array.length; i++) {
+                        array[i] = readValue(itemOffsets[i]);
+                    }
+                    return array;
+                default:
+                    throw new IllegalStateException("Malformed mapped IData: unknown value tag " + tag + " at offset " + offset);
+            }
+        }
+
+        /**
+         * Returns the String[] whose length-prefixed string offsets are stored at the given offset.
+         *
+         * @param offset    The offset of the length-prefixed string offsets.
+         * @return          The decoded String[].
+         */
+        private String[] readStrings(int offset) {
+            int[] offsets = readOffsets(offset);
+            String[] strings = new String[offsets.length];
+            for (int i = 0; i < strings.length; i++) {
+                if (offsets[i] != NULL_OFFSET) strings[i] = new String(readBytes(offsets[i] + 1), UTF_8);
+            }
+            return strings;
+        }
+    }
+
+    /**
+     * Writes IData documents in the mapped IData layout.
+     */
+    private static class Writer {
+        /**
+         * The stream being written to, which also counts the bytes written.
+         */
+        private final DataOutputStream outputStream;
+
+        /**
+         * The offsets of the keys already written, so each distinct key is only stored once.
+         */
+        private final Map<String, Integer> keys = new HashMap<String, Integer>();
+
+        /**
+         * Creates a new Writer.
+         *
+         * @param outputStream The stream to write to.
+         */
+        Writer(OutputStream outputStream) {
+            this.outputStream = new DataOutputStream(new BufferedOutputStream(outputStream));
+        }
+
+        /**
+         * Writes the given document as a complete mapped IData file.
+         *
+         * @param document      The document to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        void write(IData document) throws IOException {
+            outputStream.write(MAGIC);
+            outputStream.writeInt(VERSION);
+            int root = writeDocument(document);
+            outputStream.writeInt(root);
+            outputStream.flush();
+        }
+
+        /**
+         * Returns the offset at which the next record will be written.
+         *
+         * @return              The offset at which the next record will be written.
+         * @throws IOException  If the output exceeds the maximum size.
+         */
+        private int position() throws IOException {
+            int position = outputStream.size();
+            if (position < 0 || position == Integer.MAX_VALUE) throw new IOException("Mapped IData file exceeds maximum size of 2GB");
+            return position;
+        }
+
+        /**
+         * Writes the given key if not already written, and returns its offset.
+         *
+         * @param key           The key to be written.
+         * @return              The offset of the key.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private int writeKey(String key) throws IOException {
+            if (key == null) return NULL_OFFSET;
+
+            Integer offset = keys.get(key);
+            if (offset == null) {
+                offset = position();
+                writeBytes(key.getBytes(UTF_8));
+                keys.put(key, offset);
+            }
+            return offset;
+        }
+
+        /**
+         * Writes the given bytes prefixed with their length.
+         *
+         * @param bytes         The bytes to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeBytes(byte[] bytes) throws IOException {
+            outputStream.writeInt(bytes.length);
+            outputStream.write(bytes);
+        }
+
+        /**
+         * Writes the given offsets prefixed with their count.
+         *
+         * @param offsets       The offsets to be written.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private void writeOffsets(int[] offsets) throws IOException {
+            outputStream.writeInt(offsets.length);
+            for (int offset : offsets) {
+                outputStream.writeInt(offset);
+            }
+        }
+
+        /**
+         * Writes the given document's values, keys and finally its index record, and returns the record's offset.
+         *
+         * @param document      The document to be written.
+         * @return              The offset of the document's record.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private int writeDocument(IData document) throws IOException {
+            List<String> names = new ArrayList<String>();
+            List<Object> values = new ArrayList<Object>();
+
+            if (document != null) {
+                IDataCursor cursor = document.getCursor();
+                try {
+                    while (cursor.next()) {
+                        names.add(cursor.getKey());
+                        values.add(cursor.getValue());
+                    }
+                } finally {
+                    cursor.destroy();
+                }
+            }
+
+            int size = names.size();
+            int[] entries = new int[size * 3];
+            for (int i = 0; i < size; i++) {
+                String key = names.get(i);
+                entries[i * 3] = key == null ? 0 : key.hashCode();
+                entries[i * 3 + 1] = writeKey(key);
+                entries[i * 3 + 2] = writeValue(values.get(i));
+            }
+
+            int buckets = size > HASH_TABLE_THRESHOLD ? Integer.highestOneBit(size - 1) << 1 : 0;
+
+            int offset = position();
+            outputStream.writeByte(TAG_IDATA);
+            outputStream.writeInt(size);
+            outputStream.writeInt(buckets);
+            for (int entry : entries) {
+                outputStream.writeInt(entry);
+            }
+
+            if (buckets > 0) {
+                int[] heads = new int[buckets];
+                Arrays.fill(heads, -1);
+                int[] nexts = new int[size];
+                // built from the end, so that each bucket's chain is in ascending position order
+                for (int i = size - 1; i >= 0; i--) {
+                    int bucket = bucket(entries[i * 3], buckets);
+                    nexts[i] = heads[bucket];
+                    heads[bucket] = i;
+                }
+                for (int head : heads) {
+                    outputStream.writeInt(head);
+                }
+                for (int next : nexts) {
+                    outputStream.writeInt(next);
+                }
+            }
+
+            return offset;
+        }
+
+        /**
+         * Writes the given String[] as a record, and returns the record's offset.
+         *
+         * @param strings       The strings to be written.
+         * @return              The offset of the record.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private int writeStrings(String[] strings) throws IOException {
+            int[] offsets = new int[strings.length];
+            for (int i = 0; i < strings.length; i++) {
+                offsets[i] = writeValue(strings[i]);
+            }
+
+            int offset = position();
+            outputStream.writeByte(TAG_STRING_ARRAY);
+            writeOffsets(offsets);
+            return offset;
+        }
+
+        /**
+         * Writes the given value as a record, preceded by any records it refers to, and returns the record's offset.
+         *
+         * @param value         The value to be written.
+         * @return              The offset of the record, or -1 if the value is null.
+         * @throws IOException  If an I/O error occurs.
+         */
+        private int writeValue(Object value) throws IOException {
+            if (value == null) return NULL_OFFSET;
+
+            if (value instanceof IData || value instanceof IDataCodable || value instanceof IDataPortable || value instanceof ValuesCodable) {
+                return writeDocument(IDataHelper.toIData(value));
+            } else if (value instanceof IData[] || value instanceof Table || value instanceof IDataCodable[] || value instanceof IDataPortable[] || value instanceof ValuesCodable[]) {
+                IData[] documents = IDataHelper.toIDataArray(value);
+                int[] offsets = new int[documents.length];
+                for (int i = 0; i < documents.length; i++) {
+                    offsets[i] = documents[i] == null ? NULL_OFFSET : writeDocument(documents[i]);
+                }
+
+                int offset = position();
+                outputStream.writeByte(TAG_IDATA_ARRAY);
+                writeOffsets(offsets);
+                return offset;
+            } else if (value instanceof String[]) {
+                return writeStrings((String[])value);
+            } else if (value instanceof String[][]) {
+                String[][] table = (String[][])value;
+                int[] offsets = new int[table.length];
+                for (int i = 0; i < table.length; i++) {
+                    offsets[i] = table[i] == null ? NULL_OFFSET : writeStrings(table[i]);
+                }
+
+                int offset = position();
+                outputStream.writeByte(TAG_STRING_TABLE);
+                writeOffsets(offsets);
+                return offset;
+            } else if (value instanceof Object[]) {
+                Object[] array = (Object[])value;
+                int[] offsets = new int[array.length];
+                for (int i = 0; i < array.length; i++) {
+                    offsets[i] = writeValue(array[i]);
+                }
+
+                int offset = position();
+                outputStream.writeByte(TAG_OBJECT_ARRAY);
+                writeOffsets(offsets);
+                return offset;
+            } else if (value instanceof Calendar) {
+                Calendar calendar = (Calendar)value;
+                int zone = writeKey(calendar.getTimeZone().getID());
+
+                int offset = position();
+                outputStream.writeByte(TAG_CALENDAR);
+                outputStream.writeLong(calendar.getTimeInMillis());
+                outputStream.writeInt(zone);
+                return offset;
+            }
+
+            int offset = position();
+
+            if (value instanceof String) {
+                outputStream.writeByte(TAG_STRING);
+                writeBytes(((String)value).getBytes(UTF_8));
+            } else if (value instanceof byte[]) {
+                outputStream.writeByte(TAG_BYTES);
+                writeBytes((byte[])value);
+            } else if (value instanceof Boolean) {
+                outputStream.writeByte((Boolean)value ? TAG_TRUE : TAG_FALSE);
+            } else if (value instanceof Byte) {
+                outputStream.writeByte(TAG_BYTE);
+                outputStream.writeByte((Byte)value);
+            } else if (value instanceof Short) {
+                outputStream.writeByte(TAG_SHORT);
+                outputStream.writeShort((Short)value);
+            } else if (value instanceof Integer) {
+                outputStream.writeByte(TAG_INTEGER);
+                outputStream.writeInt((Integer)value);
+            } else if (value instanceof Long) {
+                outputStream.writeByte(TAG_LONG);
+                outputStream.writeLong((Long)value);
+            } else if (value instanceof Float) {
+                outputStream.writeByte(TAG_FLOAT);
+                outputStream.writeFloat((Float)value);
+            } else if (value instanceof Double) {
+                outputStream.writeByte(TAG_DOUBLE);
+                outputStream.writeDouble((Double)value);
+            } else if (value instanceof Character) {
+                outputStream.writeByte(TAG_CHARACTER);
+                outputStream.writeChar((Character)value);
+            } else if (value instanceof BigInteger) {
+                outputStream.writeByte(TAG_BIG_INTEGER);
+                writeBytes(((BigInteger)value).toByteArray());
+            } else if (value instanceof BigDecimal) {
+                BigDecimal decimal = (BigDecimal)value;
+                outputStream.writeByte(TAG_BIG_DECIMAL);
+                outputStream.writeInt(decimal.scale());
+                writeBytes(decimal.unscaledValue().toByteArray());
+            } else if (value instanceof Date) {
+                outputStream.writeByte(TAG_DATE);
+                outputStream.writeLong(((Date)value).getTime());
+            } else {
+                // there is no record type for other classes, so they are stored as text: opening a file must never
+                // instantiate classes named by its content
+                outputStream.writeByte(TAG_STRING);
+                writeBytes(value.toString().getBytes(UTF_8));
+            }
+
+            return offset;
+        }
+    }
+}
@@ -0,0 +1,1306 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.DataException;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataIndexCursor;
+import permafrost.tundra.collection.PersistentHashMap;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An IData implementation backed by persistent immutable data structures: the elements are held in a path copying
+ * balanced tree ordered by position labels, and the keys are indexed by a hash array mapped trie. Writes create a new
+ * version of the document which shares all unchanged structure with the previous version in O(log n) time, and are
+ * published with a compare and set rather than a lock.
+ *
+ * A snapshot of a document can be modified independently of the original document. Nested IData documents and IData[]
+ * document lists are held as immutable versions, and are only materialized as mutable PersistentIData objects when
+ * read, so modifying a nested document never affects other snapshots. This makes PersistentIData suitable for handing
+ * out copies of a shared document which callers may then amend. Other values, including IDataCodable, IDataPortable,
+ * ValuesCodable and Table objects, are held as is and shared between snapshots, as with a shallow copy.
+ */
+public class PersistentIData extends AbstractIData {
+    /**
+     * The position label of the home position, before the first element.
+     */
+    private static final long HOME = Long.MIN_VALUE;
+
+    /**
+     * The position label used to indicate there is no following element.
+     */
+    private static final long TAIL = Long.MAX_VALUE;
+
+    /**
+     * The spacing between position labels when elements are appended or labels are reassigned, which leaves room to
+     * insert elements between existing elements without reassigning labels.
+     */
+    private static final long GAP = 1L << 32;
+
+    /**
+     * The maximum spacing between a new position label and the adjacent label it is inserted after or before, which
+     * allows many consecutive insertions at the same position before labels must be reassigned.
+     */
+    private static final long STEP = 1L << 16;
+
+    /**
+     * The empty version.
+     */
+    private static final Version EMPTY = new Version(null, PersistentHashMap.<String, long[]>empty(), false, 0);
+
+    /**
+     * The current version of this document.
+     */
+    private final AtomicReference<Version> version;
+
+    /**
+     * Constructs a new empty PersistentIData.
+     */
+    public PersistentIData() {
+        this(EMPTY);
+    }
+
+    /**
+     * Constructs a new PersistentIData with the given initial version.
+     *
+     * @param version The initial version of the document.
+     */
+    private PersistentIData(Version version) {
+        this.version = new AtomicReference<Version>(version);
+    }
+
+    /**
+     * Returns a newly created IData object.
+     *
+     * @return A newly created IData object.
+     */
+    public static IData create() {
+        return new PersistentIData();
+    }
+
+    /**
+     * Returns a new PersistentIData containing a copy of the given IData document. If the given document is itself a
+     * PersistentIData, a snapshot of it is returned.
+     *
+     * @param document  The document to be copied.
+     * @return          A new PersistentIData containing a copy of the given IData document.
+     */
+    public static PersistentIData of(IData document) {
+        if (document == null) return null;
+        if (document instanceof PersistentIData) return ((PersistentIData)document).snapshot();
+        return new PersistentIData(freeze(document));
+    }
+
+    /**
+     * Returns a new PersistentIData[] containing copies of the given IData[] document list.
+     *
+     * @param array     An IData[] document list.
+     * @return          A new PersistentIData[] containing copies of the given IData[] document list.
+     */
+    public static PersistentIData[] of(IData[] array) {
+        if (array == null) return null;
+
+        PersistentIData[] output = new PersistentIData[array.length];
+        for (int i = 0; i < array.length; i++) {
+            output[i] = of(array[i]);
+        }
+
+        return output;
+    }
+
+    /**
+     * Returns a snapshot of this document. The snapshot and this document can subsequently be modified independently
+     * of each other. Taking a snapshot is a constant time operation if no nested documents have been read from this
+     * document since it was created or last snapshotted; otherwise, each nested document that has been read is frozen
+     * again, which takes time proportional to the number of elements in the documents that were read.
+     *
+     * @return A snapshot of this document.
+     */
+    public PersistentIData snapshot() {
+        return new PersistentIData(freeze(version.get()));
+    }
+
+    /**
+     * Returns the number of elements in this document.
+     *
+     * @return The number of elements in this document.
+     */
+    public int size() {
+        return size(version.get().root);
+    }
+
+    /**
+     * Returns an IDataCursor for this IData object. An IDataCursor contains the basic methods you use to traverse an
+     * IData object and get or set elements within it.
+     *
+     * @return An IDataCursor for this object.
+     */
+    @Override
+    public IDataCursor getCursor() {
+        return new PersistentIDataCursor(HOME, version.get());
+    }
+
+    /**
+     * Returns an IDataIndexCursor for traversing this IData.
+     *
+     * @return An IDataIndexCursor for traversing this IData.
+     */
+    @Override
+    public IDataIndexCursor getIndexCursor() {
+        return new PersistentIDataCursor(HOME, version.get());
+    }
+
+    /**
+     * Returns the structural hash of this document, as defined by IDataHashHelper. The hashes of unchanged subtrees of
+     * elements are cached and shared between versions, so only the elements modified since the hash was last
+     * calculated are rehashed.
+     *
+     * @return The structural hash of this document.
+     */
+    public long getStructuralHash() {
+        return IDataHashHelper.document(hash(version.get().root));
+    }
+
+    /**
+     * Returns a string representation of this object.
+     *
+     * @return A string representation of this object.
+     */
+    @Override
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("{ ");
+
+        Node[] nodes = nodes(version.get().root);
+        for (int i = 0; i < nodes.length; i++) {
+            if (i > 0) buffer.append(", ");
+            buffer.append(nodes[i].key).append(" = ").append(nodes[i].value);
+        }
+
+        buffer.append(" }");
+        return buffer.toString();
+    }
+
+    /**
+     * Returns an immutable version representing a copy of the given IData document.
+     *
+     * @param document  The document to be copied.
+     * @return          An immutable version representing a copy of the given document.
+     */
+    private static Version freeze(IData document) {
+        if (document instanceof PersistentIData) return freeze(((PersistentIData)document).version.get());
+
+        Node[] nodes = new Node[IDataHelper.size(document)];
+        PersistentHashMap<String, long[]> index = PersistentHashMap.empty();
+
+        IDataCursor cursor = document.getCursor();
+        try {
+            for (int i = 0; i < nodes.length && cursor.next(); i++) {
+                String key = cursor.getKey();
+                long label = i * GAP;
+                nodes[i] = new Node(label, key, freeze(cursor.getValue()));
+                index = index.put(key, insert(index.get(key), label));
+            }
+        } finally {
+            cursor.destroy();
+        }
+
+        return new Version(build(nodes, 0, nodes.length), index, false, 0);
+    }
+
+    /**
+     * Returns the given version with all nested mutable PersistentIData documents replaced with immutable versions.
+     *
+     * @param version   The version to be frozen.
+     * @return          The frozen version.
+     */
+    private static Version freeze(Version version) {
+        if (!version.live) return version;
+
+        Node[] nodes = nodes(version.root);
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            nodes[i] = new Node(node.label, node.identity, node.key, freeze(node.value), null, null);
+        }
+
+        return new Version(build(nodes, 0, nodes.length), version.index, false, version.epoch);
+    }
+
+    /**
+     * Converts the given value to its immutable representation if it is an IData or IData[] object. All other values,
+     * including IData compatible objects such as IDataCodable and Table objects, are returned as is, so that reading
+     * the value returns the same type of object that was written.
+     *
+     * @param value The value to be frozen.
+     * @return      The immutable representation of the value.
+     */
+    private static Object freeze(Object value) {
+        if (value instanceof IData[]) {
+            IData[] array = (IData[])value;
+            Version[] versions = new Version[array.length];
+            for (int i = 0; i < array.length; i++) {
+                if (array[i] != null) versions[i] = freeze(array[i]);
+            }
+            value = versions;
+        } else if (value instanceof IData) {
+            value = freeze((IData)value);
+        }
+        return value;
+    }
+
+    /**
+     * Converts the given value from its immutable representation to a new mutable PersistentIData or IData[] object.
+     *
+     * @param value The value to be thawed.
+     * @return      The mutable representation of the value, or null if the value is not an immutable representation.
+     */
+    private static Object thaw(Object value) {
+        if (value instanceof Version) {
+            return new PersistentIData((Version)value);
+        } else if (value instanceof Version[]) {
+            Version[] versions = (Version[])value;
+            IData[] array = new IData[versions.length];
+            for (int i = 0; i < versions.length; i++) {
+                if (versions[i] != null) array[i] = new PersistentIData(versions[i]);
+            }
+            return array;
+        }
+        return null;
+    }
+
+    /**
+     * Returns true if the given value is or may contain a mutable PersistentIData object.
+     *
+     * @param value The value to be checked.
+     * @return      True if the given value is or may contain a mutable PersistentIData object.
+     */
+    private static boolean isLive(Object value) {
+        return value instanceof IData || value instanceof IData[];
+    }
+
+    /**
+     * Returns a copy of the given sorted labels with the given label inserted.
+     *
+     * @param labels    The sorted labels, or null.
+     * @param label     The label to be inserted.
+     * @return          A copy of the given sorted labels with the given label inserted.
+     */
+    private static long[] insert(long[] labels, long label) {
+        if (labels == null) return new long[] { label };
+
+        int i = Arrays.binarySearch(labels, label);
+        if (i >= 0) return labels;
+        i = -(i + 1);
+
+        long[] copy = new long[labels.length + 1];
+        System.arraycopy(labels, 0, copy, 0, i);
+        copy[i] = label;
+        System.arraycopy(labels, i, copy, i + 1, labels.length - i);
+        return copy;
+    }
+
+    /**
+     * Returns a copy of the given sorted labels with the given label removed.
+     *
+     * @param labels    The sorted labels.
+     * @param label     The label to be removed.
+     * @return          A copy of the given sorted labels with the given label removed, or null if no labels remain.
+     */
+    private static long[] remove(long[] labels, long label) {
+        if (labels == null) return null;
+
+        int i = Arrays.binarySearch(labels, label);
+        if (i < 0) return labels;
+        if (labels.length == 1) return null;
+
+        long[] copy = new long[labels.length - 1];
+        System.arraycopy(labels, 0, copy, 0, i);
+        System.arraycopy(labels, i + 1, copy, i, labels.length - i - 1);
+        return copy;
+    }
+
+    /**
+     * Returns the number of elements in the given tree.
+     *
+     * @param node  The root of the tree.
+     * @return      The number of elements in the tree.
+     */
+    private static int size(Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    /**
+     * Returns the multiplier raised to the power of the number of elements in the given subtree.
+     *
+     * @param node  The root of the subtree, or null.
+     * @return      The multiplier raised to the power of the number of elements in the subtree.
+     */
+    private static long power(Node node) {
+        return node == null ? 1 : node.power;
+    }
+
+    /**
+     * Returns the polynomial hash of the elements in the given subtree, in order, caching it in the subtree's root
+     * node when no element in the subtree holds a mutable value.
+     *
+     * @param node  The root of the subtree, or null.
+     * @return      The polynomial hash of the elements in the subtree.
+     */
+    private static long hash(Node node) {
+        if (node == null) return 0;
+        if (node.hashed) return node.hash;
+
+        long element = IDataHashHelper.element(node.key, hash(node.value));
+        long hash = IDataHashHelper.combine(hash(node.left), element) * power(node.right) + hash(node.right);
+
+        if (!isLive(node.value) && (node.left == null || node.left.hashed) && (node.right == null || node.right.hashed)) {
+            node.hash = hash;
+            node.hashed = true;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Returns the structural hash of the given element value.
+     *
+     * @param value The element value.
+     * @return      The structural hash of the value.
+     */
+    private static long hash(Object value) {
+        long hash;
+        if (value instanceof Version) {
+            hash = IDataHashHelper.document(hash(((Version)value).root));
+        } else if (value instanceof Version[]) {
+            Version[] versions = (Version[])value;
+            long sequence = 0;
+            for (Version item : versions) {
+                sequence = IDataHashHelper.combine(sequence, item == null ? 0 : IDataHashHelper.document(hash(item.root)));
+            }
+            hash = IDataHashHelper.array(sequence, versions.length);
+        } else {
+            hash = IDataHashHelper.hash(value);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the height of the given tree.
+     *
+     * @param node  The root of the tree.
+     * @return      The height of the tree.
+     */
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    /**
+     * Returns a balanced tree containing the given element and subtrees, performing an AVL rotation if required.
+     *
+     * @param element   The element.
+     * @param left      The subtree of elements with lower labels.
+     * @param right     The subtree of elements with higher labels.
+     * @return          A balanced tree.
+     */
+    private static Node balance(Node element, Node left, Node right) {
+        int difference = height(left) - height(right);
+        if (difference > 1) {
+            if (height(left.left) >= height(left.right)) {
+                return new Node(left, left.left, new Node(element, left.right, right));
+            } else {
+                Node pivot = left.right;
+                return new Node(pivot, new Node(left, left.left, pivot.left), new Node(element, pivot.right, right));
+            }
+        } else if (difference < -1) {
+            if (height(right.right) >= height(right.left)) {
+                return new Node(right, new Node(element, left, right.left), right.right);
+            } else {
+                Node pivot = right.left;
+                return new Node(pivot, new Node(element, left, pivot.left), new Node(right, pivot.right, right.right));
+            }
+        }
+        return new Node(element, left, right);
+    }
+
+    /**
+     * Returns a new tree with the given element inserted, or replaced if an element with the same label exists.
+     *
+     * @param node      The root of the tree.
+     * @param element   The element to be inserted.
+     * @return          The root of the new tree.
+     */
+    private static Node insert(Node node, Node element) {
+        if (node == null) return new Node(element, null, null);
+        if (element.label < node.label) return balance(node, insert(node.left, element), node.right);
+        if (element.label > node.label) return balance(node, node.left, insert(node.right, element));
+        return new Node(element, node.left, node.right);
+    }
+
+    /**
+     * Returns a new tree without the element with the given label.
+     *
+     * @param node  The root of the tree.
+     * @param label The label of the element to be removed.
+     * @return      The root of the new tree.
+     */
+    private static Node remove(Node node, long label) {
+        if (node == null) return null;
+        if (label < node.label) return balance(node, remove(node.left, label), node.right);
+        if (label > node.label) return balance(node, node.left, remove(node.right, label));
+        if (node.left == null) return node.right;
+        if (node.right == null) return node.left;
+
+        Node successor = first(node.right);
+        return balance(successor, node.left, remove(node.right, successor.label));
+    }
+
+    /**
+     * Returns the element with the given label.
+     *
+     * @param node  The root of the tree.
+     * @param label The label of the element.
+     * @return      The element with the given label, or null if it does not exist.
+     */
+    private static Node find(Node node, long label) {
+        while (node != null && node.label != label) {
+            node = label < node.label ? node.left : node.right;
+        }
+        return node;
+    }
+
+    /**
+     * Returns the element with the lowest label greater than or equal to the given label.
+     *
+     * @param node  The root of the tree.
+     * @param label The label to search from.
+     * @return      The element found, or null if there is none.
+     */
+    private static Node ceiling(Node node, long label) {
+        Node result = null;
+        while (node != null) {
+            if (node.label == label) return node;
+            if (node.label > label) {
+                result = node;
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the element with the highest label less than or equal to the given label.
+     *
+     * @param node  The root of the tree.
+     * @param label The label to search from.
+     * @return      The element found, or null if there is none.
+     */
+    private static Node floor(Node node, long label) {
+        Node result = null;
+        while (node != null) {
+            if (node.label == label) return node;
+            if (node.label < label) {
+                result = node;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the element with the given identity, which requires a traversal of the tree.
+     *
+     * @param node      The root of the tree.
+     * @param identity  The identity of the element.
+     * @return          The element with the given identity, or null if it does not exist.
+     */
+    private static Node identify(Node node, Object identity) {
+        if (node == null || node.identity == identity) return node;
+        Node result = identify(node.left, identity);
+        return result == null ? identify(node.right, identity) : result;
+    }
+
+    /**
+     * Returns the first element in the given tree.
+     *
+     * @param node  The root of the tree.
+     * @return      The first element, or null if the tree is empty.
+     */
+    private static Node first(Node node) {
+        if (node != null) while (node.left != null) node = node.left;
+        return node;
+    }
+
+    /**
+     * Returns the last element in the given tree.
+     *
+     * @param node  The root of the tree.
+     * @return      The last element, or null if the tree is empty.
+     */
+    private static Node last(Node node) {
+        if (node != null) while (node.right != null) node = node.right;
+        return node;
+    }
+
+    /**
+     * Returns the element at the given zero-based index.
+     *
+     * @param node  The root of the tree.
+     * @param index The zero-based index of the element.
+     * @return      The element at the given index, or null if the index is out of range.
+     */
+    private static Node nth(Node node, int index) {
+        if (index < 0 || index >= size(node)) return null;
+        while (node != null) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of elements with labels less than the given label.
+     *
+     * @param node  The root of the tree.
+     * @param label The label.
+     * @return      The number of elements with labels less than the given label.
+     */
+    private static int rank(Node node, long label) {
+        int rank = 0;
+        while (node != null) {
+            if (label <= node.label) {
+                node = node.left;
+            } else {
+                rank += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the elements of the given tree in order.
+     *
+     * @param node  The root of the tree.
+     * @return      The elements of the tree in order.
+     */
+    private static Node[] nodes(Node node) {
+        Node[] nodes = new Node[size(node)];
+        collect(node, nodes, 0);
+        return nodes;
+    }
+
+    /**
+     * Collects the elements of the given tree in order into the given array.
+     *
+     * @param node      The root of the tree.
+     * @param nodes     The array to collect the elements into.
+     * @param offset    The array index at which to collect the first element.
+     * @return          The array index following the last collected element.
+     */
+    private static int collect(Node node, Node[] nodes, int offset) {
+        if (node == null) return offset;
+        offset = collect(node.left, nodes, offset);
+        nodes[offset++] = node;
+        return collect(node.right, nodes, offset);
+    }
+
+    /**
+     * Returns a balanced tree built from the given elements, which must be sorted by label.
+     *
+     * @param nodes The elements, sorted by label.
+     * @param start The index of the first element, inclusive.
+     * @param end   The index of the last element, exclusive.
+     * @return      The root of the balanced tree.
+     */
+    private static Node build(Node[] nodes, int start, int end) {
+        if (start >= end) return null;
+        int middle = (start + end) >>> 1;
+        return new Node(nodes[middle], build(nodes, start, middle), build(nodes, middle + 1, end));
+    }
+
+    /**
+     * An element of this document, which is also a node in an immutable AVL tree of elements ordered by label.
+     */
+    private static final class Node {
+        final long label;
+        final String key;
+        final Object value;
+        final Node left, right;
+        final int height, size;
+
+        /**
+         * The token identifying this element, which is retained when its label or value changes, and is compared by
+         * reference so that identities need not be allocated from a shared source.
+         */
+        final Object identity;
+
+        /**
+         * The multiplier raised to the power of the number of elements in this subtree, used to compose the hash of
+         * this subtree with the hashes of the elements that precede it.
+         */
+        final long power;
+
+        /**
+         * The cached structural hash of the elements in this subtree, only valid when hashed is true.
+         */
+        long hash;
+
+        /**
+         * Whether the structural hash of this subtree has been cached, which is only done when no element in the
+         * subtree holds a mutable value.
+         */
+        volatile boolean hashed;
+
+        /**
+         * Constructs a new leaf node for a new element.
+         *
+         * @param label The position label of the element.
+         * @param key   The key of the element.
+         * @param value The value of the element.
+         */
+        Node(long label, String key, Object value) {
+            this(label, new Object(), key, value, null, null);
+        }
+
+        /**
+         * Constructs a new node for the given element with the given subtrees.
+         *
+         * @param element   The element, whose label, identity, key and value are copied.
+         * @param left      The subtree of elements with lower labels.
+         * @param right     The subtree of elements with higher labels.
+         */
+        Node(Node element, Node left, Node right) {
+            this(element.label, element.identity, element.key, element.value, left, right);
+        }
+
+        /**
+         * Constructs a new node.
+         *
+         * @param label     The position label of the element.
+         * @param identity  The identity of the element, which is retained when its label or value changes.
+         * @param key       The key of the element.
+         * @param value     The value of the element.
+         * @param left      The subtree of elements with lower labels.
+         * @param right     The subtree of elements with higher labels.
+         */
+        Node(long label, Object identity, String key, Object value, Node left, Node right) {
+            this.label = label;
+            this.identity = identity;
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+            this.power = power(left) * power(right) * IDataHashHelper.MULTIPLIER;
+        }
+    }
+
+    /**
+     * An immutable version of a document.
+     */
+    private static final class Version {
+        /**
+         * The root of the tree of elements.
+         */
+        final Node root;
+
+        /**
+         * The sorted position labels of each key.
+         */
+        final PersistentHashMap<String, long[]> index;
+
+        /**
+         * Whether any element value may contain a mutable PersistentIData object.
+         */
+        final boolean live;
+
+        /**
+         * Incremented whenever position labels are reassigned.
+         */
+        final long epoch;
+
+        /**
+         * Constructs a new version.
+         *
+         * @param root  The root of the tree of elements.
+         * @param index The sorted position labels of each key.
+         * @param live  Whether any element value may contain a mutable PersistentIData object.
+         * @param epoch The label assignment epoch.
+         */
+        Version(Node root, PersistentHashMap<String, long[]> index, boolean live, long epoch) {
+            this.root = root;
+            this.index = index;
+            this.live = live;
+            this.epoch = epoch;
+        }
+
+        /**
+         * Returns a new version with the given element inserted.
+         *
+         * @param element   The element to be inserted.
+         * @return          The new version.
+         */
+        Version insert(Node element) {
+            return new Version(PersistentIData.insert(root, element), index.put(element.key, PersistentIData.insert(index.get(element.key), element.label)), live || isLive(element.value), epoch);
+        }
+
+        /**
+         * Returns a new version without the given element.
+         *
+         * @param node  The element to be removed.
+         * @return      The new version.
+         */
+        Version remove(Node node) {
+            long[] labels = PersistentIData.remove(index.get(node.key), node.label);
+            return new Version(PersistentIData.remove(root, node.label), labels == null ? index.remove(node.key) : index.put(node.key, labels), live, epoch);
+        }
+
+        /**
+         * Returns a new version with the value of the given element replaced.
+         *
+         * @param node  The element to be updated.
+         * @param value The new value.
+         * @return      The new version.
+         */
+        Version setValue(Node node, Object value) {
+            return new Version(PersistentIData.insert(root, new Node(node.label, node.identity, node.key, value, null, null)), index, live || isLive(value), epoch);
+        }
+
+        /**
+         * Returns a new version with the same elements in the same order, but with evenly spaced position labels.
+         *
+         * @return The new version.
+         */
+        Version relabel() {
+            Node[] nodes = nodes(root);
+            PersistentHashMap<String, long[]> labels = PersistentHashMap.empty();
+
+            for (int i = 0; i < nodes.length; i++) {
+                Node node = nodes[i];
+                long label = i * GAP;
+                nodes[i] = new Node(label, node.identity, node.key, node.value, null, null);
+                labels = labels.put(node.key, PersistentIData.insert(labels.get(node.key), label));
+            }
+
+            return new Version(build(nodes, 0, nodes.length), labels, live, epoch + 1);
+        }
+    }
+
+    /**
+     * IDataCursor and IDataIndexCursor implementation for a PersistentIData object. The cursor's position is held as a
+     * position label, so that it remains stable when other elements are inserted or removed.
+     */
+    protected class PersistentIDataCursor implements IDataIndexCursor {
+        /**
+         * The position label of the cursor, which may not be the label of an existing element if the element at the
+         * cursor's position was deleted.
+         */
+        protected long position;
+
+        /**
+         * The version of the document against which the position label was last resolved.
+         */
+        private Version seen;
+
+        /**
+         * Constructs a new cursor.
+         *
+         * @param position  The initial position label of the cursor.
+         * @param seen      The version of the document against which the position label was resolved.
+         */
+        protected PersistentIDataCursor(long position, Version seen) {
+            this.position = position;
+            this.seen = seen;
+        }
+
+        /**
+         * Returns the current version of the document, translating this cursor's position label if the labels have
+         * been reassigned since it was last resolved.
+         *
+         * @return The current version of the document.
+         */
+        private Version current() {
+            Version current = version.get();
+            if (current.epoch != seen.epoch) position = translate(seen, current, position);
+            seen = current;
+            return current;
+        }
+
+        /**
+         * Publishes the given new version if the document has not been modified since the given expected version.
+         *
+         * @param expected  The version the new version was derived from.
+         * @param next      The new version.
+         * @return          True if the new version was published.
+         */
+        private boolean commit(Version expected, Version next) {
+            if (version.compareAndSet(expected, next)) {
+                seen = next;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns the equivalent position label in the given new version for the given position label in the given old
+         * version, where the labels were reassigned between the two versions. The element at the position, or the
+         * element preceding the position if the cursor is between elements, is located in the new version by its
+         * identity; if it no longer exists, the position is translated by its rank instead.
+         *
+         * @param from      The old version.
+         * @param to        The new version.
+         * @param position  The position label in the old version.
+         * @return          The equivalent position label in the new version.
+         */
+        private long translate(Version from, Version to, long position) {
+            if (position == HOME) return HOME;
+
+            Node element = find(from.root, position);
+            boolean between = element == null;
+            if (between) element = floor(from.root, position);
+
+            if (element == null) {
+                // position is before the first element
+                Node first = PersistentIData.first(to.root);
+                return first == null ? HOME : first.label - 1;
+            }
+
+            Node match = identify(to.root, element.identity);
+            if (match == null) {
+                int rank = rank(from.root, element.label);
+                match = nth(to.root, Math.min(rank, size(to.root) - 1));
+                if (match == null) return HOME;
+            }
+
+            return between && find(to.root, match.label + 1) == null ? match.label + 1 : match.label;
+        }
+
+        /**
+         * Returns the element at this cursor's position.
+         *
+         * @param current   The current version of the document.
+         * @return          The element at this cursor's position, or null if there is none.
+         */
+        private Node node(Version current) {
+            return position == HOME ? null : find(current.root, position);
+        }
+
+        /**
+         * Not implemented, does nothing.
+         *
+         * @param mode Not used.
+         */
+        public void setErrorMode(int mode) {}
+
+        /**
+         * Not implemented, does nothing.
+         *
+         * @return Null.
+         */
+        public DataException getLastError() {
+            return null;
+        }
+
+        /**
+         * Not implemented, does nothing.
+         *
+         * @return False.
+         */
+        public boolean hasMoreErrors() {
+            return false;
+        }
+
+        /**
+         * Resets this cursor to be positioned before the first element.
+         */
+        public void home() {
+            position = HOME;
+        }
+
+        /**
+         * Returns the key at the cursor's current position.
+         *
+         * @return The key at the cursor's current position.
+         */
+        public String getKey() {
+            Node node = node(current());
+            return node == null ? null : node.key;
+        }
+
+        /**
+         * Sets the key at the cursor's current position.
+         *
+         * @param key The key to be set.
+         */
+        public void setKey(String key) {
+            while (true) {
+                Version current = current();
+                Node node = node(current);
+                if (node == null || (node.key == null ? key == null : node.key.equals(key))) return;
+                if (commit(current, current.remove(node).insert(new Node(node.label, node.identity, key, node.value, null, null)))) return;
+            }
+        }
+
+        /**
+         * Returns the value at the cursor's current position. Nested immutable documents are materialized as mutable
+         * PersistentIData objects on first access.
+         *
+         * @return The value at the cursor's current position.
+         */
+        public Object getValue() {
+            while (true) {
+                Version current = current();
+                Node node = node(current);
+                if (node == null) return null;
+
+                Object value = thaw(node.value);
+                if (value == null) return node.value;
+                if (commit(current, current.setValue(node, value))) return value;
+            }
+        }
+
+        /**
+         * Sets the value at the cursor's current position.
+         *
+         * @param value The value to be set.
+         */
+        public void setValue(Object value) {
+            while (true) {
+                Version current = current();
+                Node node = node(current);
+                if (node == null || commit(current, current.setValue(node, value))) return;
+            }
+        }
+
+        /**
+         * Deletes the element at the cursor's current position. The cursor remains positioned between the preceding
+         * and following elements, so that a subsequent call to next() returns the element that followed the deleted
+         * element.
+         *
+         * @return True if the element was deleted.
+         */
+        public boolean delete() {
+            while (true) {
+                Version current = current();
+                Node node = node(current);
+                if (node == null) return false;
+                if (commit(current, current.remove(node))) return true;
+            }
+        }
+
+        /**
+         * Inserts the key value pair before the cursor's current position, and repositions the cursor on the newly
+         * inserted element.
+         *
+         * @param key   The key to be inserted.
+         * @param value The value to be inserted.
+         */
+        public void insertBefore(String key, Object value) {
+            insert(key, value, false);
+        }
+
+        /**
+         * Inserts the key value pair after the cursor's current position, and repositions the cursor on the newly
+         * inserted element.
+         *
+         * @param key   The key to be inserted.
+         * @param value The value to be inserted.
+         */
+        public void insertAfter(String key, Object value) {
+            insert(key, value, true);
+        }
+
+        /**
+         * Inserts the key value pair adjacent to the cursor's current position, and repositions the cursor on the
+         * newly inserted element.
+         *
+         * @param key   The key to be inserted.
+         * @param value The value to be inserted.
+         * @param after Whether to insert after rather than before the cursor's current position.
+         */
+        private void insert(String key, Object value, boolean after) {
+            while (true) {
+                Version expected = current(), current = expected;
+                long position = this.position;
+                long label = label(current, position, after);
+
+                if (label == HOME) {
+                    // there is no room between the adjacent labels, so reassign all labels
+                    current = current.relabel();
+                    position = translate(expected, current, position);
+                    label = label(current, position, after);
+                }
+
+                if (commit(expected, current.insert(new Node(label, key, value)))) {
+                    this.position = label;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns a new position label adjacent to the given position.
+         *
+         * @param current   The current version of the document.
+         * @param position  The position label adjacent to which a new label is required.
+         * @param after     Whether the new label should follow rather than precede the given position.
+         * @return          The new position label, or HOME if there is no room for a new label.
+         */
+        private long label(Version current, long position, boolean after) {
+            long lower, upper;
+
+            if (position == HOME) {
+                Node first = PersistentIData.first(current.root);
+                lower = HOME;
+                upper = first == null ? TAIL : first.label;
+            } else if (after || find(current.root, position) == null) {
+                Node next = position == TAIL ? null : ceiling(current.root, position + 1);
+                lower = position;
+                upper = next == null ? TAIL : next.label;
+            } else {
+                Node previous = floor(current.root, position - 1);
+                lower = previous == null ? HOME : previous.label;
+                upper = position;
+            }
+
+            if (lower == HOME && upper == TAIL) return 0;
+            if (lower == HOME && upper > HOME + GAP) return upper - GAP;
+            if (upper == TAIL && lower < TAIL - GAP) return lower + GAP;
+
+            long difference = upper - lower;
+            if (difference >= 0 && difference <= 1) return HOME;
+
+            long step = difference < 0 ? STEP : Math.min(difference >>> 1, STEP);
+            return after ? lower + step : upper - step;
+        }
+
+        /**
+         * Inserts the key with a new IData document before the cursor's current position.
+         *
+         * @param key   The key to be inserted.
+         * @return      The new IData document inserted.
+         */
+        public IData insertDataBefore(String key) {
+            IData document = new PersistentIData();
+            insertBefore(key, document);
+            return document;
+        }
+
+        /**
+         * Inserts the key with a new IData document after the cursor's current position.
+         *
+         * @param key   The key to be inserted.
+         * @return      The new IData document inserted.
+         */
+        public IData insertDataAfter(String key) {
+            IData document = new PersistentIData();
+            insertAfter(key, document);
+            return document;
+        }
+
+        /**
+         * Repositions this cursor on the next element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean next() {
+            Version current = current();
+            return reposition(position == HOME ? PersistentIData.first(current.root) : ceiling(current.root, position + 1));
+        }
+
+        /**
+         * Repositions this cursor on the next occurrence of the given key.
+         *
+         * @param key   The key to reposition the cursor to.
+         * @return      True if the key existed and the cursor was repositioned.
+         */
+        public boolean next(String key) {
+            long[] labels = current().index.get(key);
+            if (labels == null) return false;
+
+            int i = Arrays.binarySearch(labels, position);
+            i = i < 0 ? -(i + 1) : i + 1;
+            return i < labels.length && reposition(labels[i]);
+        }
+
+        /**
+         * Repositions this cursor on the previous element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean previous() {
+            Version current = current();
+            return position != HOME && reposition(floor(current.root, position - 1));
+        }
+
+        /**
+         * Repositions this cursor on the previous occurrence of the given key.
+         *
+         * @param key   The key to reposition the cursor to.
+         * @return      True if the key existed and the cursor was repositioned.
+         */
+        public boolean previous(String key) {
+            long[] labels = current().index.get(key);
+            if (labels == null || position == HOME) return false;
+
+            int i = Arrays.binarySearch(labels, position);
+            i = (i < 0 ? -(i + 1) : i) - 1;
+            return i >= 0 && reposition(labels[i]);
+        }
+
+        /**
+         * Repositions this cursor on the first element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean first() {
+            return reposition(PersistentIData.first(current().root));
+        }
+
+        /**
+         * Repositions this cursor on the first occurrence of the given key.
+         *
+         * @param key   The key to reposition the cursor to.
+         * @return      True if the key existed and the cursor was repositioned.
+         */
+        public boolean first(String key) {
+            long[] labels = current().index.get(key);
+            return labels != null && reposition(labels[0]);
+        }
+
+        /**
+         * Repositions this cursor on the last element.
+         *
+         * @return True if the cursor was repositioned.
+         */
+        public boolean last() {
+            return reposition(PersistentIData.last(current().root));
+        }
+
+        /**
+         * Repositions this cursor on the last occurrence of the given key.
+         *
+         * @param key   The key to reposition the cursor to.
+         * @return      True if the key existed and the cursor was repositioned.
+         */
+        public boolean last(String key) {
+            long[] labels = current().index.get(key);
+            return labels != null && reposition(labels[labels.length - 1]);
+        }
+
+        /**
+         * Repositions this cursor on the element at the given index.
+         *
+         * @param index The zero-based index of the element to reposition the cursor to.
+         * @return      True if the index existed and the cursor was repositioned.
+         */
+        public boolean seek(int index) {
+            return reposition(nth(current().root, index));
+        }
+
+        /**
+         * Returns the number of elements in the document.
+         *
+         * @return The number of elements in the document.
+         */
+        public int count() {
+            return size(current().root);
+        }
+
+        /**
+         * Returns the zero-based index of the element at the cursor's current position, or -1 if the cursor is not
+         * positioned on an element.
+         *
+         * @return The index of the element at the cursor's current position.
+         */
+        public int getIndex() {
+            Version current = current();
+            return node(current) == null ? -1 : rank(current.root, position);
+        }
+
+        /**
+         * Repositions the cursor on the given element, if it exists.
+         *
+         * @param node  The element to reposition the cursor to, or null if there is no such element.
+         * @return      True if the cursor was repositioned.
+         */
+        private boolean reposition(Node node) {
+            if (node == null) return false;
+            position = node.label;
+            return true;
+        }
+
+        /**
+         * Repositions the cursor on the given position label.
+         *
+         * @param label The position label to reposition the cursor to.
+         * @return      True.
+         */
+        private boolean reposition(long label) {
+            position = label;
+            return true;
+        }
+
+        /**
+         * Returns true if this cursor has more data to be iterated over.
+         *
+         * @return True if this cursor has more data to be iterated over.
+         */
+        public boolean hasMoreData() {
+            Version current = current();
+            return (position == HOME ? PersistentIData.first(current.root) : ceiling(current.root, position + 1)) != null;
+        }
+
+        /**
+         * Destroys this cursor.
+         */
+        public void destroy() {
+            position = HOME;
+        }
+
+        /**
+         * Returns a clone of this cursor.
+         *
+         * @return A clone of this cursor.
+         */
+        public IDataIndexCursor getCursorClone() {
+            return new PersistentIDataCursor(position, seen);
+        }
+    }
+}
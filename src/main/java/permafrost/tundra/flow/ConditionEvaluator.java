@@ -29,13 +29,17 @@ import com.wm.data.IDataFactory;
 import com.wm.lang.flow.ExpressionEvaluator;
 import com.wm.lang.flow.MalformedExpressionException;
 import org.w3c.dom.Node;
-import permafrost.tundra.data.IDataHelper;
+import permafrost.tundra.collection.BoundedConcurrentCache;
+import permafrost.tundra.data.IDataPath;
 import permafrost.tundra.xml.dom.NodeHelper;
 import permafrost.tundra.xml.dom.Nodes;
 import permafrost.tundra.xml.xpath.XPathHelper;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.xml.namespace.NamespaceContext;
@@ -44,6 +48,15 @@ import javax.xml.xpath.XPathExpressionException;
 
 /**
  * Performs webMethods Integration Server flow language conditional statement evaluation against a specified scope.
+ *
+ * Conditions are compiled once on construction. Only a conservative subset of the flow language, whose results are
+ * unambiguous, is compiled into an immutable expression tree with pre-parsed variable paths and XPath expressions,
+ * which is evaluated without locking or re-parsing: equality and inequality comparisons of a variable with a quoted
+ * string, a number or $null, combined with and, or, not and parentheses. Any other condition, such as one using
+ * relational operators, unquoted words, comparisons of two variables, or and and or mixed without parentheses, is
+ * delegated to the webMethods ExpressionEvaluator, as is any comparison the tree cannot decide exactly, such as a
+ * comparison of a non-string value, an inequality with a variable which does not exist, or numbers which are equal
+ * but written differently.
  */
 public class ConditionEvaluator {
     /**
@@ -51,15 +64,31 @@ public class ConditionEvaluator {
      */
     public static final Pattern CONDITION_NODE_XPATH_REGULAR_EXPRESSION_PATTERN = Pattern.compile("(?i)%([^%\\/]+)(\\/[^%]+)%");
 
+    /**
+     * The maximum number of compiled conditions cached by the static evaluate method.
+     */
+    public static final int CACHE_CAPACITY = 1024;
+
+    /**
+     * Cache of compiled conditions used by the static evaluate method.
+     */
+    private static final BoundedConcurrentCache<String, ConditionEvaluator> CACHE = new BoundedConcurrentCache<String, ConditionEvaluator>(CACHE_CAPACITY);
+
     /**
      * The conditional statement to be evaluated by this object.
      */
     protected String condition;
 
     /**
-     * Compiled node XPath expression.
+     * The compiled expression tree, or null if the condition could not be compiled.
      */
-    protected Map<Integer, XPathExpression> expressions;
+    protected Expression expression;
+
+    /**
+     * The condition split into literal text and XPath slots, used when delegating to the ExpressionEvaluator, or null
+     * if the condition contains no XPath slots.
+     */
+    protected Object[] template;
 
     /**
      * Constructs a new flow condition.
@@ -81,19 +110,23 @@ public class ConditionEvaluator {
 
         if (condition != null) {
             Matcher matcher = CONDITION_NODE_XPATH_REGULAR_EXPRESSION_PATTERN.matcher(condition);
-            Map<Integer, XPathExpression> expressions = new TreeMap<Integer, XPathExpression>();
-            int i = 0;
+            List<Object> segments = new ArrayList<Object>();
+            int start = 0;
             while (matcher.find()) {
-                try {
-                    expressions.put(i, XPathHelper.compile(matcher.group(2), namespaceContext));
-                } catch(XPathExpressionException ex) {
-                    // do nothing, assume a normal IData fully-qualified key was specified rather than an XPath expression
-                } finally {
-                    i++;
+                XPathSlot slot = XPathSlot.of(matcher.group(0), matcher.group(1), matcher.group(2), namespaceContext);
+                if (slot != null) {
+                    segments.add(condition.substring(start, matcher.start()));
+                    segments.add(slot);
+                    start = matcher.end();
                 }
             }
 
-            if (expressions.size() > 0) this.expressions = Collections.unmodifiableMap(expressions);
+            if (segments.size() > 0) {
+                segments.add(condition.substring(start));
+                this.template = segments.toArray(new Object[segments.size()]);
+            }
+
+            this.expression = new Parser(condition, namespaceContext).parse();
         }
     }
 
@@ -107,70 +140,869 @@ public class ConditionEvaluator {
     }
 
     /**
-     * Evaluates the conditional statement against the given scope.
+     * Returns an equality discriminator for this condition: a variable which must be equal to one of a set of literal
+     * values for this condition to be true, which allows conditions to be indexed by that variable's value.
+     *
+     * @return The discriminator for this condition, or null if the condition has no such discriminator.
+     */
+    public Discriminator getDiscriminator() {
+        return expression == null ? null : expression.discriminate();
+    }
+
+    /**
+     * Evaluates the conditional statement against the given scope. This method is thread-safe.
      *
      * @param scope The scope against which the conditional statement is evaluated.
      * @return      True if the conditional statement evaluates to true, otherwise false.
      */
-    public synchronized boolean evaluate(IData scope) {
-        String condition = this.condition;
-        boolean result = true;
-
-        if (condition != null) {
-            if (scope == null) {
-                scope = IDataFactory.create();
-            } else if (expressions != null) {
-                Matcher matcher = CONDITION_NODE_XPATH_REGULAR_EXPRESSION_PATTERN.matcher(condition);
-                StringBuffer buffer = new StringBuffer();
-                int i = 0;
-
-                while (matcher.find()) {
-                    String key = matcher.group(1);
-                    XPathExpression expression = expressions.get(i);
-
-                    if (expression != null) {
-                        Node node = IDataHelper.get(scope, key, Node.class);
-                        if (node != null) {
-                            try {
-                                Nodes nodes = XPathHelper.get(node, expression);
-                                if (nodes != null && nodes.size() > 0) {
-                                    matcher.appendReplacement(buffer, Matcher.quoteReplacement("\"" + NodeHelper.getValue(nodes.get(0)) + "\""));
-                                } else {
-                                    matcher.appendReplacement(buffer, Matcher.quoteReplacement("$null"));
-                                }
-                            } catch (XPathExpressionException ex) {
-                                throw new RuntimeException(ex);
-                            }
-                        }
-                    }
-                    i++;
-                }
-
-                matcher.appendTail(buffer);
-                condition = buffer.toString();
-            }
+    public boolean evaluate(IData scope) {
+        if (condition == null) return true;
+        if (scope == null) scope = IDataFactory.create();
 
+        if (expression != null) {
             try {
-                result = ExpressionEvaluator.evalToBoolean(condition, scope);
-            } catch (MalformedExpressionException ex) {
-                throw new IllegalArgumentException(ex);
+                return expression.evaluate(scope);
+            } catch (UndecidableException ex) {
+                // fall through to the ExpressionEvaluator, which decides conditions the expression tree cannot
             }
         }
 
-        return result;
+        try {
+            return ExpressionEvaluator.evalToBoolean(substitute(scope), scope);
+        } catch (MalformedExpressionException ex) {
+            throw new IllegalArgumentException(ex);
+        }
     }
 
     /**
-     * Evaluates the conditional statement against the given scope. This is a convenience method which constructs a new
-     * Condition object and evaluates it.
+     * Returns the condition with each XPath slot replaced by its value resolved against the given scope.
+     *
+     * @param scope The scope against which the XPath slots are resolved.
+     * @return      The condition with its XPath slots substituted.
+     */
+    protected String substitute(IData scope) {
+        if (template == null) return condition;
+
+        StringBuilder builder = new StringBuilder(condition.length());
+        for (Object segment : template) {
+            if (segment instanceof XPathSlot) {
+                XPathSlot slot = (XPathSlot)segment;
+                Node node = slot.getNode(scope);
+                if (node == null) {
+                    builder.append(slot.text);
+                } else {
+                    String value = slot.getValue(node);
+                    if (value == null) {
+                        builder.append("$null");
+                    } else {
+                        builder.append('"').append(value).append('"');
+                    }
+                }
+            } else {
+                builder.append((String)segment);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Evaluates the conditional statement against the given scope. This is a convenience method which evaluates a
+     * cached compiled Condition object.
      *
      * @param condition The conditional statement to be evaluated.
      * @param scope     The scope against which the conditional statement is evaluated.
      * @return          True if the conditional statement evaluates to true, otherwise false.
      */
     public static boolean evaluate(String condition, IData scope) {
-        ConditionEvaluator evaluator = new ConditionEvaluator(condition);
+        if (condition == null) return true;
+
+        ConditionEvaluator evaluator = CACHE.get(condition);
+        if (evaluator == null) evaluator = CACHE.putIfAbsent(condition, new ConditionEvaluator(condition));
+
         return evaluator.evaluate(scope);
     }
-}
 
+    /**
+     * Returns the hit, miss, and eviction statistics for the compiled condition cache.
+     *
+     * @return The compiled condition cache statistics.
+     */
+    public static IData getCacheStatistics() {
+        return CACHE.getIData();
+    }
+
+    /**
+     * Removes all compiled conditions from the cache, which should be called when the package which loaded this
+     * class is reloaded or unloaded.
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    /**
+     * Thrown when a compiled expression cannot decide a comparison exactly as the ExpressionEvaluator would.
+     */
+    static final class UndecidableException extends RuntimeException {
+        /**
+         * The shared instance, which carries no stack trace as it is used only for control flow.
+         */
+        private static final UndecidableException INSTANCE = new UndecidableException();
+
+        /**
+         * Disallow instantiation of this class.
+         */
+        private UndecidableException() {}
+
+        /**
+         * Does not fill in the stack trace, as this exception is used only for control flow.
+         *
+         * @return This exception.
+         */
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * A variable which must be equal to one of a set of literal values for a condition to be true. Values are compared
+     * as strings, so literals which could be compared numerically are never used as discriminators.
+     */
+    public static final class Discriminator {
+        /**
+         * The key identifying the variable.
+         */
+        private final String key;
+        /**
+         * The values the variable must be equal to one of.
+         */
+        private final Set<String> values;
+
+        /**
+         * Creates a new Discriminator.
+         *
+         * @param key       The key identifying the variable.
+         * @param values    The values the variable must be equal to one of.
+         */
+        private Discriminator(String key, Set<String> values) {
+            this.key = key;
+            this.values = Collections.unmodifiableSet(values);
+        }
+
+        /**
+         * Returns the fully-qualified key identifying the discriminating variable.
+         *
+         * @return The key identifying the discriminating variable.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * Returns the values the discriminating variable must be equal to one of.
+         *
+         * @return The values the discriminating variable must be equal to one of.
+         */
+        public Set<String> getValues() {
+            return values;
+        }
+
+        /**
+         * Returns the discriminator which must hold for either of the given discriminators to hold.
+         *
+         * @param left  The left discriminator.
+         * @param right The right discriminator.
+         * @return      The union of the given discriminators, or null if they discriminate different variables.
+         */
+        private static Discriminator union(Discriminator left, Discriminator right) {
+            if (left == null || right == null || !left.key.equals(right.key)) return null;
+            Set<String> values = new LinkedHashSet<String>(left.values);
+            values.addAll(right.values);
+            return new Discriminator(left.key, values);
+        }
+    }
+
+    /**
+     * A compiled boolean expression.
+     */
+    protected interface Expression {
+        /**
+         * Evaluates this expression against the given scope.
+         *
+         * @param scope The scope against which this expression is evaluated.
+         * @return      The result of the evaluation.
+         */
+        boolean evaluate(IData scope);
+
+        /**
+         * Returns a discriminator which must hold for this expression to be true.
+         *
+         * @return A discriminator for this expression, or null if there is none.
+         */
+        Discriminator discriminate();
+    }
+
+    /**
+     * A compiled operand of a comparison.
+     */
+    protected interface Operand {
+        /**
+         * Returns the value of this operand resolved against the given scope.
+         *
+         * @param scope The scope against which this operand is resolved.
+         * @return      The value of this operand.
+         */
+        Object resolve(IData scope);
+    }
+
+    /**
+     * An expression which is true if either of its operands are true.
+     */
+    private static final class Or implements Expression {
+        /**
+         * The left and right operands.
+         */
+        private final Expression left, right;
+
+        /**
+         * Creates a new Or expression.
+         *
+         * @param left  The left operand.
+         * @param right The right operand.
+         */
+        private Or(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Evaluates this expression against the given scope.
+         *
+         * @param scope The scope against which this expression is evaluated.
+         * @return      True if either operand is true.
+         */
+        @Override
+        public boolean evaluate(IData scope) {
+            return left.evaluate(scope) || right.evaluate(scope);
+        }
+
+        /**
+         * Returns the union of the operands' discriminators, if they discriminate the same variable.
+         *
+         * @return A discriminator for this expression, or null if there is none.
+         */
+        @Override
+        public Discriminator discriminate() {
+            return Discriminator.union(left.discriminate(), right.discriminate());
+        }
+    }
+
+    /**
+     * An expression which is true if both of its operands are true.
+     */
+    private static final class And implements Expression {
+        /**
+         * The left and right operands.
+         */
+        private final Expression left, right;
+
+        /**
+         * Creates a new And expression.
+         *
+         * @param left  The left operand.
+         * @param right The right operand.
+         */
+        private And(Expression left, Expression right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Evaluates this expression against the given scope.
+         *
+         * @param scope The scope against which this expression is evaluated.
+         * @return      True if both operands are true.
+         */
+        @Override
+        public boolean evaluate(IData scope) {
+            return left.evaluate(scope) && right.evaluate(scope);
+        }
+
+        /**
+         * Returns the discriminator of either operand, as both must hold for this expression to be true.
+         *
+         * @return A discriminator for this expression, or null if there is none.
+         */
+        @Override
+        public Discriminator discriminate() {
+            Discriminator discriminator = left.discriminate();
+            return discriminator == null ? right.discriminate() : discriminator;
+        }
+    }
+
+    /**
+     * An expression which negates its operand.
+     */
+    private static final class Not implements Expression {
+        /**
+         * The negated operand.
+         */
+        private final Expression operand;
+
+        /**
+         * Creates a new Not expression.
+         *
+         * @param operand The operand to be negated.
+         */
+        private Not(Expression operand) {
+            this.operand = operand;
+        }
+
+        /**
+         * Evaluates this expression against the given scope.
+         *
+         * @param scope The scope against which this expression is evaluated.
+         * @return      True if the operand is false.
+         */
+        @Override
+        public boolean evaluate(IData scope) {
+            return !operand.evaluate(scope);
+        }
+
+        /**
+         * Negations have no discriminator.
+         *
+         * @return Null.
+         */
+        @Override
+        public Discriminator discriminate() {
+            return null;
+        }
+    }
+
+    /**
+     * The supported comparison operators.
+     */
+    private enum Operator {
+        EQUAL, NOT_EQUAL
+    }
+
+    /**
+     * An expression which compares two operands.
+     */
+    private static final class Comparison implements Expression {
+        /**
+         * The left and right operands.
+         */
+        private final Operand left, right;
+        /**
+         * The comparison operator.
+         */
+        private final Operator operator;
+
+        /**
+         * Creates a new Comparison expression.
+         *
+         * @param left      The left operand.
+         * @param operator  The comparison operator.
+         * @param right     The right operand.
+         */
+        private Comparison(Operand left, Operator operator, Operand right) {
+            this.left = left;
+            this.operator = operator;
+            this.right = right;
+        }
+
+        /**
+         * Evaluates this comparison against the given scope.
+         *
+         * @param scope The scope against which this comparison is evaluated.
+         * @return      The result of the comparison.
+         */
+        @Override
+        public boolean evaluate(IData scope) {
+            Literal literal = (Literal)(left instanceof Literal ? left : right);
+            Object value = (literal == left ? right : left).resolve(scope);
+
+            boolean equal;
+            if (literal == Literal.NULL) {
+                equal = value == null;
+            } else if (value == null) {
+                // a variable which does not exist is never equal to a literal, but whether it is unequal is not clear
+                if (operator == Operator.NOT_EQUAL) throw UndecidableException.INSTANCE;
+                equal = false;
+            } else if (value instanceof String) {
+                equal = equal((String)value, literal);
+            } else {
+                throw UndecidableException.INSTANCE;
+            }
+
+            return operator == Operator.EQUAL ? equal : !equal;
+        }
+
+        /**
+         * Returns true if the given string value is equal to the given literal. Where both are numbers, they are only
+         * decided as equal if they are written identically, and as unequal if they are numerically unequal, as both
+         * string and numeric comparison agree in those cases.
+         *
+         * @param value     The string value.
+         * @param literal   The literal.
+         * @return          True if the value is equal to the literal.
+         */
+        private static boolean equal(String value, Literal literal) {
+            BigDecimal number = literal.number == null ? null : toNumber(value);
+
+            if (number != null) {
+                if (number.compareTo(literal.number) != 0) return false;
+                if (value.equals(literal.value)) return true;
+                throw UndecidableException.INSTANCE;
+            } else if (literal.number != null && !literal.quoted) {
+                // an unquoted number compared with a non-numeric string
+                throw UndecidableException.INSTANCE;
+            }
+
+            return value.equals(literal.value);
+        }
+
+        /**
+         * Returns a discriminator if this is an equality comparison of a variable and a non-numeric literal.
+         *
+         * @return A discriminator for this comparison, or null if there is none.
+         */
+        @Override
+        public Discriminator discriminate() {
+            if (operator != Operator.EQUAL) return null;
+
+            Operand variable = left instanceof Variable ? left : right;
+            Operand literal = variable == left ? right : left;
+            if (!(variable instanceof Variable) || !(literal instanceof Literal) || literal == Literal.NULL) return null;
+
+            Literal discriminant = (Literal)literal;
+            if (discriminant.number != null) return null;
+
+            return new Discriminator(((Variable)variable).path.getKey(), Collections.singleton(discriminant.value));
+        }
+    }
+
+    /**
+     * Converts the given string to a BigDecimal.
+     *
+     * @param value The string to be converted.
+     * @return      The string as a BigDecimal, or null if it is not numeric.
+     */
+    private static BigDecimal toNumber(String value) {
+        if (value == null) return null;
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * A literal operand.
+     */
+    private static final class Literal implements Operand {
+        /**
+         * The $null literal.
+         */
+        private static final Literal NULL = new Literal(null, false);
+        /**
+         * The literal value.
+         */
+        private final String value;
+        /**
+         * Whether the literal was quoted.
+         */
+        private final boolean quoted;
+        /**
+         * The literal value as a number, or null if it is not numeric.
+         */
+        private final BigDecimal number;
+
+        /**
+         * Creates a new Literal operand.
+         *
+         * @param value     The literal value.
+         * @param quoted    Whether the literal was quoted.
+         */
+        private Literal(String value, boolean quoted) {
+            this.value = value;
+            this.quoted = quoted;
+            this.number = toNumber(value);
+        }
+
+        /**
+         * Returns the literal value.
+         *
+         * @param scope Not used.
+         * @return      The literal value.
+         */
+        @Override
+        public Object resolve(IData scope) {
+            return value;
+        }
+    }
+
+    /**
+     * A variable operand, identified by a pre-parsed key path.
+     */
+    private static final class Variable implements Operand {
+        /**
+         * The pre-parsed key path.
+         */
+        private final IDataPath path;
+
+        /**
+         * Creates a new Variable operand.
+         *
+         * @param path The pre-parsed key path.
+         */
+        private Variable(IDataPath path) {
+            this.path = path;
+        }
+
+        /**
+         * Returns the value associated with the key path in the given scope.
+         *
+         * @param scope The scope against which the key path is resolved.
+         * @return      The value associated with the key path.
+         */
+        @Override
+        public Object resolve(IData scope) {
+            return path.get(scope);
+        }
+    }
+
+    /**
+     * A variable operand whose value is selected by an XPath expression from an XML node in the scope.
+     */
+    private static final class XPathSlot implements Operand {
+        /**
+         * The original text of the slot, including the delimiting percent signs.
+         */
+        private final String text;
+        /**
+         * The pre-parsed key path of the node.
+         */
+        private final IDataPath node;
+        /**
+         * The pre-parsed key path of the whole slot, used when the key does not identify a node.
+         */
+        private final IDataPath path;
+        /**
+         * The compiled, thread-safe XPath expression.
+         */
+        private final XPathExpression expression;
+
+        /**
+         * Creates a new XPathSlot operand.
+         *
+         * @param text          The original text of the slot.
+         * @param node          The pre-parsed key path of the node.
+         * @param path          The pre-parsed key path of the whole slot.
+         * @param expression    The compiled XPath expression.
+         */
+        private XPathSlot(String text, IDataPath node, IDataPath path, XPathExpression expression) {
+            this.text = text;
+            this.node = node;
+            this.path = path;
+            this.expression = expression;
+        }
+
+        /**
+         * Returns a new XPathSlot, or null if the given XPath expression cannot be compiled.
+         *
+         * @param text              The original text of the slot.
+         * @param key               The key identifying the node.
+         * @param xpath             The XPath expression.
+         * @param namespaceContext  An optional namespace context used when resolving the XPath expression.
+         * @return                  A new XPathSlot, or null if the XPath expression cannot be compiled.
+         */
+        private static XPathSlot of(String text, String key, String xpath, NamespaceContext namespaceContext) {
+            try {
+                return new XPathSlot(text, IDataPath.of(key), IDataPath.of(key + xpath), XPathHelper.compile(xpath, namespaceContext));
+            } catch (XPathExpressionException ex) {
+                // assume a normal IData fully-qualified key was specified rather than an XPath expression
+                return null;
+            }
+        }
+
+        /**
+         * Returns the node identified by this slot's key in the given scope.
+         *
+         * @param scope The scope against which the key is resolved.
+         * @return      The node, or null if the key does not identify a node.
+         */
+        private Node getNode(IData scope) {
+            return node.get(scope, Node.class);
+        }
+
+        /**
+         * Returns the value of the first node selected by this slot's XPath expression from the given node.
+         *
+         * @param context   The node the XPath expression is evaluated against.
+         * @return          The value of the first selected node as a string, or null if no nodes were selected.
+         */
+        private String getValue(Node context) {
+            try {
+                Nodes nodes = XPathHelper.get(context, expression);
+                return nodes != null && nodes.size() > 0 ? String.valueOf(NodeHelper.getValue(nodes.get(0))) : null;
+            } catch (XPathExpressionException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        /**
+         * Returns the value selected by this slot from the given scope.
+         *
+         * @param scope The scope against which this slot is resolved.
+         * @return      The selected value.
+         */
+        @Override
+        public Object resolve(IData scope) {
+            Node context = getNode(scope);
+            return context == null ? path.get(scope) : getValue(context);
+        }
+    }
+
+    /**
+     * Compiles a condition into an expression tree, returning null for any condition using syntax it does not support.
+     */
+    private static final class Parser {
+        /**
+         * The condition being parsed.
+         */
+        private final String condition;
+        /**
+         * An optional namespace context used when compiling XPath expressions.
+         */
+        private final NamespaceContext namespaceContext;
+        /**
+         * The current position in the condition.
+         */
+        private int position;
+        /**
+         * Whether the most recently parsed conjunction combined more than one operand.
+         */
+        private boolean conjunction;
+
+        /**
+         * Creates a new Parser.
+         *
+         * @param condition         The condition to be parsed.
+         * @param namespaceContext  An optional namespace context used when compiling XPath expressions.
+         */
+        private Parser(String condition, NamespaceContext namespaceContext) {
+            this.condition = condition;
+            this.namespaceContext = namespaceContext;
+        }
+
+        /**
+         * Parses the condition.
+         *
+         * @return The compiled expression tree, or null if the condition uses unsupported syntax.
+         */
+        private Expression parse() {
+            try {
+                Expression expression = parseOr();
+                skipWhitespace();
+                return position == condition.length() ? expression : null;
+            } catch (IllegalStateException ex) {
+                return null;
+            }
+        }
+
+        /**
+         * Parses a disjunction.
+         *
+         * @return The compiled expression.
+         */
+        private Expression parseOr() {
+            Expression expression = parseAnd();
+            boolean mixed = conjunction;
+            int operands = 1;
+
+            while (acceptWord("or") || accept("||")) {
+                expression = new Or(expression, parseAnd());
+                mixed = mixed || conjunction;
+                operands++;
+            }
+
+            // the relative precedence of and and or is not relied upon, so mixing them requires parentheses
+            if (mixed && operands > 1) throw new IllegalStateException();
+            return expression;
+        }
+
+        /**
+         * Parses a conjunction.
+         *
+         * @return The compiled expression.
+         */
+        private Expression parseAnd() {
+            Expression expression = parseNot();
+            boolean conjunction = false;
+
+            while (acceptWord("and") || accept("&&")) {
+                expression = new And(expression, parseNot());
+                conjunction = true;
+            }
+
+            this.conjunction = conjunction;
+            return expression;
+        }
+
+        /**
+         * Parses a negation.
+         *
+         * @return The compiled expression.
+         */
+        private Expression parseNot() {
+            if (acceptWord("not") || (!peek("!=") && accept("!"))) return new Not(parseNot());
+            return parsePrimary();
+        }
+
+        /**
+         * Parses a parenthesized expression or a comparison.
+         *
+         * @return The compiled expression.
+         */
+        private Expression parsePrimary() {
+            if (accept("(")) {
+                Expression expression = parseOr();
+                if (!accept(")")) throw new IllegalStateException();
+                return expression;
+            }
+
+            Operand left = parseOperand();
+            Operator operator;
+            if (accept("==")) {
+                operator = Operator.EQUAL;
+            } else if (accept("!=")) {
+                operator = Operator.NOT_EQUAL;
+            } else {
+                // relational and other operators are delegated to the ExpressionEvaluator
+                throw new IllegalStateException();
+            }
+
+            Operand right = parseOperand();
+            // only comparisons of a variable with a literal are compiled
+            if ((left instanceof Literal) == (right instanceof Literal)) throw new IllegalStateException();
+            return new Comparison(left, operator, right);
+        }
+
+        /**
+         * Parses a variable, literal or $null operand.
+         *
+         * @return The compiled operand.
+         */
+        private Operand parseOperand() {
+            skipWhitespace();
+            if (position >= condition.length()) throw new IllegalStateException();
+
+            char character = condition.charAt(position);
+            if (character == '%') {
+                int end = condition.indexOf('%', position + 1);
+                if (end <= position + 1) throw new IllegalStateException();
+                String text = condition.substring(position, end + 1);
+                position = end + 1;
+                return parseVariable(text);
+            } else if (character == '"') {
+                int end = condition.indexOf('"', position + 1);
+                if (end < 0) throw new IllegalStateException();
+                String value = condition.substring(position + 1, end);
+                if (value.indexOf('\\') >= 0) throw new IllegalStateException();
+                position = end + 1;
+                return new Literal(value, true);
+            } else if (condition.startsWith("$null", position) && !isWordCharacter(position + 5)) {
+                position += 5;
+                return Literal.NULL;
+            } else {
+                int start = position;
+                while (isWordCharacter(position)) position++;
+                if (position == start) throw new IllegalStateException();
+                Literal literal = new Literal(condition.substring(start, position), false);
+                // unquoted words other than numbers are delegated to the ExpressionEvaluator
+                if (literal.number == null) throw new IllegalStateException();
+                return literal;
+            }
+        }
+
+        /**
+         * Compiles the given variable reference.
+         *
+         * @param text  The variable reference, including the delimiting percent signs.
+         * @return      The compiled operand.
+         */
+        private Operand parseVariable(String text) {
+            Matcher matcher = CONDITION_NODE_XPATH_REGULAR_EXPRESSION_PATTERN.matcher(text);
+            if (matcher.matches()) {
+                XPathSlot slot = XPathSlot.of(text, matcher.group(1), matcher.group(2), namespaceContext);
+                if (slot != null) return slot;
+            }
+
+            IDataPath path = IDataPath.of(text.substring(1, text.length() - 1));
+            if (path == null) throw new IllegalStateException();
+            return new Variable(path);
+        }
+
+        /**
+         * Returns true if the character at the given index can be part of an unquoted literal.
+         *
+         * @param index The index of the character.
+         * @return      True if the character can be part of an unquoted literal.
+         */
+        private boolean isWordCharacter(int index) {
+            if (index >= condition.length()) return false;
+            char character = condition.charAt(index);
+            return Character.isLetterOrDigit(character) || character == '.' || character == '_' || character == '-' || character == '+';
+        }
+
+        /**
+         * Skips any whitespace at the current position.
+         */
+        private void skipWhitespace() {
+            while (position < condition.length() && Character.isWhitespace(condition.charAt(position))) position++;
+        }
+
+        /**
+         * Returns true if the given symbol occurs at the current position, without consuming it.
+         *
+         * @param symbol    The symbol to check for.
+         * @return          True if the symbol occurs at the current position.
+         */
+        private boolean peek(String symbol) {
+            skipWhitespace();
+            return condition.startsWith(symbol, position);
+        }
+
+        /**
+         * Consumes the given symbol if it occurs at the current position.
+         *
+         * @param symbol    The symbol to be consumed.
+         * @return          True if the symbol was consumed.
+         */
+        private boolean accept(String symbol) {
+            if (peek(symbol)) {
+                position += symbol.length();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Consumes the given keyword, ignoring case, if it occurs as a whole word at the current position.
+         *
+         * @param word  The keyword to be consumed.
+         * @return      True if the keyword was consumed.
+         */
+        private boolean acceptWord(String word) {
+            skipWhitespace();
+            if (condition.regionMatches(true, position, word, 0, word.length()) && !isWordCharacter(position + word.length())) {
+                position += word.length();
+                return true;
+            }
+            return false;
+        }
+    }
+}
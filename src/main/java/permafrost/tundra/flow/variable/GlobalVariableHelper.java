@@ -34,13 +34,50 @@ import com.wm.util.security.WmSecureString;
 import permafrost.tundra.data.IDataMap;
 import permafrost.tundra.lang.ExceptionHelper;
 import permafrost.tundra.server.NodeHelper;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A collection of convenience methods for dealing with global variables.
+ *
+ * By default global variables are read from the server on every lookup. Setting a positive refresh interval instead
+ * reads them from an in-memory snapshot, which is reloaded when it is older than the refresh interval or has been
+ * invalidated, so that resolving a global variable usually costs a single map lookup. Secure values are only
+ * decrypted when first requested from a snapshot, so a value which cannot be decrypted only affects lookups of that
+ * variable. Decrypted values are held in the snapshot as WmSecureString rather than plain strings, and are converted
+ * to a string on each lookup, trading that conversion cost for not retaining plain text copies of passwords.
  */
 public class GlobalVariableHelper {
     private static final boolean isSupported = NodeHelper.exists("wm.server.globalvariables:getGlobalVariableValue");
 
+    /**
+     * The default refresh interval, which disables the snapshot so that every lookup reads the server's current
+     * global variables.
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL = 0L;
+
+    /**
+     * The number of milliseconds after which the global variable snapshot is reloaded, or zero if disabled.
+     */
+    private static volatile long refreshInterval = DEFAULT_REFRESH_INTERVAL;
+
+    /**
+     * The source of global variables.
+     */
+    private static final Source SOURCE = new ServerSource();
+
+    /**
+     * The cached global variable snapshot.
+     */
+    private static final SnapshotCache CACHE = new SnapshotCache(SOURCE);
+
     /**
      * Disallow instantiation of this class.
      */
@@ -63,26 +100,16 @@ public class GlobalVariableHelper {
      * @throws ServiceException If a password decryption or global variable error occurs.
      */
     public static String get(String key) throws ServiceException {
-        String value = null;
+        if (!isSupported() || key == null) return null;
 
-        if (isSupported() && key != null) {
-            try {
-                GlobalVariablesManager globalVariablesManager = GlobalVariablesManager.getInstance();
-
-                if (globalVariablesManager.globalVariableExists(key)) {
-                    GlobalVariables.GlobalVariableValue variable = globalVariablesManager.getGlobalVariableValue(key);
+        long interval = refreshInterval;
+        if (interval > 0) return CACHE.get(interval).get(key);
 
-                    value = variable.getValue();
-
-                    if (variable.isSecure()) {
-                        PasswordManager passwordManager = OutboundPasswordStore.getStore();
-                        WmSecureString password = passwordManager.retrievePassword(value);
-                        value = password.toString();
-                    }
-                }
-            } catch (Exception ex) {
-                ExceptionHelper.raise(ex);
-            }
+        String value = null;
+        try {
+            value = SOURCE.get(key);
+        } catch (Exception ex) {
+            ExceptionHelper.raise(ex);
         }
         return value;
     }
@@ -97,25 +124,344 @@ public class GlobalVariableHelper {
         IDataMap output = new IDataMap();
 
         if (isSupported()) {
+            long interval = refreshInterval;
+            Snapshot snapshot = CACHE.get(interval > 0 ? interval : -1);
+            for (String key : snapshot.keys()) {
+                output.put(key, snapshot.get(key));
+            }
+        }
+
+        return output;
+    }
+
+    /**
+     * Returns the number of milliseconds after which the global variable snapshot is reloaded.
+     *
+     * @return The number of milliseconds after which the global variable snapshot is reloaded, or zero if global
+     *         variables are read from the server on every lookup.
+     */
+    public static long getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    /**
+     * Sets the number of milliseconds after which the global variable snapshot is reloaded. An interval less than or
+     * equal to zero disables the snapshot, so that global variables are read from the server on every lookup.
+     *
+     * @param interval The number of milliseconds after which the global variable snapshot is reloaded.
+     */
+    public static void setRefreshInterval(long interval) {
+        refreshInterval = interval;
+    }
+
+    /**
+     * Discards the global variable snapshot, so that global variables are reloaded on next use. This should be called
+     * after global variables are changed when a refresh interval is set.
+     */
+    public static void invalidate() {
+        CACHE.invalidate();
+    }
+
+    /**
+     * A source of global variables.
+     */
+    interface Source {
+        /**
+         * Returns all global variables, each as an IData document with key, value and isSecure elements.
+         *
+         * @return           All global variables.
+         * @throws Exception If an error occurs.
+         */
+        IData[] list() throws Exception;
+
+        /**
+         * Returns the current value of the global variable with the given key, decrypting it if it is secure.
+         *
+         * @param key        The key of the global variable.
+         * @return           The value of the global variable, or null if it does not exist.
+         * @throws Exception If a password decryption or global variable error occurs.
+         */
+        String get(String key) throws Exception;
+
+        /**
+         * Returns the decrypted value of the secure global variable with the given key.
+         *
+         * @param key        The key of the global variable.
+         * @return           The decrypted value of the global variable, or null if it does not exist or is not secure.
+         * @throws Exception If a password decryption or global variable error occurs.
+         */
+        WmSecureString decrypt(String key) throws Exception;
+    }
+
+    /**
+     * Reads global variables from the Integration Server.
+     */
+    private static final class ServerSource implements Source {
+        /**
+         * Returns all global variables defined on the server.
+         *
+         * @return All global variables defined on the server.
+         */
+        @Override
+        public IData[] list() {
+            return GlobalVariablesManager.getInstance().listGlobalVariables();
+        }
+
+        /**
+         * Returns the current value of the global variable with the given key, decrypting it if it is secure.
+         *
+         * @param key        The key of the global variable.
+         * @return           The value of the global variable, or null if it does not exist.
+         * @throws Exception If a password decryption or global variable error occurs.
+         */
+        @Override
+        public String get(String key) throws Exception {
+            String value = null;
+
             GlobalVariablesManager globalVariablesManager = GlobalVariablesManager.getInstance();
-            IData[] variables = globalVariablesManager.listGlobalVariables();
-            for (IDataMap variable : IDataMap.of(variables)) {
-                if (variable != null) {
-                    String key = (String)variable.get("key");
-                    String value = (String)variable.get("value");
-                    String isSecure = (String)variable.get("isSecure");
-
-                    if (key != null) {
-                        if (isSecure != null && isSecure.equals("true")) {
-                            value = get(key);
-                        }
+            if (globalVariablesManager.globalVariableExists(key)) {
+                GlobalVariables.GlobalVariableValue variable = globalVariablesManager.getGlobalVariableValue(key);
 
-                        output.put(key, value);
-                    }
+                value = variable.getValue();
+
+                if (variable.isSecure()) {
+                    PasswordManager passwordManager = OutboundPasswordStore.getStore();
+                    WmSecureString password = passwordManager.retrievePassword(value);
+                    value = password.toString();
                 }
             }
+
+            return value;
         }
 
-        return output;
+        /**
+         * Returns the decrypted value of the secure global variable with the given key.
+         *
+         * @param key        The key of the global variable.
+         * @return           The decrypted value of the global variable, or null if it does not exist or is not secure.
+         * @throws Exception If a password decryption or global variable error occurs.
+         */
+        @Override
+        public WmSecureString decrypt(String key) throws Exception {
+            WmSecureString password = null;
+
+            GlobalVariablesManager globalVariablesManager = GlobalVariablesManager.getInstance();
+            if (globalVariablesManager.globalVariableExists(key)) {
+                GlobalVariables.GlobalVariableValue variable = globalVariablesManager.getGlobalVariableValue(key);
+
+                if (variable.isSecure()) {
+                    PasswordManager passwordManager = OutboundPasswordStore.getStore();
+                    password = passwordManager.retrievePassword(variable.getValue());
+                }
+            }
+
+            return password;
+        }
+    }
+
+    /**
+     * Holds the current global variable snapshot, loading it on first use and reloading it when it expires or is
+     * invalidated.
+     */
+    static final class SnapshotCache {
+        /**
+         * The source snapshots are loaded from.
+         */
+        private final Source source;
+        /**
+         * The current snapshot, or null if it has not been loaded or was invalidated.
+         */
+        private volatile Snapshot snapshot;
+        /**
+         * Incremented on every invalidation, so that a snapshot loaded concurrently with an invalidation is not kept.
+         */
+        private final AtomicLong generation = new AtomicLong(0);
+        /**
+         * Whether a thread is currently reloading an expired snapshot.
+         */
+        private final AtomicBoolean refreshing = new AtomicBoolean(false);
+        /**
+         * Serializes loading a snapshot when there is none, so that concurrent first lookups load it only once.
+         */
+        private final Object lock = new Object();
+
+        /**
+         * Creates a new SnapshotCache.
+         *
+         * @param source The source snapshots are loaded from.
+         */
+        SnapshotCache(Source source) {
+            this.source = source;
+        }
+
+        /**
+         * Returns the current snapshot, loading it if it does not exist, or reloading it if it is older than the given
+         * interval. While an expired snapshot is being reloaded by one thread, other threads continue to read it.
+         *
+         * @param interval          The refresh interval in milliseconds, where an interval less than or equal to zero
+         *                          means a new snapshot is always loaded and is not cached.
+         * @return                  The current snapshot.
+         * @throws ServiceException If the global variables cannot be listed.
+         */
+        Snapshot get(long interval) throws ServiceException {
+            if (interval <= 0) return Snapshot.load(source);
+
+            Snapshot current = snapshot;
+
+            if (current == null) {
+                synchronized (lock) {
+                    current = snapshot;
+                    if (current == null) current = reload();
+                }
+            } else if (current.isExpired(interval) && refreshing.compareAndSet(false, true)) {
+                try {
+                    current = reload();
+                } finally {
+                    refreshing.set(false);
+                }
+            }
+
+            return current;
+        }
+
+        /**
+         * Loads a new snapshot, and makes it the current snapshot unless this cache was invalidated meanwhile.
+         *
+         * @return                  The new snapshot.
+         * @throws ServiceException If the global variables cannot be listed.
+         */
+        private Snapshot reload() throws ServiceException {
+            long expected = generation.get();
+            Snapshot loaded = Snapshot.load(source);
+            if (generation.get() == expected) snapshot = loaded;
+            return loaded;
+        }
+
+        /**
+         * Discards the current snapshot, so that a new snapshot is loaded on next use.
+         */
+        void invalidate() {
+            generation.incrementAndGet();
+            snapshot = null;
+        }
+    }
+
+    /**
+     * An immutable snapshot of all global variables, where secure values are only decrypted when first requested.
+     */
+    static final class Snapshot {
+        /**
+         * The source secure values are decrypted from.
+         */
+        private final Source source;
+        /**
+         * The values of the global variables which are not secure, by key.
+         */
+        private final Map<String, String> values;
+        /**
+         * The keys of the secure global variables.
+         */
+        private final Set<String> secure;
+        /**
+         * The secure values which have been decrypted, by key, held as WmSecureString so that no plain text copy is
+         * retained for the life of the snapshot.
+         */
+        private final ConcurrentMap<String, WmSecureString> decrypted = new ConcurrentHashMap<String, WmSecureString>();
+        /**
+         * The time this snapshot was loaded, in milliseconds since the epoch.
+         */
+        private final long loadTime;
+
+        /**
+         * Creates a new Snapshot.
+         *
+         * @param source The source secure values are decrypted from.
+         * @param values The values of the global variables which are not secure, by key.
+         * @param secure The keys of the secure global variables.
+         */
+        private Snapshot(Source source, Map<String, String> values, Set<String> secure) {
+            this.source = source;
+            this.values = Collections.unmodifiableMap(values);
+            this.secure = Collections.unmodifiableSet(secure);
+            this.loadTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Returns the keys of all global variables in this snapshot, in key order.
+         *
+         * @return The keys of all global variables in this snapshot.
+         */
+        Set<String> keys() {
+            Set<String> keys = new TreeSet<String>(values.keySet());
+            keys.addAll(secure);
+            return keys;
+        }
+
+        /**
+         * Returns the value of the global variable with the given key, decrypting it on first request if it is
+         * secure. A failed decryption is not remembered, so is retried on the next request. Secure values are
+         * converted from their protected form to a string on every request.
+         *
+         * @param key               The key of the global variable.
+         * @return                  The value of the global variable, or null if it does not exist.
+         * @throws ServiceException If the global variable is secure and cannot be decrypted.
+         */
+        String get(String key) throws ServiceException {
+            if (!secure.contains(key)) return values.get(key);
+
+            WmSecureString password = decrypted.get(key);
+            if (password == null) {
+                try {
+                    password = source.decrypt(key);
+                } catch (Exception ex) {
+                    ExceptionHelper.raise(ex);
+                }
+                if (password != null) decrypted.put(key, password);
+            }
+
+            return password == null ? null : password.toString();
+        }
+
+        /**
+         * Returns true if this snapshot is older than the given interval.
+         *
+         * @param interval  The refresh interval in milliseconds.
+         * @return          True if this snapshot is older than the given interval.
+         */
+        private boolean isExpired(long interval) {
+            return System.currentTimeMillis() - loadTime >= interval;
+        }
+
+        /**
+         * Loads a new snapshot of all global variables from the given source, without decrypting any secure values.
+         *
+         * @param source            The source of the global variables.
+         * @return                  A new snapshot of all global variables.
+         * @throws ServiceException If the global variables cannot be listed.
+         */
+        static Snapshot load(Source source) throws ServiceException {
+            Map<String, String> values = new TreeMap<String, String>();
+            Set<String> secure = new TreeSet<String>();
+
+            try {
+                IData[] variables = source.list();
+                if (variables != null) {
+                    for (IDataMap variable : IDataMap.of(variables)) {
+                        String key = (String)variable.get("key");
+                        if (key != null) {
+                            if ("true".equals(variable.get("isSecure"))) {
+                                secure.add(key);
+                            } else {
+                                values.put(key, (String)variable.get("value"));
+                            }
+                        }
+                    }
+                }
+            } catch (Exception ex) {
+                ExceptionHelper.raise(ex);
+            }
+
+            return new Snapshot(source, values, secure);
+        }
     }
 }
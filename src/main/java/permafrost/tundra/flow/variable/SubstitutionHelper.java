@@ -124,38 +124,8 @@ public class SubstitutionHelper {
      * @throws ServiceException  If an error occurs retrieving a global variable.
      */
     public static String substitute(String substitutionString, String defaultValue, IData scope, EnumSet<SubstitutionType> substitutionTypes) throws ServiceException {
-        if (substitutionString == null || scope == null) return substitutionString;
-        substitutionTypes = SubstitutionType.normalize(substitutionTypes);
-
-        Matcher matcher = matcher(substitutionString);
-        StringBuffer output = new StringBuffer();
-
-        while (matcher.find()) {
-            String key = matcher.group(1);
-            String value = null;
-
-            if (substitutionTypes.contains(SubstitutionType.GLOBAL)) {
-                String globalValue = GlobalVariableHelper.get(key);
-                if (globalValue != null) value = globalValue;
-            }
-
-            if (substitutionTypes.contains(SubstitutionType.LOCAL)) {
-                String localValue = IDataHelper.get(scope, key, String.class);
-                if (localValue != null) value = localValue;
-            }
-
-            if (value != null) {
-                matcher.appendReplacement(output, Matcher.quoteReplacement((String)value));
-            } else if (defaultValue != null) {
-                matcher.appendReplacement(output, Matcher.quoteReplacement(defaultValue));
-            } else {
-                matcher.appendReplacement(output, Matcher.quoteReplacement(matcher.group(0)));
-            }
-        }
-
-        matcher.appendTail(output);
-
-        return output.toString();
+        if (substitutionString == null || scope == null || substitutionString.indexOf('%') < 0) return substitutionString;
+        return SubstitutionTemplate.of(substitutionString).render(scope, defaultValue, substitutionTypes);
     }
 
     /**
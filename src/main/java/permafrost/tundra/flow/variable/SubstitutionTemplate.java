@@ -0,0 +1,303 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.flow.variable;
+
+import com.wm.app.b2b.server.ServiceException;
+import com.wm.data.IData;
+import permafrost.tundra.collection.BoundedConcurrentCache;
+import permafrost.tundra.data.IDataPath;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.regex.Matcher;
+
+/**
+ * A variable substitution template which has been parsed once into its literal text and "%key%" variable segments,
+ * with each variable key compiled to a path, so that it can be rendered repeatedly against different scopes without
+ * being re-scanned. Templates are immutable and safe to be rendered concurrently by multiple threads.
+ */
+public final class SubstitutionTemplate {
+    /**
+     * The maximum number of parsed templates to be cached.
+     */
+    public static final int CACHE_CAPACITY = 1024;
+
+    /**
+     * The maximum length of a source string whose parsed template will be cached. Longer strings are more likely to
+     * be data rather than configuration, and are unlikely to recur, so are parsed each time rather than displacing
+     * the cached templates which do recur.
+     */
+    public static final int MAXIMUM_CACHED_LENGTH = 256;
+
+    /**
+     * Cache of parsed templates keyed by their source string.
+     */
+    private static final BoundedConcurrentCache<String, SubstitutionTemplate> CACHE = new BoundedConcurrentCache<String, SubstitutionTemplate>(CACHE_CAPACITY);
+
+    /**
+     * The maximum capacity of a per-thread render buffer that will be kept for reuse.
+     */
+    private static final int MAXIMUM_BUFFER_CAPACITY = 8192;
+
+    /**
+     * Per-thread buffer reused when rendering templates to strings. A plain ThreadLocal is used rather than a
+     * subclass, so that server worker threads do not retain references to this class's class loader.
+     */
+    private static final ThreadLocal<StringBuilder> BUFFER = new ThreadLocal<StringBuilder>();
+
+    /**
+     * The source string this template was parsed from.
+     */
+    private final String source;
+    /**
+     * The literal text segments, where literals[i] precedes variable i, and the last literal follows the last variable.
+     */
+    private final String[] literals;
+    /**
+     * The original "%key%" statements of each variable.
+     */
+    private final String[] statements;
+    /**
+     * The keys of each variable.
+     */
+    private final String[] keys;
+    /**
+     * The compiled paths of each variable.
+     */
+    private final IDataPath[] paths;
+
+    /**
+     * Parses a new SubstitutionTemplate.
+     *
+     * @param source The source string to be parsed.
+     */
+    private SubstitutionTemplate(String source) {
+        this.source = source;
+
+        List<String> literals = new ArrayList<String>();
+        List<String> statements = new ArrayList<String>();
+        List<String> keys = new ArrayList<String>();
+
+        Matcher matcher = SubstitutionHelper.matcher(source);
+        int index = 0;
+        while (matcher.find()) {
+            literals.add(source.substring(index, matcher.start()));
+            statements.add(matcher.group(0));
+            keys.add(matcher.group(1));
+            index = matcher.end();
+        }
+        literals.add(source.substring(index));
+
+        this.literals = literals.toArray(new String[literals.size()]);
+        this.statements = statements.toArray(new String[statements.size()]);
+        this.keys = keys.toArray(new String[keys.size()]);
+        this.paths = new IDataPath[this.keys.length];
+        // templates too long to be cached are likely one-off, so their keys are compiled without filling the path cache
+        boolean cached = source.length() <= MAXIMUM_CACHED_LENGTH;
+        for (int i = 0; i < this.keys.length; i++) {
+            this.paths[i] = cached ? IDataPath.of(this.keys[i]) : IDataPath.compile(this.keys[i], false);
+        }
+    }
+
+    /**
+     * Returns the parsed template for the given source string, reusing a cached template if one exists. Only source
+     * strings no longer than MAXIMUM_CACHED_LENGTH are cached; longer strings are parsed on every call.
+     *
+     * @param source    The source string.
+     * @return          The parsed template, or null if the given source string is null.
+     */
+    public static SubstitutionTemplate of(String source) {
+        if (source == null) return null;
+        if (source.length() > MAXIMUM_CACHED_LENGTH) return new SubstitutionTemplate(source);
+
+        SubstitutionTemplate template = CACHE.get(source);
+        if (template == null) template = CACHE.putIfAbsent(source, new SubstitutionTemplate(source));
+
+        return template;
+    }
+
+    /**
+     * Returns the source string this template was parsed from.
+     *
+     * @return The source string this template was parsed from.
+     */
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Returns the number of variables in this template.
+     *
+     * @return The number of variables in this template.
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * Returns the literal text preceding the variable at the given index, or following the last variable when the
+     * index is equal to the number of variables.
+     *
+     * @param index The index of the literal text segment.
+     * @return      The literal text segment.
+     */
+    public String getLiteral(int index) {
+        return literals[index];
+    }
+
+    /**
+     * Returns the original "%key%" statement of the variable at the given index.
+     *
+     * @param index The index of the variable.
+     * @return      The original statement of the variable.
+     */
+    public String getStatement(int index) {
+        return statements[index];
+    }
+
+    /**
+     * Returns the key of the variable at the given index.
+     *
+     * @param index The index of the variable.
+     * @return      The key of the variable.
+     */
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * Returns the compiled path of the variable at the given index.
+     *
+     * @param index The index of the variable.
+     * @return      The compiled path of the variable.
+     */
+    public IDataPath getPath(int index) {
+        return paths[index];
+    }
+
+    /**
+     * Renders this template against the given scope.
+     *
+     * @param scope              An IData document containing the variables being substituted.
+     * @param defaultValue       A default value to be substituted when a variable has no value, or null to leave the
+     *                           variable statement unsubstituted.
+     * @param substitutionTypes  The type of substitutions to perform.
+     * @return                   The rendered string.
+     * @throws ServiceException  If an error occurs retrieving a global variable.
+     */
+    public String render(IData scope, String defaultValue, EnumSet<SubstitutionType> substitutionTypes) throws ServiceException {
+        if (keys.length == 0) return source;
+
+        StringBuilder buffer = BUFFER.get();
+        if (buffer == null) {
+            buffer = new StringBuilder();
+            BUFFER.set(buffer);
+        }
+        buffer.setLength(0);
+        try {
+            render(buffer, scope, defaultValue, substitutionTypes);
+            return buffer.toString();
+        } finally {
+            if (buffer.capacity() > MAXIMUM_BUFFER_CAPACITY) BUFFER.remove();
+        }
+    }
+
+    /**
+     * Renders this template against the given scope, appending the result to the given builder.
+     *
+     * @param builder            The builder to append the rendered template to.
+     * @param scope              An IData document containing the variables being substituted.
+     * @param defaultValue       A default value to be substituted when a variable has no value, or null to leave the
+     *                           variable statement unsubstituted.
+     * @param substitutionTypes  The type of substitutions to perform.
+     * @throws ServiceException  If an error occurs retrieving a global variable.
+     */
+    public void render(StringBuilder builder, IData scope, String defaultValue, EnumSet<SubstitutionType> substitutionTypes) throws ServiceException {
+        substitutionTypes = SubstitutionType.normalize(substitutionTypes);
+        for (int i = 0; i < keys.length; i++) {
+            builder.append(literals[i]).append(resolve(i, scope, defaultValue, substitutionTypes));
+        }
+        builder.append(literals[keys.length]);
+    }
+
+    /**
+     * Renders this template against the given scope, writing the result to the given writer.
+     *
+     * @param writer             The writer to write the rendered template to.
+     * @param scope              An IData document containing the variables being substituted.
+     * @param defaultValue       A default value to be substituted when a variable has no value, or null to leave the
+     *                           variable statement unsubstituted.
+     * @param substitutionTypes  The type of substitutions to perform.
+     * @throws ServiceException  If an error occurs retrieving a global variable.
+     * @throws IOException       If an error occurs writing to the writer.
+     */
+    public void render(Writer writer, IData scope, String defaultValue, EnumSet<SubstitutionType> substitutionTypes) throws ServiceException, IOException {
+        substitutionTypes = SubstitutionType.normalize(substitutionTypes);
+        for (int i = 0; i < keys.length; i++) {
+            writer.write(literals[i]);
+            writer.write(resolve(i, scope, defaultValue, substitutionTypes));
+        }
+        writer.write(literals[keys.length]);
+    }
+
+    /**
+     * Returns the text to be substituted for the variable at the given index. Local variables take precedence over
+     * global variables, so global variables are only retrieved when there is no local value.
+     *
+     * @param index              The index of the variable.
+     * @param scope              An IData document containing the variables being substituted.
+     * @param defaultValue       A default value to be substituted when the variable has no value.
+     * @param substitutionTypes  The type of substitutions to perform.
+     * @return                   The text to be substituted for the variable.
+     * @throws ServiceException  If an error occurs retrieving a global variable.
+     */
+    private String resolve(int index, IData scope, String defaultValue, EnumSet<SubstitutionType> substitutionTypes) throws ServiceException {
+        String value = null;
+
+        if (scope != null && substitutionTypes.contains(SubstitutionType.LOCAL)) {
+            value = paths[index].get(scope, String.class);
+        }
+
+        if (value == null && substitutionTypes.contains(SubstitutionType.GLOBAL)) {
+            value = GlobalVariableHelper.get(keys[index]);
+        }
+
+        if (value == null) value = defaultValue == null ? statements[index] : defaultValue;
+
+        return value;
+    }
+
+    /**
+     * Returns the source string this template was parsed from.
+     *
+     * @return The source string this template was parsed from.
+     */
+    @Override
+    public String toString() {
+        return source;
+    }
+}
@@ -119,8 +119,7 @@ public class CaseInsensitiveString implements CharSequence, Comparable<CharSeque
 
         boolean result = false;
         if (other instanceof CharSequence) {
-            String otherString = ((CharSequence)other).toString();
-            result = this.lowercaseString.equals(otherString.toLowerCase(locale));
+            result = equals(originalString, ((CharSequence)other).toString(), locale);
         }
         return result;
     }
@@ -144,4 +143,88 @@ public class CaseInsensitiveString implements CharSequence, Comparable<CharSeque
     public String toString() {
         return this.originalString;
     }
+
+    /**
+     * Returns a case-insensitive hash code for the given string, equal to the hash code of the string converted to
+     * lower case using the given locale. Strings consisting only of ASCII characters are hashed in place without
+     * allocating a lower case copy, unless the locale folds ASCII characters differently (Turkish and Azerbaijani).
+     *
+     * @param string    The string to be hashed.
+     * @param locale    The locale used for case comparison, or null to use the default locale.
+     * @return          A case-insensitive hash code for the given string.
+     */
+    public static int hashCode(String string, Locale locale) {
+        if (string == null) return 0;
+        if (locale == null) locale = Locale.getDefault();
+
+        int hash = 0;
+        if (isASCIIFoldable(string, locale)) {
+            int length = string.length();
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + toLowerCaseASCII(string.charAt(i));
+            }
+        } else {
+            hash = string.toLowerCase(locale).hashCode();
+        }
+
+        return hash;
+    }
+
+    /**
+     * Returns true if the given strings are equal when converted to lower case using the given locale. Strings
+     * consisting only of ASCII characters are compared in place without allocating lower case copies, unless the
+     * locale folds ASCII characters differently (Turkish and Azerbaijani).
+     *
+     * @param firstString   The first string to be compared.
+     * @param secondString  The second string to be compared.
+     * @param locale        The locale used for case comparison, or null to use the default locale.
+     * @return              True if the given strings are equal ignoring case.
+     */
+    public static boolean equals(String firstString, String secondString, Locale locale) {
+        if (firstString == secondString) return true;
+        if (firstString == null || secondString == null) return false;
+        if (locale == null) locale = Locale.getDefault();
+
+        boolean result;
+        if (isASCIIFoldable(firstString, locale) && isASCIIFoldable(secondString, locale)) {
+            int length = firstString.length();
+            result = length == secondString.length();
+            for (int i = 0; result && i < length; i++) {
+                result = toLowerCaseASCII(firstString.charAt(i)) == toLowerCaseASCII(secondString.charAt(i));
+            }
+        } else {
+            result = firstString.toLowerCase(locale).equals(secondString.toLowerCase(locale));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns true if the given string can be converted to lower case using the given locale by only converting its
+     * ASCII upper case letters.
+     *
+     * @param string    The string to check.
+     * @param locale    The locale used for case comparison.
+     * @return          True if the given string can be case folded as ASCII.
+     */
+    private static boolean isASCIIFoldable(String string, Locale locale) {
+        String language = locale.getLanguage();
+        if (language.equals("tr") || language.equals("az")) return false;
+
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+            if (string.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the lower case version of the given ASCII character.
+     *
+     * @param character The ASCII character to convert.
+     * @return          The lower case version of the given character.
+     */
+    private static char toLowerCaseASCII(char character) {
+        return character >= 'A' && character <= 'Z' ? (char)(character + ('a' - 'A')) : character;
+    }
 }
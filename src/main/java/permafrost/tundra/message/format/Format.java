@@ -26,10 +26,12 @@ package permafrost.tundra.message.format;
 
 import com.wm.data.IData;
 import com.wm.util.coder.IDataCodable;
-import permafrost.tundra.data.CopyOnWriteIDataMap;
 import permafrost.tundra.data.IDataHelper;
+import permafrost.tundra.data.IDataMap;
+import permafrost.tundra.data.PersistentIData;
 import permafrost.tundra.flow.ConditionEvaluator;
 import permafrost.tundra.lang.BooleanHelper;
+import permafrost.tundra.util.concurrent.StripedCounter;
 import permafrost.tundra.xml.namespace.IDataNamespaceContext;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -61,9 +63,21 @@ public class Format implements Comparable<Format>, IDataCodable {
      */
     protected boolean enabled;
     /**
-     * The document with which this format was created.
+     * An immutable copy of the document with which this format was created.
      */
-    protected IData document;
+    protected PersistentIData document;
+    /**
+     * The number of times this format's recognition condition has been evaluated.
+     */
+    protected final StripedCounter evaluations = new StripedCounter();
+    /**
+     * The number of times this format's recognition condition has recognized content.
+     */
+    protected final StripedCounter hits = new StripedCounter();
+    /**
+     * The total time in nanoseconds spent evaluating this format's recognition condition.
+     */
+    protected final StripedCounter evaluationTime = new StripedCounter();
 
     /**
      * Creates a new content format definition object.
@@ -72,7 +86,6 @@ public class Format implements Comparable<Format>, IDataCodable {
      */
     public Format(IData document) {
         if (document == null) throw new NullPointerException("document must not be null");
-        this.document = document;
 
         String name = IDataHelper.get(document, "name", String.class);
         if (name == null) throw new NullPointerException("name must not be null");
@@ -87,6 +100,8 @@ public class Format implements Comparable<Format>, IDataCodable {
 
         this.enabled = BooleanHelper.parse(IDataHelper.get(document, "enabled"), true);
         IDataHelper.put(document, "enabled", BooleanHelper.emit(this.enabled));
+
+        this.document = PersistentIData.of(document);
     }
 
     /**
@@ -123,7 +138,75 @@ public class Format implements Comparable<Format>, IDataCodable {
      * @return          True if the pipeline contains content that is recognized to be of this type.
      */
     public boolean recognize(IData pipeline) {
-        return enabled && recognitionCondition.evaluate(pipeline);
+        if (!enabled) return false;
+
+        long start = System.nanoTime();
+        boolean recognized = recognitionCondition.evaluate(pipeline);
+        evaluationTime.add(System.nanoTime() - start);
+        evaluations.increment();
+        if (recognized) hits.increment();
+
+        return recognized;
+    }
+
+    /**
+     * Returns the conditional statement used to recognize content in this format.
+     *
+     * @return The conditional statement used to recognize content in this format.
+     */
+    public ConditionEvaluator getRecognitionCondition() {
+        return recognitionCondition;
+    }
+
+    /**
+     * Returns the number of times this format's recognition condition has been evaluated.
+     *
+     * @return The number of times this format's recognition condition has been evaluated.
+     */
+    public long getEvaluationCount() {
+        return evaluations.sum();
+    }
+
+    /**
+     * Returns the number of times this format's recognition condition has recognized content.
+     *
+     * @return The number of times this format's recognition condition has recognized content.
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the total time in nanoseconds spent evaluating this format's recognition condition.
+     *
+     * @return The total time in nanoseconds spent evaluating this format's recognition condition.
+     */
+    public long getEvaluationTime() {
+        return evaluationTime.sum();
+    }
+
+    /**
+     * Returns the recognition statistics for this format.
+     *
+     * @return An IData document containing the name, evaluation count, hit count, and total evaluation time in
+     *         nanoseconds of this format.
+     */
+    public IData getStatistics() {
+        IDataMap statistics = new IDataMap();
+        statistics.put("name", name);
+        statistics.put("evaluations", getEvaluationCount());
+        statistics.put("hits", getHitCount());
+        statistics.put("time", getEvaluationTime());
+        return statistics;
+    }
+
+    /**
+     * Resets the recognition statistics for this format.
+     */
+    public void resetStatistics() {
+        evaluations.reset();
+        hits.reset();
+        evaluationTime.reset();
     }
 
     /**
@@ -234,10 +317,10 @@ public class Format implements Comparable<Format>, IDataCodable {
     /**
      * Returns an IData representation of this object.
      *
-     * @return The IData document this object wraps.
+     * @return A snapshot of the IData document this object wraps, which can be modified without affecting this object.
      */
     public IData toIData() {
-        return CopyOnWriteIDataMap.of(this.document);
+        return this.document.snapshot();
     }
 
     /**
@@ -26,17 +26,34 @@ package permafrost.tundra.message.format;
 
 import com.wm.data.IData;
 import permafrost.tundra.data.IDataHelper;
+import permafrost.tundra.data.IDataPath;
+import permafrost.tundra.flow.ConditionEvaluator;
+import permafrost.tundra.util.concurrent.ParallelHelper;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 /**
  * A content format registry which provides content recognition for arbitrary content.
+ *
+ * Formats whose recognition conditions require a variable to equal one of a set of literal values are indexed by
+ * those values when the registry is initialized, so that recognition only evaluates the conditions of formats which
+ * could match, along with any formats whose conditions could not be indexed.
  */
 public class Recognizer {
+    /**
+     * The minimum number of records per worker before batch recognition is split across multiple threads.
+     */
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 256;
     /**
      * List of all registered content format definitions by name.
      */
@@ -45,6 +62,10 @@ public class Recognizer {
      * List of publishable registered content format definitions by publishable document type.
      */
     private volatile Map<String, Format> formatsByPublishableDocumentType = Collections.emptyMap();
+    /**
+     * Index of enabled registered formats by their recognition condition discriminators.
+     */
+    private volatile Index index = new Index(Collections.<Format>emptyList());
 
     /**
      * Create a new Recognizer with no registered formats.
@@ -67,20 +88,127 @@ public class Recognizer {
      * @return          Either the recognized ContentDefinition, or null if the content was unrecognized.
      */
     public Format recognize(IData pipeline) {
+        return recognize(pipeline, index);
+    }
+
+    /**
+     * Returns the first recognized ContentDefinition for the content in the given pipeline.
+     *
+     * @param pipeline  The pipeline containing content to be recognized.
+     * @param index     The index of formats used to recognize the content.
+     * @return          Either the recognized ContentDefinition, or null if the content was unrecognized.
+     */
+    private Format recognize(IData pipeline, Index index) {
         String formatName = IDataHelper.get(pipeline, "$message.format.name", true, String.class);
         if (formatName == null) IDataHelper.get(pipeline, "$message.format/name", String.class);
 
         if (formatName != null) {
             return get(formatName, true);
         } else {
-            for (Format format : formats.values()) {
-                if (format.recognize(pipeline)) {
-                    return format;
+            return index.recognize(pipeline);
+        }
+    }
+
+    /**
+     * Returns the first recognized format for each of the given records, using the shared parallel worker pool.
+     *
+     * @param records   The records containing content to be recognized.
+     * @return          The recognized format for each record in the same order as the given records, where an item is
+     *                  null if the record was unrecognized.
+     */
+    public Format[] recognize(IData[] records) {
+        return recognize(records, null);
+    }
+
+    /**
+     * Returns the first recognized format for each of the given records, spreading the records across the given
+     * executor. The calling thread also recognizes records, and all workers share the same compiled conditions.
+     *
+     * @param records   The records containing content to be recognized.
+     * @param executor  The executor used to recognize records in parallel, or null to use the shared worker pool.
+     * @return          The recognized format for each record in the same order as the given records, where an item is
+     *                  null if the record was unrecognized.
+     */
+    public Format[] recognize(final IData[] records, ExecutorService executor) {
+        if (records == null) return null;
+
+        final Index index = this.index;
+        final Format[] results = new Format[records.length];
+
+        int parallelism = ParallelHelper.getParallelism();
+        // an unbounded pool, such as a cached thread pool, reports Integer.MAX_VALUE, so cap before adding the caller
+        if (executor instanceof ThreadPoolExecutor) parallelism = Math.min(((ThreadPoolExecutor)executor).getMaximumPoolSize(), parallelism) + 1;
+        int[] boundaries = ParallelHelper.partition(records.length, Math.min(parallelism, records.length / DEFAULT_PARALLEL_THRESHOLD));
+
+        if (boundaries.length <= 2) {
+            for (int i = 0; i < records.length; i++) {
+                results[i] = recognize(records[i], index);
+            }
+        } else {
+            List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(boundaries.length - 1);
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                final int start = boundaries[i], end = boundaries[i + 1];
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        for (int j = start; j < end; j++) {
+                            results[j] = recognize(records[j], index);
+                        }
+                        return null;
+                    }
+                });
+            }
+            ParallelHelper.invokeAll(tasks, executor);
+        }
+
+        return results;
+    }
+
+    /**
+     * Recognizes the given records using the shared parallel worker pool, and returns them grouped by format.
+     *
+     * @param records   The records containing content to be recognized.
+     * @return          The records grouped by their recognized format, with formats in name order followed by the
+     *                  unrecognized records keyed by null, and records in each group in the same order as given.
+     */
+    public Map<Format, IData[]> group(IData[] records) {
+        return group(records, null);
+    }
+
+    /**
+     * Recognizes the given records using the given executor, and returns them grouped by format, so that records can
+     * be routed in bulk by each format's route type and reference.
+     *
+     * @param records   The records containing content to be recognized.
+     * @param executor  The executor used to recognize records in parallel, or null to use the shared worker pool.
+     * @return          The records grouped by their recognized format, with formats in name order followed by the
+     *                  unrecognized records keyed by null, and records in each group in the same order as given.
+     */
+    public Map<Format, IData[]> group(IData[] records, ExecutorService executor) {
+        if (records == null) return null;
+
+        Format[] results = recognize(records, executor);
+        Map<Format, List<IData>> recognized = new TreeMap<Format, List<IData>>();
+        List<IData> unrecognized = new ArrayList<IData>();
+
+        for (int i = 0; i < records.length; i++) {
+            List<IData> bucket = unrecognized;
+            if (results[i] != null) {
+                bucket = recognized.get(results[i]);
+                if (bucket == null) {
+                    bucket = new ArrayList<IData>();
+                    recognized.put(results[i], bucket);
                 }
             }
+            bucket.add(records[i]);
         }
 
-        return null;
+        Map<Format, IData[]> groups = new LinkedHashMap<Format, IData[]>();
+        for (Map.Entry<Format, List<IData>> entry : recognized.entrySet()) {
+            groups.put(entry.getKey(), entry.getValue().toArray(new IData[entry.getValue().size()]));
+        }
+        if (unrecognized.size() > 0) groups.put(null, unrecognized.toArray(new IData[unrecognized.size()]));
+
+        return groups;
     }
 
     /**
@@ -135,6 +263,7 @@ public class Recognizer {
 
         formats = newFormats;
         formatsByPublishableDocumentType = newFormatsByPublishableDocumentType;
+        index = new Index(newFormats.values());
     }
 
     /**
@@ -143,6 +272,7 @@ public class Recognizer {
     public synchronized void clear() {
         formats = Collections.emptyMap();
         formatsByPublishableDocumentType = Collections.emptyMap();
+        index = new Index(Collections.<Format>emptyList());
     }
 
     /**
@@ -153,4 +283,162 @@ public class Recognizer {
     public List<Format> list() {
         return new ArrayList<Format>(formats.values());
     }
+
+    /**
+     * Returns the recognition statistics for all registered formats.
+     *
+     * @return The name, evaluation count, hit count, and total evaluation time in nanoseconds of each registered
+     *         format, in name order.
+     */
+    public IData[] getStatistics() {
+        List<IData> statistics = new ArrayList<IData>(formats.size());
+        for (Format format : formats.values()) {
+            statistics.add(format.getStatistics());
+        }
+        return statistics.toArray(new IData[statistics.size()]);
+    }
+
+    /**
+     * Resets the recognition statistics for all registered formats.
+     */
+    public void resetStatistics() {
+        for (Format format : formats.values()) {
+            format.resetStatistics();
+        }
+    }
+
+    /**
+     * An immutable index of enabled formats by their recognition condition discriminators.
+     */
+    private static final class Index {
+        /**
+         * The enabled formats in name order.
+         */
+        private final Format[] formats;
+        /**
+         * The positions of formats whose conditions could not be indexed.
+         */
+        private final BitSet unindexed = new BitSet();
+        /**
+         * The indexed discriminating variables.
+         */
+        private final Discriminant[] discriminants;
+
+        /**
+         * Creates a new Index.
+         *
+         * @param collection The formats to be indexed, in name order.
+         */
+        private Index(Collection<Format> collection) {
+            List<Format> enabled = new ArrayList<Format>(collection.size());
+            Map<String, Discriminant> discriminantsByKey = new LinkedHashMap<String, Discriminant>();
+
+            for (Format format : collection) {
+                if (format.isEnabled()) {
+                    int position = enabled.size();
+                    enabled.add(format);
+
+                    ConditionEvaluator.Discriminator discriminator = format.getRecognitionCondition().getDiscriminator();
+                    if (discriminator == null) {
+                        unindexed.set(position);
+                    } else {
+                        Discriminant discriminant = discriminantsByKey.get(discriminator.getKey());
+                        if (discriminant == null) {
+                            discriminant = new Discriminant(IDataPath.of(discriminator.getKey()));
+                            discriminantsByKey.put(discriminator.getKey(), discriminant);
+                        }
+                        discriminant.add(position, discriminator.getValues());
+                    }
+                }
+            }
+
+            this.formats = enabled.toArray(new Format[enabled.size()]);
+            this.discriminants = discriminantsByKey.values().toArray(new Discriminant[discriminantsByKey.size()]);
+        }
+
+        /**
+         * Returns the first format in name order which recognizes the content in the given pipeline.
+         *
+         * @param pipeline  The pipeline containing content to be recognized.
+         * @return          The recognized format, or null if the content was unrecognized.
+         */
+        private Format recognize(IData pipeline) {
+            BitSet candidates = (BitSet)unindexed.clone();
+
+            if (pipeline != null) {
+                for (Discriminant discriminant : discriminants) {
+                    discriminant.select(pipeline, candidates);
+                }
+            }
+
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+                if (formats[i].recognize(pipeline)) return formats[i];
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * The positions of formats whose conditions require a given variable to be equal to one of a set of values.
+     */
+    private static final class Discriminant {
+        /**
+         * The pre-parsed key path of the variable.
+         */
+        private final IDataPath path;
+        /**
+         * The positions of formats by the value the variable must be equal to.
+         */
+        private final Map<String, BitSet> positionsByValue = new HashMap<String, BitSet>();
+        /**
+         * The positions of all formats discriminated by this variable.
+         */
+        private final BitSet positions = new BitSet();
+
+        /**
+         * Creates a new Discriminant.
+         *
+         * @param path The pre-parsed key path of the variable.
+         */
+        private Discriminant(IDataPath path) {
+            this.path = path;
+        }
+
+        /**
+         * Adds the format at the given position, whose condition requires the variable to equal one of the given
+         * values.
+         *
+         * @param position  The position of the format.
+         * @param values    The values the variable must be equal to one of.
+         */
+        private void add(int position, Collection<String> values) {
+            positions.set(position);
+            for (String value : values) {
+                BitSet set = positionsByValue.get(value);
+                if (set == null) {
+                    set = new BitSet();
+                    positionsByValue.put(value, set);
+                }
+                set.set(position);
+            }
+        }
+
+        /**
+         * Adds the positions of the formats which could recognize the given pipeline to the given candidates.
+         *
+         * @param pipeline      The pipeline containing content to be recognized.
+         * @param candidates    The candidate format positions.
+         */
+        private void select(IData pipeline, BitSet candidates) {
+            Object value = path.get(pipeline);
+            if (value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Character) {
+                BitSet set = positionsByValue.get(value.toString());
+                if (set != null) candidates.or(set);
+            } else if (value != null) {
+                // conditions comparing other types of values are decided by the ExpressionEvaluator
+                candidates.or(positions);
+            }
+        }
+    }
 }
@@ -24,7 +24,7 @@
 
 package permafrost.tundra.net.uri;
 
-import permafrost.tundra.flow.variable.SubstitutionHelper;
+import permafrost.tundra.flow.variable.SubstitutionTemplate;
 import permafrost.tundra.lang.ArrayHelper;
 
 /**
@@ -50,19 +50,19 @@ public final class URIPathHelper {
         if (input.endsWith("/")) input = input.substring(0, input.length() - 1);
 
         java.util.List<String> list = new java.util.ArrayList<String>();
-        java.util.regex.Matcher substitutionMatcher = SubstitutionHelper.matcher(input);
 
-        int index = 0;
-        while (substitutionMatcher.find()) {
-            int start = substitutionMatcher.start();
-            int end = substitutionMatcher.end();
-
-            if (index <= start) split(input.substring(index, start), list);
-            append(substitutionMatcher.group(), list);
+        if (input.indexOf('%') < 0) {
+            // paths without substitution statements are not parsed as templates, so they are never cached
+            split(input, list);
+        } else {
+            SubstitutionTemplate template = SubstitutionTemplate.of(input);
 
-            index = end;
+            for (int i = 0; i < template.size(); i++) {
+                split(template.getLiteral(i), list);
+                append(template.getStatement(i), list);
+            }
+            split(template.getLiteral(template.size()), list);
         }
-        if (index <= input.length()) split(input.substring(index), list);
 
         return ArrayHelper.compact(list.toArray(new String[list.size()]));
     }
@@ -0,0 +1,300 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A collection of convenience methods for executing data parallel work, such as sorting or grouping large arrays,
+ * across all available processors using a shared pool of daemon threads.
+ */
+public final class ParallelHelper {
+    /**
+     * The minimum number of items to be processed before work is split across multiple threads.
+     */
+    public static final int DEFAULT_THRESHOLD = 8192;
+
+    /**
+     * Disallow instantiation of this class.
+     */
+    private ParallelHelper() {}
+
+    /**
+     * Returns the number of threads used to execute parallel work.
+     *
+     * @return The number of threads used to execute parallel work.
+     */
+    public static int getParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Returns true if the given number of items is large enough to be processed in parallel.
+     *
+     * @param size  The number of items to be processed.
+     * @return      True if the given number of items should be processed in parallel.
+     */
+    public static boolean isParallelizable(int size) {
+        return size >= DEFAULT_THRESHOLD && getParallelism() > 1;
+    }
+
+    /**
+     * Returns the boundaries which split the given number of items into contiguous partitions, one per thread.
+     *
+     * @param size  The number of items to be partitioned.
+     * @return      The partition boundaries, where partition i is from boundaries[i] inclusive to boundaries[i + 1]
+     *              exclusive.
+     */
+    public static int[] partition(int size) {
+        return partition(size, isParallelizable(size) ? getParallelism() : 1);
+    }
+
+    /**
+     * Returns the boundaries which split the given number of items into the given number of contiguous partitions, or
+     * fewer if there are fewer items than partitions.
+     *
+     * @param size          The number of items to be partitioned.
+     * @param partitions    The requested number of partitions.
+     * @return              The partition boundaries, where partition i is from boundaries[i] inclusive to
+     *                      boundaries[i + 1] exclusive.
+     */
+    public static int[] partition(int size, int partitions) {
+        partitions = Math.max(1, Math.min(partitions, size));
+        int[] boundaries = new int[partitions + 1];
+        for (int i = 0; i <= partitions; i++) {
+            boundaries[i] = (int)(((long)size * i) / partitions);
+        }
+        return boundaries;
+    }
+
+    /**
+     * Executes the given tasks in parallel, and returns their results in the same order as the tasks. The calling
+     * thread also executes any tasks not yet started by the shared pool, so this method cannot deadlock when called
+     * from a pool thread or when the pool is saturated.
+     *
+     * @param tasks The tasks to be executed.
+     * @param <T>   The class of the task results.
+     * @return      The results of the tasks, in the same order as the tasks.
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) {
+        return invokeAll(tasks, ExecutorHolder.EXECUTOR);
+    }
+
+    /**
+     * Executes the given tasks in parallel using the given executor, and returns their results in the same order as
+     * the tasks. The calling thread also executes any tasks not yet started by the executor, so this method cannot
+     * deadlock when called from an executor thread or when the executor is saturated.
+     *
+     * @param tasks     The tasks to be executed.
+     * @param executor  The executor used to execute the tasks, or null to use the shared pool.
+     * @param <T>       The class of the task results.
+     * @return          The results of the tasks, in the same order as the tasks.
+     */
+    public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, ExecutorService executor) {
+        if (executor == null) executor = ExecutorHolder.EXECUTOR;
+
+        List<FutureTask<T>> futures = new ArrayList<FutureTask<T>>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(new FutureTask<T>(task));
+        }
+
+        for (int i = 1; i < futures.size(); i++) {
+            try {
+                executor.execute(futures.get(i));
+            } catch (RejectedExecutionException ex) {
+                // the task will be executed by the calling thread instead
+            }
+        }
+
+        for (FutureTask<T> future : futures) {
+            // does nothing if the task was already started by a pool thread
+            future.run();
+        }
+
+        List<T> results = new ArrayList<T>(futures.size());
+        boolean interrupted = false;
+
+        try {
+            for (FutureTask<T> future : futures) {
+                while (true) {
+                    try {
+                        results.add(future.get());
+                        break;
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    } catch (ExecutionException ex) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+                        if (cause instanceof Error) throw (Error)cause;
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+
+        return results;
+    }
+
+    /**
+     * Sorts the given array in place using a stable merge sort, where partitions of the array are sorted in parallel
+     * and then merged in parallel when the array is large enough to benefit.
+     *
+     * @param array         The array to be sorted.
+     * @param comparator    The comparator used to order the array items, or null to use their natural ordering.
+     * @param <T>           The class of the array items.
+     */
+    public static <T> void sort(final T[] array, final Comparator<? super T> comparator) {
+        if (array == null || array.length < 2) return;
+
+        final int[] boundaries = partition(array.length);
+        if (boundaries.length <= 2) {
+            sort(array, 0, array.length, comparator);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(boundaries.length - 1);
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            final int start = boundaries[i], end = boundaries[i + 1];
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    sort(array, start, end, comparator);
+                    return null;
+                }
+            });
+        }
+        invokeAll(tasks);
+
+        T[] source = array, target = array.clone();
+        int[] runs = boundaries;
+
+        while (runs.length > 2) {
+            final T[] from = source, to = target;
+            final int[] currentRuns = runs;
+            int[] mergedRuns = new int[runs.length / 2 + 1];
+
+            tasks = new ArrayList<Callable<Void>>(mergedRuns.length - 1);
+            for (int i = 0; i < currentRuns.length - 1; i += 2) {
+                final int start = currentRuns[i], middle = currentRuns[i + 1], end = i + 2 < currentRuns.length ? currentRuns[i + 2] : middle;
+                mergedRuns[i / 2] = start;
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        merge(from, to, start, middle, end, comparator);
+                        return null;
+                    }
+                });
+            }
+            mergedRuns[mergedRuns.length - 1] = array.length;
+            invokeAll(tasks);
+
+            runs = mergedRuns;
+            source = to;
+            target = from;
+        }
+
+        if (source != array) System.arraycopy(source, 0, array, 0, array.length);
+    }
+
+    /**
+     * Sorts the given range of the given array using a stable sort.
+     *
+     * @param array         The array to be sorted.
+     * @param start         The start of the range to be sorted, inclusive.
+     * @param end           The end of the range to be sorted, exclusive.
+     * @param comparator    The comparator used to order the array items, or null to use their natural ordering.
+     * @param <T>           The class of the array items.
+     */
+    private static <T> void sort(T[] array, int start, int end, Comparator<? super T> comparator) {
+        if (comparator == null) {
+            Arrays.sort(array, start, end);
+        } else {
+            Arrays.sort(array, start, end, comparator);
+        }
+    }
+
+    /**
+     * Merges the two adjacent sorted ranges of the source array into the same range of the target array, preferring
+     * items from the first range when items are equal so that the merge is stable.
+     *
+     * @param source        The array containing the sorted ranges.
+     * @param target        The array into which the merged range is written.
+     * @param start         The start of the first range, inclusive.
+     * @param middle        The end of the first range and start of the second range.
+     * @param end           The end of the second range, exclusive.
+     * @param comparator    The comparator used to order the array items, or null to use their natural ordering.
+     * @param <T>           The class of the array items.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> void merge(T[] source, T[] target, int start, int middle, int end, Comparator<? super T> comparator) {
+        int i = start, j = middle, k = start;
+
+        while (i < middle && j < end) {
+            int result = comparator == null ? ((Comparable<T>)source[j]).compareTo(source[i]) : comparator.compare(source[j], source[i]);
+            target[k++] = result < 0 ? source[j++] : source[i++];
+        }
+
+        if (i < middle) System.arraycopy(source, i, target, k, middle - i);
+        if (j < end) System.arraycopy(source, j, target, k, end - j);
+    }
+
+    /**
+     * Lazily initialized holder of the shared thread pool.
+     */
+    private static class ExecutorHolder {
+        /**
+         * The shared thread pool used to execute parallel work, whose threads are daemons which time out when idle.
+         */
+        private static final ExecutorService EXECUTOR;
+
+        static {
+            int parallelism = getParallelism();
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "Tundra Parallel Worker #" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+            EXECUTOR = executor;
+        }
+    }
+}
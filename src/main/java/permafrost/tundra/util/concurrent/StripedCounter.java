@@ -0,0 +1,220 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.util.concurrent;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free counter optimised for frequent updates from many threads, where updates are spread across a set of
+ * cache line padded cells once contention is detected and only summed when the count is read, in the same manner as
+ * java.util.concurrent.atomic.LongAdder. Reads are not a consistent snapshot when updates are concurrent.
+ */
+public class StripedCounter extends Number implements Serializable {
+    /**
+     * The serialization identity of this class version.
+     */
+    private static final long serialVersionUID = 1;
+
+    /**
+     * The number of longs per cell, so that each cell occupies its own cache line.
+     */
+    private static final int CELL_WIDTH = 8;
+
+    /**
+     * The maximum number of cells used by a counter.
+     */
+    private static final int MAXIMUM_CELLS = 64;
+
+    /**
+     * The count updated until contention is first detected.
+     */
+    private final AtomicLong base = new AtomicLong(0);
+
+    /**
+     * The cells updates are spread across once contention is detected, created lazily.
+     */
+    private volatile AtomicLongArray cells;
+
+    /**
+     * Creates a new counter with an initial count of zero.
+     */
+    public StripedCounter() {}
+
+    /**
+     * Creates a new counter with the given initial count.
+     *
+     * @param initialCount  The initial count.
+     */
+    public StripedCounter(long initialCount) {
+        base.set(initialCount);
+    }
+
+    /**
+     * Adds the given value to the count.
+     *
+     * @param delta The value to be added.
+     */
+    public void add(long delta) {
+        AtomicLongArray cells = this.cells;
+        if (cells == null) {
+            long count = base.get();
+            if (base.compareAndSet(count, count + delta)) return;
+            cells = initialize();
+        }
+        cells.getAndAdd(index(cells), delta);
+    }
+
+    /**
+     * Adds one to the count.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Subtracts one from the count.
+     */
+    public void decrement() {
+        add(-1);
+    }
+
+    /**
+     * Returns the current count.
+     *
+     * @return The current count.
+     */
+    public long sum() {
+        long sum = base.get();
+        AtomicLongArray cells = this.cells;
+        if (cells != null) {
+            for (int i = 0; i < cells.length(); i += CELL_WIDTH) {
+                sum += cells.get(i);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Resets the count to zero.
+     */
+    public void reset() {
+        sumThenReset();
+    }
+
+    /**
+     * Returns the current count and resets it to zero.
+     *
+     * @return The count prior to being reset.
+     */
+    public long sumThenReset() {
+        long sum = base.getAndSet(0);
+        AtomicLongArray cells = this.cells;
+        if (cells != null) {
+            for (int i = 0; i < cells.length(); i += CELL_WIDTH) {
+                sum += cells.getAndSet(i, 0);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the cells, creating them if they do not already exist.
+     *
+     * @return The cells.
+     */
+    private synchronized AtomicLongArray initialize() {
+        if (cells == null) {
+            int size = 1;
+            while (size < ParallelHelper.getParallelism() && size < MAXIMUM_CELLS) size <<= 1;
+            cells = new AtomicLongArray(size * CELL_WIDTH);
+        }
+        return cells;
+    }
+
+    /**
+     * Returns the index of the cell to be updated by the current thread.
+     *
+     * @param cells The cells.
+     * @return      The index of the cell to be updated by the current thread.
+     */
+    private static int index(AtomicLongArray cells) {
+        long id = Thread.currentThread().getId();
+        int hash = (int)(id ^ (id >>> 32)) * 0x9E3779B9;
+        int mask = (cells.length() / CELL_WIDTH) - 1;
+        return ((hash >>> 16) & mask) * CELL_WIDTH;
+    }
+
+    /**
+     * Returns the current count.
+     *
+     * @return The current count.
+     */
+    @Override
+    public long longValue() {
+        return sum();
+    }
+
+    /**
+     * Returns the current count as an int.
+     *
+     * @return The current count as an int.
+     */
+    @Override
+    public int intValue() {
+        return (int)sum();
+    }
+
+    /**
+     * Returns the current count as a float.
+     *
+     * @return The current count as a float.
+     */
+    @Override
+    public float floatValue() {
+        return (float)sum();
+    }
+
+    /**
+     * Returns the current count as a double.
+     *
+     * @return The current count as a double.
+     */
+    @Override
+    public double doubleValue() {
+        return (double)sum();
+    }
+
+    /**
+     * Returns the current count as a string.
+     *
+     * @return The current count as a string.
+     */
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
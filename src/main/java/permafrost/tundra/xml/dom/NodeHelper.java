@@ -33,6 +33,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import permafrost.tundra.collection.StringPool;
 import permafrost.tundra.data.IDataMap;
 import permafrost.tundra.io.InputStreamHelper;
 import permafrost.tundra.lang.CharsetHelper;
@@ -142,11 +143,37 @@ public class NodeHelper {
      * @return                  An IData[] representation of this object.
      */
     public static IData parse(Node node, NamespaceContext namespaceContext, boolean recurse) {
-        IDataMap map = new IDataMap();
+        return parse(node, namespaceContext, recurse, null);
+    }
+
+    /**
+     * Returns an IData representation of the given Node.
+     *
+     * @param node              The Node to be parsed.
+     * @param namespaceContext  Any namespace declarations used in the XML content.
+     * @param recurse           If true, child elements will be recursed and returned also.
+     * @param pool              The pool used to intern the keys and short values of the returned IData, or null to
+     *                          not intern them.
+     * @return                  An IData[] representation of this object.
+     */
+    public static IData parse(Node node, NamespaceContext namespaceContext, boolean recurse, StringPool pool) {
+        IDataMap map = createMap(pool);
         parse(node, namespaceContext, map, recurse);
         return map;
     }
 
+    /**
+     * Returns a new IDataMap which interns keys and short values using the given pool.
+     *
+     * @param pool  The pool used to intern keys and short values, or null.
+     * @return      A new IDataMap.
+     */
+    private static IDataMap createMap(StringPool pool) {
+        IDataMap map = new IDataMap();
+        map.setStringPool(pool);
+        return map;
+    }
+
     /**
      * Creates an IData representation of the given Node in the given IDataMap.
      *
@@ -161,7 +188,7 @@ public class NodeHelper {
         if (node instanceof Document) {
             Document document = (Document)node;
             Node root = document.getDocumentElement();
-            IDataMap child = new IDataMap();
+            IDataMap child = createMap(output.getStringPool());
             parse(root, namespaceContext, child, recurse);
             output.put(getNodeName(root, namespaceContext), child, false);
         } else if (node instanceof Element) {
@@ -183,19 +210,22 @@ public class NodeHelper {
                 output.put("*body", content, false);
 
                 if (recurse && hasChildElements) {
+                    StringPool pool = output.getStringPool();
                     IDataCursor cursor = output.getCursor();
                     Nodes children = Nodes.of(element.getChildNodes());
                     for (Node childNode : children) {
                         if (childNode.getNodeType() == Node.ELEMENT_NODE) {
                             Element childElement = (Element)childNode;
                             String name = getNodeName(childElement, namespaceContext);
+                            if (pool != null) name = pool.intern(name);
 
                             if (childElement.hasAttributes() || ElementHelper.hasChildElements(childElement)) {
-                                IDataMap childNodeMap = new IDataMap();
+                                IDataMap childNodeMap = createMap(pool);
                                 parse(childElement, namespaceContext, childNodeMap, recurse);
                                 cursor.insertAfter(name, childNodeMap);
                             } else {
-                                cursor.insertAfter(name, ElementHelper.getTextContent(childElement));
+                                String childContent = ElementHelper.getTextContent(childElement);
+                                cursor.insertAfter(name, pool == null ? childContent : pool.internValue(childContent));
                             }
                         }
                     }
@@ -28,6 +28,7 @@ import com.wm.data.IData;
 import permafrost.tundra.data.IDataHelper;
 import permafrost.tundra.data.IDataMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +42,10 @@ import javax.xml.namespace.NamespaceContext;
 public class IDataNamespaceContext implements NamespaceContext {
     protected Map<String, String> namespacesByPrefix = new TreeMap<String, String>();
     protected Map<String, List<String>> namespacesByURI = new TreeMap<String, List<String>>();
+    /**
+     * A read-only view of the prefix URI mappings, created once so it can be returned without allocation.
+     */
+    private final Map<String, String> prefixMappings = Collections.unmodifiableMap(namespacesByPrefix);
 
     /**
      * Constructs a new IDataNamespaceContext using the given IData as the source of namespace prefix URI mappings.
@@ -130,4 +135,13 @@ public class IDataNamespaceContext implements NamespaceContext {
 
         return iterator;
     }
+
+    /**
+     * Returns the prefix URI mappings of this namespace context.
+     *
+     * @return A read-only view of the prefix URI mappings of this namespace context.
+     */
+    public Map<String, String> getPrefixMappings() {
+        return prefixMappings;
+    }
 }
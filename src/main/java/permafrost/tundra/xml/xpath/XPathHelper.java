@@ -24,12 +24,23 @@
 
 package permafrost.tundra.xml.xpath;
 
+import com.wm.data.IData;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.InputSource;
+import permafrost.tundra.collection.BoundedConcurrentCache;
+import permafrost.tundra.data.IDataHelper;
 import permafrost.tundra.xml.dom.Nodes;
+import permafrost.tundra.xml.namespace.IDataNamespaceContext;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathConstants;
 import javax.xml.xpath.XPathExpression;
@@ -128,7 +139,10 @@ public class XPathHelper {
     }
 
     /**
-     * Returns a compiled XPath expression.
+     * Returns a compiled XPath expression. Compiled expressions are safe to be used concurrently by multiple threads,
+     * and are cached by expression and namespace prefix mappings when the namespace context is either null or an
+     * IDataNamespaceContext. Other namespace contexts cannot be compared by value, so expressions compiled with them
+     * are not cached.
      *
      * @param expression                The XPath expression as a String.
      * @param namespaceContext          The namespace context used by the XPath expression.
@@ -136,8 +150,210 @@ public class XPathHelper {
      * @throws XPathExpressionException If a parsing error occurs.
      */
     public static XPathExpression compile(String expression, NamespaceContext namespaceContext) throws XPathExpressionException {
-        XPath compiler = XPathFactory.newInstance().newXPath();
-        if (namespaceContext != null) compiler.setNamespaceContext(namespaceContext);
-        return compiler.compile(expression);
+        if (expression == null) throw new NullPointerException("expression must not be null");
+
+        Map<String, String> mappings = null;
+        if (namespaceContext != null) {
+            if (namespaceContext.getClass() != IDataNamespaceContext.class) return new PooledXPathExpression(expression, namespaceContext);
+            mappings = ((IDataNamespaceContext)namespaceContext).getPrefixMappings();
+        }
+
+        XPathExpression compiledExpression = CACHE.get(new CacheKey(expression, mappings));
+
+        if (compiledExpression == null) {
+            // compile against a private copy of the mappings, so later changes to the given context cannot affect
+            // the cached expression or its cache key
+            if (mappings != null) {
+                mappings = Collections.unmodifiableMap(new TreeMap<String, String>(mappings));
+                namespaceContext = new IDataNamespaceContext(IDataHelper.toIData(mappings));
+            }
+            compiledExpression = CACHE.putIfAbsent(new CacheKey(expression, mappings), new PooledXPathExpression(expression, namespaceContext));
+        }
+
+        return compiledExpression;
+    }
+
+    /**
+     * Returns a newly compiled XPath expression, bypassing the expression cache. The returned expression, like all
+     * JAXP XPathExpression objects, must not be used by more than one thread at a time.
+     *
+     * @param expression                The XPath expression as a String.
+     * @param namespaceContext          The namespace context used by the XPath expression.
+     * @return                          The compiled XPathExpression.
+     * @throws XPathExpressionException If a parsing error occurs.
+     */
+    private static XPathExpression compileUncached(String expression, NamespaceContext namespaceContext) throws XPathExpressionException {
+        XPath compiler = COMPILERS.poll();
+        if (compiler == null) compiler = XPathFactory.newInstance().newXPath();
+
+        try {
+            if (namespaceContext != null) compiler.setNamespaceContext(namespaceContext);
+            return compiler.compile(expression);
+        } finally {
+            compiler.reset();
+            COMPILERS.offer(compiler);
+        }
+    }
+
+    /**
+     * Returns the hit, miss, and eviction statistics for the compiled XPath expression cache.
+     *
+     * @return The compiled XPath expression cache statistics.
+     */
+    public static IData getCacheStatistics() {
+        return CACHE.getIData();
+    }
+
+    /**
+     * Removes all compiled XPath expressions from the cache.
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    /**
+     * The maximum number of compiled XPath expressions to be cached.
+     */
+    public static final int CACHE_CAPACITY = 1024;
+
+    /**
+     * Cache of compiled XPath expressions keyed by expression and namespace context.
+     */
+    private static final BoundedConcurrentCache<CacheKey, XPathExpression> CACHE = new BoundedConcurrentCache<CacheKey, XPathExpression>(CACHE_CAPACITY);
+
+    /**
+     * Pool of idle XPath compilers. XPath compilers are neither thread-safe nor reentrant, so each compilation borrows
+     * a compiler from the pool, which also avoids the service provider lookup performed by XPathFactory.newInstance()
+     * on every compilation. A pool is used rather than a ThreadLocal so that server worker threads do not retain
+     * references to this class after the package which loaded it is reloaded.
+     */
+    private static final Queue<XPath> COMPILERS = new ConcurrentLinkedQueue<XPath>();
+
+    /**
+     * The key used to cache a compiled XPath expression.
+     */
+    private static final class CacheKey {
+        private final String expression;
+        private final Map<String, String> mappings;
+        private final int hashCode;
+
+        /**
+         * Constructs a new cache key.
+         *
+         * @param expression    The XPath expression.
+         * @param mappings      The optional immutable namespace prefix URI mappings used by the XPath expression.
+         */
+        CacheKey(String expression, Map<String, String> mappings) {
+            this.expression = expression;
+            this.mappings = mappings;
+            this.hashCode = 31 * expression.hashCode() + (mappings == null ? 0 : mappings.hashCode());
+        }
+
+        /**
+         * Returns true if the given object is a cache key for the same expression and namespace mappings.
+         *
+         * @param other The object to compare for equality.
+         * @return      True if the given object is equal to this key.
+         */
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof CacheKey)) return false;
+
+            CacheKey key = (CacheKey)other;
+            return expression.equals(key.expression) && (mappings == null ? key.mappings == null : mappings.equals(key.mappings));
+        }
+
+        /**
+         * Returns the hash code for this key.
+         *
+         * @return The hash code for this key.
+         */
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * A thread-safe XPathExpression, which delegates to a pool of underlying compiled expressions, as JAXP
+     * XPathExpression objects must not be used concurrently. Each evaluation borrows an idle expression from the
+     * pool, compiling a new one only when all are in use, so the pool grows to at most the peak number of concurrent
+     * evaluations.
+     */
+    private static final class PooledXPathExpression implements XPathExpression {
+        private final String expression;
+        private final NamespaceContext namespaceContext;
+        private final Queue<XPathExpression> pool = new ConcurrentLinkedQueue<XPathExpression>();
+
+        /**
+         * Constructs a new thread-safe XPathExpression, compiling the expression immediately so that any syntax errors
+         * are raised immediately.
+         *
+         * @param expression                The XPath expression.
+         * @param namespaceContext          The optional namespace context used by the XPath expression.
+         * @throws XPathExpressionException If a parsing error occurs.
+         */
+        PooledXPathExpression(String expression, NamespaceContext namespaceContext) throws XPathExpressionException {
+            this.expression = expression;
+            this.namespaceContext = namespaceContext;
+            pool.offer(compileUncached(expression, namespaceContext));
+        }
+
+        /**
+         * Borrows an idle underlying compiled expression from the pool, compiling a new one if none are idle.
+         *
+         * @return                          An underlying compiled expression, which must be returned to the pool.
+         * @throws XPathExpressionException If a parsing error occurs.
+         */
+        private XPathExpression borrow() throws XPathExpressionException {
+            XPathExpression compiledExpression = pool.poll();
+            return compiledExpression == null ? compileUncached(expression, namespaceContext) : compiledExpression;
+        }
+
+        @Override
+        public Object evaluate(Object item, QName returnType) throws XPathExpressionException {
+            XPathExpression compiledExpression = borrow();
+            try {
+                return compiledExpression.evaluate(item, returnType);
+            } finally {
+                pool.offer(compiledExpression);
+            }
+        }
+
+        @Override
+        public String evaluate(Object item) throws XPathExpressionException {
+            XPathExpression compiledExpression = borrow();
+            try {
+                return compiledExpression.evaluate(item);
+            } finally {
+                pool.offer(compiledExpression);
+            }
+        }
+
+        @Override
+        public Object evaluate(InputSource source, QName returnType) throws XPathExpressionException {
+            XPathExpression compiledExpression = borrow();
+            try {
+                return compiledExpression.evaluate(source, returnType);
+            } finally {
+                pool.offer(compiledExpression);
+            }
+        }
+
+        @Override
+        public String evaluate(InputSource source) throws XPathExpressionException {
+            XPathExpression compiledExpression = borrow();
+            try {
+                return compiledExpression.evaluate(source);
+            } finally {
+                pool.offer(compiledExpression);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return expression;
+        }
     }
 }
@@ -0,0 +1,46 @@
+package permafrost.tundra.collection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class StringPoolTest {
+    @Test
+    public void testIntern() throws Exception {
+        StringPool pool = new StringPool(16, 4);
+
+        String first = new String("PartnerID");
+        String second = new String("PartnerID");
+
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+        assertEquals(1, pool.size());
+        assertEquals(24 + 40, pool.getBytesSaved());
+        assertEquals(null, pool.intern(null));
+    }
+
+    @Test
+    public void testInternValue() throws Exception {
+        StringPool pool = new StringPool(16, 4);
+
+        String shortValue = new String("abc");
+        String longValue = new String("abcde");
+
+        assertSame(shortValue, pool.internValue(shortValue));
+        assertSame(shortValue, pool.internValue(new String("abc")));
+        assertSame(longValue, pool.internValue(longValue));
+        assertTrue(pool.internValue(new String("abcde")) != longValue);
+        assertEquals(1, pool.internValue(1));
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        StringPool pool = new StringPool(4);
+        for (int i = 0; i < 100; i++) {
+            pool.intern("key" + i);
+        }
+        assertTrue(pool.size() <= 4);
+        assertTrue(pool.getEvictions() > 0);
+    }
+}
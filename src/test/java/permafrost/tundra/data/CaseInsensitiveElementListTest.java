@@ -47,4 +47,21 @@ public class CaseInsensitiveElementListTest {
         assertEquals(bandName, cursor.getValue());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void repeatedKeys() throws Exception {
+        ElementList<String, Object> list = new CaseInsensitiveElementList<Object>();
+        list.add(new Element<String, Object>("A", "1"));
+        list.add(new Element<String, Object>("b", "2"));
+        list.add(new Element<String, Object>("a", "3"));
+
+        IDataCursor cursor = list.getCursor();
+        assertTrue(cursor.first("a"));
+        assertEquals("1", cursor.getValue());
+        assertTrue(cursor.next("A"));
+        assertEquals("3", cursor.getValue());
+        assertFalse(cursor.next("a"));
+        assertTrue(cursor.last("B"));
+        assertEquals("2", cursor.getValue());
+        assertFalse(cursor.first("c"));
+    }
+}
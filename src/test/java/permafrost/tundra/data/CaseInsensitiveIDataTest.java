@@ -50,4 +50,46 @@ public class CaseInsensitiveIDataTest {
         cursor.destroy();
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testModification() throws Exception {
+        IData document = IDataFactory.create();
+        IData caseInsensitiveDocument = new CaseInsensitiveIData(document);
+
+        IDataCursor cursor = caseInsensitiveDocument.getCursor();
+        cursor.insertAfter("Content-Type", "text/plain");
+        assertEquals("text/plain", IDataUtil.getString(cursor, "content-type"));
+
+        cursor.insertAfter("X-Header", "1");
+        assertEquals("1", IDataUtil.getString(cursor, "x-HEADER"));
+
+        assertTrue(cursor.first("CONTENT-TYPE"));
+        assertTrue(cursor.delete());
+        assertFalse(cursor.first("content-type"));
+        assertEquals("1", IDataUtil.getString(cursor, "X-HEADER"));
+        cursor.destroy();
+    }
+
+    @Test
+    public void testManyKeys() throws Exception {
+        IData document = IDataFactory.create();
+        IDataCursor cursor = document.getCursor();
+        for (int i = 0; i < 1000; i++) {
+            cursor.insertAfter("Key" + i, i);
+        }
+        cursor.destroy();
+
+        IData caseInsensitiveDocument = new CaseInsensitiveIData(document);
+        cursor = caseInsensitiveDocument.getCursor();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, IDataUtil.get(cursor, "KEY" + i));
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            assertTrue(cursor.first("key" + i));
+            assertTrue(cursor.delete());
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i % 2 == 0 ? null : (Object)i, IDataUtil.get(cursor, "kEy" + i));
+        }
+        cursor.destroy();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import org.junit.Test;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CaseInsensitiveKeyIndexTest {
+    @Test
+    public void testPutGetRemove() throws Exception {
+        CaseInsensitiveKeyIndex index = new CaseInsensitiveKeyIndex(Locale.ENGLISH);
+
+        for (int i = 0; i < 1000; i++) {
+            index.put("Key" + i);
+        }
+        for (int i = 0; i < 1000; i += 2) {
+            index.remove("KEY" + i);
+        }
+        index.put("key1");
+
+        assertNull(index.get("key0"));
+        assertEquals("key1", index.get("KEY1"));
+        assertEquals("Key999", index.get("kEy999"));
+        assertNull(index.get("key998"));
+    }
+
+    @Test
+    public void testRepeatedPutAndRemove() throws Exception {
+        CaseInsensitiveKeyIndex index = new CaseInsensitiveKeyIndex(Locale.ENGLISH);
+        index.put("Stable");
+
+        // churn leaves tombstones behind, which must be purged rather than filling the table
+        for (int i = 0; i < 100000; i++) {
+            index.put("Key" + i);
+            index.remove("key" + i);
+        }
+
+        assertEquals("Stable", index.get("STABLE"));
+        assertNull(index.get("key99999"));
+    }
+
+    @Test
+    public void testGetWhileModifiedConcurrently() throws Exception {
+        final CaseInsensitiveKeyIndex index = new CaseInsensitiveKeyIndex(Locale.ENGLISH);
+        for (int i = 0; i < 64; i++) {
+            index.put("Stable" + i);
+        }
+
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicInteger failures = new AtomicInteger(0);
+
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                for (int i = 0; running.get(); i++) {
+                    index.put("Key" + i);
+                    if (i >= 32) index.remove("Key" + (i - 32));
+                }
+            }
+        });
+        writer.start();
+
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < 100000; j++) {
+                        String key = "STABLE" + (j % 64);
+                        if (!("Stable" + (j % 64)).equals(index.get(key))) failures.incrementAndGet();
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        running.set(false);
+        writer.join();
+
+        assertEquals(0, failures.get());
+    }
+}
@@ -0,0 +1,127 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import com.wm.data.IDataCursor;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConcurrentNavigableMapIDataTest {
+    private static ConcurrentNavigableMapIData<Object> createDocument() {
+        ConcurrentNavigableMapIData<Object> document = new ConcurrentNavigableMapIData<Object>();
+        document.put("order/1", "a");
+        document.put("order/2", "b");
+        document.put("order/3", "c");
+        document.put("orders", "d");
+        document.put("customer/1", "e");
+        return document;
+    }
+
+    private static List<String> keys(ConcurrentNavigableMapIData<?> document) {
+        List<String> keys = new ArrayList<String>();
+        IDataCursor cursor = document.getCursor();
+        while (cursor.next()) {
+            keys.add(cursor.getKey());
+        }
+        cursor.destroy();
+        return keys;
+    }
+
+    @Test
+    public void testPrefix() throws Exception {
+        ConcurrentNavigableMapIData<Object> document = createDocument();
+        ConcurrentNavigableMapIData<Object> view = document.prefix("order/");
+
+        assertEquals("[order/1, order/2, order/3]", keys(view).toString());
+
+        view.remove("order/2");
+        assertFalse(document.containsKey("order/2"));
+        document.put("order/4", "f");
+        assertEquals("order/4", view.lastKey());
+    }
+
+    @Test
+    public void testRange() throws Exception {
+        ConcurrentNavigableMapIData<Object> document = createDocument();
+
+        assertEquals("[order/2, order/3]", keys(document.range("order/2", "orders")).toString());
+        assertEquals("[order/2, order/3, orders]", keys(document.range("order/2", true, "orders", true)).toString());
+        assertEquals("[customer/1, order/1]", keys(document.range(null, "order/2")).toString());
+        assertEquals("customer/1", document.firstKey());
+    }
+
+    @Test
+    public void testComputeAndMerge() throws Exception {
+        ConcurrentNavigableMapIData<Object> document = createDocument();
+
+        Object value = document.computeIfAbsent("order/1", new ConcurrentMapEnvelope.Factory<String, Object>() {
+            public Object create(String key) {
+                throw new IllegalStateException("factory should not be called for a present key");
+            }
+        });
+        assertEquals("a", value);
+
+        ConcurrentMapEnvelope.Remapper<String, Object> appender = new ConcurrentMapEnvelope.Remapper<String, Object>() {
+            public Object remap(String key, Object value) {
+                return value == null ? "new" : value + "!";
+            }
+        };
+        assertEquals("a!", document.compute("order/1", appender));
+        assertEquals("new", document.compute("order/9", appender));
+
+        ConcurrentMapEnvelope.Merger<Object> remover = new ConcurrentMapEnvelope.Merger<Object>() {
+            public Object merge(Object oldValue, Object value) {
+                return null;
+            }
+        };
+        assertEquals("x", document.merge("other", "x", remover));
+        assertNull(document.merge("other", "y", remover));
+        assertFalse(document.containsKey("other"));
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws Exception {
+        final ConcurrentNavigableMapIData<Object> document = new ConcurrentNavigableMapIData<Object>();
+        final ConcurrentMapEnvelope.Merger<Object> adder = new ConcurrentMapEnvelope.Merger<Object>() {
+            public Object merge(Object oldValue, Object value) {
+                return (Integer)oldValue + (Integer)value;
+            }
+        };
+
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        document.increment("hits");
+                        document.merge("total", 1, adder);
+                        document.put("key/" + id + "/" + j, j);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        // cursors traverse a snapshot and must tolerate concurrent modification
+        int traversals = 0;
+        while (traversals < 10) {
+            IDataCursor cursor = document.getCursor();
+            while (cursor.next()) cursor.getValue();
+            cursor.destroy();
+            traversals++;
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(4000, document.getCount("hits"));
+        assertEquals(4000, document.get("total"));
+        assertEquals(1000, document.prefix("key/2/").size());
+        assertTrue(document.getCount("missing") == 0);
+    }
+}
@@ -0,0 +1,89 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import com.wm.data.IData;
+import org.junit.Test;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+public class IDataAggregatorTest {
+    private static IData[] records(int size) {
+        IData[] array = new IData[size];
+        for (int i = 0; i < size; i++) {
+            IDataMap map = new IDataMap();
+            map.put("region", i % 2 == 0 ? "north" : "south");
+            map.put("amount", "" + (i % 10));
+            map.put("customer", "c" + (i % 7));
+            array[i] = map;
+        }
+        return array;
+    }
+
+    private static IDataAggregation[] aggregations() {
+        return new IDataAggregation[] {
+            new IDataAggregation(IDataAggregateFunction.COUNT, null),
+            new IDataAggregation(IDataAggregateFunction.SUM, "amount"),
+            new IDataAggregation(IDataAggregateFunction.AVERAGE, "amount"),
+            new IDataAggregation(IDataAggregateFunction.MAXIMUM, "amount", "max", IDataComparisonType.INTEGER, null),
+            new IDataAggregation(IDataAggregateFunction.FIRST, "customer"),
+            new IDataAggregation(IDataAggregateFunction.LAST, "customer"),
+            new IDataAggregation(IDataAggregateFunction.DISTINCT_COUNT, "customer")
+        };
+    }
+
+    private static void assertGroups(IData[] result, int size) {
+        assertEquals(2, result.length);
+
+        IDataMap north = new IDataMap(result[0]);
+        assertEquals("north", new IDataMap((IData)north.get("group")).get("region"));
+        IDataMap aggregates = new IDataMap((IData)north.get("aggregates"));
+        assertEquals((long)(size / 2), aggregates.get("count"));
+        assertEquals(new BigDecimal(size / 10 * 20), IDataHelper.get(aggregates, "sum/amount"));
+        assertEquals(0, new BigDecimal("4").compareTo((BigDecimal)IDataHelper.get(aggregates, "average/amount")));
+        assertEquals("8", aggregates.get("max"));
+        assertEquals("c0", IDataHelper.get(aggregates, "first/customer"));
+        assertEquals("c" + ((size - 2) % 7), IDataHelper.get(aggregates, "last/customer"));
+        assertEquals(7L, IDataHelper.get(aggregates, "distinct-count/customer"));
+    }
+
+    @Test
+    public void testAggregateArray() throws Exception {
+        IDataComparisonCriterion[] by = IDataComparisonCriterion.of(new String[] { "region" });
+        assertGroups(IDataHelper.aggregate(records(100), by, true, aggregations()), 100);
+    }
+
+    @Test
+    public void testAggregateLargeArrayInParallel() throws Exception {
+        IDataComparisonCriterion[] by = IDataComparisonCriterion.of(new String[] { "region" });
+        assertGroups(IDataHelper.aggregate(records(50000), by, true, aggregations()), 50000);
+    }
+
+    @Test
+    public void testAggregateIterator() throws Exception {
+        IDataComparisonCriterion[] by = IDataComparisonCriterion.of(new String[] { "region" });
+        assertGroups(IDataHelper.aggregate(Arrays.asList(records(100)).iterator(), by, false, aggregations()), 100);
+    }
+
+    @Test
+    public void testAggregateWithoutGroupingOrRecords() throws Exception {
+        IData[] result = IDataHelper.aggregate(new IData[0], null, true, new IDataAggregation(IDataAggregateFunction.COUNT, null), new IDataAggregation(IDataAggregateFunction.SUM, "amount"));
+
+        assertEquals(1, result.length);
+        IDataMap aggregates = new IDataMap((IData)new IDataMap(result[0]).get("aggregates"));
+        assertEquals(0L, aggregates.get("count"));
+        assertNull(IDataHelper.get(aggregates, "sum/amount"));
+    }
+
+    @Test
+    public void testAggregationFromIData() throws Exception {
+        IDataMap document = new IDataMap();
+        document.put("function", "distinct-count");
+        document.put("key", "customer");
+
+        IDataAggregation aggregation = IDataAggregation.of(document);
+
+        assertEquals(IDataAggregateFunction.DISTINCT_COUNT, aggregation.getFunction());
+        assertEquals("distinct-count/customer", aggregation.getName());
+    }
+}
@@ -0,0 +1,128 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
+import org.junit.Test;
+
+public class IDataBatchTest {
+    private static IData createDocument() {
+        IData document = IDataFactory.create();
+        IDataCursor cursor = document.getCursor();
+        IDataUtil.put(cursor, "a", "1");
+        IData child = IDataFactory.create();
+        IDataCursor childCursor = child.getCursor();
+        IDataUtil.put(childCursor, "b", "2");
+        IDataUtil.put(childCursor, "c", "3");
+        childCursor.destroy();
+        IDataUtil.put(cursor, "x", child);
+        IData item = IDataFactory.create();
+        IDataCursor itemCursor = item.getCursor();
+        IDataUtil.put(itemCursor, "d", "4");
+        itemCursor.destroy();
+        IDataUtil.put(cursor, "list", new IData[] { item });
+        cursor.destroy();
+        return document;
+    }
+
+    @Test
+    public void testApplyMatchesSequentialOperations() throws Exception {
+        IData expected = createDocument();
+        IDataHelper.put(expected, "x/e", "5");
+        IDataHelper.put(expected, "y/z/f", "6");
+        IDataHelper.drop(expected, "x/b");
+        IDataHelper.rename(expected, "x/c", "y/z/g");
+        IDataHelper.copy(expected, "a", "x/a");
+        IDataHelper.put(expected, "list[0]/e", "7");
+        IDataHelper.put(expected, "x", "replaced");
+        IDataHelper.put(expected, "x/h", "8");
+
+        IDataBatch batch = new IDataBatch();
+        batch.put("x/e", "5").put("y/z/f", "6").remove("x/b").rename("x/c", "y/z/g").copy("a", "x/a");
+        batch.put("list[0]/e", "7").put("x", "replaced").put("x/h", "8");
+        IData actual = batch.apply(createDocument()).getDocument();
+
+        assertEquals(0, BasicIDataComparator.getInstance().compare(expected, actual));
+        assertEquals("8", IDataHelper.get(actual, "x/h"));
+        assertEquals("3", IDataHelper.get(actual, "y/z/g"));
+        assertNull(IDataHelper.get(actual, "x/c"));
+        assertEquals("7", IDataHelper.get(actual, "list[0]/e"));
+    }
+
+    @Test
+    public void testApplyReportsWhichOperationsTookEffect() throws Exception {
+        IDataBatch batch = new IDataBatch();
+        batch.remove("x/b").remove("x/missing").remove("missing/b").copy("missing", "a2").rename("a", "a2").put("n", null, false);
+
+        IDataBatch.Result result = batch.apply(createDocument());
+
+        assertEquals(6, result.size());
+        assertTrue(result.isApplied(0));
+        assertFalse(result.isApplied(1));
+        assertFalse(result.isApplied(2));
+        assertFalse(result.isApplied(3));
+        assertTrue(result.isApplied(4));
+        assertFalse(result.isApplied(5));
+        assertEquals(2, result.getAppliedCount());
+
+        IData document = result.getDocument();
+        assertEquals("1", IDataHelper.get(document, "a2"));
+        assertFalse(IDataHelper.exists(document, "a"));
+        assertFalse(IDataHelper.exists(document, "n"));
+    }
+
+    @Test
+    public void testApplyWithIndexedAndListKeys() throws Exception {
+        IDataBatch batch = new IDataBatch();
+        batch.remove("list/d").put("x/b(1)", "9").copy("x/b(1)", "k");
+
+        IDataBatch.Result result = batch.apply(createDocument());
+        IData document = result.getDocument();
+
+        assertEquals(3, result.getAppliedCount());
+        assertNull(IDataHelper.get(document, "list[0]/d"));
+        assertEquals("2", IDataHelper.get(document, "x/b"));
+        assertEquals("9", IDataHelper.get(document, "k"));
+    }
+
+    @Test
+    public void testApplyWithLiteralKeys() throws Exception {
+        IDataBatch batch = new IDataBatch(true);
+        batch.put("x/b", "literal").rename("a", "p/q");
+
+        IData document = batch.apply(null).getDocument();
+
+        IDataCursor cursor = document.getCursor();
+        assertEquals("literal", IDataUtil.getString(cursor, "x/b"));
+        assertTrue(cursor.first("p/q"));
+        assertNull(cursor.getValue());
+        assertFalse(cursor.first("p"));
+        cursor.destroy();
+    }
+
+    @Test
+    public void testApplyWithMissingSourceMatchesSequentialOperations() throws Exception {
+        IData expected = createDocument();
+        IDataHelper.copy(expected, "missing", "x/copied");
+        IDataHelper.rename(expected, "x/missing", "renamed");
+        IDataHelper.copy(expected, "x/missing", "a");
+
+        IDataBatch batch = new IDataBatch();
+        batch.copy("missing", "x/copied").rename("x/missing", "renamed").copy("x/missing", "a");
+        IDataBatch.Result result = batch.apply(createDocument());
+        IData actual = result.getDocument();
+
+        assertEquals(0, BasicIDataComparator.getInstance().compare(expected, actual));
+        assertEquals(0, result.getAppliedCount());
+        assertTrue(IDataHelper.exists(actual, "x/copied"));
+        assertNull(IDataHelper.get(actual, "x/copied"));
+        assertTrue(IDataHelper.exists(actual, "renamed"));
+        assertTrue(IDataHelper.exists(actual, "a"));
+        assertNull(IDataHelper.get(actual, "a"));
+    }
+}
@@ -0,0 +1,146 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import com.wm.data.IData;
+import com.wm.data.IDataFactory;
+import org.junit.Test;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+public class IDataBinaryParserTest {
+    @Test
+    public void testRoundTrip() throws Exception {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("Australia/Brisbane"));
+        calendar.setTimeInMillis(1450000000000L);
+
+        IDataMap child = new IDataMap();
+        child.put("string", "nested");
+
+        IDataMap document = new IDataMap();
+        document.put("string", "héllo wörld");
+        document.put("null", null);
+        document.put("bytes", new byte[] { 0, -1, 127 });
+        document.put("integer", -42);
+        document.put("long", Long.MAX_VALUE);
+        document.put("double", 3.25d);
+        document.put("boolean", true);
+        document.put("bigInteger", new BigInteger("-123456789012345678901234567890"));
+        document.put("bigDecimal", new BigDecimal("-1234.5600"));
+        document.put("date", new Date(1450000000000L));
+        document.put("calendar", calendar);
+        document.put("child", child);
+        document.put("list", new IData[] { child, null, child });
+        document.put("strings", new String[] { "a", null, "b" });
+        document.put("table", new String[][] { { "a", "b" }, null, {} });
+        document.put("objects", new Object[] { "a", 1, null });
+
+        byte[] bytes = IDataBinaryParser.getInstance().encodeToBytes(document);
+        IDataMap result = new IDataMap(IDataBinaryParser.getInstance().decodeFromBytes(bytes));
+
+        assertEquals("héllo wörld", result.get("string"));
+        assertTrue(result.containsKey("null"));
+        assertNull(result.get("null"));
+        assertArrayEquals(new byte[] { 0, -1, 127 }, (byte[])result.get("bytes"));
+        assertEquals(-42, result.get("integer"));
+        assertEquals(Long.MAX_VALUE, result.get("long"));
+        assertEquals(3.25d, result.get("double"));
+        assertEquals(true, result.get("boolean"));
+        assertEquals(new BigInteger("-123456789012345678901234567890"), result.get("bigInteger"));
+        assertEquals(new BigDecimal("-1234.5600"), result.get("bigDecimal"));
+        assertEquals(new Date(1450000000000L), result.get("date"));
+        Calendar resultCalendar = (Calendar)result.get("calendar");
+        assertEquals(1450000000000L, resultCalendar.getTimeInMillis());
+        assertEquals("Australia/Brisbane", resultCalendar.getTimeZone().getID());
+        assertEquals("nested", IDataHelper.get(result, "child/string"));
+        IData[] list = (IData[])result.get("list");
+        assertEquals(3, list.length);
+        assertNull(list[1]);
+        assertEquals("nested", IDataHelper.get(list[2], "string"));
+        assertArrayEquals(new String[] { "a", null, "b" }, (String[])result.get("strings"));
+        String[][] table = (String[][])result.get("table");
+        assertArrayEquals(new String[] { "a", "b" }, table[0]);
+        assertNull(table[1]);
+        assertEquals(0, table[2].length);
+        assertArrayEquals(new Object[] { "a", 1, null }, (Object[])result.get("objects"));
+    }
+
+    @Test
+    public void testRepeatedKeysAreWrittenOnce() throws Exception {
+        IData[] list = new IData[100];
+        for (int i = 0; i < list.length; i++) {
+            IDataMap item = new IDataMap();
+            item.put("aVeryLongKeyNameWhichShouldOnlyBeWrittenOnce", "same value");
+            list[i] = item;
+        }
+        IDataMap document = new IDataMap();
+        document.put("list", list);
+
+        byte[] bytes = IDataBinaryParser.getInstance().encodeToBytes(document);
+
+        assertTrue(bytes.length < 100 * 6);
+        IData[] result = (IData[])IDataHelper.get(IDataBinaryParser.getInstance().decodeFromBytes(bytes), "list");
+        assertEquals(100, result.length);
+        assertEquals("same value", IDataHelper.get(result[99], "aVeryLongKeyNameWhichShouldOnlyBeWrittenOnce"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnsupportedVersion() throws Exception {
+        IDataBinaryParser.getInstance().decodeFromBytes(new byte[] { 'T', 'I', 'D', 'B', 99, 18, 0 });
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotBinaryFormat() throws Exception {
+        IDataBinaryParser.getInstance().decodeFromBytes("<xml/>".getBytes("UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testLengthLongerThanInput() throws Exception {
+        IDataBinaryParser.getInstance().decodeFromBytes(new byte[] { 'T', 'I', 'D', 'B', 1, 19, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07 });
+    }
+
+    @Test(expected = IOException.class)
+    public void testNestingTooDeep() throws Exception {
+        // a document containing a single key whose value is an object array nested 1,000 levels deep
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(new byte[] { 'T', 'I', 'D', 'B', 1, 18, 2, 1, 'a' });
+        for (int i = 0; i < 1000; i++) {
+            bytes.write(new byte[] { 22, 1 });
+        }
+        bytes.write(new byte[] { 0, 0 });
+
+        IDataBinaryParser.getInstance().decodeFromBytes(bytes.toByteArray());
+    }
+
+    @Test
+    public void testRoundTripLargeValuesFromStream() throws Exception {
+        byte[] value = new byte[20000];
+        for (int i = 0; i < value.length; i++) {
+            value[i] = (byte)i;
+        }
+
+        IData[] list = new IData[10000];
+        for (int i = 0; i < list.length; i++) {
+            list[i] = IDataFactory.create();
+        }
+
+        IDataMap document = new IDataMap();
+        document.put("bytes", value);
+        document.put("list", list);
+
+        byte[] bytes = IDataBinaryParser.getInstance().encodeToBytes(document);
+        IDataMap result = new IDataMap(IDataBinaryParser.getInstance().decode(new BufferedInputStream(new ByteArrayInputStream(bytes))));
+
+        assertArrayEquals(value, (byte[])result.get("bytes"));
+        assertEquals(list.length, ((IData[])result.get("list")).length);
+    }
+}
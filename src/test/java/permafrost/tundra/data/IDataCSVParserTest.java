@@ -0,0 +1,100 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.wm.data.IData;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+public class IDataCSVParserTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testDecode() throws Exception {
+        String csv = "name,description,amount\r\n" +
+                "a,\"quoted, with delimiter\",1\r\n" +
+                "\r\n" +
+                "b,\"multi\nline \"\"quoted\"\"\",\n" +
+                "c,,3,extra";
+
+        IDataMap document = new IDataMap(IDataCSVParser.getInstance().decodeFromString(csv));
+        IData[] records = (IData[])document.get(IDataCSVParser.RECORDS_KEY);
+        assertEquals(3, records.length);
+
+        IDataMap first = new IDataMap(records[0]);
+        assertEquals("a", first.get("name"));
+        assertEquals("quoted, with delimiter", first.get("description"));
+        assertEquals("1", first.get("amount"));
+
+        IDataMap second = new IDataMap(records[1]);
+        assertEquals("multi\nline \"quoted\"", second.get("description"));
+        assertEquals("", second.get("amount"));
+
+        IDataMap third = new IDataMap(records[2]);
+        assertEquals("", third.get("description"));
+        assertEquals("extra", third.get("column4"));
+    }
+
+    @Test
+    public void testDecodeWithOptions() throws Exception {
+        IDataCSVParser parser = new IDataCSVParser('\t', '\'', '\\', false);
+        String tsv = "x\t'it\\'s\ttabbed'\ny\tz\\\tw";
+
+        IData[] records = (IData[])new IDataMap(parser.decodeFromString(tsv)).get(IDataCSVParser.RECORDS_KEY);
+        assertEquals(2, records.length);
+        assertEquals("x", new IDataMap(records[0]).get("column1"));
+        assertEquals("it's\ttabbed", new IDataMap(records[0]).get("column2"));
+        assertEquals("z\tw", new IDataMap(records[1]).get("column2"));
+        assertEquals("text/tab-separated-values", parser.getContentType());
+    }
+
+    @Test
+    public void testIterate() throws Exception {
+        StringBuilder builder = new StringBuilder("id,value\n");
+        for (int i = 0; i < 10000; i++) {
+            builder.append(i).append(",value ").append(i).append('\n');
+        }
+
+        IDataCSVParser.RecordIterator iterator = IDataCSVParser.getInstance().iterate(new ByteArrayInputStream(builder.toString().getBytes(UTF_8)), UTF_8);
+        int count = 0;
+        while (iterator.hasNext()) {
+            IDataMap record = new IDataMap(iterator.next());
+            assertEquals(String.valueOf(count), record.get("id"));
+            assertEquals("value " + count, record.get("value"));
+            count++;
+        }
+        assertEquals(10000, count);
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeUnterminatedQuote() throws Exception {
+        IDataCSVParser.getInstance().decodeFromString("a,b\n1,\"2");
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        IDataMap first = new IDataMap();
+        first.put("a", "1");
+        first.put("b", "x,\"y\"");
+        IDataMap second = new IDataMap();
+        second.put("c", "line\nbreak");
+        second.put("a", null);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        IDataCSVParser.getInstance().encode(outputStream, new IData[] { first, second }, UTF_8);
+        String csv = new String(outputStream.toByteArray(), UTF_8);
+
+        assertEquals("a,b,c\r\n1,\"x,\"\"y\"\"\",\r\n,,\"line\nbreak\"\r\n", csv);
+
+        IData[] records = (IData[])new IDataMap(IDataCSVParser.getInstance().decodeFromString(csv)).get(IDataCSVParser.RECORDS_KEY);
+        assertEquals(2, records.length);
+        assertEquals("x,\"y\"", new IDataMap(records[0]).get("b"));
+        assertEquals("line\nbreak", new IDataMap(records[1]).get("c"));
+        assertTrue(new IDataMap(records[1]).containsKey("b"));
+    }
+}
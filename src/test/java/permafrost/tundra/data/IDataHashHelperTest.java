@@ -0,0 +1,110 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
+import org.junit.Test;
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+public class IDataHashHelperTest {
+    private static IData createDocument(String name, Object amount) {
+        IData child = IDataFactory.create();
+        IDataCursor childCursor = child.getCursor();
+        IDataUtil.put(childCursor, "amount", amount);
+        IDataUtil.put(childCursor, "tags", new String[] { "x", "y" });
+        childCursor.destroy();
+
+        IData document = IDataFactory.create();
+        IDataCursor cursor = document.getCursor();
+        IDataUtil.put(cursor, "name", name);
+        IDataUtil.put(cursor, "child", child);
+        IDataUtil.put(cursor, "list", new IData[] { IDataHelper.duplicate(child), null });
+        cursor.destroy();
+        return document;
+    }
+
+    @Test
+    public void testHashIsConsistentWithComparator() throws Exception {
+        IData first = createDocument("a", new BigDecimal("1.50"));
+        IData second = createDocument("a", new BigDecimal("1.5"));
+        IData third = createDocument("b", new BigDecimal("1.5"));
+
+        assertEquals(0, BasicIDataComparator.getInstance().compare(first, second));
+        assertEquals(IDataHashHelper.hash(first), IDataHashHelper.hash(second));
+        assertNotEquals(IDataHashHelper.hash(first), IDataHashHelper.hash(third));
+        assertNotEquals(IDataHashHelper.hash(IDataFactory.create()), IDataHashHelper.hash((IData)null));
+        assertEquals(new IDataMap(first).hashCode(), new IDataMap(second).hashCode());
+    }
+
+    @Test
+    public void testCalendarHashIsIndependentOfTimeZone() throws Exception {
+        Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        utc.setTimeInMillis(1450000000000L);
+        Calendar brisbane = Calendar.getInstance(TimeZone.getTimeZone("Australia/Brisbane"));
+        brisbane.setTimeInMillis(1450000000000L);
+
+        IData first = createDocument("a", utc);
+        IData second = createDocument("a", brisbane);
+
+        assertEquals(0, BasicIDataComparator.getInstance().compare(first, second));
+        assertEquals(IDataHashHelper.hash(first), IDataHashHelper.hash(second));
+        assertTrue(IDataHashHelper.equal(first, second));
+    }
+
+    @Test
+    public void testPersistentHashMatchesAndTracksChanges() throws Exception {
+        IData document = createDocument("a", 1);
+        PersistentIData persistent = PersistentIData.of(document);
+
+        assertEquals(IDataHashHelper.hash(document), persistent.getStructuralHash());
+        assertEquals(IDataHashHelper.hash(document), IDataHashHelper.hash(persistent));
+
+        PersistentIData snapshot = persistent.snapshot();
+        IDataHelper.put(persistent, "child/amount", 2);
+        IDataHelper.put(document, "child/amount", 2);
+
+        assertEquals(IDataHashHelper.hash(document), persistent.getStructuralHash());
+        assertFalse(IDataHashHelper.equal(snapshot, persistent));
+        assertTrue(IDataHashHelper.equal(snapshot, PersistentIData.of(createDocument("a", 1))));
+
+        for (int i = 0; i < 100; i++) {
+            IDataHelper.put(persistent, "key" + i, i);
+            IDataHelper.put(document, "key" + i, i);
+        }
+        IDataHelper.drop(persistent, "key50");
+        IDataHelper.drop(document, "key50");
+        assertEquals(IDataHashHelper.hash(document), persistent.getStructuralHash());
+    }
+
+    @Test
+    public void testUnique() throws Exception {
+        IData first = createDocument("a", 1);
+        IData second = createDocument("b", 1);
+        IData[] output = IDataHashHelper.unique(new IData[] { first, createDocument("a", 1), second, null, first, null });
+
+        assertEquals(3, output.length);
+        assertSame(first, output[0]);
+        assertSame(second, output[1]);
+        assertEquals(null, output[2]);
+    }
+
+    @Test
+    public void testChanges() throws Exception {
+        IData previous = createDocument("a", 1);
+        IData current = createDocument("a", 2);
+        IDataHelper.put(current, "extra", "x");
+        IDataHelper.drop(current, "name");
+
+        assertArrayEquals(new String[] { "child/amount", "list", "extra", "name" }, IDataHashHelper.changes(previous, current));
+        assertEquals(0, IDataHashHelper.changes(previous, createDocument("a", 1)).length);
+    }
+}
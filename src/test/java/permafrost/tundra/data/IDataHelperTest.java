@@ -8,12 +8,16 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
 import permafrost.tundra.io.InputStreamHelper;
 import permafrost.tundra.xml.dom.DocumentHelper;
 import permafrost.tundra.xml.sax.InputSourceHelper;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.regex.Pattern;
 
 public class IDataHelperTest {
@@ -760,6 +764,55 @@ public class IDataHelperTest {
         assertEquals("99", third.get("integer"));
     }
 
+    @Test
+    public void testDuplicateLazy() throws Exception {
+        IDataMap child = new IDataMap();
+        child.put("c", "3");
+        IDataMap item = new IDataMap();
+        item.put("d", "4");
+        IDataMap original = new IDataMap();
+        original.put("a", "1");
+        original.put("child", child);
+        original.put("list", new IData[] { item });
+
+        IData duplicate = IDataHelper.duplicate(original, true, false, true);
+
+        IDataHelper.put(duplicate, "a", "2");
+        IDataHelper.put(duplicate, "child/c", "5");
+        IData[] list = (IData[])IDataHelper.get(duplicate, "list");
+        IDataHelper.put(list[0], "d", "6");
+        list[0] = IDataFactory.create();
+
+        assertEquals("2", IDataHelper.get(duplicate, "a"));
+        assertEquals("5", IDataHelper.get(duplicate, "child/c"));
+        assertEquals("1", original.get("a"));
+        assertEquals("3", child.get("c"));
+        assertEquals("4", item.get("d"));
+        assertSame(item, ((IData[])original.get("list"))[0]);
+    }
+
+    @Test
+    public void testSortLargeArrayIsStable() throws Exception {
+        int size = 20000;
+        IData[] array = new IData[size];
+        for (int i = 0; i < size; i++) {
+            IDataMap map = new IDataMap();
+            map.put("group", "" + (i % 7));
+            map.put("index", i);
+            array[i] = map;
+        }
+
+        IData[] result = IDataHelper.sort(array, new IDataComparisonCriterion("group", "integer", true));
+
+        assertEquals(size, result.length);
+        for (int i = 1; i < size; i++) {
+            IDataMap previous = new IDataMap(result[i - 1]), current = new IDataMap(result[i]);
+            int previousGroup = Integer.parseInt((String)previous.get("group")), currentGroup = Integer.parseInt((String)current.get("group"));
+            assertTrue(previousGroup >= currentGroup);
+            if (previousGroup == currentGroup) assertTrue((Integer)previous.get("index") < (Integer)current.get("index"));
+        }
+    }
+
     @Test
     public void testSortWithMultipleStringKeysAscending() throws Exception {
         IData[] array = new IData[6];
@@ -1263,6 +1316,89 @@ public class IDataHelperTest {
         assertArrayEquals(expected, (Object[])IDataHelper.get(parent, "a/c"));
     }
 
+    @Test
+    public void testGroupInFirstSeenOrder() throws Exception {
+        IData[] array = new IData[5];
+        String[] values = { "c", "a", "c", "b", "a" };
+        for (int i = 0; i < array.length; i++) {
+            IDataMap map = new IDataMap();
+            map.put("key", values[i]);
+            map.put("index", i);
+            array[i] = map;
+        }
+
+        IData[] unsorted = IDataHelper.group(array, false, "key");
+        assertEquals(3, unsorted.length);
+        assertEquals("c", new IDataMap((IData)new IDataMap(unsorted[0]).get("group")).get("key"));
+        assertEquals("a", new IDataMap((IData)new IDataMap(unsorted[1]).get("group")).get("key"));
+        assertEquals("b", new IDataMap((IData)new IDataMap(unsorted[2]).get("group")).get("key"));
+        IData[] items = (IData[])new IDataMap(unsorted[0]).get("items");
+        assertEquals(2, items.length);
+        assertEquals(0, new IDataMap(items[0]).get("index"));
+        assertEquals(2, new IDataMap(items[1]).get("index"));
+
+        IData[] sorted = IDataHelper.group(array, "key");
+        assertEquals(3, sorted.length);
+        assertEquals("a", new IDataMap((IData)new IDataMap(sorted[0]).get("group")).get("key"));
+        assertEquals("b", new IDataMap((IData)new IDataMap(sorted[1]).get("group")).get("key"));
+        assertEquals("c", new IDataMap((IData)new IDataMap(sorted[2]).get("group")).get("key"));
+    }
+
+    @Test
+    public void testGroupByDecimalWithDifferentScales() throws Exception {
+        int size = 20000;
+        IData[] array = new IData[size];
+        for (int i = 0; i < size; i++) {
+            IDataMap map = new IDataMap();
+            map.put("amount", (i % 3) + (i % 2 == 0 ? ".0" : ".00"));
+            map.put("currency", i % 5 == 0 ? "AUD" : "USD");
+            array[i] = map;
+        }
+
+        IDataMap by = new IDataMap();
+        by.put("key", "amount");
+        by.put("type", "decimal");
+        IDataMap thenBy = new IDataMap();
+        thenBy.put("key", "currency");
+        IDataMap then = new IDataMap();
+        then.put("by", new IData[] { thenBy });
+        IDataMap criteria = new IDataMap();
+        criteria.put("by", new IData[] { by });
+        criteria.put("then", then);
+
+        IData[] groups = IDataHelper.group(array, criteria);
+
+        assertEquals(3, groups.length);
+        int total = 0;
+        for (IData group : groups) {
+            IData[] nested = (IData[])new IDataMap(group).get("then");
+            assertEquals(2, nested.length);
+            assertEquals("AUD", new IDataMap((IData)new IDataMap(nested[0]).get("by")).get("currency"));
+            for (IData child : nested) {
+                total += ((IData[])new IDataMap(child).get("items")).length;
+            }
+        }
+        assertEquals(size, total);
+    }
+
+    @Test
+    public void testUniqueInFirstSeenOrder() throws Exception {
+        IData[] array = new IData[4];
+        String[] values = { "z", "y", "z", "x" };
+        for (int i = 0; i < array.length; i++) {
+            IDataMap map = new IDataMap();
+            map.put("key", values[i]);
+            array[i] = map;
+        }
+
+        IData[] result = IDataHelper.unique(array, false, "key");
+
+        assertEquals(3, result.length);
+        assertSame(array[0], result[0]);
+        assertSame(array[1], result[1]);
+        assertSame(array[3], result[2]);
+    }
+
     @Test
     public void testUniqueWithOneKey() throws Exception {
         IData[] array = new IData[6];
@@ -1445,6 +1581,28 @@ public class IDataHelperTest {
         assertEquals("z", fifth.get("key3"));
     }
 
+    @Test
+    public void testUniqueWithNoKeysAndManyDuplicates() throws Exception {
+        IData[] array = new IData[1000];
+
+        for (int i = 0; i < array.length; i++) {
+            IDataMap item = new IDataMap();
+            item.put("key1", "" + (9 - i % 10));
+            item.put("key2", "" + (i % 2));
+            array[i] = item;
+        }
+
+        IData[] result = IDataHelper.unique(array);
+
+        assertEquals(10, result.length);
+        for (int i = 0; i < result.length; i++) {
+            IDataMap item = IDataMap.of(result[i]);
+            assertEquals("" + i, item.get("key1"));
+            assertEquals("" + ((9 - i) % 2), item.get("key2"));
+            assertSame(array[9 - i], result[i]);
+        }
+    }
+
     @Test
     public void testGetLeafValuesForIData() throws Exception {
         String[] expected = new String[] { "1", "2", "3", "4", "6" };
@@ -1496,6 +1654,90 @@ public class IDataHelperTest {
         assertArrayEquals(expected, actual);
     }
 
+    @Test
+    public void testIterateLeafValues() throws Exception {
+        IDataMap parent = new IDataMap();
+        parent.put("a", "1");
+
+        IDataMap child = new IDataMap();
+        child.put("c", "2");
+        child.put("d", new String[][] { { "3", null }, { "4" } });
+        child.put("e", new Integer("5"));
+        child.put("f", new IData[] { IDataFactory.create(), null });
+
+        parent.put("b", child);
+        parent.put("g", new IData[] { child, null });
+
+        assertArrayEquals(IDataHelper.getLeafValues(parent), toArray(IDataHelper.iterateLeafValues(parent)));
+        assertArrayEquals(IDataHelper.getLeafValues(parent, String.class), toArray(IDataHelper.iterateLeafValues(parent, String.class)));
+        assertArrayEquals(IDataHelper.getLeafValues(parent, IData.class), toArray(IDataHelper.iterateLeafValues(parent, IData.class)));
+
+        IData[] array = new IData[] { parent, null, child };
+        assertArrayEquals(IDataHelper.getLeafValues(array, Integer.class), toArray(IDataHelper.iterateLeafValues(array, Integer.class)));
+    }
+
+    @Test
+    public void testIterateLeafValuesStopsEarly() throws Exception {
+        IDataMap document = new IDataMap();
+        IDataMap current = document;
+        for (int i = 0; i < 10000; i++) {
+            current.put("value", i);
+            IDataMap child = new IDataMap();
+            current.put("child", child);
+            current = child;
+        }
+
+        IDataLeafIterator iterator = IDataHelper.iterateLeafValues(document);
+        assertEquals(0, iterator.next());
+        assertEquals(1, iterator.next());
+        iterator.close();
+        assertTrue(!iterator.hasNext());
+
+        int count = 0;
+        for (Iterator<Object> deep = IDataHelper.iterateLeafValues(document); deep.hasNext(); deep.next()) {
+            count++;
+        }
+        assertEquals(10000, count);
+    }
+
+    @Test
+    public void testIterateFlattened() throws Exception {
+        IDataMap document = new IDataMap();
+        document.put("a", new String[][] { { "1", null }, {}, { "2" } });
+        document.put("b", null);
+        document.put("c", "3");
+
+        assertArrayEquals(IDataHelper.flatten(document, true, "a", "b", "c", "d"), toArray(IDataHelper.iterateFlattened(document, true, "a", "b", "c", "d")));
+        assertArrayEquals(IDataHelper.flatten(document, false, "a", "b", "c", "d"), toArray(IDataHelper.iterateFlattened(document, false, "a", "b", "c", "d")));
+    }
+
+    @Test
+    public void testIterateKeysAndValues() throws Exception {
+        IDataMap first = new IDataMap();
+        first.put("a", "1");
+        first.put("b", "2");
+        IDataMap second = new IDataMap();
+        second.put("c", "3");
+        second.put("a", "4");
+
+        IData[] array = new IData[] { first, null, second };
+
+        assertArrayEquals(IDataHelper.getKeys(array, (Pattern)null), toArray(IDataHelper.iterateKeys(array, null)));
+        assertArrayEquals(IDataHelper.getKeys(array, Pattern.compile("[ac]")), toArray(IDataHelper.iterateKeys(array, Pattern.compile("[ac]"))));
+        assertArrayEquals(new Object[] { "1", "default", "4" }, toArray(IDataHelper.iterateValues(array, "a", "default")));
+    }
+
+    /**
+     * Drains the given iterator into an array.
+     */
+    private static Object[] toArray(Iterator<?> iterator) {
+        List<Object> list = new ArrayList<Object>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+        return list.toArray();
+    }
+
     @Test
     public void testJoin() throws Exception {
         IDataMap map = new IDataMap();
@@ -0,0 +1,109 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import com.wm.data.IData;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IDataJSONParserTest {
+    @Test
+    public void testDecode() throws Exception {
+        String json = "{\"string\": \"a\\\"b\\u00e9\\n\", \"integer\": -12, \"big\": 123456789012345678901234567890, " +
+                "\"decimal\": 1.50e2, \"true\": true, \"null\": null, \"child\": {\"x\": [1, \"two\", null]}, " +
+                "\"list\": [{\"a\": 1}, {\"a\": 2}], \"strings\": [\"x\", \"y\"], \"empty\": []}";
+
+        IDataMap document = new IDataMap(IDataJSONParser.getInstance().decodeFromString(json));
+
+        assertEquals("a\"bé\n", document.get("string"));
+        assertEquals(-12L, document.get("integer"));
+        assertEquals(new BigInteger("123456789012345678901234567890"), document.get("big"));
+        assertEquals(new BigDecimal("1.50e2"), document.get("decimal"));
+        assertEquals(true, document.get("true"));
+        assertTrue(document.containsKey("null"));
+        assertNull(document.get("null"));
+        assertArrayEquals(new Object[] { 1L, "two", null }, (Object[])IDataHelper.get(document, "child/x"));
+        IData[] list = (IData[])document.get("list");
+        assertEquals(2, list.length);
+        assertEquals(2L, IDataHelper.get(list[1], "a"));
+        assertArrayEquals(new String[] { "x", "y" }, (String[])document.get("strings"));
+        assertEquals(0, ((Object[])document.get("empty")).length);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        String json = "{\"a\":\"line\\nbreak\",\"b\":[{\"c\":1},{\"c\":2.5}],\"d\":[\"x\",null],\"e\":{},\"f\":false}";
+
+        IData document = IDataJSONParser.getInstance().decodeFromString(json);
+
+        assertEquals(json, IDataJSONParser.getInstance().encodeToString(document));
+    }
+
+    @Test
+    public void testTopLevelArray() throws Exception {
+        String json = "[{\"a\":1},{\"a\":2}]";
+
+        IData document = IDataJSONParser.getInstance().decodeFromString(json);
+
+        assertEquals(2, ((IData[])IDataHelper.get(document, IDataJSONParser.ROOT_ARRAY_KEY, true)).length);
+        assertEquals(json, IDataJSONParser.getInstance().encodeToString(document));
+    }
+
+    @Test
+    public void testDecodeWithHandler() throws Exception {
+        String json = "{\"header\": {\"count\": 3}, \"records\": [{\"id\": 1}, {\"id\": 2}, {\"id\": 3}], \"trailer\": \"end\"}";
+        final List<Object> records = new ArrayList<Object>();
+
+        IData document = IDataJSONParser.getInstance().decode(new ByteArrayInputStream(json.getBytes("UTF-8")), null, "records", new IDataJSONParser.Handler() {
+            public void handle(int index, Object item) {
+                assertEquals(records.size(), index);
+                records.add(item);
+            }
+        });
+
+        assertEquals(3, records.size());
+        assertEquals(3L, IDataHelper.get((IData)records.get(2), "id"));
+        assertEquals(3L, IDataHelper.get(document, "header/count"));
+        assertEquals("end", IDataHelper.get(document, "trailer"));
+        assertNull(IDataHelper.get(document, "records"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidJSON() throws Exception {
+        IDataJSONParser.getInstance().decodeFromString("{\"a\": 1,}");
+    }
+
+    @Test(expected = IOException.class)
+    public void testTrailingData() throws Exception {
+        IDataJSONParser.getInstance().decodeFromString("{\"a\": 1} {}");
+    }
+
+    @Test
+    public void testNestingWithinLimit() throws Exception {
+        IData document = IDataJSONParser.getInstance().decodeFromString("{\"a\": " + nested(256) + "}");
+        Object value = IDataHelper.get(document, "a");
+        for (int i = 1; i < 256; i++) {
+            value = ((Object[])value)[0];
+        }
+        assertEquals(0, ((Object[])value).length);
+    }
+
+    @Test(expected = IOException.class)
+    public void testNestingTooDeep() throws Exception {
+        IDataJSONParser.getInstance().decodeFromString("{\"a\": " + nested(100000) + "}");
+    }
+
+    private static String nested(int depth) {
+        StringBuilder builder = new StringBuilder(depth * 2);
+        for (int i = 0; i < depth; i++) builder.append('[');
+        for (int i = 0; i < depth; i++) builder.append(']');
+        return builder.toString();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class IDataPathTest {
+    @Test
+    public void testOfIsCached() throws Exception {
+        assertSame(IDataPath.of("a/b[0]/c(1)"), IDataPath.of("a/b[0]/c(1)"));
+        assertSame(IDataPath.of("a/b", true), IDataPath.of("a/b", true));
+        assertFalse(IDataPath.of("a/b", true) == IDataPath.of("a/b", false));
+        assertNull(IDataPath.of(null));
+    }
+
+    @Test
+    public void testCompileIsNotCached() throws Exception {
+        IDataPath path = IDataPath.compile("a/b[1]/c", false);
+
+        assertFalse(path == IDataPath.compile("a/b[1]/c", false));
+        assertFalse(path == IDataPath.of("a/b[1]/c"));
+        assertTrue(path.isFullyQualified());
+        assertEquals(3, path.length());
+        assertEquals("a/b[1]/c", path.toString());
+        assertNull(IDataPath.compile(null, false));
+    }
+
+    @Test
+    public void testParts() throws Exception {
+        IDataPath path = IDataPath.of("a/b[1]/c(2)");
+
+        assertTrue(path.isFullyQualified());
+        assertFalse(path.isAbsolute());
+        assertEquals(3, path.length());
+        assertEquals("a", path.getPart(0).getKey());
+        assertTrue(path.getPart(1).hasArrayIndex());
+        assertEquals(1, path.getPart(1).getIndex());
+        assertTrue(path.getPart(2).hasKeyIndex());
+        assertEquals(2, path.getPart(2).getIndex());
+        assertEquals("a/b[1]/c(2)", path.toString());
+    }
+
+    @Test
+    public void testIsFullyQualified() throws Exception {
+        String[] keys = { "a", "a/b", "/a", "a[0]", "a(1)", "a[x]", "a]", "a)", "[0]b", "" };
+        for (String key : keys) {
+            assertEquals(key, IDataPath.of(key).isFullyQualified(), IDataPath.isFullyQualified(key, false));
+            assertFalse(key, IDataPath.isFullyQualified(key, true));
+        }
+        assertFalse(IDataPath.isFullyQualified(null, false));
+    }
+
+    @Test
+    public void testLiteral() throws Exception {
+        IDataPath path = IDataPath.of("a/b[1]", true);
+
+        assertFalse(path.isFullyQualified());
+        assertEquals(1, path.length());
+        assertEquals("a/b[1]", path.getPart(0).getKey());
+
+        IData document = path.put(null, "1");
+        assertEquals("1", new IDataMap(document).get("a/b[1]"));
+    }
+
+    @Test
+    public void testPutAndGetReused() throws Exception {
+        IDataPath path = IDataPath.of("a/b/c");
+        IData document = path.put(null, "1");
+        path.put(document, "2");
+
+        assertEquals("2", path.get(document));
+        assertEquals("2", IDataHelper.get(document, "a/b/c"));
+        assertTrue(path.exists(document));
+        assertArrayEquals(new Object[] { "2" }, path.getAsArray(document));
+
+        assertEquals("2", path.remove(document));
+        assertFalse(path.exists(document));
+    }
+
+    @Test
+    public void testAbsolute() throws Exception {
+        IDataMap pipeline = new IDataMap();
+        pipeline.put("a", "1");
+
+        IDataPath path = IDataPath.of("/a");
+
+        assertTrue(path.isAbsolute());
+        assertEquals("1", path.get(pipeline, new IDataMap()));
+    }
+
+    @Test
+    public void testArrayIndex() throws Exception {
+        IDataPath path = IDataPath.of("a[1]/b");
+        IData document = path.put(null, "1");
+
+        assertEquals("1", path.get(document));
+        assertEquals(1, path.size(document));
+        assertNull(IDataPath.of("a[0]/b").get(document));
+    }
+}
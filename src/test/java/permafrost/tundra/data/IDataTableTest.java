@@ -0,0 +1,114 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import org.junit.Test;
+import java.util.Map;
+
+public class IDataTableTest {
+    private static IData record(String name, Object amount, Object price) {
+        IDataMap record = new IDataMap();
+        record.put("name", name);
+        if (amount != null) record.put("amount", amount);
+        record.put("price", price);
+        return record;
+    }
+
+    private static IData[] createRecords() {
+        return new IData[] {
+            record("c", 3L, 1.5),
+            record("a", 1L, null),
+            null,
+            record("b", null, 2.5),
+            record("a", 2L, 0.5)
+        };
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        IData[] records = createRecords();
+        IDataTable table = IDataTable.of(records);
+
+        assertEquals(5, table.size());
+        assertArrayEquals(new String[] { "name", "amount", "price" }, table.getKeys());
+
+        IData[] output = table.toIDataArray();
+        assertEquals(5, output.length);
+        assertNull(output[2]);
+        assertEquals(3L, new IDataMap(output[0]).get("amount"));
+        assertEquals(1.5, new IDataMap(output[0]).get("price"));
+        assertFalse(new IDataMap(output[3]).containsKey("amount"));
+        assertTrue(new IDataMap(output[1]).containsKey("price"));
+        assertNull(new IDataMap(output[1]).get("price"));
+    }
+
+    @Test
+    public void testRow() throws Exception {
+        IDataTable table = IDataTable.of(createRecords());
+
+        assertNull(table.getRow(2));
+
+        IData row = table.getRow(3);
+        assertEquals("b", IDataHelper.get(row, "name"));
+        assertNull(IDataHelper.get(row, "amount"));
+
+        IDataCursor cursor = row.getCursor();
+        assertTrue(cursor.next());
+        assertEquals("name", cursor.getKey());
+        assertTrue(cursor.next());
+        assertEquals("price", cursor.getKey());
+        assertEquals(2.5, cursor.getValue());
+        assertFalse(cursor.next());
+        cursor.destroy();
+
+        assertArrayEquals(new Object[] { "c", "a", "x", "b", "a" }, table.getValues("name", "x"));
+    }
+
+    @Test
+    public void testSort() throws Exception {
+        IDataTable table = IDataTable.of(createRecords());
+
+        IDataTable sorted = table.sort(new IDataComparisonCriterion("amount"));
+        assertArrayEquals(new Object[] { null, null, 1L, 2L, 3L }, sorted.getValues("amount"));
+        assertEquals("b", IDataHelper.get(sorted.getRow(1), "name"));
+
+        sorted = table.sort(new IDataComparisonCriterion("name", true), new IDataComparisonCriterion("price"));
+        assertArrayEquals(new Object[] { "c", "b", "a", "a", null }, sorted.getValues("name"));
+        assertArrayEquals(new Object[] { 1.5, 2.5, null, 0.5, null }, sorted.getValues("price"));
+    }
+
+    @Test
+    public void testGroupAndUnique() throws Exception {
+        IDataTable table = IDataTable.of(createRecords());
+
+        Map<IDataCompoundKey, IDataTable> groups = table.group(IDataComparisonCriterion.of(new String[] { "name" }), true);
+        assertEquals(3, groups.size());
+
+        IDataCompoundKey[] keys = groups.keySet().toArray(new IDataCompoundKey[0]);
+        assertEquals("a", keys[0].getValue(0));
+        assertEquals(2, groups.get(keys[0]).size());
+        assertArrayEquals(new Object[] { 1L, 2L }, groups.get(keys[0]).getValues("amount"));
+
+        IDataTable unique = table.unique(IDataComparisonCriterion.of(new String[] { "name" }), false);
+        assertArrayEquals(new Object[] { "c", "a", "b" }, unique.getValues("name"));
+    }
+
+    @Test
+    public void testProjectAndFilter() throws Exception {
+        IDataTable table = IDataTable.of(createRecords());
+
+        IDataTable projected = table.project("price", "missing", "name");
+        assertArrayEquals(new String[] { "price", "name" }, projected.getKeys());
+        IDataMap first = new IDataMap(projected.toIDataArray()[0]);
+        assertEquals(2, first.size());
+
+        IDataTable filtered = table.filter("name", "a");
+        assertEquals(2, filtered.size());
+        assertArrayEquals(new Object[] { 1L, 2L }, filtered.getValues("amount"));
+    }
+}
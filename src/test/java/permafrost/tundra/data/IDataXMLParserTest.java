@@ -0,0 +1,120 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import org.junit.Test;
+import permafrost.tundra.collection.StringPool;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class IDataXMLParserTest {
+    @Test
+    public void testDecode() throws Exception {
+        String xml = "<?xml version=\"1.0\"?>\n<!-- comment -->\n<a:root xmlns:a=\"urn:a\" z=\"2\" b=\"1\">\n" +
+                "  <item>one</item>\n  <item id=\"2\">two</item>\n  <empty/>\n" +
+                "  <child><grandchild><![CDATA[<x>]]> &amp; y</grandchild></child>\n</a:root>";
+
+        IDataMap document = new IDataMap(IDataXMLParser.getInstance().decodeFromString(xml));
+        assertEquals(1, document.size());
+
+        IDataMap root = new IDataMap((IData)document.get("a:root"));
+        assertEquals(list("item", "item", "empty", "child", "@b", "@xmlns:a", "@z"), getKeys(root));
+        assertEquals("1", root.get("@b"));
+        assertEquals("urn:a", root.get("@xmlns:a"));
+        assertFalse(root.containsKey("*body"));
+
+        IDataCursor cursor = root.getCursor();
+        assertTrue(cursor.first("item"));
+        assertEquals("one", cursor.getValue());
+        assertTrue(cursor.next("item"));
+        IDataMap second = new IDataMap((IData)cursor.getValue());
+        assertEquals("2", second.get("@id"));
+        assertEquals("two", second.get("*body"));
+        cursor.destroy();
+
+        assertTrue(root.containsKey("empty"));
+        assertEquals(null, root.get("empty"));
+
+        IDataMap child = new IDataMap((IData)root.get("child"));
+        assertEquals("<x> & y", child.get("grandchild"));
+    }
+
+    @Test
+    public void testDecodeWithStringPool() throws Exception {
+        String xml = "<root><record id=\"1\"><PartnerID>ACME</PartnerID></record><record id=\"2\"><PartnerID>ACME</PartnerID></record></root>";
+        StringPool pool = new StringPool();
+
+        IDataMap document = new IDataMap(new IDataXMLParser(pool).decodeFromString(xml));
+        IDataMap root = new IDataMap((IData)document.get("root"));
+
+        List<String> keys = new ArrayList<String>();
+        List<Object> values = new ArrayList<Object>();
+        IDataCursor cursor = root.getCursor();
+        while (cursor.next("record")) {
+            IDataCursor recordCursor = ((IData)cursor.getValue()).getCursor();
+            while (recordCursor.next()) {
+                keys.add(recordCursor.getKey());
+                values.add(recordCursor.getValue());
+            }
+            recordCursor.destroy();
+        }
+        cursor.destroy();
+
+        assertEquals(list("PartnerID", "@id", "PartnerID", "@id"), keys);
+        assertTrue(keys.get(0) == keys.get(2));
+        assertTrue(keys.get(1) == keys.get(3));
+        assertTrue(values.get(0) == values.get(2));
+        assertTrue(pool.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void testDecodeTextOnlyRoot() throws Exception {
+        IDataMap document = new IDataMap(IDataXMLParser.getInstance().decodeFromString("<root>text</root>"));
+        IDataMap root = new IDataMap((IData)document.get("root"));
+        assertArrayEquals(new String[] { "*body" }, getKeys(root).toArray(new String[0]));
+        assertEquals("text", root.get("*body"));
+    }
+
+    @Test
+    public void testDecodeStreamIsClosed() throws Exception {
+        final boolean[] closed = new boolean[1];
+        ByteArrayInputStream inputStream = new ByteArrayInputStream("<root/>".getBytes("UTF-8")) {
+            @Override
+            public void close() throws IOException {
+                closed[0] = true;
+                super.close();
+            }
+        };
+
+        IData document = IDataXMLParser.getInstance().decode(inputStream);
+        assertTrue(new IDataMap(document).containsKey("root"));
+        assertTrue(closed[0]);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDecodeMalformed() throws Exception {
+        IDataXMLParser.getInstance().decodeFromString("<root><child></root>");
+    }
+
+    private static List<String> getKeys(IData document) {
+        List<String> keys = new ArrayList<String>();
+        IDataCursor cursor = document.getCursor();
+        while (cursor.next()) {
+            keys.add(cursor.getKey());
+        }
+        cursor.destroy();
+        return keys;
+    }
+
+    private static List<String> list(String... values) {
+        List<String> list = new ArrayList<String>();
+        for (String value : values) list.add(value);
+        return list;
+    }
+}
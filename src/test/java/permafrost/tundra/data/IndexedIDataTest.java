@@ -0,0 +1,240 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataIndexCursor;
+import com.wm.data.IDataUtil;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class IndexedIDataTest {
+    @Test
+    public void testPutAndGet() throws Exception {
+        IData document = IndexedIData.create();
+        IDataCursor cursor = document.getCursor();
+        for (int i = 0; i < 1000; i++) {
+            IDataUtil.put(cursor, "key" + i, i);
+        }
+        IDataUtil.put(cursor, "key500", "replaced");
+        cursor.destroy();
+
+        cursor = document.getCursor();
+        assertEquals(0, IDataUtil.get(cursor, "key0"));
+        assertEquals("replaced", IDataUtil.get(cursor, "key500"));
+        assertEquals(999, IDataUtil.get(cursor, "key999"));
+        assertNull(IDataUtil.get(cursor, "key1000"));
+        cursor.destroy();
+
+        assertEquals(1000, IDataHelper.size(document));
+    }
+
+    @Test
+    public void testPreservesOrderAndDuplicateKeys() throws Exception {
+        IData document = IndexedIData.create();
+        IDataCursor cursor = document.getCursor();
+        cursor.insertAfter("a", "1");
+        cursor.insertAfter("b", "2");
+        cursor.insertAfter("a", "3");
+        cursor.insertAfter("c", "4");
+        cursor.insertAfter("a", "5");
+
+        assertTrue(cursor.first("a"));
+        assertEquals("1", cursor.getValue());
+        assertTrue(cursor.next("a"));
+        assertEquals("3", cursor.getValue());
+        assertTrue(cursor.next("a"));
+        assertEquals("5", cursor.getValue());
+        assertFalse(cursor.next("a"));
+
+        assertTrue(cursor.last("a"));
+        assertTrue(cursor.previous("a"));
+        assertEquals("3", cursor.getValue());
+
+        assertTrue(cursor.first("c"));
+        assertTrue(cursor.previous("a"));
+        assertEquals("3", cursor.getValue());
+        assertTrue(cursor.next("a"));
+        assertEquals("5", cursor.getValue());
+        cursor.destroy();
+
+        assertEquals("1", IDataHelper.get(document, "a(0)"));
+        assertEquals("3", IDataHelper.get(document, "a(1)"));
+        assertEquals("5", IDataHelper.get(document, "a(2)"));
+    }
+
+    @Test
+    public void testIndexMaintainedAfterStructuralChanges() throws Exception {
+        IData document = IndexedIData.create();
+        IDataCursor cursor = document.getCursor();
+        cursor.insertAfter("a", "1");
+        cursor.insertAfter("b", "2");
+        cursor.insertAfter("c", "3");
+
+        assertTrue(cursor.first("b"));
+        assertTrue(cursor.delete());
+        assertTrue(cursor.next());
+        assertEquals("c", cursor.getKey());
+
+        cursor.insertBefore("d", "4");
+        assertEquals("d", cursor.getKey());
+        assertTrue(cursor.first("c"));
+        cursor.setKey("e");
+        assertFalse(cursor.first("c"));
+        assertTrue(cursor.first("e"));
+        assertEquals("3", cursor.getValue());
+        assertFalse(cursor.first("b"));
+        cursor.destroy();
+
+        assertEquals("{ a = 1, d = 4, e = 3 }", document.toString());
+    }
+
+    @Test
+    public void testDeleteManyMiddleElements() throws Exception {
+        IndexedIData document = new IndexedIData();
+        List<String> expected = new ArrayList<String>();
+        IDataCursor cursor = document.getCursor();
+        for (int i = 0; i < 2000; i++) {
+            cursor.insertAfter("key" + (i % 100), i);
+            expected.add("key" + (i % 100));
+        }
+
+        assertTrue(cursor.first("key0"));
+        while (cursor.first("key7")) {
+            assertTrue(cursor.delete());
+        }
+        while (expected.remove("key7")) {}
+
+        for (int i = 1000; i > 0; i -= 3) {
+            IDataIndexCursor indexCursor = document.getIndexCursor();
+            assertTrue(indexCursor.seek(i));
+            assertTrue(indexCursor.delete());
+            indexCursor.destroy();
+            expected.remove(i);
+        }
+        cursor.destroy();
+
+        assertEquals(expected.size(), document.size());
+        assertIndexed(document, expected, 100);
+    }
+
+    @Test
+    public void testRandomMutationsMatchLinearScan() throws Exception {
+        Random random = new Random(42);
+        IndexedIData document = new IndexedIData();
+        List<String> expected = new ArrayList<String>();
+
+        for (int i = 0; i < 2000; i++) {
+            int operation = random.nextInt(4);
+            int position = expected.isEmpty() ? 0 : random.nextInt(expected.size());
+            String key = "key" + random.nextInt(200);
+
+            if (operation < 2 || expected.isEmpty()) {
+                document.insert(position, key, i);
+                expected.add(position, key);
+            } else if (operation == 2) {
+                document.remove(position);
+                expected.remove(position);
+            } else {
+                document.setKey(position, key);
+                expected.set(position, key);
+            }
+
+            if (i % 50 == 0) assertIndexed(document, expected, 200);
+        }
+
+        assertIndexed(document, expected, 200);
+    }
+
+    /**
+     * Asserts that keyed lookups against the given document agree with a linear scan of the expected keys.
+     */
+    private static void assertIndexed(IndexedIData document, List<String> expected, int keyCount) {
+        for (int k = 0; k < keyCount; k++) {
+            String key = "key" + k;
+            assertEquals(key, expected.indexOf(key), document.indexOf(key));
+            assertEquals(key, expected.lastIndexOf(key), document.lastIndexOf(key));
+
+            int position = -1;
+            for (int i = 0; i < expected.size(); i++) {
+                if (key.equals(expected.get(i))) {
+                    assertEquals(key, i, document.nextIndexOf(key, position));
+                    assertEquals(key, position, document.previousIndexOf(key, i));
+                    position = i;
+                }
+            }
+            assertEquals(key, -1, document.nextIndexOf(key, position));
+        }
+    }
+
+    @Test
+    public void testIndexCursor() throws Exception {
+        IData document = IndexedIData.create();
+        IDataCursor cursor = document.getCursor();
+        cursor.insertAfter("a", "1");
+        cursor.insertAfter("b", "2");
+        cursor.destroy();
+
+        IDataIndexCursor indexCursor = document.getIndexCursor();
+        assertEquals(2, indexCursor.count());
+        assertTrue(indexCursor.seek(1));
+        assertEquals("b", indexCursor.getKey());
+        assertFalse(indexCursor.seek(2));
+        indexCursor.destroy();
+    }
+
+    @Test
+    public void testDuplicateAndNormalizeIndexed() throws Exception {
+        IData child = IDataFactory.create();
+        IDataUtil.put(child.getCursor(), "c", "1");
+
+        IData document = IDataFactory.create();
+        IDataCursor cursor = document.getCursor();
+        IDataUtil.put(cursor, "a", child);
+        IDataUtil.put(cursor, "b", new IData[] { child });
+        cursor.destroy();
+
+        IData duplicate = IDataHelper.duplicate(document, true, true);
+        assertTrue(duplicate instanceof IndexedIData);
+        assertTrue(IDataHelper.get(duplicate, "a") instanceof IndexedIData);
+        assertTrue(IDataHelper.get(duplicate, "b[0]") instanceof IndexedIData);
+        assertEquals("1", IDataHelper.get(duplicate, "b[0]/c"));
+
+        IData normalized = IDataHelper.normalize(document, true);
+        assertTrue(normalized instanceof IndexedIData);
+        assertTrue(IDataHelper.get(normalized, "a") instanceof IndexedIData);
+        assertEquals("1", IDataHelper.get(normalized, "a/c"));
+
+        assertFalse(IDataHelper.duplicate(document) instanceof IndexedIData);
+    }
+}
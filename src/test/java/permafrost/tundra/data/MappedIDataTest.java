@@ -0,0 +1,172 @@
+package permafrost.tundra.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.UUID;
+
+public class MappedIDataTest {
+    private static IData createDocument() {
+        IDataMap child = new IDataMap();
+        child.put("code", "AU");
+        child.put("name", "Australia");
+
+        IDataMap other = new IDataMap();
+        other.put("code", "NZ");
+        other.put("name", "New Zealand");
+
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTimeInMillis(1000000L);
+
+        IDataMap document = new IDataMap();
+        document.put("string", "value é");
+        document.put("integer", 42);
+        document.put("decimal", new BigDecimal("-12.340"));
+        document.put("boolean", true);
+        document.put("calendar", calendar);
+        document.put("null", null);
+        document.put("strings", new String[] { "a", null, "c" });
+        document.put("table", new String[][] { { "1", "2" }, null });
+        document.put("child", child);
+        document.put("list", new IData[] { child, null, other });
+        return document;
+    }
+
+    @Test
+    public void testOpen() throws Exception {
+        File file = File.createTempFile("mapped", ".tidm");
+        file.deleteOnExit();
+        MappedIData.write(createDocument(), file);
+
+        MappedIData document = MappedIData.open(file);
+        assertEquals(10, document.size());
+
+        IDataMap map = new IDataMap(document);
+        assertEquals("value é", map.get("string"));
+        assertEquals(42, map.get("integer"));
+        assertEquals(new BigDecimal("-12.340"), map.get("decimal"));
+        assertEquals(Boolean.TRUE, map.get("boolean"));
+        assertEquals(1000000L, ((Calendar)map.get("calendar")).getTimeInMillis());
+        assertEquals("UTC", ((Calendar)map.get("calendar")).getTimeZone().getID());
+        assertTrue(map.containsKey("null"));
+        assertNull(map.get("null"));
+        assertArrayEquals(new String[] { "a", null, "c" }, (String[])map.get("strings"));
+        assertArrayEquals(new String[] { "1", "2" }, ((String[][])map.get("table"))[0]);
+
+        assertEquals("Australia", IDataHelper.get(document, "child/name"));
+        assertEquals("NZ", IDataHelper.get(document, "list[2]/code"));
+
+        IData[] list = (IData[])map.get("list");
+        assertEquals(3, list.length);
+        assertTrue(list[0] instanceof MappedIData);
+        assertNull(list[1]);
+    }
+
+    @Test
+    public void testCursor() throws Exception {
+        IData document = new IDataMap();
+        IDataCursor cursor = document.getCursor();
+        cursor.insertAfter("a", "1");
+        cursor.insertAfter("b", "2");
+        cursor.insertAfter("a", "3");
+        cursor.destroy();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        MappedIData.write(document, outputStream);
+        MappedIData mapped = MappedIData.wrap(ByteBuffer.wrap(outputStream.toByteArray()));
+
+        cursor = mapped.getCursor();
+        assertTrue(cursor.first("a"));
+        assertEquals("1", cursor.getValue());
+        assertTrue(cursor.next("a"));
+        assertEquals("3", cursor.getValue());
+        assertTrue(cursor.previous());
+        assertEquals("b", cursor.getKey());
+        assertTrue(cursor.last("a"));
+        assertEquals("3", cursor.getValue());
+
+        // mapped documents are read-only
+        cursor.setValue("changed");
+        cursor.insertAfter("c", "4");
+        assertTrue(!cursor.delete());
+        cursor.destroy();
+
+        assertEquals("3", IDataHelper.get(mapped, "a(1)"));
+        assertEquals(3, mapped.size());
+    }
+
+    @Test
+    public void testKeyedLookupInHashedDocument() throws Exception {
+        IData document = IDataFactory.create();
+        IDataCursor cursor = document.getCursor();
+        for (int i = 0; i < 1000; i++) {
+            cursor.insertAfter("key" + (i % 300), i);
+        }
+        cursor.destroy();
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        MappedIData.write(document, outputStream);
+        MappedIData mapped = MappedIData.wrap(ByteBuffer.wrap(outputStream.toByteArray()));
+
+        IDataCursor mappedCursor = mapped.getCursor();
+        for (int k = 0; k < 300; k++) {
+            String key = "key" + k;
+
+            List<Object> expected = new ArrayList<Object>();
+            for (int i = k; i < 1000; i += 300) expected.add(i);
+
+            List<Object> forwards = new ArrayList<Object>();
+            for (boolean found = mappedCursor.first(key); found; found = mappedCursor.next(key)) {
+                assertEquals(key, mappedCursor.getKey());
+                forwards.add(mappedCursor.getValue());
+            }
+            assertEquals(expected, forwards);
+
+            List<Object> backwards = new ArrayList<Object>();
+            for (boolean found = mappedCursor.last(key); found; found = mappedCursor.previous(key)) {
+                backwards.add(0, mappedCursor.getValue());
+            }
+            assertEquals(expected, backwards);
+        }
+        assertFalse(mappedCursor.first("key300"));
+        assertFalse(mappedCursor.last("key300"));
+        assertFalse(mappedCursor.first(null));
+        mappedCursor.destroy();
+
+        assertEquals(999, IDataHelper.get(mapped, "key99(3)"));
+    }
+
+    @Test
+    public void testSerializableValueWrittenAsString() throws Exception {
+        UUID uuid = UUID.randomUUID();
+
+        IDataMap document = new IDataMap();
+        document.put("uuid", uuid);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        MappedIData.write(document, outputStream);
+        MappedIData mapped = MappedIData.wrap(ByteBuffer.wrap(outputStream.toByteArray()));
+
+        assertEquals(uuid.toString(), IDataHelper.get(mapped, "uuid"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrapMalformed() throws Exception {
+        MappedIData.wrap(ByteBuffer.wrap("not a mapped IData file".getBytes("UTF-8")));
+    }
+}
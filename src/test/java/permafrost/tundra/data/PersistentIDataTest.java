@@ -0,0 +1,201 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Lachlan Dowding
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package permafrost.tundra.data;
+
+import com.wm.data.IData;
+import com.wm.data.IDataCursor;
+import com.wm.data.IDataFactory;
+import com.wm.data.IDataUtil;
+import com.wm.util.coder.IDataCodable;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class PersistentIDataTest {
+    @Test
+    public void testSnapshotsAreIndependent() throws Exception {
+        IDataMap child = new IDataMap();
+        child.put("c", "3");
+
+        IDataMap document = new IDataMap();
+        document.put("a", "1");
+        document.put("b", "2");
+        document.put("child", child);
+        document.put("children", new IData[] { child });
+
+        PersistentIData template = PersistentIData.of(document);
+        PersistentIData first = template.snapshot();
+        PersistentIData second = template.snapshot();
+
+        IDataHelper.put(first, "a", "changed");
+        IDataHelper.put(first, "child/d", "4");
+        IDataHelper.put(first, "children[0]/c", "changed");
+        IDataHelper.remove(second, "b");
+
+        assertEquals("changed", IDataHelper.get(first, "a"));
+        assertEquals("4", IDataHelper.get(first, "child/d"));
+        assertEquals("changed", IDataHelper.get(first, "children[0]/c"));
+        assertEquals("2", IDataHelper.get(first, "b"));
+
+        assertEquals("1", IDataHelper.get(second, "a"));
+        assertNull(IDataHelper.get(second, "child/d"));
+        assertEquals("3", IDataHelper.get(second, "children[0]/c"));
+        assertNull(IDataHelper.get(second, "b"));
+
+        assertEquals("1", IDataHelper.get(template, "a"));
+        assertEquals("2", IDataHelper.get(template, "b"));
+        assertNull(IDataHelper.get(template, "child/d"));
+
+        assertEquals(1, IDataHelper.size(child));
+        assertEquals(4, IDataHelper.size(document));
+    }
+
+    @Test
+    public void testSnapshotOfModifiedDocument() throws Exception {
+        IData document = PersistentIData.create();
+        IDataHelper.put(document, "a/b", "1");
+
+        PersistentIData snapshot = ((PersistentIData)document).snapshot();
+        IDataHelper.put(document, "a/b", "2");
+        IDataHelper.put(snapshot, "a/c", "3");
+
+        assertEquals("2", IDataHelper.get(document, "a/b"));
+        assertNull(IDataHelper.get(document, "a/c"));
+        assertEquals("1", IDataHelper.get(snapshot, "a/b"));
+        assertEquals("3", IDataHelper.get(snapshot, "a/c"));
+    }
+
+    @Test
+    public void testSnapshotPreservesCodableValues() throws Exception {
+        IDataCodable codable = new IDataCodable() {
+            public IData getIData() {
+                return IDataFactory.create();
+            }
+
+            public void setIData(IData document) {}
+        };
+        IDataCodable[] codables = new IDataCodable[] { codable };
+
+        IDataMap document = new IDataMap();
+        document.put("codable", codable);
+        document.put("codables", codables);
+
+        PersistentIData snapshot = PersistentIData.of(document).snapshot();
+
+        assertSame(codable, IDataHelper.get(snapshot, "codable"));
+        assertSame(codables, IDataHelper.get(snapshot, "codables"));
+    }
+
+    @Test
+    public void testCursorPreservesOrderAndDuplicateKeys() throws Exception {
+        IData document = PersistentIData.create();
+        IDataCursor cursor = document.getCursor();
+        cursor.insertAfter("a", "1");
+        cursor.insertAfter("b", "2");
+        cursor.insertAfter("a", "3");
+
+        assertTrue(cursor.first("a"));
+        assertEquals("1", cursor.getValue());
+        assertTrue(cursor.next("a"));
+        assertEquals("3", cursor.getValue());
+        assertFalse(cursor.next("a"));
+        assertTrue(cursor.previous("a"));
+        assertEquals("1", cursor.getValue());
+
+        assertTrue(cursor.first("b"));
+        assertTrue(cursor.delete());
+        assertTrue(cursor.next());
+        assertEquals("a", cursor.getKey());
+        assertEquals("3", cursor.getValue());
+        cursor.destroy();
+
+        assertEquals("{ a = 1, a = 3 }", document.toString());
+    }
+
+    @Test
+    public void testRepeatedInsertsBetweenElements() throws Exception {
+        IData document = PersistentIData.create();
+        IDataCursor cursor = document.getCursor();
+        cursor.insertAfter("first", "0");
+        cursor.insertAfter("last", "1000");
+
+        IDataCursor clone = cursor.getCursorClone();
+
+        assertTrue(cursor.first());
+        for (int i = 1; i < 1000; i++) {
+            cursor.insertAfter("key" + i, "" + i);
+        }
+        cursor.destroy();
+
+        assertEquals("last", clone.getKey());
+        assertTrue(clone.previous());
+        assertEquals("999", clone.getValue());
+        clone.destroy();
+
+        cursor = document.getCursor();
+        for (int i = 0; cursor.next(); i++) {
+            assertEquals("" + i, cursor.getValue());
+        }
+        assertEquals("500", IDataUtil.getString(cursor, "key500"));
+        cursor.destroy();
+
+        assertEquals(1001, IDataHelper.size(document));
+    }
+
+    @Test
+    public void testCursorsTranslatedWhenLabelsReassigned() throws Exception {
+        IData document = PersistentIData.create();
+        IDataCursor cursor = document.getCursor();
+        cursor.insertAfter("first", "0");
+        cursor.insertAfter("last", "100");
+
+        IDataCursor clone = cursor.getCursorClone();
+
+        // inserting repeatedly at the same position exhausts the available labels, forcing them to be reassigned
+        for (int i = 1; i < 100; i++) {
+            assertTrue(cursor.first());
+            cursor.insertAfter("key" + i, "" + i);
+        }
+        cursor.destroy();
+
+        assertEquals("last", clone.getKey());
+        assertTrue(clone.previous());
+        assertEquals("1", clone.getValue());
+        clone.destroy();
+
+        cursor = document.getCursor();
+        assertTrue(cursor.next());
+        assertEquals("0", cursor.getValue());
+        for (int i = 99; cursor.next() && i > 0; i--) {
+            assertEquals("" + i, cursor.getValue());
+        }
+        cursor.destroy();
+
+        assertEquals(101, IDataHelper.size(document));
+    }
+}
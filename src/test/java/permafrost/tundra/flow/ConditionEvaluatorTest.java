@@ -24,14 +24,21 @@
 
 package permafrost.tundra.flow;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import org.junit.Test;
 import org.w3c.dom.Document;
 import permafrost.tundra.data.IDataMap;
 import permafrost.tundra.io.InputStreamHelper;
 import permafrost.tundra.xml.dom.DocumentHelper;
 import permafrost.tundra.xml.sax.InputSourceHelper;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ConditionEvaluatorTest {
 
@@ -161,4 +168,110 @@ public class ConditionEvaluatorTest {
 
         assertTrue(!result);
     }
+
+    @Test
+    public void testUnsupportedSyntaxIsNotCompiled() throws Exception {
+        assertNull(new ConditionEvaluator("%a% > 9").expression);
+        assertNull(new ConditionEvaluator("%a% <= \"9\"").expression);
+        assertNull(new ConditionEvaluator("%a% == %b%").expression);
+        assertNull(new ConditionEvaluator("%c% == apple").expression);
+        assertNull(new ConditionEvaluator("%a% = 1").expression);
+        assertNull(new ConditionEvaluator("%a% == 1 and %b% == 2 or %c% == 3").expression);
+
+        assertNotNull(new ConditionEvaluator("(%a% == 1 and %b% == 2) or %c% == 3").expression);
+        assertNotNull(new ConditionEvaluator("%d% == $null and %c% != $null").expression);
+    }
+
+    @Test
+    public void testEvaluateCompiledComparison() throws Exception {
+        IDataMap map = new IDataMap();
+        map.put("a", "10");
+        map.put("c", "apple");
+
+        assertTrue(ConditionEvaluator.evaluate("%a% == 10", map));
+        assertTrue(ConditionEvaluator.evaluate("%a% != 11", map));
+        assertTrue(ConditionEvaluator.evaluate("%a% == \"10\"", map));
+        assertTrue(ConditionEvaluator.evaluate("%c% == \"apple\"", map));
+        assertTrue(ConditionEvaluator.evaluate("%c% != \"banana\"", map));
+        assertTrue(ConditionEvaluator.evaluate("%d% == $null and %c% != $null", map));
+        assertFalse(ConditionEvaluator.evaluate("%d% == \"apple\"", map));
+    }
+
+    @Test
+    public void testUndecidableComparisonsAreDelegated() throws Exception {
+        IDataMap map = new IDataMap();
+        map.put("a", "10");
+        map.put("b", 9);
+        map.put("c", "apple");
+
+        String[] conditions = { "%d% != \"X\"", "%b% == 9", "%a% == 10.0", "%c% == 1" };
+        for (String condition : conditions) {
+            try {
+                new ConditionEvaluator(condition).expression.evaluate(map);
+                fail("Expected comparison to be undecidable: " + condition);
+            } catch (ConditionEvaluator.UndecidableException ex) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testClearCache() throws Exception {
+        IDataMap map = new IDataMap();
+        map.put("a", "1");
+
+        assertTrue(ConditionEvaluator.evaluate("%a% == 1", map));
+        ConditionEvaluator.clearCache();
+        assertTrue(ConditionEvaluator.evaluate("%a% == 1", map));
+    }
+
+    @Test
+    public void testEvaluateNotAndParenthesesCondition() throws Exception {
+        IDataMap map = new IDataMap();
+        map.put("a", "1");
+        map.put("b", "2");
+
+        assertTrue(ConditionEvaluator.evaluate("not (%a% == 2 or %b% == 1)", map));
+        assertTrue(ConditionEvaluator.evaluate("!(%a% == 2) && (%b% == 2 || %a% == 2)", map));
+        assertFalse(ConditionEvaluator.evaluate("%a% == 1 and not %b% == 2", map));
+    }
+
+    @Test
+    public void testEvaluateConcurrently() throws Exception {
+        final ConditionEvaluator evaluator = new ConditionEvaluator("%a% == 1 and %b% != $null");
+        final AtomicInteger failures = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    for (int j = 0; j < 1000; j++) {
+                        IDataMap map = new IDataMap();
+                        map.put("a", (index + j) % 2 == 0 ? "1" : "2");
+                        map.put("b", "x");
+                        if (evaluator.evaluate(map) != ((index + j) % 2 == 0)) failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+    }
+
+    @Test
+    public void testGetDiscriminator() throws Exception {
+        ConditionEvaluator.Discriminator discriminator = new ConditionEvaluator("(%type% == \"X\" or %type% == \"Y\") and %a% != 1").getDiscriminator();
+        assertEquals("type", discriminator.getKey());
+        assertEquals(new HashSet<String>(Arrays.asList("X", "Y")), discriminator.getValues());
+
+        assertNull(new ConditionEvaluator("%type% == \"X\" or %other% == \"Y\"").getDiscriminator());
+        assertNull(new ConditionEvaluator("%type% == 1").getDiscriminator());
+        assertNull(new ConditionEvaluator("not %type% == \"X\"").getDiscriminator());
+    }
 }
@@ -0,0 +1,130 @@
+package permafrost.tundra.flow.variable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import com.wm.app.b2b.server.ServiceException;
+import com.wm.data.IData;
+import com.wm.util.security.WmSecureString;
+import org.junit.Test;
+import permafrost.tundra.data.IDataMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class GlobalVariableHelperTest {
+    @Test
+    public void testDecryptionFailureOnlyAffectsThatVariable() throws Exception {
+        TestSource source = new TestSource();
+        GlobalVariableHelper.Snapshot snapshot = new GlobalVariableHelper.SnapshotCache(source).get(60000);
+
+        assertEquals(0, source.decryptions.get());
+        assertEquals("1", snapshot.get("plain"));
+        assertEquals("secret", snapshot.get("good"));
+        assertEquals("secret", snapshot.get("good"));
+        assertEquals(1, source.decryptions.get());
+        assertNull(snapshot.get("missing"));
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                snapshot.get("bad");
+                fail("Expected ServiceException");
+            } catch (ServiceException ex) {
+                // expected
+            }
+        }
+        assertEquals(3, source.decryptions.get());
+        assertEquals("1", snapshot.get("plain"));
+    }
+
+    @Test
+    public void testConcurrentInitialLoadIsSingleFlight() throws Exception {
+        final TestSource source = new TestSource();
+        source.delay = 50;
+        final GlobalVariableHelper.SnapshotCache cache = new GlobalVariableHelper.SnapshotCache(source);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<GlobalVariableHelper.Snapshot>> futures = new ArrayList<Future<GlobalVariableHelper.Snapshot>>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(new Callable<GlobalVariableHelper.Snapshot>() {
+                    public GlobalVariableHelper.Snapshot call() throws Exception {
+                        start.await();
+                        return cache.get(60000);
+                    }
+                }));
+            }
+            start.countDown();
+
+            GlobalVariableHelper.Snapshot first = futures.get(0).get();
+            for (Future<GlobalVariableHelper.Snapshot> future : futures) {
+                assertSame(first, future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, source.loads.get());
+    }
+
+    @Test
+    public void testInvalidateReloadsSnapshot() throws Exception {
+        TestSource source = new TestSource();
+        GlobalVariableHelper.SnapshotCache cache = new GlobalVariableHelper.SnapshotCache(source);
+
+        GlobalVariableHelper.Snapshot snapshot = cache.get(60000);
+        assertSame(snapshot, cache.get(60000));
+
+        cache.invalidate();
+
+        assertNotSame(snapshot, cache.get(60000));
+        assertEquals(2, source.loads.get());
+    }
+
+    @Test
+    public void testNoRefreshIntervalDoesNotCache() throws Exception {
+        TestSource source = new TestSource();
+        GlobalVariableHelper.SnapshotCache cache = new GlobalVariableHelper.SnapshotCache(source);
+
+        assertNotSame(cache.get(0), cache.get(0));
+        assertEquals(2, source.loads.get());
+    }
+
+    private static class TestSource implements GlobalVariableHelper.Source {
+        final AtomicInteger loads = new AtomicInteger();
+        final AtomicInteger decryptions = new AtomicInteger();
+        volatile long delay;
+
+        public IData[] list() throws Exception {
+            loads.incrementAndGet();
+            if (delay > 0) Thread.sleep(delay);
+            return new IData[] { variable("plain", "1", false), variable("good", "handle", true), variable("bad", "handle", true) };
+        }
+
+        public String get(String key) throws Exception {
+            throw new UnsupportedOperationException("snapshot lookups should not read live values");
+        }
+
+        public WmSecureString decrypt(String key) throws Exception {
+            decryptions.incrementAndGet();
+            if ("bad".equals(key)) throw new Exception("cannot decrypt " + key);
+            return new WmSecureString("secret");
+        }
+
+        private static IData variable(String key, String value, boolean secure) {
+            IDataMap variable = new IDataMap();
+            variable.put("key", key);
+            variable.put("value", value);
+            variable.put("isSecure", Boolean.toString(secure));
+            return variable;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package permafrost.tundra.flow.variable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+import permafrost.tundra.data.IDataMap;
+import permafrost.tundra.data.IDataPath;
+import java.io.StringWriter;
+import java.util.EnumSet;
+
+public class SubstitutionTemplateTest {
+    private static final EnumSet<SubstitutionType> LOCAL = EnumSet.of(SubstitutionType.LOCAL);
+
+    @Test
+    public void testOfParsesSegments() throws Exception {
+        SubstitutionTemplate template = SubstitutionTemplate.of("a %b% c %d/e% f");
+
+        assertSame(template, SubstitutionTemplate.of("a %b% c %d/e% f"));
+        assertEquals(2, template.size());
+        assertEquals("a ", template.getLiteral(0));
+        assertEquals("%b%", template.getStatement(0));
+        assertEquals("d/e", template.getKey(1));
+        assertEquals(" f", template.getLiteral(2));
+    }
+
+    @Test
+    public void testOfDoesNotCacheLongSources() throws Exception {
+        StringBuilder builder = new StringBuilder("%a%");
+        while (builder.length() <= SubstitutionTemplate.MAXIMUM_CACHED_LENGTH) {
+            builder.append(" text");
+        }
+        String source = builder.toString();
+
+        SubstitutionTemplate template = SubstitutionTemplate.of(source);
+
+        assertNotSame(template, SubstitutionTemplate.of(source));
+        assertEquals(1, template.size());
+        assertEquals("a", template.getKey(0));
+    }
+
+    @Test
+    public void testLongSourcesDoNotCachePaths() throws Exception {
+        StringBuilder builder = new StringBuilder("%uncached/a% %/uncached/b%");
+        while (builder.length() <= SubstitutionTemplate.MAXIMUM_CACHED_LENGTH) {
+            builder.append(" text");
+        }
+
+        SubstitutionTemplate template = SubstitutionTemplate.of(builder.toString());
+
+        assertEquals(2, template.size());
+        assertNotSame(IDataPath.of("uncached/a"), template.getPath(0));
+        assertNotSame(IDataPath.of("/uncached/b"), template.getPath(1));
+        assertSame(SubstitutionTemplate.of("%cached/a%").getPath(0), IDataPath.of("cached/a"));
+    }
+
+    @Test
+    public void testRender() throws Exception {
+        IDataMap child = new IDataMap();
+        child.put("e", "$2");
+        IDataMap scope = new IDataMap();
+        scope.put("b", "1\\");
+        scope.put("d", child);
+
+        SubstitutionTemplate template = SubstitutionTemplate.of("a %b% c %d/e% f %g%");
+
+        assertEquals("a 1\\ c $2 f %g%", template.render(scope, null, LOCAL));
+        assertEquals("a 1\\ c $2 f x", template.render(scope, "x", LOCAL));
+        assertEquals("no variables", SubstitutionTemplate.of("no variables").render(scope, null, LOCAL));
+
+        StringWriter writer = new StringWriter();
+        template.render(writer, scope, "", LOCAL);
+        assertEquals("a 1\\ c $2 f ", writer.toString());
+
+        StringBuilder builder = new StringBuilder("> ");
+        template.render(builder, scope, null, LOCAL);
+        assertEquals("> a 1\\ c $2 f %g%", builder.toString());
+    }
+
+    @Test
+    public void testSubstitutionHelperUsesTemplate() throws Exception {
+        IDataMap scope = new IDataMap();
+        scope.put("a", "1");
+
+        assertEquals("1 and %b%", SubstitutionHelper.substitute("%a% and %b%", scope));
+        assertEquals("100%", SubstitutionHelper.substitute("100%", scope));
+        assertEquals("2 1", SubstitutionHelper.substitute(new String[][] { { "%a%" }, { "2 %a%" } }, null, scope)[1][0]);
+    }
+}
@@ -0,0 +1,40 @@
+package permafrost.tundra.lang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import java.util.Locale;
+
+public class CaseInsensitiveStringTest {
+    @Test
+    public void testEquals() throws Exception {
+        assertTrue(CaseInsensitiveString.equals("Content-Type", "content-TYPE", Locale.ENGLISH));
+        assertFalse(CaseInsensitiveString.equals("Content-Type", "Content-Typo", Locale.ENGLISH));
+        assertFalse(CaseInsensitiveString.equals("abc", "abcd", Locale.ENGLISH));
+        assertTrue(CaseInsensitiveString.equals("ÉTÉ", "été", Locale.FRENCH));
+        assertTrue(CaseInsensitiveString.equals("\u212A", "k", Locale.ENGLISH));
+        assertFalse(CaseInsensitiveString.equals(null, "a", Locale.ENGLISH));
+        assertTrue(new CaseInsensitiveString("AbC").equals("aBc"));
+    }
+
+    @Test
+    public void testEqualsTurkish() throws Exception {
+        Locale turkish = new Locale("tr", "TR");
+        assertFalse(CaseInsensitiveString.equals("TITLE", "title", turkish));
+        assertTrue(CaseInsensitiveString.equals("TITLE", "tıtle", turkish));
+        assertTrue(CaseInsensitiveString.equals("TITLE", "title", Locale.ENGLISH));
+    }
+
+    @Test
+    public void testHashCode() throws Exception {
+        String[] strings = { "Content-Type", "ÉTÉ", "\u212A", "TITLE", "" };
+        Locale[] locales = { Locale.ENGLISH, new Locale("tr", "TR") };
+
+        for (Locale locale : locales) {
+            for (String string : strings) {
+                assertEquals(string.toLowerCase(locale).hashCode(), CaseInsensitiveString.hashCode(string, locale));
+            }
+        }
+    }
+}
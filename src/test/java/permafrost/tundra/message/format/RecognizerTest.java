@@ -0,0 +1,131 @@
+package permafrost.tundra.message.format;
+
+import com.wm.data.IData;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+import permafrost.tundra.data.IDataMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class RecognizerTest {
+    private static Format format(String name, String condition, boolean enabled) {
+        IDataMap document = new IDataMap();
+        document.put("name", name);
+        IDataMap recognize = new IDataMap();
+        recognize.put("ref", condition);
+        document.put("recognize", recognize);
+        document.put("enabled", enabled);
+        return new Format(document);
+    }
+
+    private static IData pipeline(String type, String partner) {
+        IDataMap pipeline = new IDataMap();
+        pipeline.put("$message.type", type);
+        pipeline.put("partner", partner);
+        return pipeline;
+    }
+
+    @Test
+    public void testRecognizeUsesIndex() throws Exception {
+        List<Format> formats = new ArrayList<Format>();
+        for (int i = 0; i < 100; i++) {
+            formats.add(format("format" + (i < 10 ? "0" : "") + i, "%$message.type% == \"type" + i + "\"", true));
+        }
+        Recognizer recognizer = new Recognizer(formats);
+
+        assertEquals("format42", recognizer.recognize(pipeline("type42", null)).getName());
+        assertNull(recognizer.recognize(pipeline("unknown", null)));
+
+        long evaluations = 0;
+        for (IData statistics : recognizer.getStatistics()) {
+            evaluations += (Long)new IDataMap(statistics).get("evaluations");
+        }
+        assertEquals(1, evaluations);
+        assertEquals(1, recognizer.get("format42").getHitCount());
+    }
+
+    @Test
+    public void testRecognizeInNameOrder() throws Exception {
+        List<Format> formats = new ArrayList<Format>();
+        formats.add(format("d", "%$message.type% == \"X\" or %$message.type% == \"Y\"", true));
+        formats.add(format("c", "%partner% == \"acme\"", true));
+        formats.add(format("b", "%$message.type% == \"X\" and %partner% == \"other\"", true));
+        formats.add(format("a", "%$message.type% == \"X\"", false));
+        Recognizer recognizer = new Recognizer(formats);
+
+        assertEquals("b", recognizer.recognize(pipeline("X", "other")).getName());
+        assertEquals("c", recognizer.recognize(pipeline("X", "acme")).getName());
+        assertEquals("d", recognizer.recognize(pipeline("Y", null)).getName());
+        assertEquals("d", recognizer.recognize(pipeline("X", null)).getName());
+        assertNull(recognizer.recognize(pipeline("Z", null)));
+        assertNull(recognizer.recognize((IData)null));
+
+        recognizer.resetStatistics();
+        assertEquals(0, recognizer.get("d").getEvaluationCount());
+    }
+
+    @Test
+    public void testRecognizeBatch() throws Exception {
+        List<Format> formats = new ArrayList<Format>();
+        formats.add(format("a", "%$message.type% == \"A\"", true));
+        formats.add(format("b", "%partner% == \"acme\"", true));
+        Recognizer recognizer = new Recognizer(formats);
+
+        IData[] records = new IData[3000];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = pipeline(i % 3 == 0 ? "A" : "B", i % 3 == 1 ? "acme" : null);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Format[] results = recognizer.recognize(records, executor);
+            assertEquals(records.length, results.length);
+            for (int i = 0; i < records.length; i++) {
+                assertEquals(i % 3 == 0 ? "a" : i % 3 == 1 ? "b" : null, results[i] == null ? null : results[i].getName());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Map<Format, IData[]> groups = recognizer.group(records);
+        assertEquals(Arrays.asList(recognizer.get("a"), recognizer.get("b"), null), new ArrayList<Format>(groups.keySet()));
+        assertEquals(1000, groups.get(recognizer.get("a")).length);
+        assertSame(records[1], groups.get(recognizer.get("b"))[0]);
+        assertSame(records[records.length - 1], groups.get(null)[999]);
+    }
+
+    @Test
+    public void testRecognizeBatchWithUnboundedExecutor() throws Exception {
+        List<Format> formats = new ArrayList<Format>();
+        formats.add(format("a", "%$message.type% == \"A\"", true));
+        Recognizer recognizer = new Recognizer(formats);
+
+        IData[] records = new IData[3000];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = pipeline(i % 2 == 0 ? "A" : "B", null);
+        }
+
+        ThreadPoolExecutor executor = (ThreadPoolExecutor)Executors.newCachedThreadPool();
+        try {
+            Format[] results = recognizer.recognize(records, executor);
+            assertEquals(records.length, results.length);
+            for (int i = 0; i < records.length; i++) {
+                assertEquals(i % 2 == 0 ? "a" : null, results[i] == null ? null : results[i].getName());
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        assertTrue(executor.getCompletedTaskCount() > 0);
+    }
+}
@@ -0,0 +1,84 @@
+package permafrost.tundra.util.concurrent;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.*;
+
+public class ParallelHelperTest {
+    @Test
+    public void testSortIsStable() throws Exception {
+        int size = ParallelHelper.DEFAULT_THRESHOLD * 4 + 17;
+        Random random = new Random(42);
+        int[][] array = new int[size][];
+        for (int i = 0; i < size; i++) {
+            array[i] = new int[] { random.nextInt(100), i };
+        }
+
+        ParallelHelper.sort(array, new Comparator<int[]>() {
+            public int compare(int[] first, int[] second) {
+                return first[0] < second[0] ? -1 : (first[0] == second[0] ? 0 : 1);
+            }
+        });
+
+        for (int i = 1; i < size; i++) {
+            assertTrue(array[i - 1][0] <= array[i][0]);
+            if (array[i - 1][0] == array[i][0]) assertTrue(array[i - 1][1] < array[i][1]);
+        }
+    }
+
+    @Test
+    public void testSortWithNaturalOrdering() throws Exception {
+        int size = ParallelHelper.DEFAULT_THRESHOLD * 3;
+        Integer[] array = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            array[i] = size - i;
+        }
+
+        ParallelHelper.sort(array, null);
+
+        for (int i = 0; i < size; i++) {
+            assertEquals(Integer.valueOf(i + 1), array[i]);
+        }
+    }
+
+    @Test
+    public void testInvokeAllPreservesOrder() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 100; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                public Integer call() {
+                    return value * value;
+                }
+            });
+        }
+
+        List<Integer> results = ParallelHelper.invokeAll(tasks);
+
+        assertEquals(100, results.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i * i), results.get(i));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testInvokeAllRethrowsTaskException() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<Callable<Integer>>();
+        for (int i = 0; i < 4; i++) {
+            final int value = i;
+            tasks.add(new Callable<Integer>() {
+                public Integer call() {
+                    if (value == 2) throw new IllegalStateException("failed");
+                    return value;
+                }
+            });
+        }
+
+        ParallelHelper.invokeAll(tasks);
+    }
+}
@@ -0,0 +1,32 @@
+package permafrost.tundra.util.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+public class StripedCounterTest {
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final StripedCounter counter = new StripedCounter(5);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++) {
+                        counter.increment();
+                    }
+                    counter.add(-5);
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80005 - 40, counter.sum());
+        assertEquals("79965", counter.toString());
+        assertEquals(79965, counter.sumThenReset());
+        assertEquals(0, counter.longValue());
+    }
+}
@@ -26,7 +26,9 @@ package permafrost.tundra.xml.xpath;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
@@ -38,6 +40,8 @@ import permafrost.tundra.xml.dom.DocumentHelper;
 import permafrost.tundra.xml.dom.Nodes;
 import permafrost.tundra.xml.namespace.IDataNamespaceContext;
 import permafrost.tundra.xml.sax.InputSourceHelper;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 
 public class XPathHelperTest {
@@ -95,4 +99,61 @@ public class XPathHelperTest {
 
         XPathHelper.compile(query, IDataNamespaceContext.of(namespace));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testCompileReturnsCachedExpression() throws Exception {
+        IDataMap namespace = new IDataMap();
+        namespace.put("xyz", "http://example.com");
+
+        IDataMap equivalentNamespace = new IDataMap();
+        equivalentNamespace.put("xyz", "http://example.com");
+
+        assertSame(XPathHelper.compile("/a/b/c"), XPathHelper.compile("/a/b/c"));
+        assertSame(XPathHelper.compile("/xyz:a", IDataNamespaceContext.of(namespace)), XPathHelper.compile("/xyz:a", IDataNamespaceContext.of(equivalentNamespace)));
+        assertNotSame(XPathHelper.compile("/xyz:a"), XPathHelper.compile("/xyz:a", IDataNamespaceContext.of(namespace)));
+    }
+
+    @Test
+    public void testCompileDoesNotCacheSubclassedNamespaceContext() throws Exception {
+        IDataMap namespace = new IDataMap();
+        namespace.put("xyz", "http://example.com");
+
+        IDataNamespaceContext context = new IDataNamespaceContext(namespace) {
+            @Override
+            public String getNamespaceURI(String prefix) {
+                return "http://example.org";
+            }
+        };
+
+        assertNotSame(XPathHelper.compile("/xyz:a", IDataNamespaceContext.of(namespace)), XPathHelper.compile("/xyz:a", context));
+        assertNotSame(XPathHelper.compile("/xyz:a", context), XPathHelper.compile("/xyz:a", context));
+    }
+
+    @Test
+    public void testCompiledExpressionUsedConcurrently() throws Exception {
+        final XPathExpression expression = XPathHelper.compile("/a[1]/z");
+        final AtomicInteger failures = new AtomicInteger(0);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 100; j++) {
+                            if (!XPathHelper.evaluate(document, expression, "1", "2", "3")) failures.incrementAndGet();
+                        }
+                    } catch (Exception ex) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, failures.get());
+    }
+}